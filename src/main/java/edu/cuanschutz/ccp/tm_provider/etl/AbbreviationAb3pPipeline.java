@@ -11,7 +11,7 @@ import org.apache.beam.examples.subprocess.SubProcessPipelineOptions;
 import org.apache.beam.examples.subprocess.configuration.SubProcessConfiguration;
 import org.apache.beam.runners.dataflow.options.DataflowPipelineOptions;
 import org.apache.beam.sdk.Pipeline;
-import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
+import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.options.Validation.Required;
@@ -32,6 +32,7 @@ import edu.cuanschutz.ccp.tm_provider.etl.fn.EtlFailureToEntityFn;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ProcessingStatusFlag;
@@ -72,6 +73,13 @@ public class AbbreviationAb3pPipeline {
 
 		void setBinaryFileAndDependencies(String value);
 
+		@Description("The max number of documents processed by each invocation of the abbreviation binary. "
+				+ "Note that the subprocess wait time applies to the whole batch.")
+		@Default.Integer(AbbreviationFn.DEFAULT_BATCH_SIZE)
+		int getAbbreviationBatchSize();
+
+		void setAbbreviationBatchSize(int value);
+
 		@Description("This pipeline key will be used to select the input text documents that will be processed")
 		@Required
 		PipelineKey getInputSentencePipelineKey();
@@ -146,7 +154,7 @@ public class AbbreviationAb3pPipeline {
 
 		List<String> filesToDownloadToWorker = Arrays.asList(options.getBinaryFileAndDependencies().split("\\|"));
 		AbbreviationFn abbreviationFn = new AbbreviationFn(configuration, abbreviationsBinaryName,
-				filesToDownloadToWorker, outputDocCriteria, timestamp);
+				filesToDownloadToWorker, outputDocCriteria, timestamp, options.getAbbreviationBatchSize());
 
 		ParDo.MultiOutput<KV<ProcessingStatus, Map<DocumentCriteria, String>>, KV<ProcessingStatus, List<String>>> parDo;
 
@@ -167,7 +175,7 @@ public class AbbreviationAb3pPipeline {
 				statusEntityToAnnotation.apply(Keys.<ProcessingStatus>create()), targetProcessingStatusFlag);
 		PCollection<Entity> nonredundantStatusEntities = PipelineMain.deduplicateStatusEntities(updatedEntities);
 		nonredundantStatusEntities.apply("status_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		PCollectionView<Map<String, Set<String>>> documentIdToCollections = PipelineMain
 				.getCollectionMappings(nonredundantStatusEntities).apply(View.<String, Set<String>>asMap());
@@ -182,7 +190,7 @@ public class AbbreviationAb3pPipeline {
 				.apply("annotations->annot_entity",
 						ParDo.of(new DocumentToEntityFn(outputDocCriteria, options.getCollection(),
 								documentIdToCollections)).withSideInputs(documentIdToCollections))
-				.apply("annot_entity->datastore", DatastoreIO.v1().write().withProjectId(options.getProject()));
+				.apply("annot_entity->datastore", DocumentStore.fromOptions(options, options.getProject()).write());
 
 		/*
 		 * store the failures for this pipeline in Cloud Datastore - deduplication is
@@ -192,7 +200,7 @@ public class AbbreviationAb3pPipeline {
 				ParDo.of(new EtlFailureToEntityFn()));
 		PCollection<Entity> nonredundantFailureEntities = PipelineMain.deduplicateEntitiesByKey(failureEntities);
 		nonredundantFailureEntities.apply("failure_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		p.run().waitUntilFinish();
 
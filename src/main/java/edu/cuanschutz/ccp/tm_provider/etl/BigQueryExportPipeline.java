@@ -13,7 +13,6 @@ import org.apache.beam.runners.dataflow.options.DataflowPipelineOptions;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.io.TextIO;
-import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.Create;
@@ -33,6 +32,7 @@ import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ProcessingStatusFlag;
@@ -70,6 +70,7 @@ public class BigQueryExportPipeline {
 		String pipelineVersion = Version.getProjectVersion();
 		com.google.cloud.Timestamp timestamp = com.google.cloud.Timestamp.now();
 		Options options = PipelineOptionsFactory.fromArgs(args).withValidation().as(Options.class);
+		DocumentDownloadFn.checkDocumentStore(options);
 		LOGGER.log(Level.INFO, String.format("Running BigQuery export pipeline"));
 
 		Pipeline p = Pipeline.create(options);
@@ -92,7 +93,7 @@ public class BigQueryExportPipeline {
 				.apply("annot_extract_failures->datastore", ParDo.of(new EtlFailureToEntityFn()));
 		PCollection<Entity> nonredundantFailureEntities = PipelineMain.deduplicateEntitiesByKey(failureEntities);
 		nonredundantFailureEntities.apply("annot_extract_failure_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		DocumentCriteria outputDocCriteria = new DocumentCriteria(DocumentType.BIGQUERY, DocumentFormat.BIGQUERY,
 				PIPELINE_KEY, pipelineVersion);
@@ -123,7 +124,7 @@ public class BigQueryExportPipeline {
 				ParDo.of(new EtlFailureToEntityFn()));
 		nonredundantFailureEntities = PipelineMain.deduplicateEntitiesByKey(failureEntities);
 		nonredundantFailureEntities.apply("bq_export_failure_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		// write the output
 		docIdToBigQuery_annotationTable.apply("write annotation table",
@@ -1,6 +1,5 @@
 package edu.cuanschutz.ccp.tm_provider.etl;
 
-import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -9,18 +8,15 @@ import org.apache.beam.runners.dataflow.options.DataflowPipelineOptions;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.io.FileIO;
 import org.apache.beam.sdk.io.FileIO.ReadableFile;
-import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
-import org.apache.beam.sdk.transforms.MapElements;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.View;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.PCollectionView;
-import org.apache.beam.sdk.values.TypeDescriptor;
 import org.apache.log4j.Logger;
 
 import com.google.datastore.v1.Entity;
@@ -32,6 +28,7 @@ import edu.cuanschutz.ccp.tm_provider.etl.fn.ProcessingStatusToEntityFn;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.cuanschutz.ccp.tm_provider.etl.util.SerializableFunction;
@@ -71,20 +68,10 @@ public class BiocToTextPipeline {
 
 		Pipeline p = Pipeline.create(options);
 
-		TypeDescriptor<KV<String, String>> td = new TypeDescriptor<KV<String, String>>() {
-			private static final long serialVersionUID = 1L;
-		};
-
 		// https://beam.apache.org/releases/javadoc/2.3.0/org/apache/beam/sdk/io/FileIO.html
 		String biocFilePattern = options.getBiocDir() + "/*.xml";
-		PCollection<KV<String, String>> fileIdAndContent = p.apply(FileIO.match().filepattern(biocFilePattern))
-				.apply(FileIO.readMatches()).apply(MapElements.into(td).via((ReadableFile f) -> {
-					try {
-						return KV.of(f.getMetadata().resourceId().toString(), f.readFullyAsUTF8String());
-					} catch (IOException e) {
-						throw new RuntimeException("Error while importing BioC XML files from file system.", e);
-					}
-				}));
+		PCollection<ReadableFile> biocFiles = p.apply(FileIO.match().filepattern(biocFilePattern))
+				.apply(FileIO.readMatches());
 
 		DocumentCriteria outputTextDocCriteria = new DocumentCriteria(DocumentType.TEXT, DocumentFormat.TEXT,
 				PIPELINE_KEY, pipelineVersion);
@@ -94,7 +81,11 @@ public class BiocToTextPipeline {
 		final PCollectionView<Set<String>> existingDocumentIds = PipelineMain
 				.catalogExistingDocuments(options.getProject(), options.getCollection(), options.getOverwrite(), p);
 
-		PCollectionTuple output = BiocToTextFn.process(fileIdAndContent, outputTextDocCriteria,
+		/*
+		 * each file is streamed through the BioC reader so that documents are output
+		 * as they are parsed instead of after the whole file has been read into memory
+		 */
+		PCollectionTuple output = BiocToTextFn.processFiles(biocFiles, outputTextDocCriteria,
 				outputAnnotationDocCriteria, timestamp, options.getCollection(), existingDocumentIds,
 				options.getOverwrite());
 
@@ -123,7 +114,7 @@ public class BiocToTextPipeline {
 				ParDo.of(new ProcessingStatusToEntityFn(collectionFn)));
 		PCollection<Entity> nonredundantStatusEntities = PipelineMain.deduplicateEntitiesByKey(statusEntities);
 		nonredundantStatusEntities.apply("status_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		PCollectionView<Map<String, Set<String>>> documentIdToCollections = PipelineMain
 				.getCollectionMappings(nonredundantStatusEntities).apply(View.<String, Set<String>>asMap());
@@ -138,7 +129,7 @@ public class BiocToTextPipeline {
 				.apply("plaintext->document_entity",
 						ParDo.of(new DocumentToEntityFn(outputTextDocCriteria, options.getCollection(), collectionFn,
 								documentIdToCollections)).withSideInputs(documentIdToCollections))
-				.apply("document_entity->datastore", DatastoreIO.v1().write().withProjectId(options.getProject()));
+				.apply("document_entity->datastore", DocumentStore.fromOptions(options, options.getProject()).write());
 
 		/*
 		 * store the serialized annotation document content in Cloud Datastore -
@@ -150,7 +141,7 @@ public class BiocToTextPipeline {
 				.apply("annotations->annot_entity",
 						ParDo.of(new DocumentToEntityFn(outputAnnotationDocCriteria, options.getCollection(),
 								collectionFn, documentIdToCollections)).withSideInputs(documentIdToCollections))
-				.apply("annot_entity->datastore", DatastoreIO.v1().write().withProjectId(options.getProject()));
+				.apply("annot_entity->datastore", DocumentStore.fromOptions(options, options.getProject()).write());
 
 		/*
 		 * store the failures for this pipeline in Cloud Datastore - deduplication is
@@ -160,7 +151,7 @@ public class BiocToTextPipeline {
 				ParDo.of(new EtlFailureToEntityFn()));
 		PCollection<Entity> nonredundantFailureEntities = PipelineMain.deduplicateEntitiesByKey(failureEntities);
 		nonredundantFailureEntities.apply("failure_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		p.run().waitUntilFinish();
 
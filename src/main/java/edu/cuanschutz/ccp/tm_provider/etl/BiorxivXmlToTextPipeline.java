@@ -4,7 +4,6 @@ import edu.cuanschutz.ccp.tm_provider.etl.fn.*;
 import org.apache.beam.runners.dataflow.options.DataflowPipelineOptions;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.io.FileIO;
-import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
@@ -17,6 +16,7 @@ import com.google.datastore.v1.Entity;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.cuanschutz.ccp.tm_provider.etl.util.Version;
@@ -90,7 +90,7 @@ public class BiorxivXmlToTextPipeline {
 
         // Save to DataStore
         uniqueStatusEntities
-                .apply("status_entity->datastore", DatastoreIO.v1().write().withProjectId(options.getProject()));
+                .apply("status_entity->datastore", DocumentStore.fromOptions(options, options.getProject()).write());
         //endregion
 
         //region Store the Section Annotation data in the Cloud DataStore
@@ -111,7 +111,7 @@ public class BiorxivXmlToTextPipeline {
                 .apply("section annotation -> annotation entity",
                         ParDo.of(new JatsDocumentToEntityFn(sectionCriteria, collectionsMap))
                                 .withSideInputs(collectionsMap))
-                .apply("section annotation entity -> datastore",  DatastoreIO.v1().write().withProjectId(options.getProject()));
+                .apply("section annotation entity -> datastore",  DocumentStore.fromOptions(options, options.getProject()).write());
         //endregion
 
         //region Store the Failure data in Cloud DataStore
@@ -119,7 +119,7 @@ public class BiorxivXmlToTextPipeline {
                 ParDo.of(new EtlFailureToEntityFn()));
         PCollection<Entity> nonredundantFailureEntities = PipelineMain.deduplicateEntitiesByKey(failureEntities);
         nonredundantFailureEntities.apply("failure_entity->datastore",
-                DatastoreIO.v1().write().withProjectId(options.getProject()));
+                DocumentStore.fromOptions(options, options.getProject()).write());
         //endregion
 
         p.run().waitUntilFinish();
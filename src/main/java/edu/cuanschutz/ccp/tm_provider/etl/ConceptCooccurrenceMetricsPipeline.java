@@ -2,10 +2,12 @@ package edu.cuanschutz.ccp.tm_provider.etl;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -14,13 +16,21 @@ import java.util.stream.StreamSupport;
 
 import org.apache.beam.runners.dataflow.options.DataflowPipelineOptions;
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.BigEndianLongCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
 import org.apache.beam.sdk.coders.DefaultCoder;
+import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.SetCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
 import org.apache.beam.sdk.io.Compression;
 import org.apache.beam.sdk.io.jdbc.JdbcIO;
 import org.apache.beam.sdk.io.jdbc.JdbcIO.DataSourceConfiguration;
+import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Combine;
 import org.apache.beam.sdk.transforms.Count;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.GroupByKey;
@@ -36,14 +46,15 @@ import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.TupleTagList;
 
-import com.spotify.scio.transforms.RateLimiterDoFn;
-
 import edu.cuanschutz.ccp.tm_provider.etl.fn.ConceptCooccurrenceCountsFn;
 import edu.cuanschutz.ccp.tm_provider.etl.fn.ConceptCooccurrenceCountsFn.ConceptPair;
 import edu.cuanschutz.ccp.tm_provider.etl.fn.ConceptCooccurrenceCountsFn.CooccurLevel;
+import edu.cuanschutz.ccp.tm_provider.etl.fn.JdbcBatchUpsertFn;
 import edu.cuanschutz.ccp.tm_provider.etl.fn.PCollectionUtil;
 import edu.cuanschutz.ccp.tm_provider.etl.fn.PCollectionUtil.Delimiter;
+import edu.cuanschutz.ccp.tm_provider.etl.util.AncestorIndex;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ConceptCooccurrenceMetrics;
+import edu.cuanschutz.ccp.tm_provider.etl.util.ConceptIdDictionary;
 import lombok.Data;
 
 /**
@@ -66,6 +77,14 @@ public class ConceptCooccurrenceMetricsPipeline {
 	public static TupleTag<KV<String, String>> PAIR_KEY_TO_DOC_ID_TAG = new TupleTag<KV<String, String>>() {
 	};
 
+	@SuppressWarnings("serial")
+	public static TupleTag<KV<Long, String>> COMPACT_PAIR_PUBLICATIONS_TAG = new TupleTag<KV<Long, String>>() {
+	};
+
+	@SuppressWarnings("serial")
+	public static TupleTag<KV<Long, String>> COMPACT_PAIR_KEY_TO_DOC_ID_TAG = new TupleTag<KV<Long, String>>() {
+	};
+
 //	@SuppressWarnings("serial")
 //	public static TupleTag<CooccurrenceScores> SCORES_TAG = new TupleTag<CooccurrenceScores>() {
 //	};
@@ -102,6 +121,11 @@ public class ConceptCooccurrenceMetricsPipeline {
 
 		void setAncestorMapFileSetDelimiter(Delimiter delimiter);
 
+		@Description("path to an ancestor index file (see OntologyClassAncestorMapFactory.createIndexFile()). If specified, the index is memory-mapped by each worker and used in place of the ancestor map file.")
+		String getAncestorIndexFilePath();
+
+		void setAncestorIndexFilePath(String path);
+
 		@Description("The name of the database")
 		String getDatabaseName();
 
@@ -132,6 +156,24 @@ public class ConceptCooccurrenceMetricsPipeline {
 
 		void setConceptPrefixesToInclude(String value);
 
+		@Description("the number of rows inserted by each multi-row INSERT statement when loading the database")
+		@Default.Integer(1000)
+		int getDbBatchSize();
+
+		void setDbBatchSize(int value);
+
+		@Description("the maximum number of concurrent INSERT statements per table per worker. The concurrency adapts to observed statement latency and errors up to this maximum.")
+		@Default.Integer(8)
+		int getDbMaxConcurrency();
+
+		void setDbMaxConcurrency(int value);
+
+		@Description("if true, concept IDs are mapped to integer identifiers and concept pairs are shuffled as packed longs instead of CURIE strings. This reduces the size of the concept pair shuffle considerably.")
+		@Default.Boolean(false)
+		boolean getCompactPairKeys();
+
+		void setCompactPairKeys(boolean value);
+
 	}
 
 	public static void main(String[] args) {
@@ -154,10 +196,13 @@ public class ConceptCooccurrenceMetricsPipeline {
 				jdbcUrl);
 
 		// enhance each set of concept IDs by adding all ancestor IDs.
-		// load a map from concept IDs to ancestor concept IDs
-		final PCollectionView<Map<String, Set<String>>> ancestorMapView = PCollectionUtil.fromKeyToSetTwoColumnFiles(
-				"ancestor map", p, options.getAncestorMapFilePath(), options.getAncestorMapFileDelimiter(),
-				options.getAncestorMapFileSetDelimiter(), Compression.GZIP).apply(View.<String, Set<String>>asMap());
+		// load a map from concept IDs to ancestor concept IDs unless an ancestor index
+		// file has been specified, in which case workers memory-map the index instead
+		final String ancestorIndexFilePath = options.getAncestorIndexFilePath();
+		final PCollectionView<Map<String, Set<String>>> ancestorMapView = (ancestorIndexFilePath != null) ? null
+				: PCollectionUtil.fromKeyToSetTwoColumnFiles("ancestor map", p, options.getAncestorMapFilePath(),
+						options.getAncestorMapFileDelimiter(), options.getAncestorMapFileSetDelimiter(),
+						Compression.GZIP).apply(View.<String, Set<String>>asMap());
 
 		Set<CooccurLevel> cooccurLevelsToProcess = new HashSet<CooccurLevel>();
 		for (String l : options.getCooccurLevelsToProcess().split("\\|")) {
@@ -183,7 +228,7 @@ public class ConceptCooccurrenceMetricsPipeline {
 
 			// then supplement each concept id set with all ancestor ids
 			PCollection<KV<String, Set<ConceptId>>> textIdToConceptIdWithAncestorsCollection = addAncestorConceptIds(p,
-					level, textIdToConceptIdCollection, options.getAddAncestors(), ancestorMapView);
+					level, textIdToConceptIdCollection, options.getAddAncestors(), ancestorMapView, ancestorIndexFilePath);
 
 			// create a mapping from each concept ID to the number of documents in which it
 			// was observed, then convert it into a View
@@ -204,20 +249,36 @@ public class ConceptCooccurrenceMetricsPipeline {
 
 			// create a mapping from concept pairs (an identifier representing the pair) to
 			// the document IDs in which the pair was observed
-			PCollectionTuple pairsAndPubs = computeConceptPairs(p, level, textIdToConceptIdWithAncestorsCollection,
-					ancestorMapView, conceptPrefixesToInclude);
-
-			PCollection<KV<String, CooccurrencePublication>> pairKeyToPublications = pairsAndPubs
-					.get(PAIR_PUBLICATIONS_TAG);
-			PCollection<KV<String, String>> conceptPairIdToTextId = pairsAndPubs.get(PAIR_KEY_TO_DOC_ID_TAG);
-
-			PCollection<CooccurrencePublication> publications = limitPublicationsByPairId(level, pairKeyToPublications);
-
-			PCollection<KV<String, Set<String>>> pairToDocIds = groupByPairId(level, conceptPairIdToTextId);
+			PCollection<CooccurrencePublication> publications;
+			PCollection<KV<String, Long>> pairToCount;
+			if (options.getCompactPairKeys()) {
+				// shuffle concept pairs as packed integer identifiers; they are converted back
+				// to concept IDs once grouped
+				final PCollectionView<ConceptIdDictionary> dictionaryView = buildConceptIdDictionary(level,
+						conceptIdToCounts);
+				PCollectionTuple pairsAndPubs = computeCompactConceptPairs(p, level,
+						textIdToConceptIdWithAncestorsCollection, ancestorMapView, ancestorIndexFilePath, dictionaryView,
+						conceptPrefixesToInclude);
+
+				publications = limitPublicationsByCompactPairId(level,
+						pairsAndPubs.get(COMPACT_PAIR_PUBLICATIONS_TAG), dictionaryView);
+				pairToCount = decodeCompactPairIds(level,
+						countCompactPairs(level, pairsAndPubs.get(COMPACT_PAIR_KEY_TO_DOC_ID_TAG)), dictionaryView);
+			} else {
+				PCollectionTuple pairsAndPubs = computeConceptPairs(p, level, textIdToConceptIdWithAncestorsCollection,
+						ancestorMapView, ancestorIndexFilePath, conceptPrefixesToInclude);
+
+				PCollection<KV<String, CooccurrencePublication>> pairKeyToPublications = pairsAndPubs
+						.get(PAIR_PUBLICATIONS_TAG);
+				PCollection<KV<String, String>> conceptPairIdToTextId = pairsAndPubs.get(PAIR_KEY_TO_DOC_ID_TAG);
+
+				publications = limitPublicationsByPairId(level, pairKeyToPublications);
+				pairToCount = countPairs(level, conceptPairIdToTextId);
+			}
 
 			/* compute the scores for all concept cooccurrence metrics */
 			PCollection<CooccurrenceScores> scores = getConceptIdPairToCooccurrenceMetrics(level, singletonCountMap,
-					totalConceptCount, totalDocumentCount, pairToDocIds);
+					totalConceptCount, totalDocumentCount, pairToCount);
 
 			// IDF should be computed with ancestors. Because using ancestors makes
 			// computing the cooccurrence pairs challenging due to scaling issues, IDF
@@ -266,7 +327,7 @@ public class ConceptCooccurrenceMetricsPipeline {
 			/* ---- INSERT INTO DATABASE BELOW ---- */
 
 //			final double recordsPerSecond = 3.0/200.0; 
-			final double recordsPerSecond = 14.5;
+//			final double recordsPerSecond = 14.5;
 
 //			/* Insert into concept_idf table */
 //			final PCollection<Void> afterConceptIdf = conceptIdToIdf
@@ -294,94 +355,41 @@ public class ConceptCooccurrenceMetricsPipeline {
 //									.withResults());
 
 			/* Insert into cooccurrence table */
+			final int batchSize = options.getDbBatchSize();
+			final int maxConcurrency = options.getDbMaxConcurrency();
 			PCollection<Void> afterCooccurrenceLoad = scores
 //					.apply("waiton concept_idf - " + level.name().toLowerCase(), Wait.on(afterConceptIdf))
-					.apply(ParDo.of(new RateLimiterDoFn<>(recordsPerSecond)))
-					.apply("insert cooccurrence - " + level.name().toLowerCase(), JdbcIO.<CooccurrenceScores>write()
-							.withDataSourceConfiguration(dbConfig)
-							.withStatement("INSERT INTO cooccurrence (cooccurrence_id,entity1_curie,entity2_curie) \n"
-							// @formatter:off
-							+ "values(?,?,?) ON DUPLICATE KEY UPDATE\n" 
-							+ "    cooccurrence_id = VALUES(cooccurrence_id),\n"
-							+ "    entity1_curie = VALUES(entity1_curie),\n" 
-							+ "    entity2_curie = VALUES(entity2_curie)")
-							// @formatter:on
-							.withPreparedStatementSetter(new JdbcIO.PreparedStatementSetter<CooccurrenceScores>() {
-								private static final long serialVersionUID = 1L;
-
-								public void setParameters(CooccurrenceScores scores, PreparedStatement query)
-										throws SQLException {
-									query.setString(1, scores.getCooccurrenceId());
-									query.setString(2, scores.getPair().getConceptId1());
-									query.setString(3, scores.getPair().getConceptId2());
-								}
-							}).withResults());
+					.apply("insert cooccurrence - " + level.name().toLowerCase(),
+							ParDo.of(new JdbcBatchUpsertFn<CooccurrenceScores>(dbConfig, "cooccurrence",
+									new String[] { "cooccurrence_id", "entity1_curie", "entity2_curie" },
+									scr -> new Object[] { scr.getCooccurrenceId(), scr.getPair().getConceptId1(),
+											scr.getPair().getConceptId2() },
+									batchSize, maxConcurrency, JdbcBatchUpsertFn.DEFAULT_LATENCY_THRESHOLD_MILLIS)));
 
 			/* Insert into cooccurrence_scores table */
+			final String levelStr = level.name().toLowerCase();
 			PCollection<Void> afterCooccurrenceScoresLoad = scores
 					.apply("waiton insert cooccurrence - " + level.name().toLowerCase(), Wait.on(afterCooccurrenceLoad))
-					.apply(ParDo.of(new RateLimiterDoFn<>(recordsPerSecond)))
-					.apply("insert cooccurrence_scores - " + level.name().toLowerCase(), JdbcIO
-							.<CooccurrenceScores>write().withDataSourceConfiguration(dbConfig).withBatchSize(5000)
-							.withStatement(
-									"INSERT INTO cooccurrence_scores (cooccurrence_id,level,concept1_count,concept2_count,pair_count,ngd,pmi,pmi_norm,pmi_norm_max,mutual_dependence,lfmd) \n"
-									// @formatter:off
-							+ "values(?,?,?,?,?,?,?,?,?,?,?) ON DUPLICATE KEY UPDATE\n" 
-							+ "    cooccurrence_id = VALUES(cooccurrence_id),\n"
-							+ "    level = VALUES(level),\n"
-							+ "    concept1_count = VALUES(concept1_count),\n" 
-							+ "    concept2_count = VALUES(concept2_count),\n"
-							+ "    pair_count = VALUES(pair_count),\n"
-							+ "    ngd = VALUES(ngd),\n"
-							+ "    pmi = VALUES(pmi),\n"
-							+ "    pmi_norm = VALUES(pmi_norm),\n"
-							+ "    pmi_norm_max = VALUES(pmi_norm_max),\n"
-							+ "    mutual_dependence = VALUES(mutual_dependence),\n"
-							+ "    lfmd = VALUES(lfmd)")
-							// @formatter:on
-							.withPreparedStatementSetter(new JdbcIO.PreparedStatementSetter<CooccurrenceScores>() {
-								private static final long serialVersionUID = 1L;
-
-								public void setParameters(CooccurrenceScores scores, PreparedStatement query)
-										throws SQLException {
-									query.setString(1, scores.getCooccurrenceId());
-									query.setString(2, level.name().toLowerCase());
-									query.setLong(3, scores.getConceptCount1());
-									query.setLong(4, scores.getConceptCount2());
-									query.setLong(5, scores.getPairCount());
-									query.setDouble(6, scores.getNgd());
-									query.setDouble(7, scores.getPmi());
-									query.setDouble(8, scores.getNpmi());
-									query.setDouble(9, scores.getNpmim());
-									query.setDouble(10, scores.getMd());
-									query.setDouble(11, scores.getLfmd());
-								}
-							}).withResults());
+					.apply("insert cooccurrence_scores - " + level.name().toLowerCase(),
+							ParDo.of(new JdbcBatchUpsertFn<CooccurrenceScores>(dbConfig, "cooccurrence_scores",
+									new String[] { "cooccurrence_id", "level", "concept1_count", "concept2_count",
+											"pair_count", "ngd", "pmi", "pmi_norm", "pmi_norm_max", "mutual_dependence",
+											"lfmd" },
+									scr -> new Object[] { scr.getCooccurrenceId(), levelStr, scr.getConceptCount1(),
+											scr.getConceptCount2(), scr.getPairCount(), scr.getNgd(), scr.getPmi(),
+											scr.getNpmi(), scr.getNpmim(), scr.getMd(), scr.getLfmd() },
+									batchSize, maxConcurrency, JdbcBatchUpsertFn.DEFAULT_LATENCY_THRESHOLD_MILLIS)));
 
 			/* Insert into cooccurrence_publication table */
 			publications
 					.apply("waiton insert cooccurrence scores - " + level.name().toLowerCase(),
 							Wait.on(afterCooccurrenceScoresLoad))
-					.apply(ParDo.of(new RateLimiterDoFn<>(recordsPerSecond)))
-					.apply("insert cooccurrence_publication - " + level.name().toLowerCase(), JdbcIO
-							.<CooccurrencePublication>write().withDataSourceConfiguration(dbConfig).withBatchSize(5000)
-							.withStatement("INSERT INTO cooccurrence_publication (cooccurrence_id,level,document_id) \n"
-							// @formatter:off
-							+ "values(?,?,?) ON DUPLICATE KEY UPDATE\n" 
-							+ "    cooccurrence_id = VALUES(cooccurrence_id),\n"
-							+ "    level = VALUES(level),\n" 
-							+ "    document_id = VALUES(document_id)")
-							// @formatter:on
-							.withPreparedStatementSetter(new JdbcIO.PreparedStatementSetter<CooccurrencePublication>() {
-								private static final long serialVersionUID = 1L;
-
-								public void setParameters(CooccurrencePublication pub, PreparedStatement query)
-										throws SQLException {
-									query.setString(1, pub.getCooccurrenceId());
-									query.setString(2, level.name().toLowerCase());
-									query.setString(3, pub.getDocumentId());
-								}
-							}));
+					.apply("insert cooccurrence_publication - " + level.name().toLowerCase(),
+							ParDo.of(new JdbcBatchUpsertFn<CooccurrencePublication>(dbConfig,
+									"cooccurrence_publication",
+									new String[] { "cooccurrence_id", "level", "document_id" },
+									pub -> new Object[] { pub.getCooccurrenceId(), levelStr, pub.getDocumentId() },
+									batchSize, maxConcurrency, JdbcBatchUpsertFn.DEFAULT_LATENCY_THRESHOLD_MILLIS)));
 		}
 
 		p.run().waitUntilFinish();
@@ -389,7 +397,9 @@ public class ConceptCooccurrenceMetricsPipeline {
 
 	/**
 	 * limits the number of publication IDs that get stored for each cooccurrence
-	 * pair to PUBLICATION_STORAGE_LIMIT
+	 * pair to PUBLICATION_STORAGE_LIMIT. The sample is collected using a combiner
+	 * so that at most PUBLICATION_STORAGE_LIMIT publications per pair are
+	 * shuffled from each worker.
 	 * 
 	 * @param level
 	 * @param pairIdToPublication
@@ -397,28 +407,18 @@ public class ConceptCooccurrenceMetricsPipeline {
 	 */
 	protected static PCollection<CooccurrencePublication> limitPublicationsByPairId(final CooccurLevel level,
 			PCollection<KV<String, CooccurrencePublication>> pairIdToPublication) {
-		PCollection<KV<String, Iterable<CooccurrencePublication>>> col = pairIdToPublication.apply(
-				"group-pubs-by-pair - " + level.name().toLowerCase(),
-				GroupByKey.<String, CooccurrencePublication>create());
+		PCollection<KV<String, Set<CooccurrencePublication>>> col = pairIdToPublication.apply(
+				"sample-pubs-by-pair - " + level.name().toLowerCase(),
+				Combine.<String, CooccurrencePublication, Set<CooccurrencePublication>>perKey(
+						new BoundedSampleFn<CooccurrencePublication>(PUBLICATION_STORAGE_LIMIT)));
 
 		return col.apply("limit-stored-pubs - " + level.name().toLowerCase(),
-				ParDo.of(new DoFn<KV<String, Iterable<CooccurrencePublication>>, CooccurrencePublication>() {
+				ParDo.of(new DoFn<KV<String, Set<CooccurrencePublication>>, CooccurrencePublication>() {
 					private static final long serialVersionUID = 1L;
 
 					@ProcessElement
 					public void processElement(ProcessContext context) {
-						KV<String, Iterable<CooccurrencePublication>> pairIdToPublications = context.element();
-						Iterable<CooccurrencePublication> pubs = pairIdToPublications.getValue();
-
-						Set<CooccurrencePublication> pubSet = new HashSet<CooccurrencePublication>();
-						for (CooccurrencePublication pub : pubs) {
-							pubSet.add(pub);
-							if (pubSet.size() > PUBLICATION_STORAGE_LIMIT) {
-								break;
-							}
-						}
-
-						for (CooccurrencePublication pub : pubSet) {
+						for (CooccurrencePublication pub : context.element().getValue()) {
 							context.output(pub);
 						}
 					}
@@ -426,37 +426,50 @@ public class ConceptCooccurrenceMetricsPipeline {
 				}));
 	}
 
-	protected static PCollection<KV<String, Set<String>>> groupByPairId(final CooccurLevel level,
+	/**
+	 * Counts the number of text IDs in which each concept pair was observed. Each
+	 * text ID is unique in the input to
+	 * {@link #computeConceptPairs(Pipeline, CooccurLevel, PCollection, PCollectionView, Set)}
+	 * (see {@link PCollectionUtil#fromKeyToSetTwoColumnFiles}) and each pair is
+	 * emitted at most once per text ID, so counting the elements for each pair is
+	 * equivalent to counting unique text IDs. Counting uses a combiner so partial
+	 * counts are computed prior to the shuffle.
+	 * 
+	 * @param level
+	 * @param conceptPairIdToTextId
+	 * @return a mapping from concept pair key to the number of text IDs in which
+	 *         the pair was observed
+	 */
+	protected static PCollection<KV<String, Long>> countPairs(final CooccurLevel level,
 			PCollection<KV<String, String>> conceptPairIdToTextId) {
-		PCollection<KV<String, Iterable<String>>> col = conceptPairIdToTextId
-				.apply("group-by-pair - " + level.name().toLowerCase(), GroupByKey.<String, String>create());
-
-		PCollection<KV<String, Set<String>>> pairToDocIds = col.apply(
-				"combine-docid-by-pair - " + level.name().toLowerCase(),
-				ParDo.of(new DoFn<KV<String, Iterable<String>>, KV<String, Set<String>>>() {
-					private static final long serialVersionUID = 1L;
-
-					@ProcessElement
-					public void processElement(ProcessContext context) {
-						KV<String, Iterable<String>> pairIdToDocIds = context.element();
-						String pairId = pairIdToDocIds.getKey();
-						Iterable<String> docIds = pairIdToDocIds.getValue();
-
-						Set<String> docIdSet = new HashSet<String>();
-						for (String docId : docIds) {
-							docIdSet.add(docId);
-						}
-
-						context.output(KV.of(pairId, docIdSet));
-					}
-
-				}));
-		return pairToDocIds;
+		return conceptPairIdToTextId.apply("count-by-pair - " + level.name().toLowerCase(),
+				Count.<String, String>perKey());
 	}
 
 	protected static PCollectionTuple computeConceptPairs(Pipeline p, CooccurLevel level,
 			PCollection<KV<String, Set<ConceptId>>> textIdToConceptIdWithAncestorsCollection,
 			PCollectionView<Map<String, Set<String>>> ancestorMapView, Set<String> conceptPrefixesToInclude) {
+		return computeConceptPairs(p, level, textIdToConceptIdWithAncestorsCollection, ancestorMapView, null,
+				conceptPrefixesToInclude);
+	}
+
+	/**
+	 * @param p
+	 * @param level
+	 * @param textIdToConceptIdWithAncestorsCollection
+	 * @param ancestorMapView                          ignored if
+	 *                                                 ancestorIndexFilePath is
+	 *                                                 specified
+	 * @param ancestorIndexFilePath                    path to an
+	 *                                                 {@link AncestorIndex} file;
+	 *                                                 may be null
+	 * @param conceptPrefixesToInclude
+	 * @return
+	 */
+	protected static PCollectionTuple computeConceptPairs(Pipeline p, CooccurLevel level,
+			PCollection<KV<String, Set<ConceptId>>> textIdToConceptIdWithAncestorsCollection,
+			PCollectionView<Map<String, Set<String>>> ancestorMapView, String ancestorIndexFilePath,
+			Set<String> conceptPrefixesToInclude) {
 
 //		PCollection<KV<String, String>> conceptPairIdToTextId = 
 
@@ -464,6 +477,15 @@ public class ConceptCooccurrenceMetricsPipeline {
 				ParDo.of(new DoFn<KV<String, Set<ConceptId>>, KV<String, String>>() {
 					private static final long serialVersionUID = 1L;
 
+					private transient AncestorIndex ancestorIndex;
+
+					@Setup
+					public void setup() {
+						if (ancestorIndexFilePath != null) {
+							ancestorIndex = AncestorIndex.getSharedInstance(ancestorIndexFilePath);
+						}
+					}
+
 					@ProcessElement
 					public void processElement(ProcessContext context) {
 						KV<String, Set<ConceptId>> documentIdToConceptIds = context.element();
@@ -473,7 +495,17 @@ public class ConceptCooccurrenceMetricsPipeline {
 						Set<ConceptPair> pairs = new HashSet<ConceptPair>();
 						if (conceptIds.size() > 1) {
 
-							Map<String, Set<String>> ancestorMap = context.sideInput(ancestorMapView);
+							Map<String, Set<String>> ancestorMap = (ancestorIndex == null)
+									? context.sideInput(ancestorMapView)
+									: null;
+							// look up the index of each concept once rather than once per pair
+							Map<String, Integer> conceptIdToAncestorIndex = new HashMap<String, Integer>();
+							if (ancestorIndex != null) {
+								for (ConceptId conceptId : conceptIds) {
+									conceptIdToAncestorIndex.put(conceptId.getId(),
+											ancestorIndex.getIndex(conceptId.getId()));
+								}
+							}
 
 							// exclude if the concept identifiers are the same or if one of the concepts is
 							// an ancestor of the other; if there is an ancestor relationship between a pair
@@ -484,8 +516,12 @@ public class ConceptCooccurrenceMetricsPipeline {
 								for (ConceptId conceptId2 : conceptIds) {
 									if (!(excludeConceptIdByPrefix(conceptId1, conceptPrefixesToInclude)
 											|| excludeConceptIdByPrefix(conceptId2, conceptPrefixesToInclude))) {
-										if (!conceptId1.equals(conceptId2)
-												&& !areAncestors(conceptId1, conceptId2, ancestorMap)) {
+										boolean areAncestors = (ancestorIndex == null)
+												? areAncestors(conceptId1, conceptId2, ancestorMap)
+												: ancestorIndex.areAncestors(
+														conceptIdToAncestorIndex.get(conceptId1.getId()),
+														conceptIdToAncestorIndex.get(conceptId2.getId()));
+										if (!conceptId1.equals(conceptId2) && !areAncestors) {
 											ConceptPair pair = new ConceptPair(conceptId1.getId(), conceptId2.getId());
 
 											// only link the pair of concepts that originally appeared in the document
@@ -523,49 +559,381 @@ public class ConceptCooccurrenceMetricsPipeline {
 						}
 					}
 
-					private boolean excludeConceptIdByPrefix(ConceptId conceptId,
-							Set<String> conceptPrefixesToInclude) {
+				}).withOutputTags(PAIR_KEY_TO_DOC_ID_TAG, TupleTagList.of(PAIR_PUBLICATIONS_TAG))
+						.withSideInputs(nonNullViews(ancestorMapView)));
+
+	}
+
+	/**
+	 * Compact version of
+	 * {@link #computeConceptPairs(Pipeline, CooccurLevel, PCollection, PCollectionView, Set)}.
+	 * Concept IDs are mapped to their dense integer identifiers and each pair is
+	 * emitted (once, with the lower identifier first) as a packed long. Concept
+	 * IDs that are not in the dictionary are ignored.
+	 * 
+	 * @param p
+	 * @param level
+	 * @param textIdToConceptIdWithAncestorsCollection
+	 * @param ancestorMapView
+	 * @param dictionaryView
+	 * @param conceptPrefixesToInclude
+	 * @return a {@link PCollectionTuple} containing a mapping from packed pair to
+	 *         text ID ({@link #COMPACT_PAIR_KEY_TO_DOC_ID_TAG}) and a mapping from
+	 *         packed pair to publication ID
+	 *         ({@link #COMPACT_PAIR_PUBLICATIONS_TAG})
+	 */
+	protected static PCollectionTuple computeCompactConceptPairs(Pipeline p, CooccurLevel level,
+			PCollection<KV<String, Set<ConceptId>>> textIdToConceptIdWithAncestorsCollection,
+			PCollectionView<Map<String, Set<String>>> ancestorMapView,
+			PCollectionView<ConceptIdDictionary> dictionaryView, Set<String> conceptPrefixesToInclude) {
+		return computeCompactConceptPairs(p, level, textIdToConceptIdWithAncestorsCollection, ancestorMapView, null,
+				dictionaryView, conceptPrefixesToInclude);
+	}
+
+	/**
+	 * @param p
+	 * @param level
+	 * @param textIdToConceptIdWithAncestorsCollection
+	 * @param ancestorMapView                          ignored if
+	 *                                                 ancestorIndexFilePath is
+	 *                                                 specified
+	 * @param ancestorIndexFilePath                    path to an
+	 *                                                 {@link AncestorIndex} file;
+	 *                                                 may be null
+	 * @param dictionaryView
+	 * @param conceptPrefixesToInclude
+	 * @return
+	 */
+	protected static PCollectionTuple computeCompactConceptPairs(Pipeline p, CooccurLevel level,
+			PCollection<KV<String, Set<ConceptId>>> textIdToConceptIdWithAncestorsCollection,
+			PCollectionView<Map<String, Set<String>>> ancestorMapView, String ancestorIndexFilePath,
+			PCollectionView<ConceptIdDictionary> dictionaryView, Set<String> conceptPrefixesToInclude) {
+
+		return textIdToConceptIdWithAncestorsCollection.apply("pair compact concepts - " + level.name().toLowerCase(),
+				ParDo.of(new DoFn<KV<String, Set<ConceptId>>, KV<Long, String>>() {
+					private static final long serialVersionUID = 1L;
+
+					private transient AncestorIndex ancestorIndex;
+
+					@Setup
+					public void setup() {
+						if (ancestorIndexFilePath != null) {
+							ancestorIndex = AncestorIndex.getSharedInstance(ancestorIndexFilePath);
+						}
+					}
+
+					@ProcessElement
+					public void processElement(ProcessContext context) {
+						KV<String, Set<ConceptId>> documentIdToConceptIds = context.element();
+						String documentId = documentIdToConceptIds.getKey();
+						Set<ConceptId> conceptIds = documentIdToConceptIds.getValue();
 
-						// if the prefix list is empty, then include all prefixes
-						if (conceptPrefixesToInclude == null || conceptPrefixesToInclude.isEmpty()) {
-							return false;
+						if (conceptIds.size() < 2) {
+							return;
 						}
 
-						if (conceptPrefixesToInclude != null) {
-							for (String prefix : conceptPrefixesToInclude) {
-								if (conceptId.getId().startsWith(prefix)) {
-									return false;
+						ConceptIdDictionary dictionary = context.sideInput(dictionaryView);
+						Map<String, Set<String>> ancestorMap = (ancestorIndex == null) ? context.sideInput(ancestorMapView)
+								: null;
+
+						/*
+						 * Encode each concept as (index << 1 | isOriginal) and sort so that pairs can
+						 * be emitted with the lower index first. A concept may be present both as an
+						 * original concept and as the ancestor of another concept; in that case it is
+						 * treated as an original concept.
+						 */
+						long[] encoded = new long[conceptIds.size()];
+						int count = 0;
+						for (ConceptId conceptId : conceptIds) {
+							if (!excludeConceptIdByPrefix(conceptId, conceptPrefixesToInclude)) {
+								int index = dictionary.getIndex(conceptId.getId());
+								if (index >= 0) {
+									encoded[count++] = ((long) index << 1) | (conceptId.isOriginalConcept() ? 1 : 0);
 								}
 							}
 						}
-						return true;
-					}
+						Arrays.sort(encoded, 0, count);
+
+						int[] indexes = new int[count];
+						boolean[] isOriginal = new boolean[count];
+						int uniqueCount = 0;
+						for (int i = 0; i < count; i++) {
+							int index = (int) (encoded[i] >>> 1);
+							boolean original = (encoded[i] & 1) == 1;
+							if (uniqueCount > 0 && indexes[uniqueCount - 1] == index) {
+								isOriginal[uniqueCount - 1] |= original;
+							} else {
+								indexes[uniqueCount] = index;
+								isOriginal[uniqueCount++] = original;
+							}
+						}
+
+						int[] ancestorIndexes = null;
+						if (ancestorIndex != null) {
+							ancestorIndexes = new int[uniqueCount];
+							for (int i = 0; i < uniqueCount; i++) {
+								ancestorIndexes[i] = ancestorIndex.getIndex(dictionary.getConceptId(indexes[i]));
+							}
+						}
 
-					/**
-					 * @param conceptId1
-					 * @param conceptId2
-					 * @param ancestorMap
-					 * @return true if one of the input concept IDs is the ancestor of the other
-					 */
-					private boolean areAncestors(ConceptId conceptId1, ConceptId conceptId2,
-							Map<String, Set<String>> ancestorMap) {
-
-						Set<String> concept1Ancestors = ancestorMap.get(conceptId1.getId());
-						if (concept1Ancestors != null && concept1Ancestors.contains(conceptId2.getId())) {
-							return true;
+						String docIdToStore = getDocumentIdToStore(documentId);
+						// ensure that the document ID will fit in the database column
+						boolean storePublication = docIdToStore.length() < 16;
+						if (!storePublication) {
+							LOGGER.log(Level.WARNING, "Encountered document ID too long to store: " + docIdToStore);
 						}
 
-						Set<String> concept2Ancestors = ancestorMap.get(conceptId2.getId());
-						if (concept2Ancestors != null && concept2Ancestors.contains(conceptId1.getId())) {
-							return true;
+						for (int i = 0; i < uniqueCount; i++) {
+							ConceptId conceptId1 = new ConceptId(dictionary.getConceptId(indexes[i]), isOriginal[i]);
+							for (int j = i + 1; j < uniqueCount; j++) {
+								ConceptId conceptId2 = new ConceptId(dictionary.getConceptId(indexes[j]),
+										isOriginal[j]);
+								// exclude if one of the concepts is an ancestor of the other
+								boolean areAncestors = (ancestorIndex == null)
+										? areAncestors(conceptId1, conceptId2, ancestorMap)
+										: ancestorIndex.areAncestors(ancestorIndexes[i], ancestorIndexes[j]);
+								if (!areAncestors) {
+									long pair = ConceptIdDictionary.packPair(indexes[i], indexes[j]);
+									context.output(COMPACT_PAIR_KEY_TO_DOC_ID_TAG, KV.of(pair, documentId));
+									// only link the pair of concepts that originally appeared in the document
+									// with the document ID
+									if (storePublication && isOriginal[i] && isOriginal[j]) {
+										context.output(COMPACT_PAIR_PUBLICATIONS_TAG, KV.of(pair, docIdToStore));
+									}
+								}
+							}
+						}
+					}
+
+				}).withOutputTags(COMPACT_PAIR_KEY_TO_DOC_ID_TAG, TupleTagList.of(COMPACT_PAIR_PUBLICATIONS_TAG))
+						.withSideInputs(nonNullViews(ancestorMapView, dictionaryView)));
+
+	}
+
+	/**
+	 * @param level
+	 * @param conceptIdToCounts
+	 * @return a view of a dictionary that maps all observed concept IDs to dense
+	 *         integer identifiers
+	 */
+	protected static PCollectionView<ConceptIdDictionary> buildConceptIdDictionary(CooccurLevel level,
+			PCollection<KV<String, Long>> conceptIdToCounts) {
+		return conceptIdToCounts.apply("concept ids - " + level.name().toLowerCase(), Keys.<String>create()).apply(
+				"concept id dictionary - " + level.name().toLowerCase(),
+				Combine.globally(new ConceptIdDictionaryFn()).asSingletonView());
+	}
+
+	/**
+	 * Assembles all unique concept IDs into a {@link ConceptIdDictionary}
+	 */
+	protected static class ConceptIdDictionaryFn extends Combine.CombineFn<String, Set<String>, ConceptIdDictionary> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Set<String> createAccumulator() {
+			return new HashSet<>();
+		}
+
+		@Override
+		public Set<String> addInput(Set<String> accumulator, String input) {
+			accumulator.add(input);
+			return accumulator;
+		}
+
+		@Override
+		public Set<String> mergeAccumulators(Iterable<Set<String>> accumulators) {
+			Set<String> all = new HashSet<>();
+			for (Set<String> part : accumulators) {
+				all.addAll(part);
+			}
+			return all;
+		}
+
+		@Override
+		public ConceptIdDictionary extractOutput(Set<String> accumulator) {
+			return new ConceptIdDictionary(accumulator);
+		}
+	}
+
+	/**
+	 * Converts the packed pair keys back into the String-based reproducible pair
+	 * keys used by the remainder of the pipeline
+	 * 
+	 * @param level
+	 * @param compactPairToCount
+	 * @param dictionaryView
+	 * @return
+	 */
+	protected static PCollection<KV<String, Long>> decodeCompactPairIds(final CooccurLevel level,
+			PCollection<KV<Long, Long>> compactPairToCount, PCollectionView<ConceptIdDictionary> dictionaryView) {
+		return compactPairToCount.apply("decode pair ids - " + level.name().toLowerCase(),
+				ParDo.of(new DoFn<KV<Long, Long>, KV<String, Long>>() {
+					private static final long serialVersionUID = 1L;
+
+					@ProcessElement
+					public void processElement(ProcessContext context) {
+						ConceptIdDictionary dictionary = context.sideInput(dictionaryView);
+						KV<Long, Long> element = context.element();
+						ConceptPair pair = decodePair(element.getKey(), dictionary);
+						context.output(KV.of(pair.toReproducibleKey(), element.getValue()));
+					}
+				}).withSideInputs(dictionaryView));
+	}
+
+	protected static ConceptPair decodePair(long packedPair, ConceptIdDictionary dictionary) {
+		return new ConceptPair(dictionary.getConceptId(ConceptIdDictionary.getFirstIndex(packedPair)),
+				dictionary.getConceptId(ConceptIdDictionary.getSecondIndex(packedPair)));
+	}
+
+	/**
+	 * Compact version of {@link #countPairs(CooccurLevel, PCollection)}
+	 * 
+	 * @param level
+	 * @param compactPairIdToTextId
+	 * @return
+	 */
+	protected static PCollection<KV<Long, Long>> countCompactPairs(final CooccurLevel level,
+			PCollection<KV<Long, String>> compactPairIdToTextId) {
+		return compactPairIdToTextId.setCoder(KvCoder.of(BigEndianLongCoder.of(), StringUtf8Coder.of()))
+				.apply("count-by-compact-pair - " + level.name().toLowerCase(), Count.<Long, String>perKey());
+	}
+
+	/**
+	 * Compact version of {@link #limitPublicationsByPairId(CooccurLevel, PCollection)}.
+	 * The packed pair keys are only decoded after the publications have been
+	 * limited.
+	 * 
+	 * @param level
+	 * @param compactPairIdToPublicationId
+	 * @param dictionaryView
+	 * @return
+	 */
+	protected static PCollection<CooccurrencePublication> limitPublicationsByCompactPairId(final CooccurLevel level,
+			PCollection<KV<Long, String>> compactPairIdToPublicationId,
+			PCollectionView<ConceptIdDictionary> dictionaryView) {
+		PCollection<KV<Long, Set<String>>> col = compactPairIdToPublicationId
+				.setCoder(KvCoder.of(BigEndianLongCoder.of(), StringUtf8Coder.of()))
+				.apply("sample-pubs-by-compact-pair - " + level.name().toLowerCase(), Combine
+						.<Long, String, Set<String>>perKey(new BoundedSampleFn<String>(PUBLICATION_STORAGE_LIMIT)));
+
+		return col.apply("limit-stored-compact-pubs - " + level.name().toLowerCase(),
+				ParDo.of(new DoFn<KV<Long, Set<String>>, CooccurrencePublication>() {
+					private static final long serialVersionUID = 1L;
+
+					@ProcessElement
+					public void processElement(ProcessContext context) {
+						ConceptIdDictionary dictionary = context.sideInput(dictionaryView);
+						KV<Long, Set<String>> pairIdToPublicationIds = context.element();
+
+						ConceptPair pair = decodePair(pairIdToPublicationIds.getKey(), dictionary);
+						for (String pub : pairIdToPublicationIds.getValue()) {
+							context.output(new CooccurrencePublication(pair, pub));
 						}
+					}
+
+				}).withSideInputs(dictionaryView));
+	}
+
+	/**
+	 * Collects a sample of up to sampleSize unique elements. The accumulator never
+	 * grows beyond sampleSize, so the sample can be computed prior to the shuffle
+	 * without the risk of collecting all values for a key on a single worker.
+	 */
+	protected static class BoundedSampleFn<T> extends Combine.CombineFn<T, Set<T>, Set<T>> {
 
-						return false;
+		private static final long serialVersionUID = 1L;
+
+		private final int sampleSize;
+
+		public BoundedSampleFn(int sampleSize) {
+			this.sampleSize = sampleSize;
+		}
+
+		@Override
+		public Set<T> createAccumulator() {
+			return new HashSet<>();
+		}
+
+		@Override
+		public Set<T> addInput(Set<T> accumulator, T input) {
+			if (accumulator.size() < sampleSize) {
+				accumulator.add(input);
+			}
+			return accumulator;
+		}
 
+		@Override
+		public Set<T> mergeAccumulators(Iterable<Set<T>> accumulators) {
+			Set<T> merged = new HashSet<>();
+			for (Set<T> part : accumulators) {
+				for (T t : part) {
+					if (merged.size() == sampleSize) {
+						return merged;
 					}
+					merged.add(t);
+				}
+			}
+			return merged;
+		}
 
-				}).withOutputTags(PAIR_KEY_TO_DOC_ID_TAG, TupleTagList.of(PAIR_PUBLICATIONS_TAG))
-						.withSideInputs(ancestorMapView));
+		@Override
+		public Set<T> extractOutput(Set<T> accumulator) {
+			return accumulator;
+		}
+
+		@Override
+		public Coder<Set<T>> getAccumulatorCoder(CoderRegistry registry, Coder<T> inputCoder) {
+			return SetCoder.of(inputCoder);
+		}
+
+		@Override
+		public Coder<Set<T>> getDefaultOutputCoder(CoderRegistry registry, Coder<T> inputCoder) {
+			return SetCoder.of(inputCoder);
+		}
+	}
+
+	/**
+	 * @param conceptId
+	 * @param conceptPrefixesToInclude
+	 * @return true if the concept ID does not start with one of the prefixes to
+	 *         include. If the prefix set is empty, then all prefixes are included.
+	 */
+	protected static boolean excludeConceptIdByPrefix(ConceptId conceptId, Set<String> conceptPrefixesToInclude) {
+
+		// if the prefix list is empty, then include all prefixes
+		if (conceptPrefixesToInclude == null || conceptPrefixesToInclude.isEmpty()) {
+			return false;
+		}
+
+		for (String prefix : conceptPrefixesToInclude) {
+			if (conceptId.getId().startsWith(prefix)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param conceptId1
+	 * @param conceptId2
+	 * @param ancestorMap
+	 * @return true if one of the input concept IDs is the ancestor of the other
+	 */
+	protected static boolean areAncestors(ConceptId conceptId1, ConceptId conceptId2,
+			Map<String, Set<String>> ancestorMap) {
+
+		Set<String> concept1Ancestors = ancestorMap.get(conceptId1.getId());
+		if (concept1Ancestors != null && concept1Ancestors.contains(conceptId2.getId())) {
+			return true;
+		}
+
+		Set<String> concept2Ancestors = ancestorMap.get(conceptId2.getId());
+		if (concept2Ancestors != null && concept2Ancestors.contains(conceptId1.getId())) {
+			return true;
+		}
+
+		return false;
 
 	}
 
@@ -691,14 +1059,44 @@ public class ConceptCooccurrenceMetricsPipeline {
 	protected static PCollection<KV<String, Set<ConceptId>>> addAncestorConceptIds(Pipeline p, CooccurLevel level,
 			PCollection<KV<String, Set<String>>> textIdToConceptIdCollection, boolean addAncestors,
 			PCollectionView<Map<String, Set<String>>> ancestorMapView) {
+		return addAncestorConceptIds(p, level, textIdToConceptIdCollection, addAncestors, ancestorMapView, null);
+	}
+
+	/**
+	 * augment the input concept IDs with all ancestor IDs
+	 * 
+	 * @param p
+	 * @param level
+	 * @param textIdToConceptIdCollection
+	 * @param addAncestors
+	 * @param ancestorMapView             ignored if ancestorIndexFilePath is
+	 *                                    specified
+	 * @param ancestorIndexFilePath       path to an {@link AncestorIndex} file; may
+	 *                                    be null
+	 * @return
+	 */
+	protected static PCollection<KV<String, Set<ConceptId>>> addAncestorConceptIds(Pipeline p, CooccurLevel level,
+			PCollection<KV<String, Set<String>>> textIdToConceptIdCollection, boolean addAncestors,
+			PCollectionView<Map<String, Set<String>>> ancestorMapView, String ancestorIndexFilePath) {
 
 		return textIdToConceptIdCollection.apply("add ancestors - " + level.name().toLowerCase(),
 				ParDo.of(new DoFn<KV<String, Set<String>>, KV<String, Set<ConceptId>>>() {
 					private static final long serialVersionUID = 1L;
 
+					private transient AncestorIndex ancestorIndex;
+
+					@Setup
+					public void setup() {
+						if (ancestorIndexFilePath != null) {
+							ancestorIndex = AncestorIndex.getSharedInstance(ancestorIndexFilePath);
+						}
+					}
+
 					@ProcessElement
 					public void processElement(ProcessContext context) {
-						Map<String, Set<String>> ancestorMap = context.sideInput(ancestorMapView);
+						Map<String, Set<String>> ancestorMap = (ancestorIndex == null)
+								? context.sideInput(ancestorMapView)
+								: null;
 
 						KV<String, Set<String>> documentIdToConceptIds = context.element();
 						String documentId = documentIdToConceptIds.getKey();
@@ -714,8 +1112,9 @@ public class ConceptCooccurrenceMetricsPipeline {
 								if (conceptId.contains(":")) {
 									conceptPrefix = conceptId.substring(0, conceptId.indexOf(":"));
 								}
-								if (ancestorMap.containsKey(conceptId)) {
-									Set<String> ancestors = ancestorMap.get(conceptId);
+								Collection<String> ancestors = (ancestorIndex == null) ? ancestorMap.get(conceptId)
+										: ancestorIndex.getAncestorIds(conceptId);
+								if (ancestors != null) {
 									for (String ancestorId : ancestors) {
 										// in case there are any blank id's exclude them -- this was observed at one
 										// time. Also, avoid adding ancestors that have a different prefix. This avoids,
@@ -737,10 +1136,25 @@ public class ConceptCooccurrenceMetricsPipeline {
 
 						context.output(KV.of(documentId, conceptIds));
 					}
-				}).withSideInputs(ancestorMapView));
+				}).withSideInputs(nonNullViews(ancestorMapView)));
 
 	}
 
+	/**
+	 * @param views
+	 * @return the input views excluding nulls, e.g. the ancestor map view is null
+	 *         when an ancestor index file is used
+	 */
+	private static List<PCollectionView<?>> nonNullViews(PCollectionView<?>... views) {
+		List<PCollectionView<?>> nonNullViews = new ArrayList<PCollectionView<?>>();
+		for (PCollectionView<?> view : views) {
+			if (view != null) {
+				nonNullViews.add(view);
+			}
+		}
+		return nonNullViews;
+	}
+
 //	/**
 //	 * Creates a file pattern given the prefix and {@link CooccurLevel}
 //	 * 
@@ -759,14 +1173,14 @@ public class ConceptCooccurrenceMetricsPipeline {
 	private static PCollection<CooccurrenceScores> getConceptIdPairToCooccurrenceMetrics(CooccurLevel level,
 			final PCollectionView<Map<String, Long>> singletonCountMap,
 			final PCollectionView<Long> totalConceptCountView, PCollectionView<Long> totalDocumentCountView,
-			PCollection<KV<String, Set<String>>> pairToDocIds) {
-		return pairToDocIds.apply("metrics - " + level.name().toLowerCase(),
-				ParDo.of(new DoFn<KV<String, Set<String>>, CooccurrenceScores>() {
+			PCollection<KV<String, Long>> pairToCount) {
+		return pairToCount.apply("metrics - " + level.name().toLowerCase(),
+				ParDo.of(new DoFn<KV<String, Long>, CooccurrenceScores>() {
 					private static final long serialVersionUID = 1L;
 
 					@ProcessElement
 					public void processElement(ProcessContext c) {
-						KV<String, Set<String>> element = c.element();
+						KV<String, Long> element = c.element();
 						ConceptPair pair = ConceptPair.fromReproducibleKey(element.getKey());
 						long totalConceptCount = c.sideInput(totalConceptCountView);
 						long totalDocumentCount = c.sideInput(totalDocumentCountView);
@@ -776,35 +1190,7 @@ public class ConceptCooccurrenceMetricsPipeline {
 						Long xConceptCount = conceptCountMap.get(pair.getConceptId1());
 						Long yConceptCount = conceptCountMap.get(pair.getConceptId2());
 
-						// commented out as the pairCount is now incorporated in the output of the
-						// publications
-						// Long pairCount = StreamSupport.stream(element.getValue().spliterator(),
-						// false).count();
-
-						Iterable<String> documentIdIterable = element.getValue();
-						long pairCount = StreamSupport.stream(documentIdIterable.spliterator(), false).count();
-//						for (String documentId : documentIdIterable) {
-//							// if the level is DOCUMENT then the documentId should simply be the id of the
-//							// document, e.g. PMID:12345678, however if the level is something other than
-//							// DOCUMENT, then the documentId will be a mashup of the documentId_level_hash
-//							// where the hash is a unique id for part of a document, e.g. sentence, title.
-//							// Since the hash ID is internal to our database, we only need to output the
-//							// document id itself, so we parse the documentId to extract it.
-//
-//							// Also, we are only going to save a sample of the publications. There are way
-//							// too many otherwise. So we'll save up to 2 for each pair.
-//							if (pairCount < 2) {
-//								String docId = documentId;
-//								if (level != CooccurLevel.DOCUMENT) {
-//									if (documentId.contains("_")) {
-//										docId = documentId.substring(0, documentId.indexOf("_"));
-//									}
-//								}
-//								CooccurrencePublication pub = new CooccurrencePublication(pair, docId);
-//								c.output(PAIR_PUBLICATIONS_TAG, pub);
-//							}
-//							pairCount++;
-//						}
+						long pairCount = element.getValue();
 
 						if (xConceptCount == null) {
 							LOGGER.log(Level.WARNING,
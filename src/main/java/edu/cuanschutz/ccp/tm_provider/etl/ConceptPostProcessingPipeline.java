@@ -7,7 +7,6 @@ import java.util.Set;
 import org.apache.beam.runners.dataflow.options.DataflowPipelineOptions;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.io.Compression;
-import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.Keys;
@@ -29,6 +28,7 @@ import edu.cuanschutz.ccp.tm_provider.etl.fn.PCollectionUtil.Delimiter;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ProcessingStatusFlag;
@@ -145,6 +145,26 @@ public class ConceptPostProcessingPipeline {
 
 		void setAncestorMapFileSetDelimiter(Delimiter delimiter);
 
+		@Description("optional path to an AncestorIndex file created from the PR promotion map file. If set, workers memory-map the index and the PR promotion map file is not loaded.")
+		String getPrPromotionIndexFilePath();
+
+		void setPrPromotionIndexFilePath(String path);
+
+		@Description("optional path to an AncestorIndex file created from the NCBITaxon promotion map file. If set, workers memory-map the index and the NCBITaxon promotion map file is not loaded.")
+		String getNcbiTaxonPromotionIndexFilePath();
+
+		void setNcbiTaxonPromotionIndexFilePath(String path);
+
+		@Description("optional path to an AncestorIndex file created from the extension-to-obo class map file(s). If set, workers memory-map the index and the extension map files are not loaded.")
+		String getExtensionIndexFilePath();
+
+		void setExtensionIndexFilePath(String path);
+
+		@Description("optional path to an AncestorIndex file created from the ancestor map file(s). If set, workers memory-map the index and the ancestor map files are not loaded.")
+		String getAncestorIndexFilePath();
+
+		void setAncestorIndexFilePath(String path);
+
 	}
 
 	public static void main(String[] args) {
@@ -165,26 +185,36 @@ public class ConceptPostProcessingPipeline {
 				.getStatusEntity2Content(inputDocCriteria, options.getProject(), p, targetProcessingStatusFlag,
 						requiredProcessStatusFlags, options.getCollection(), options.getOverwrite());
 
-		final PCollectionView<Map<String, Set<String>>> extensionToOboMapView = PCollectionUtil
-				.fromKeyToSetTwoColumnFiles("ext-to-obo map",p, options.getExtensionMapFilePath(),
-						options.getExtensionMapFileDelimiter(), options.getExtensionMapFileSetDelimiter(),
-						Compression.GZIP)
-				.apply(View.<String, Set<String>>asMap());
-
-		final PCollectionView<Map<String, String>> prPromotionMapView = PCollectionUtil.fromTwoColumnFiles("pr-promotion map", p,
-				options.getPrPromotionMapFilePath(), options.getPrPromotionMapFileDelimiter(), Compression.GZIP)
-				.apply(View.<String, String>asMap());
-
-		final PCollectionView<Map<String, Set<String>>> ncbiTaxonPromotionMapView = PCollectionUtil
-				.fromKeyToSetTwoColumnFiles("ncbitaxon promotion map",p, options.getNcbiTaxonPromotionMapFilePath(),
-						options.getNcbiTaxonPromotionMapFileDelimiter(),
-						options.getNcbiTaxonPromotionMapFileSetDelimiter(), Compression.GZIP)
-				.apply(View.<String, Set<String>>asMap());
-
-		final PCollectionView<Map<String, Set<String>>> ancestorMapView = PCollectionUtil
-				.fromKeyToSetTwoColumnFiles("ancestor map",p, options.getAncestorMapFilePath(), options.getAncestorMapFileDelimiter(),
-						options.getAncestorMapFileSetDelimiter(), Compression.GZIP)
-				.apply(View.<String, Set<String>>asMap());
+		// each lookup map is loaded as a side input unless an index file has been
+		// specified for it, in which case workers memory-map the index instead
+		final PCollectionView<Map<String, Set<String>>> extensionToOboMapView = (options
+				.getExtensionIndexFilePath() != null) ? null
+						: PCollectionUtil
+								.fromKeyToSetTwoColumnFiles("ext-to-obo map", p, options.getExtensionMapFilePath(),
+										options.getExtensionMapFileDelimiter(),
+										options.getExtensionMapFileSetDelimiter(), Compression.GZIP)
+								.apply(View.<String, Set<String>>asMap());
+
+		final PCollectionView<Map<String, String>> prPromotionMapView = (options
+				.getPrPromotionIndexFilePath() != null) ? null
+						: PCollectionUtil.fromTwoColumnFiles("pr-promotion map", p,
+								options.getPrPromotionMapFilePath(), options.getPrPromotionMapFileDelimiter(),
+								Compression.GZIP).apply(View.<String, String>asMap());
+
+		final PCollectionView<Map<String, Set<String>>> ncbiTaxonPromotionMapView = (options
+				.getNcbiTaxonPromotionIndexFilePath() != null) ? null
+						: PCollectionUtil.fromKeyToSetTwoColumnFiles("ncbitaxon promotion map", p,
+								options.getNcbiTaxonPromotionMapFilePath(),
+								options.getNcbiTaxonPromotionMapFileDelimiter(),
+								options.getNcbiTaxonPromotionMapFileSetDelimiter(), Compression.GZIP)
+								.apply(View.<String, Set<String>>asMap());
+
+		final PCollectionView<Map<String, Set<String>>> ancestorMapView = (options
+				.getAncestorIndexFilePath() != null) ? null
+						: PCollectionUtil.fromKeyToSetTwoColumnFiles("ancestor map", p,
+								options.getAncestorMapFilePath(), options.getAncestorMapFileDelimiter(),
+								options.getAncestorMapFileSetDelimiter(), Compression.GZIP)
+								.apply(View.<String, Set<String>>asMap());
 
 		DocumentType outputDocumentType = DocumentType.CONCEPT_ALL;
 		if (options.getFilterFlag() == FilterFlag.NONE) {
@@ -196,6 +226,8 @@ public class ConceptPostProcessingPipeline {
 
 		PCollectionTuple output = ConceptPostProcessingFn.process(statusEntity2Content, outputDocCriteria, timestamp,
 				inputDocCriteria, extensionToOboMapView, prPromotionMapView, ncbiTaxonPromotionMapView, ancestorMapView,
+				options.getExtensionIndexFilePath(), options.getPrPromotionIndexFilePath(),
+				options.getNcbiTaxonPromotionIndexFilePath(), options.getAncestorIndexFilePath(),
 				options.getFilterFlag());
 
 		PCollection<KV<ProcessingStatus, List<String>>> statusEntityToAnnotation = output
@@ -210,7 +242,7 @@ public class ConceptPostProcessingPipeline {
 				statusEntityToAnnotation.apply(Keys.<ProcessingStatus>create()), targetProcessingStatusFlag);
 		PCollection<Entity> nonredundantStatusEntities = PipelineMain.deduplicateStatusEntities(updatedEntities);
 		nonredundantStatusEntities.apply("status_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		PCollectionView<Map<String, Set<String>>> documentIdToCollections = PipelineMain
 				.getCollectionMappings(nonredundantStatusEntities).apply(View.<String, Set<String>>asMap());
@@ -224,7 +256,7 @@ public class ConceptPostProcessingPipeline {
 				.apply("annotations->annot_entity",
 						ParDo.of(new DocumentToEntityFn(outputDocCriteria, options.getCollection(),
 								documentIdToCollections)).withSideInputs(documentIdToCollections))
-				.apply("annot_entity->datastore", DatastoreIO.v1().write().withProjectId(options.getProject()));
+				.apply("annot_entity->datastore", DocumentStore.fromOptions(options, options.getProject()).write());
 
 		/*
 		 * store the failures for this pipeline in Cloud Datastore - deduplication is
@@ -234,7 +266,7 @@ public class ConceptPostProcessingPipeline {
 				ParDo.of(new EtlFailureToEntityFn()));
 		PCollection<Entity> nonredundantFailureEntities = PipelineMain.deduplicateEntitiesByKey(failureEntities);
 		nonredundantFailureEntities.apply("failure_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		p.run().waitUntilFinish();
 	}
@@ -0,0 +1,34 @@
+package edu.cuanschutz.ccp.tm_provider.etl;
+
+import java.util.Collections;
+
+import org.apache.beam.sdk.options.Default;
+import org.apache.beam.sdk.options.Description;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsRegistrar;
+
+/**
+ * Options that apply to the Datastore queries issued by {@link PipelineMain} on
+ * behalf of all pipelines. The options are registered with
+ * {@link org.apache.beam.sdk.options.PipelineOptionsFactory} (see
+ * META-INF/services), so they can be specified on the command line of any
+ * pipeline without being added to its Options interface.
+ */
+public interface DatastoreReadOptions extends PipelineOptions {
+
+	@Description("The number of __key__ ranges each Datastore query is split into so that the ranges can be read in "
+			+ "parallel by different workers. If 0, the number of splits is estimated from the Datastore statistics "
+			+ "for the queried kind, which can take a long time for very large kinds.")
+	@Default.Integer(0)
+	int getDatastoreNumQuerySplits();
+
+	void setDatastoreNumQuerySplits(int value);
+
+	public static class Registrar implements PipelineOptionsRegistrar {
+		@Override
+		public Iterable<Class<? extends PipelineOptions>> getPipelineOptions() {
+			return Collections.<Class<? extends PipelineOptions>>singletonList(DatastoreReadOptions.class);
+		}
+	}
+
+}
@@ -7,7 +7,6 @@ import java.util.Set;
 
 import org.apache.beam.runners.dataflow.options.DataflowPipelineOptions;
 import org.apache.beam.sdk.Pipeline;
-import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.Keys;
@@ -26,6 +25,7 @@ import edu.cuanschutz.ccp.tm_provider.etl.fn.TurkuDepParserFn;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ProcessingStatusFlag;
@@ -120,7 +120,7 @@ public class DependencyParsePipeline {
 				statusEntityToConllu.apply(Keys.<ProcessingStatus>create()), targetProcessingStatusFlag);
 		PCollection<Entity> nonredundantStatusEntities = PipelineMain.deduplicateStatusEntities(updatedEntities);
 		nonredundantStatusEntities.apply("status_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		PCollectionView<Map<String, Set<String>>> documentIdToCollections = PipelineMain
 				.getCollectionMappings(nonredundantStatusEntities).apply(View.<String, Set<String>>asMap());
@@ -135,7 +135,7 @@ public class DependencyParsePipeline {
 				.apply("conllu->document_entity",
 						ParDo.of(new DocumentToEntityFn(outputDocCriteria, options.getCollection(),
 								documentIdToCollections)).withSideInputs(documentIdToCollections))
-				.apply("document_entity->datastore", DatastoreIO.v1().write().withProjectId(options.getProject()));
+				.apply("document_entity->datastore", DocumentStore.fromOptions(options, options.getProject()).write());
 
 		/*
 		 * store the failures for this pipeline in Cloud Datastore - deduplication is
@@ -145,7 +145,7 @@ public class DependencyParsePipeline {
 				ParDo.of(new EtlFailureToEntityFn()));
 		PCollection<Entity> nonredundantFailureEntities = PipelineMain.deduplicateEntitiesByKey(failureEntities);
 		nonredundantFailureEntities.apply("failure_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		p.run().waitUntilFinish();
 	}
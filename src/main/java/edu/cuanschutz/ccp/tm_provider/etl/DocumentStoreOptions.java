@@ -0,0 +1,57 @@
+package edu.cuanschutz.ccp.tm_provider.etl;
+
+import java.util.Collections;
+
+import org.apache.beam.sdk.options.Default;
+import org.apache.beam.sdk.options.Description;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.options.PipelineOptionsRegistrar;
+
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore;
+
+/**
+ * Options that select the {@link DocumentStore} used by the pipelines to read
+ * and store status, document and failure entities. Documents that are
+ * downloaded by ID (see
+ * {@link edu.cuanschutz.ccp.tm_provider.etl.fn.DocumentDownloadFn}) are always
+ * read from Datastore. Like
+ * {@link DatastoreReadOptions}, the options are registered (see
+ * META-INF/services) so they can be specified on the command line of any
+ * pipeline.
+ */
+public interface DocumentStoreOptions extends PipelineOptions {
+
+	public enum DocumentStoreType {
+		/**
+		 * Cloud Datastore in the project of the pipeline
+		 */
+		DATASTORE,
+		/**
+		 * An embedded key-value store in a local directory, for single-machine runs
+		 * using the DirectRunner
+		 */
+		LOCAL
+	}
+
+	@Description("The storage backend for status, document and failure entities. The LOCAL store is not supported "
+			+ "by the pipelines that download documents by ID (BigQuery export, PubAnnotation export and sentence "
+			+ "cooccurrence), which read from Datastore directly, or by the transactional status updates in "
+			+ "DatastoreProcessingStatusUtil.")
+	@Default.Enum("DATASTORE")
+	DocumentStoreType getDocumentStore();
+
+	void setDocumentStore(DocumentStoreType value);
+
+	@Description("The directory of the embedded key-value store; required when the LOCAL document store is used.")
+	String getLocalDocumentStoreDirectory();
+
+	void setLocalDocumentStoreDirectory(String value);
+
+	public static class Registrar implements PipelineOptionsRegistrar {
+		@Override
+		public Iterable<Class<? extends PipelineOptions>> getPipelineOptions() {
+			return Collections.<Class<? extends PipelineOptions>>singletonList(DocumentStoreOptions.class);
+		}
+	}
+
+}
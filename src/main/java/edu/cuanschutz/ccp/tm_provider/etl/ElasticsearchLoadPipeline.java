@@ -5,13 +5,16 @@ import java.util.Set;
 
 import org.apache.beam.runners.dataflow.options.DataflowPipelineOptions;
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.TextIO;
 import org.apache.beam.sdk.io.elasticsearch.ElasticsearchIO;
 import org.apache.beam.sdk.io.elasticsearch.ElasticsearchIO.BulkIO;
 import org.apache.beam.sdk.io.elasticsearch.ElasticsearchIO.ConnectionConfiguration;
 import org.apache.beam.sdk.io.elasticsearch.ElasticsearchIO.DocToBulk;
-import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
+import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
@@ -21,9 +24,11 @@ import com.google.datastore.v1.Entity;
 
 import edu.cuanschutz.ccp.tm_provider.etl.fn.ElasticsearchDocumentCreatorFn;
 import edu.cuanschutz.ccp.tm_provider.etl.fn.EtlFailureToEntityFn;
+import edu.cuanschutz.ccp.tm_provider.etl.fn.SentenceFingerprintFilterFn;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ProcessingStatusFlag;
@@ -33,6 +38,14 @@ import edu.cuanschutz.ccp.tm_provider.etl.util.Version;
  * Loads sentences into Elasticsearch for indexing. A flag specifies whether all
  * sentences should be loaded or just sentences that contain at least one
  * concept annotation.
+ * <p>
+ * Sentences are indexed with explicit identifiers (see
+ * {@link SentenceFingerprintFilterFn#getElasticsearchId}) so that reloading a
+ * sentence replaces its previous version. A sentence that is repeated within a
+ * document is loaded as a single document in both indexing modes. In {@link IndexingMode#INCREMENTAL}
+ * mode, only sentences that are new or whose annotations have changed since the
+ * load that produced the sentence fingerprint snapshot are sent to
+ * Elasticsearch.
  */
 public class ElasticsearchLoadPipeline {
 
@@ -48,6 +61,18 @@ public class ElasticsearchLoadPipeline {
 		INCLUDE_ONLY_SENTENCES_WITH_CONCEPTS
 	}
 
+	public enum IndexingMode {
+		/**
+		 * All sentences are sent to Elasticsearch
+		 */
+		FULL,
+		/**
+		 * Only sentences that are not in the sentence fingerprint snapshot, or whose
+		 * fingerprint has changed, are sent to Elasticsearch
+		 */
+		INCREMENTAL
+	}
+
 	public interface Options extends DataflowPipelineOptions {
 		@Description("Defines the documents required for input in order to extract the sentences appropriately. The string is a semi-colon "
 				+ "delimited between different document criteria and pipe-delimited within document criteria, "
@@ -101,6 +126,35 @@ public class ElasticsearchLoadPipeline {
 
 		void setOverwrite(OverwriteOutput value);
 
+		@Description("FULL sends all sentences to Elasticsearch; INCREMENTAL sends only new or changed sentences")
+		@Default.Enum("FULL")
+		IndexingMode getIndexingMode();
+
+		void setIndexingMode(IndexingMode value);
+
+		@Description("INCREMENTAL mode only: file pattern of the sentence fingerprint snapshot written by the previous load. "
+				+ "If not set, all sentences are treated as new.")
+		String getSentenceFingerprintSnapshot();
+
+		void setSentenceFingerprintSnapshot(String value);
+
+		@Description("INCREMENTAL mode only: output prefix for the updated sentence fingerprint snapshot")
+		String getUpdatedSentenceFingerprintSnapshot();
+
+		void setUpdatedSentenceFingerprintSnapshot(String value);
+
+		@Description("The maximum number of documents in each Elasticsearch bulk request")
+		@Default.Long(1000)
+		long getElasticsearchMaxBatchSize();
+
+		void setElasticsearchMaxBatchSize(long value);
+
+		@Description("The maximum size, in bytes, of each Elasticsearch bulk request")
+		@Default.Long(5L * 1024 * 1024)
+		long getElasticsearchMaxBatchSizeBytes();
+
+		void setElasticsearchMaxBatchSizeBytes(long value);
+
 	}
 
 	public static void main(String[] args) {
@@ -136,17 +190,38 @@ public class ElasticsearchLoadPipeline {
 				ParDo.of(new EtlFailureToEntityFn()));
 		PCollection<Entity> nonredundantFailureEntities = PipelineMain.deduplicateEntitiesByKey(failureEntities);
 		nonredundantFailureEntities.apply("failure_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		/* esDocs are JSON string */
 		PCollection<String> esDocs = output.get(ElasticsearchDocumentCreatorFn.ELASTICSEARCH_DOCUMENT_JSON_TAG);
 
+		if (options.getIndexingMode() == IndexingMode.INCREMENTAL) {
+			if (options.getUpdatedSentenceFingerprintSnapshot() == null) {
+				throw new IllegalArgumentException(
+						"The updatedSentenceFingerprintSnapshot option must be set when using INCREMENTAL indexing mode.");
+			}
+			PCollection<String> snapshotLines = (options.getSentenceFingerprintSnapshot() == null)
+					? p.apply("empty snapshot", Create.empty(StringUtf8Coder.of()))
+					: p.apply("read snapshot", TextIO.read().from(options.getSentenceFingerprintSnapshot()));
+			PCollectionTuple filtered = SentenceFingerprintFilterFn.filterUnchangedSentences(esDocs, snapshotLines);
+			filtered.get(SentenceFingerprintFilterFn.SNAPSHOT_LINE_TAG).apply("write snapshot",
+					TextIO.write().to(options.getUpdatedSentenceFingerprintSnapshot()).withSuffix(".tsv"));
+			esDocs = filtered.get(SentenceFingerprintFilterFn.CHANGED_SENTENCE_JSON_TAG);
+		} else {
+			// a sentence repeated within a document has a single Elasticsearch id
+			esDocs = SentenceFingerprintFilterFn.selectSentencePerId(esDocs);
+		}
+
 		String[] esAddresses = options.getElasticsearchAddresses().split("\\|");
 
 		ConnectionConfiguration connectionConfiguration = ElasticsearchIO.ConnectionConfiguration
 				.create(esAddresses, options.getElasticsearchIndexName()).withApiKey(options.getElasticsearchApiKey());
-		DocToBulk docToBulk = ElasticsearchIO.docToBulk().withConnectionConfiguration(connectionConfiguration);
-		BulkIO bulkIO = ElasticsearchIO.bulkIO().withConnectionConfiguration(connectionConfiguration);
+		// an explicit id makes the index operation an upsert
+		DocToBulk docToBulk = ElasticsearchIO.docToBulk().withConnectionConfiguration(connectionConfiguration)
+				.withIdFn(SentenceFingerprintFilterFn::getElasticsearchId);
+		BulkIO bulkIO = ElasticsearchIO.bulkIO().withConnectionConfiguration(connectionConfiguration)
+				.withMaxBatchSize(options.getElasticsearchMaxBatchSize())
+				.withMaxBatchSizeBytes(options.getElasticsearchMaxBatchSizeBytes());
 		esDocs.apply("index into ES", docToBulk).apply(bulkIO);
 
 		p.run().waitUntilFinish();
@@ -10,7 +10,7 @@ import java.util.logging.Logger;
 
 import org.apache.beam.runners.dataflow.options.DataflowPipelineOptions;
 import org.apache.beam.sdk.Pipeline;
-import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
+import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
 import org.apache.beam.sdk.transforms.Keys;
@@ -30,6 +30,7 @@ import edu.cuanschutz.ccp.tm_provider.etl.fn.OgerFn.OgerOutputType;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ProcessingStatusFlag;
@@ -99,6 +100,13 @@ public class OgerPipeline {
 
 		void setOverwrite(OverwriteOutput value);
 
+		@Description("The maximum number of concurrent requests each worker thread sends to the OGER service. "
+				+ "If 1, documents are annotated one at a time.")
+		@Default.Integer(1)
+		int getMaxConcurrentRequests();
+
+		void setMaxConcurrentRequests(int value);
+
 	}
 
 	public static void main(String[] args) {
@@ -139,7 +147,7 @@ public class OgerPipeline {
 		DocumentCriteria outputDocCriteria = new DocumentCriteria(options.getTargetDocumentType(),
 				options.getTargetDocumentFormat(), PIPELINE_KEY, options.getOutputPipelineVersion());
 		PCollectionTuple output = OgerFn.process(statusEntity2Content, ogerServiceUri.toString(), outputDocCriteria,
-				timestamp, options.getOgerOutputType());
+				timestamp, options.getOgerOutputType(), options.getMaxConcurrentRequests());
 
 		PCollection<KV<ProcessingStatus, List<String>>> statusEntityToAnnotation = output.get(OgerFn.ANNOTATIONS_TAG);
 		PCollection<EtlFailureData> failures = output.get(OgerFn.ETL_FAILURE_TAG);
@@ -152,7 +160,7 @@ public class OgerPipeline {
 				statusEntityToAnnotation.apply(Keys.<ProcessingStatus>create()), targetProcessingStatusFlag);
 		PCollection<Entity> nonredundantStatusEntities = PipelineMain.deduplicateStatusEntities(updatedEntities);
 		nonredundantStatusEntities.apply("status_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		PCollectionView<Map<String, Set<String>>> documentIdToCollections = PipelineMain
 				.getCollectionMappings(nonredundantStatusEntities).apply(View.<String, Set<String>>asMap());
@@ -167,7 +175,7 @@ public class OgerPipeline {
 				.apply("annotations->annot_entity",
 						ParDo.of(new DocumentToEntityFn(outputDocCriteria, options.getCollection(),
 								documentIdToCollections)).withSideInputs(documentIdToCollections))
-				.apply("annot_entity->datastore", DatastoreIO.v1().write().withProjectId(options.getProject()));
+				.apply("annot_entity->datastore", DocumentStore.fromOptions(options, options.getProject()).write());
 
 		/*
 		 * store the failures for this pipeline in Cloud Datastore - deduplication is
@@ -177,7 +185,7 @@ public class OgerPipeline {
 				ParDo.of(new EtlFailureToEntityFn()));
 		PCollection<Entity> nonredundantFailureEntities = PipelineMain.deduplicateEntitiesByKey(failureEntities);
 		nonredundantFailureEntities.apply("failure_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		p.run().waitUntilFinish();
 	}
@@ -29,17 +29,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import org.apache.beam.sdk.Pipeline;
-import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.DoFn.MultiOutputReceiver;
 import org.apache.beam.sdk.transforms.GroupByKey;
-import org.apache.beam.sdk.transforms.Keys;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.View;
 import org.apache.beam.sdk.transforms.join.CoGbkResult;
@@ -61,18 +62,19 @@ import com.google.datastore.v1.Value;
 
 import edu.cuanschutz.ccp.tm_provider.etl.fn.PCollectionUtil;
 import edu.cuanschutz.ccp.tm_provider.etl.update.UpdateMedlineEntitiesPipeline;
+import edu.cuanschutz.ccp.tm_provider.etl.util.ContentChunkUtil;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreConstants;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreKeyUtil;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ProcessingStatusFlag;
 import edu.cuanschutz.ccp.tm_provider.etl.util.Version;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
-import edu.ucdenver.ccp.common.collections.CollectionsUtil.SortOrder;
 import edu.ucdenver.ccp.common.file.CharacterEncoding;
 import edu.ucdenver.ccp.file.conversion.TextDocument;
 import edu.ucdenver.ccp.file.conversion.bionlp.BioNLPDocumentReader;
@@ -84,34 +86,12 @@ public class PipelineMain {
 
 	private final static Logger LOGGER = Logger.getLogger(PipelineMain.class.getName());
 
+	private static final String DATASTORE_METRICS_NAMESPACE = "datastore";
+	/* the name used to project the entity key in a keys-only query */
+	private static final String KEY_PROPERTY_NAME = "__key__";
+
 	private static final TupleTag<ProcessingStatus> statusTag = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag1 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag2 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag3 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag4 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag5 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag6 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag7 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag8 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag9 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag10 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag11 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag12 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag13 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag14 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag15 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag16 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag17 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag18 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag19 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag20 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag21 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag22 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag23 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag24 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag25 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag26 = new TupleTag<>();
-	private static final TupleTag<ProcessedDocument> documentTag27 = new TupleTag<>();
+	private static final TupleTag<ProcessedDocument> documentTag = new TupleTag<>();
 
 	public static void main(String[] args) {
 		System.out.println("Running pipeline version: " + Version.getProjectVersion());
@@ -202,40 +182,6 @@ public class PipelineMain {
 		}
 	}
 
-	private static Map<Integer, TupleTag<ProcessedDocument>> populateTagMap() {
-		Map<Integer, TupleTag<ProcessedDocument>> tagMap = new HashMap<Integer, TupleTag<ProcessedDocument>>();
-
-		tagMap.put(1, documentTag1);
-		tagMap.put(2, documentTag2);
-		tagMap.put(3, documentTag3);
-		tagMap.put(4, documentTag4);
-		tagMap.put(5, documentTag5);
-		tagMap.put(6, documentTag6);
-		tagMap.put(7, documentTag7);
-		tagMap.put(8, documentTag8);
-		tagMap.put(9, documentTag9);
-		tagMap.put(10, documentTag10);
-		tagMap.put(11, documentTag11);
-		tagMap.put(12, documentTag12);
-		tagMap.put(13, documentTag13);
-		tagMap.put(14, documentTag14);
-		tagMap.put(15, documentTag15);
-		tagMap.put(16, documentTag16);
-		tagMap.put(17, documentTag17);
-		tagMap.put(18, documentTag18);
-		tagMap.put(19, documentTag19);
-		tagMap.put(20, documentTag20);
-		tagMap.put(21, documentTag21);
-		tagMap.put(22, documentTag22);
-		tagMap.put(23, documentTag23);
-		tagMap.put(24, documentTag24);
-		tagMap.put(25, documentTag25);
-		tagMap.put(26, documentTag26);
-		tagMap.put(27, documentTag27);
-
-		return tagMap;
-	}
-
 	/**
 	 * @param inputDocCriteria
 	 * @param gcpProjectId
@@ -252,8 +198,6 @@ public class PipelineMain {
 			ProcessingStatusFlag targetProcessStatusFlag, Set<ProcessingStatusFlag> requiredProcessStatusFlags,
 			String collection, OverwriteOutput overwriteOutput) {
 
-		Map<Integer, TupleTag<ProcessedDocument>> tagMap = populateTagMap();
-
 		/*
 		 * get the status entities for documents that meet the required process status
 		 * flag critera but whose target process status flag is false
@@ -261,28 +205,37 @@ public class PipelineMain {
 		PCollection<KV<String, ProcessingStatus>> docId2Status = getStatusEntitiesToProcess(beamPipeline,
 				targetProcessStatusFlag, requiredProcessStatusFlags, gcpProjectId, collection, overwriteOutput);
 
-		KeyedPCollectionTuple<String> tuple = KeyedPCollectionTuple.of(statusTag, docId2Status);
-
-		// current code allows up to 25 document criteria to be added. Code can be
-		// extended if more are needed. It doesn't seem possible to do this (create
-		// tuple tags) dynamically.
+		/*
+		 * all input document criteria are retrieved using a single scan of the document
+		 * kind. Each document chunk is routed by its document criteria so that any
+		 * number of criteria can be joined to the status entities using a single
+		 * grouping by document id.
+		 */
+		PCollection<KV<String, ProcessedDocument>> docId2Document = getDocumentEntitiesToProcess(beamPipeline,
+				inputDocCriteria, collection, gcpProjectId);
 
-		if (inputDocCriteria.size() > tagMap.size()) {
-			throw new IllegalArgumentException(String.format(
-					"Cannot have >%d input document criteria. Code can be extended, but code revision is required.",
-					tagMap.size()));
-		}
+		return joinStatusAndDocuments(docId2Status, docId2Document, inputDocCriteria);
+	}
 
-		int tagIndex = 1;
-		for (DocumentCriteria docCriteria : inputDocCriteria) {
-			PCollection<KV<String, ProcessedDocument>> docId2Document = getDocumentEntitiesToProcess(beamPipeline,
-					docCriteria, collection, gcpProjectId);
-			tuple = tuple.and(tagMap.get(tagIndex++), docId2Document);
-		}
+	/**
+	 * @param docId2Status
+	 * @param docId2Document
+	 * @param inputDocCriteria
+	 * @return a mapping from the status entity to the spliced document content for
+	 *         each of the input document criteria. Status entities lacking any
+	 *         of the required documents (or document chunks) are skipped.
+	 */
+	@VisibleForTesting
+	protected static PCollection<KV<ProcessingStatus, Map<DocumentCriteria, String>>> joinStatusAndDocuments(
+			PCollection<KV<String, ProcessingStatus>> docId2Status,
+			PCollection<KV<String, ProcessedDocument>> docId2Document, Set<DocumentCriteria> inputDocCriteria) {
 
-		PCollection<KV<String, CoGbkResult>> result = tuple.apply(CoGroupByKey.create());
+		final Set<DocumentCriteria> requiredDocCriteria = new HashSet<DocumentCriteria>(inputDocCriteria);
+		PCollection<KV<String, CoGbkResult>> result = KeyedPCollectionTuple.of(statusTag, docId2Status)
+				.and(documentTag, docId2Document).apply("join status & documents", CoGroupByKey.create());
 
 		PCollection<KV<ProcessingStatus, Map<DocumentCriteria, String>>> outputPCollection = result.apply(
+				"splice document chunks",
 				ParDo.of(new DoFn<KV<String, CoGbkResult>, KV<ProcessingStatus, Map<DocumentCriteria, String>>>() {
 					private static final long serialVersionUID = 1L;
 
@@ -293,25 +246,14 @@ public class PipelineMain {
 
 						// get the processing status -- there will only be one
 						try {
-							ProcessingStatus processingStatus = result.getOnly(statusTag);
+							ProcessingStatus processingStatus = result.getOnly(statusTag, null);
 
 							if (processingStatus != null) {
-								// get all associated documents -- there should be only one
-								// ProcessedDocument associated with each documentTag
-								Set<ProcessedDocument> allDocuments = new HashSet<ProcessedDocument>();
-								boolean hasAllDocuments = true;
-								// index starts with 1 here b/c the tagMap keys start with 1
-								for (int index = 1; index <= inputDocCriteria.size(); index++) {
-									ProcessedDocument doc = result.getOnly(tagMap.get(index));
-									if (doc != null) {
-										allDocuments.add(doc);
-									} else {
-										hasAllDocuments = false;
-										break;
-									}
-								}
+								// get all associated document chunks -- there may be multiple chunks for
+								// each document criteria
+								Iterable<ProcessedDocument> allDocuments = result.getAll(documentTag);
 
-								if (hasAllDocuments) {
+								if (hasAllDocuments(allDocuments, requiredDocCriteria)) {
 									// piece together documents that have been split for storage
 									Map<DocumentCriteria, String> contentMap = spliceDocumentChunks(allDocuments);
 									c.output(KV.of(processingStatus, contentMap));
@@ -333,45 +275,222 @@ public class PipelineMain {
 		return outputPCollection;
 	}
 
+	/**
+	 * @param documents
+	 * @param inputDocCriteria
+	 * @return true if every chunk of every input document criteria is present in
+	 *         the input documents
+	 */
+	@VisibleForTesting
+	protected static boolean hasAllDocuments(Iterable<ProcessedDocument> documents,
+			Set<DocumentCriteria> inputDocCriteria) {
+		Map<DocumentCriteria, Set<Long>> docCriteriaToChunkIds = new HashMap<DocumentCriteria, Set<Long>>();
+		Map<DocumentCriteria, Long> docCriteriaToChunkTotal = new HashMap<DocumentCriteria, Long>();
+		for (ProcessedDocument document : documents) {
+			DocumentCriteria docCriteria = document.getDocumentCriteria();
+			docCriteriaToChunkIds.computeIfAbsent(docCriteria, k -> new HashSet<Long>()).add(document.getChunkId());
+			docCriteriaToChunkTotal.put(docCriteria, document.getChunkTotal());
+		}
+
+		for (DocumentCriteria docCriteria : inputDocCriteria) {
+			Set<Long> chunkIds = docCriteriaToChunkIds.get(docCriteria);
+			if (chunkIds == null || chunkIds.size() < docCriteriaToChunkTotal.get(docCriteria)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Splices together documents that were split into chunks for storage. Chunks
+	 * are ordered by placing them in an array indexed by chunk id, and the spliced
+	 * document is created with a single copy of the chunk content (or no copy at
+	 * all if the document consists of a single chunk).
+	 * 
+	 * @param documents
+	 * @return a mapping from document criteria to the spliced document content
+	 */
 	@VisibleForTesting
 	protected static Map<DocumentCriteria, String> spliceDocumentChunks(Iterable<ProcessedDocument> documents) {
-		Map<DocumentCriteria, Map<Long, String>> map = new HashMap<DocumentCriteria, Map<Long, String>>();
+		Map<DocumentCriteria, String[]> map = new HashMap<DocumentCriteria, String[]>();
 
-		// map content by chunk id so that it can be sorted and spliced back together
+		// place content in an array indexed by chunk id so that it can be spliced back
+		// together in order
 		for (ProcessedDocument document : documents) {
 			DocumentCriteria docCriteria = document.getDocumentCriteria();
-			long chunkId = document.getChunkId();
-			String content = document.getDocumentContent();
-
-			if (map.containsKey(docCriteria)) {
-				map.get(docCriteria).put(chunkId, content);
-			} else {
-				Map<Long, String> innerMap = new HashMap<Long, String>();
-				innerMap.put(chunkId, content);
-				map.put(docCriteria, innerMap);
+			int chunkId = (int) document.getChunkId();
+
+			String[] chunks = map.get(docCriteria);
+			if (chunks == null) {
+				chunks = new String[(int) Math.max(document.getChunkTotal(), chunkId + 1)];
+				map.put(docCriteria, chunks);
+			} else if (chunkId >= chunks.length) {
+				chunks = Arrays.copyOf(chunks, chunkId + 1);
+				map.put(docCriteria, chunks);
 			}
+			chunks[chunkId] = document.getDocumentContent();
 		}
 
 		// splice the documents together
 		Map<DocumentCriteria, String> outputMap = new HashMap<DocumentCriteria, String>();
-		for (Entry<DocumentCriteria, Map<Long, String>> entry : map.entrySet()) {
-			DocumentCriteria docCriteria = entry.getKey();
-			Map<Long, String> chunkMap = entry.getValue();
-			Map<Long, String> sortedChunkMap = CollectionsUtil.sortMapByKeys(chunkMap, SortOrder.ASCENDING);
-			StringBuilder sb = new StringBuilder();
-			for (Entry<Long, String> chunkEntry : sortedChunkMap.entrySet()) {
-				sb.append(chunkEntry.getValue());
-			}
-			outputMap.put(docCriteria, sb.toString());
+		for (Entry<DocumentCriteria, String[]> entry : map.entrySet()) {
+			outputMap.put(entry.getKey(), splice(entry.getValue()));
 		}
 
 		return outputMap;
 
 	}
 
+	/**
+	 * @param chunks
+	 * @return the concatenation of the non-null chunks
+	 */
+	private static String splice(String[] chunks) {
+		if (chunks.length == 1 && chunks[0] != null) {
+			return chunks[0];
+		}
+		List<String> nonNullChunks = new ArrayList<String>(chunks.length);
+		for (String chunk : chunks) {
+			if (chunk != null) {
+				nonNullChunks.add(chunk);
+			}
+		}
+		// String.join() sizes its output once and copies each chunk a single time
+		return String.join("", nonNullChunks);
+	}
+
 	public static PCollection<KV<String, ProcessingStatus>> getStatusEntitiesToProcess(Pipeline p,
 			ProcessingStatusFlag targetProcessStatusFlag, Set<ProcessingStatusFlag> requiredProcessStatusFlags,
 			String gcpProjectId, String collection, OverwriteOutput overwriteOutput) {
+		Query query = buildStatusQuery(targetProcessStatusFlag, requiredProcessStatusFlags, collection,
+				overwriteOutput);
+
+		PCollection<Entity> status = readEntities(p, "load status entities", "status", query, gcpProjectId);
+
+		PCollection<KV<String, ProcessingStatus>> docId2Status = status.apply("status entity->status",
+				ParDo.of(new DoFn<Entity, KV<String, ProcessingStatus>>() {
+					private static final long serialVersionUID = 1L;
+
+					@ProcessElement
+					public void processElement(@Element Entity statusEntity,
+							OutputReceiver<KV<String, ProcessingStatus>> out) {
+						ProcessingStatus ps = new ProcessingStatus(statusEntity);
+						out.output(KV.of(ps.getDocumentId(), ps));
+					}
+				}));
+
+		return docId2Status;
+	}
+
+	/**
+	 * Retrieves only the identifiers of the documents whose status entities match
+	 * the specified criteria. A keys-only (projection) query is used, so the
+	 * status entity properties are not transferred from Datastore.
+	 * 
+	 * @param p
+	 * @param targetProcessStatusFlag
+	 * @param requiredProcessStatusFlags
+	 * @param gcpProjectId
+	 * @param collection
+	 * @param overwriteOutput
+	 * @return the document identifiers
+	 */
+	public static PCollection<String> getDocumentIdsToProcess(Pipeline p, ProcessingStatusFlag targetProcessStatusFlag,
+			Set<ProcessingStatusFlag> requiredProcessStatusFlags, String gcpProjectId, String collection,
+			OverwriteOutput overwriteOutput) {
+		Query query = toKeysOnlyQuery(
+				buildStatusQuery(targetProcessStatusFlag, requiredProcessStatusFlags, collection, overwriteOutput));
+		PCollection<Entity> statusKeys = readEntities(p, "load status keys", "status_key", query, gcpProjectId);
+		return toDocumentIds(statusKeys);
+	}
+
+	/**
+	 * @param statusEntities status entities; only the keys are used
+	 * @return the document identifiers for the status entities
+	 */
+	@VisibleForTesting
+	protected static PCollection<String> toDocumentIds(PCollection<Entity> statusEntities) {
+		return statusEntities.apply("status key->document id", ParDo.of(new DoFn<Entity, String>() {
+			private static final long serialVersionUID = 1L;
+
+			@ProcessElement
+			public void processElement(@Element Entity statusEntity, OutputReceiver<String> out) {
+				out.output(DatastoreKeyUtil.getDocumentIdFromStatusKey(statusEntity.getKey()));
+			}
+		}));
+	}
+
+	/**
+	 * Reads the entities matching the query from the {@link DocumentStore}
+	 * specified by the {@link DocumentStoreOptions}. When reading from Datastore,
+	 * the query is split into __key__ ranges that are read in parallel; the number
+	 * of ranges can be set using
+	 * {@link DatastoreReadOptions#getDatastoreNumQuerySplits()}. The number of
+	 * entities and bytes read are reported as counters in the "datastore"
+	 * namespace.
+	 * 
+	 * @param p
+	 * @param stepName
+	 * @param metricPrefix prefix for the names of the read counters
+	 * @param query
+	 * @param gcpProjectId
+	 * @return
+	 */
+	private static PCollection<Entity> readEntities(Pipeline p, String stepName, String metricPrefix, Query query,
+			String gcpProjectId) {
+		DocumentStore store = DocumentStore.fromOptions(p.getOptions(), gcpProjectId);
+		return p.apply(stepName, store.read(query)).apply(stepName + " - metrics",
+				ParDo.of(new EntityReadMetricsFn(metricPrefix)));
+	}
+
+	/**
+	 * Counts the entities, and their serialized size, that pass through
+	 */
+	@VisibleForTesting
+	protected static class EntityReadMetricsFn extends DoFn<Entity, Entity> {
+		private static final long serialVersionUID = 1L;
+
+		private final Counter entityCounter;
+		private final Counter byteCounter;
+
+		public EntityReadMetricsFn(String metricPrefix) {
+			this.entityCounter = Metrics.counter(DATASTORE_METRICS_NAMESPACE, metricPrefix + "_entities_read");
+			this.byteCounter = Metrics.counter(DATASTORE_METRICS_NAMESPACE, metricPrefix + "_bytes_read");
+		}
+
+		@ProcessElement
+		public void processElement(@Element Entity entity, OutputReceiver<Entity> out) {
+			entityCounter.inc();
+			byteCounter.inc(entity.getSerializedSize());
+			out.output(entity);
+		}
+	}
+
+	/**
+	 * @param query
+	 * @return a copy of the query that only returns entity keys
+	 */
+	@VisibleForTesting
+	protected static Query toKeysOnlyQuery(Query query) {
+		Query.Builder builder = query.toBuilder();
+		builder.clearProjection();
+		builder.addProjectionBuilder().getPropertyBuilder().setName(KEY_PROPERTY_NAME);
+		return builder.build();
+	}
+
+	/**
+	 * @param targetProcessStatusFlag
+	 * @param requiredProcessStatusFlags
+	 * @param collection
+	 * @param overwriteOutput
+	 * @return a query for the status entities of documents that meet the required
+	 *         process status flag criteria but whose target process status flag is
+	 *         false (unless output is being overwritten)
+	 */
+	@VisibleForTesting
+	protected static Query buildStatusQuery(ProcessingStatusFlag targetProcessStatusFlag,
+			Set<ProcessingStatusFlag> requiredProcessStatusFlags, String collection,
+			OverwriteOutput overwriteOutput) {
 		LOGGER.log(Level.INFO, String.format("PROCESSING STATUS FILTER SETTINGS: \nOVERWRITE: %s\nCOLLECTION: %s",
 				overwriteOutput.name(), collection));
 		List<Filter> filters = new ArrayList<Filter>();
@@ -407,23 +526,7 @@ public class PipelineMain {
 		Query.Builder query = Query.newBuilder();
 		query.addKindBuilder().setName(STATUS_KIND);
 		query.setFilter(filter);
-
-		PCollection<Entity> status = p.apply("load status entities",
-				DatastoreIO.v1().read().withQuery(query.build()).withProjectId(gcpProjectId));
-
-		PCollection<KV<String, ProcessingStatus>> docId2Status = status.apply("status entity->status",
-				ParDo.of(new DoFn<Entity, KV<String, ProcessingStatus>>() {
-					private static final long serialVersionUID = 1L;
-
-					@ProcessElement
-					public void processElement(@Element Entity statusEntity,
-							OutputReceiver<KV<String, ProcessingStatus>> out) {
-						ProcessingStatus ps = new ProcessingStatus(statusEntity);
-						out.output(KV.of(ps.getDocumentId(), ps));
-					}
-				}));
-
-		return docId2Status;
+		return query.build();
 	}
 
 	public static PCollection<KV<String, ProcessedDocument>> getDocumentEntitiesToProcess(Pipeline p,
@@ -443,9 +546,9 @@ public class PipelineMain {
 			query.setFilter(filter);
 		}
 
-		PCollection<Entity> documents = p.apply(
+		PCollection<Entity> documents = readEntities(p,
 				String.format("load %s", (documentType == null) ? "all types" : documentType.name().toLowerCase()),
-				DatastoreIO.v1().read().withQuery(query.build()).withProjectId(gcpProjectId));
+				"document", query.build(), gcpProjectId);
 
 		PCollection<KV<String, ProcessedDocument>> docId2Document = documents.apply("document entity -> PD",
 				ParDo.of(new DoFn<Entity, KV<String, ProcessedDocument>>() {
@@ -473,6 +576,80 @@ public class PipelineMain {
 		return docId2Document;
 	}
 
+	/**
+	 * Retrieves the documents for all of the specified document criteria using a
+	 * single query over the document kind. Filters are only applied to the query
+	 * for properties that are shared by all of the document criteria, so each
+	 * retrieved document chunk is then routed by its criteria and chunks that do
+	 * not match one of the specified criteria are dropped.
+	 * 
+	 * @param p
+	 * @param docCriteria
+	 * @param collection
+	 * @param gcpProjectId
+	 * @return a mapping from document id to document chunk for all of the
+	 *         specified document criteria
+	 */
+	public static PCollection<KV<String, ProcessedDocument>> getDocumentEntitiesToProcess(Pipeline p,
+			Set<DocumentCriteria> docCriteria, String collection, String gcpProjectId) {
+		if (docCriteria.size() == 1) {
+			return getDocumentEntitiesToProcess(p, docCriteria.iterator().next(), collection, gcpProjectId);
+		}
+
+		DocumentFormat documentFormat = getSharedValue(docCriteria, DocumentCriteria::getDocumentFormat);
+		DocumentType documentType = getSharedValue(docCriteria, DocumentCriteria::getDocumentType);
+		PipelineKey pipelineKey = getSharedValue(docCriteria, DocumentCriteria::getPipelineKey);
+		String pipelineVersion = getSharedValue(docCriteria, DocumentCriteria::getPipelineVersion);
+
+		List<Filter> filters = setFilters(collection, documentFormat, documentType, pipelineKey, pipelineVersion);
+
+		Query.Builder query = Query.newBuilder();
+		query.addKindBuilder().setName(DOCUMENT_KIND);
+
+		if (!filters.isEmpty()) {
+			Filter filter = makeAndFilter(filters).build();
+			query.setFilter(filter);
+		}
+
+		final Set<DocumentCriteria> criteria = new HashSet<DocumentCriteria>(docCriteria);
+		PCollection<Entity> documents = readEntities(p, String.format("load %d document types", criteria.size()),
+				"document", query.build(), gcpProjectId);
+
+		PCollection<KV<String, ProcessedDocument>> docId2Document = documents.apply("route document entity -> PD",
+				ParDo.of(new DoFn<Entity, KV<String, ProcessedDocument>>() {
+					private static final long serialVersionUID = 1L;
+
+					@ProcessElement
+					public void processElement(@Element Entity documentEntity,
+							OutputReceiver<KV<String, ProcessedDocument>> out) {
+						try {
+							ProcessedDocument pd = new ProcessedDocument(documentEntity);
+							if (criteria.contains(pd.getDocumentCriteria())) {
+								out.output(KV.of(pd.getDocumentId(), pd));
+							}
+						} catch (UnsupportedEncodingException e) {
+							throw new IllegalStateException("Error while converting from entity to ProcessedDocument.",
+									e);
+						}
+					}
+				}));
+
+		return docId2Document;
+	}
+
+	/**
+	 * @param <T>
+	 * @param docCriteria
+	 * @param getter
+	 * @return the value returned by the getter if it is shared by all of the input
+	 *         document criteria, null otherwise
+	 */
+	private static <T> T getSharedValue(Set<DocumentCriteria> docCriteria,
+			Function<DocumentCriteria, T> getter) {
+		Set<T> values = docCriteria.stream().map(getter).collect(Collectors.toSet());
+		return (values.size() == 1) ? values.iterator().next() : null;
+	}
+
 	private static List<Filter> setFilters(String collection, DocumentFormat documentFormat, DocumentType documentType,
 			PipelineKey pipelineKey, String pipelineVersion) {
 		List<Filter> filters = new ArrayList<Filter>();
@@ -519,19 +696,14 @@ public class PipelineMain {
 	 * @throws UnsupportedEncodingException
 	 */
 	public static List<String> chunkContent(String input) throws UnsupportedEncodingException {
-		List<String> chunks = new ArrayList<String>();
-
-		if (input.getBytes("UTF-8").length < DatastoreConstants.MAX_STRING_STORAGE_SIZE_IN_BYTES) {
-			chunks.add(input);
-		} else {
-			chunks.addAll(splitStringByByteLength(input, CharacterEncoding.UTF_8,
-					DatastoreConstants.MAX_STRING_STORAGE_SIZE_IN_BYTES));
-		}
-
-		return chunks;
+		return ContentChunkUtil.chunk(input, DatastoreConstants.MAX_STRING_STORAGE_SIZE_IN_BYTES);
 	}
 
 	/**
+	 * Superseded by {@link ContentChunkUtil#chunk(String, int)}, which determines
+	 * the chunk boundaries in a single pass without encoding the input. Retained
+	 * as a reference implementation for benchmarking.
+	 * 
 	 * from:
 	 * https://stackoverflow.com/questions/48868721/splitting-a-string-with-byte-length-limits-in-java
 	 * 
@@ -1078,13 +1250,13 @@ public class PipelineMain {
 		// are not new documents, so they should be excluded from being loaded into
 		// datastore here.
 
-		PCollection<KV<String, ProcessingStatus>> docIdToStatusEntity = PipelineMain.getStatusEntitiesToProcess(p,
-				ProcessingStatusFlag.NOOP, CollectionsUtil.createSet(ProcessingStatusFlag.TEXT_DONE), project,
-				collection, OverwriteOutput.YES);
+		// only the document IDs are needed, so only the status entity keys are
+		// retrieved
+		PCollection<String> docIds = PipelineMain.getDocumentIdsToProcess(p, ProcessingStatusFlag.NOOP,
+				CollectionsUtil.createSet(ProcessingStatusFlag.TEXT_DONE), project, collection, OverwriteOutput.YES);
 
 		// create a set of document IDs already present in Datastore to be used as a
 		// side input
-		PCollection<String> docIds = docIdToStatusEntity.apply(Keys.<String>create());
 		final PCollectionView<Set<String>> existingDocumentIds = PCollectionUtil.createPCollectionViewSet(docIds);
 		return existingDocumentIds;
 	}
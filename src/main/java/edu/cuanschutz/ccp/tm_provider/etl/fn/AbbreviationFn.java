@@ -4,6 +4,7 @@ import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -18,10 +19,12 @@ import java.util.regex.Pattern;
 import org.apache.beam.examples.subprocess.configuration.SubProcessConfiguration;
 import org.apache.beam.examples.subprocess.kernel.SubProcessCommandLineArgs;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.uima.pear.util.StringUtil;
+import org.joda.time.Instant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,11 +67,24 @@ public class AbbreviationFn
 	public static TupleTag<EtlFailureData> ETL_FAILURE_TAG = new TupleTag<EtlFailureData>() {
 	};
 
+	/**
+	 * Ab3P echoes each input line, so this line is written between the sentences
+	 * of consecutive documents in order to split the output back into documents
+	 */
+	@VisibleForTesting
+	protected static final String DOCUMENT_BOUNDARY = "AB3P_DOCUMENT_BOUNDARY";
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
 	private SubProcessConfiguration configuration;
 	private List<String> filesToDownloadToWorker;
 	private String binaryName;
 	private DocumentCriteria outputDocCriteria;
 	private com.google.cloud.Timestamp timestamp;
+	private int batchSize;
+
+	/* documents waiting to be sent to Ab3P */
+	private transient List<PendingDocument> batch;
 
 	/**
 	 * @param configuration
@@ -83,11 +99,33 @@ public class AbbreviationFn
 	public AbbreviationFn(SubProcessConfiguration configuration, String binaryName,
 			List<String> filesToDownloadToWorker, DocumentCriteria outputDocCriteria,
 			com.google.cloud.Timestamp timestamp) {
+		this(configuration, binaryName, filesToDownloadToWorker, outputDocCriteria, timestamp, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param configuration
+	 * @param binaryName              the name of the compiled binary file to run
+	 *                                the external process
+	 * @param filesToDownloadToWorker a list of all files that need to be downloaded
+	 *                                to the worker in order for the compiled binary
+	 *                                to function properly
+	 * @param outputDocCriteria
+	 * @param timestamp
+	 * @param batchSize               the max number of documents processed by a
+	 *                                single invocation of the Ab3P binary
+	 */
+	public AbbreviationFn(SubProcessConfiguration configuration, String binaryName,
+			List<String> filesToDownloadToWorker, DocumentCriteria outputDocCriteria,
+			com.google.cloud.Timestamp timestamp, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1. Observed: " + batchSize);
+		}
 		this.configuration = configuration;
 		this.binaryName = binaryName;
 		this.filesToDownloadToWorker = filesToDownloadToWorker;
 		this.outputDocCriteria = outputDocCriteria;
 		this.timestamp = timestamp;
+		this.batchSize = batchSize;
 	}
 
 	@Setup
@@ -95,54 +133,200 @@ public class AbbreviationFn
 		CallingSubProcessUtils.setUp(configuration, filesToDownloadToWorker);
 	}
 
+	@StartBundle
+	public void startBundle() {
+		batch = new ArrayList<PendingDocument>();
+	}
+
+	/**
+	 * Documents are buffered and sent to the Ab3P binary in batches of up to
+	 * batchSize documents so that the cost of starting the process is shared by
+	 * the documents in the batch. A full batch is processed here if all of its
+	 * documents share the window and timestamp of the current element; otherwise
+	 * it is processed when the bundle finishes.
+	 */
 	@ProcessElement
 	public void processElement(@Element KV<ProcessingStatus, Map<DocumentCriteria, String>> statusEntityToText,
-			MultiOutputReceiver out) throws Exception {
+			@Timestamp Instant elementTimestamp, BoundedWindow window, MultiOutputReceiver out) throws Exception {
 
 		ProcessingStatus processingStatus = statusEntityToText.getKey();
 		String docId = processingStatus.getDocumentId();
 
-		String documentText = getDocumentText(statusEntityToText.getValue());
-		String sentenceAnnotsInBioNLP = getSentenceAnnots(statusEntityToText.getValue());
-
 		try {
+			String documentText = getDocumentText(statusEntityToText.getValue());
+			String sentenceAnnotsInBioNLP = getSentenceAnnots(statusEntityToText.getValue());
 
-			// write sentences to temporary file - one per line
-			File f = File.createTempFile(UUID.randomUUID().toString(), ".bionlp");
 			BioNLPDocumentReader reader = new BioNLPDocumentReader();
 			TextDocument td = reader.readDocument(docId, "source",
 					new ByteArrayInputStream(sentenceAnnotsInBioNLP.getBytes()),
 					new ByteArrayInputStream(documentText.getBytes()), CharacterEncoding.UTF_8);
-			Map<String, Span> sentenceToSpanMap = new HashMap<String, Span>();
+			batch.add(new PendingDocument(processingStatus, documentText, td.getAnnotations(), elementTimestamp,
+					window));
+		} catch (Throwable t) {
+			out.get(ETL_FAILURE_TAG).output(createFailure(docId, t));
+		}
+
+		if (batch.size() >= batchSize
+				&& batch.stream().allMatch(doc -> doc.matches(elementTimestamp, window))) {
+			processBatch(new Emitter() {
+				@Override
+				public <T> void output(TupleTag<T> tag, T value, PendingDocument doc) {
+					out.get(tag).output(value);
+				}
+			});
+		}
+	}
+
+	@FinishBundle
+	public void finishBundle(FinishBundleContext context) throws Exception {
+		processBatch(new Emitter() {
+			@Override
+			public <T> void output(TupleTag<T> tag, T value, PendingDocument doc) {
+				context.output(tag, value, doc.elementTimestamp, doc.window);
+			}
+		});
+	}
+
+	/**
+	 * Runs Ab3P once over the sentences of all documents in the current batch,
+	 * then outputs the abbreviations for each document. If the Ab3P process fails,
+	 * a failure is output for each document in the batch.
+	 * 
+	 * @param emitter
+	 * @throws IOException
+	 */
+	private void processBatch(Emitter emitter) throws IOException {
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		LOG.debug(String.format("Running Ab3P on a batch of %d documents", batch.size()));
+
+		// write sentences to temporary file - one per line
+		File f = File.createTempFile(UUID.randomUUID().toString(), ".txt");
+		try {
 			try (BufferedWriter writer = FileWriterUtil.initBufferedWriter(f)) {
-				for (TextAnnotation annot : td.getAnnotations()) {
-					writer.write(annot.getCoveredText() + "\n");
-					sentenceToSpanMap.put(annot.getCoveredText(), annot.getAggregateSpan());
-					LOG.warn("SENTENCE-TO-FILE: " + annot.getCoveredText());
+				writeBatch(batch, writer);
+			}
+
+			List<List<String>> resultsByDocument;
+			try {
+				SubProcessCommandLineArgs commands = new SubProcessCommandLineArgs();
+				commands.addCommand(0, f.getAbsolutePath());
+				// a new kernel is required for each call as the kernel accumulates command
+				// line arguments
+				SubProcessKernel kernel = new SubProcessKernel(configuration, binaryName,
+						new File(configuration.getWorkerPath()));
+				resultsByDocument = splitResultsByDocument(kernel.exec(commands), batch.size());
+			} catch (Throwable t) {
+				for (PendingDocument doc : batch) {
+					emitter.output(ETL_FAILURE_TAG, createFailure(doc.processingStatus.getDocumentId(), t), doc);
 				}
+				return;
 			}
 
-			SubProcessCommandLineArgs commands = new SubProcessCommandLineArgs();
-			commands.addCommand(0, f.getAbsolutePath());
-//			Command command = new Command(0, f.getAbsolutePath());
-//			commands.putCommand(command);
-			SubProcessKernel kernel = new SubProcessKernel(configuration, binaryName,
-					new File(configuration.getWorkerPath()));
-			List<String> results = kernel.exec(commands);
+			for (int i = 0; i < batch.size(); i++) {
+				PendingDocument doc = batch.get(i);
+				try {
+					String abbreviationsInBionlp = serializeAbbreviations(resultsByDocument.get(i),
+							doc.sentenceToSpanMap, doc.documentText);
+					if (abbreviationsInBionlp != null) {
+						List<String> chunkedAbbreviationsOutput = PipelineMain.chunkContent(abbreviationsInBionlp);
+						emitter.output(ABBREVIATIONS_TAG, KV.of(doc.processingStatus, chunkedAbbreviationsOutput), doc);
+					}
+				} catch (Throwable t) {
+					emitter.output(ETL_FAILURE_TAG, createFailure(doc.processingStatus.getDocumentId(), t), doc);
+				}
+			}
+		} finally {
+			batch.clear();
+			f.delete();
+		}
+	}
 
-			String abbreviationsInBionlp = serializeAbbreviations(results, sentenceToSpanMap, documentText);
+	/**
+	 * Writes the sentences for each document, one per line, with a
+	 * {@link #DOCUMENT_BOUNDARY} line between documents
+	 * 
+	 * @param docs
+	 * @param writer
+	 * @throws IOException
+	 */
+	@VisibleForTesting
+	protected static void writeBatch(List<PendingDocument> docs, Writer writer) throws IOException {
+		for (int i = 0; i < docs.size(); i++) {
+			if (i > 0) {
+				writer.write(DOCUMENT_BOUNDARY + "\n");
+			}
+			for (String sentence : docs.get(i).sentences) {
+				writer.write(sentence + "\n");
+			}
+		}
+	}
 
-			if (abbreviationsInBionlp != null) {
-				List<String> chunkedAbbreviationsOutput = PipelineMain.chunkContent(abbreviationsInBionlp);
-				out.get(ABBREVIATIONS_TAG).output(KV.of(processingStatus, chunkedAbbreviationsOutput));
+	/**
+	 * @param results       the Ab3P output for a batch of documents
+	 * @param documentCount the number of documents in the batch
+	 * @return the Ab3P output split into one list of lines per document
+	 */
+	@VisibleForTesting
+	protected static List<List<String>> splitResultsByDocument(List<String> results, int documentCount) {
+		List<List<String>> resultsByDocument = new ArrayList<List<String>>(documentCount);
+		List<String> current = new ArrayList<String>();
+		for (String line : results) {
+			if (line.equals(DOCUMENT_BOUNDARY)) {
+				resultsByDocument.add(current);
+				current = new ArrayList<String>();
+			} else {
+				current.add(line);
 			}
+		}
+		resultsByDocument.add(current);
 
-		} catch (Throwable t) {
-			EtlFailureData failure = new EtlFailureData(outputDocCriteria, "Failure during abbreviation detection.",
-					docId, t, timestamp);
-			out.get(ETL_FAILURE_TAG).output(failure);
+		if (resultsByDocument.size() != documentCount) {
+			throw new IllegalStateException(String.format(
+					"Unable to align Ab3P output with the input documents. Expected %d documents but observed %d.",
+					documentCount, resultsByDocument.size()));
 		}
+		return resultsByDocument;
+	}
+
+	private EtlFailureData createFailure(String docId, Throwable t) {
+		return new EtlFailureData(outputDocCriteria, "Failure during abbreviation detection.", docId, t, timestamp);
+	}
 
+	private interface Emitter {
+		<T> void output(TupleTag<T> tag, T value, PendingDocument doc);
+	}
+
+	/**
+	 * A document waiting to be processed, along with the sentence spans needed to
+	 * compute the abbreviation offsets once Ab3P has run
+	 */
+	@VisibleForTesting
+	protected static class PendingDocument {
+		private final ProcessingStatus processingStatus;
+		private final String documentText;
+		private final List<String> sentences = new ArrayList<String>();
+		private final Map<String, Span> sentenceToSpanMap = new HashMap<String, Span>();
+		private final Instant elementTimestamp;
+		private final BoundedWindow window;
+
+		public PendingDocument(ProcessingStatus processingStatus, String documentText,
+				List<TextAnnotation> sentenceAnnots, Instant elementTimestamp, BoundedWindow window) {
+			this.processingStatus = processingStatus;
+			this.documentText = documentText;
+			this.elementTimestamp = elementTimestamp;
+			this.window = window;
+			for (TextAnnotation annot : sentenceAnnots) {
+				sentences.add(annot.getCoveredText());
+				sentenceToSpanMap.put(annot.getCoveredText(), annot.getAggregateSpan());
+			}
+		}
+
+		public boolean matches(Instant ts, BoundedWindow w) {
+			return elementTimestamp.equals(ts) && window.equals(w);
+		}
 	}
 
 	private String getSentenceAnnots(Map<DocumentCriteria, String> map) {
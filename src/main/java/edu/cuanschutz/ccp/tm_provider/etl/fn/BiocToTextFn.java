@@ -1,13 +1,15 @@
 package edu.cuanschutz.ccp.tm_provider.etl.fn;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
+import org.apache.beam.sdk.io.FileIO.ReadableFile;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.values.KV;
@@ -25,7 +27,6 @@ import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.Ove
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ProcessingStatusFlag;
 import edu.ucdenver.ccp.common.file.CharacterEncoding;
-import edu.ucdenver.ccp.file.conversion.TextDocument;
 import edu.ucdenver.ccp.file.conversion.bionlp.BioNLPDocumentWriter;
 
 /**
@@ -83,66 +84,112 @@ public class BiocToTextFn extends DoFn<KV<String, String>, KV<String, String>> {
 						String fileId = docIdToBioc.getKey();
 						String biocXml = docIdToBioc.getValue();
 
-						try {
-							Map<String, TextDocument> docIdToDocumentMap = BiocToTextConverter
-									.convert(new InputStreamReader(new ByteArrayInputStream(biocXml.getBytes("UTF-8")),
-											"UTF-8"));
-
-							Set<String> alreadyStoredDocIds = context.sideInput(existingDocumentIds);
-							/*
-							 * It's possible that there are multiple documents in the map, but there is
-							 * likely only one document in the map.
-							 */
-							for (Entry<String, TextDocument> entry : docIdToDocumentMap.entrySet()) {
-								String docId = entry.getKey();
-
-								// if the document id has already been stored, then don't store it again
-								if (overwriteOutput == OverwriteOutput.NO && alreadyStoredDocIds.contains(docId)) {
-									continue;
-								}
-								String plainText = entry.getValue().getText();
-
-								/*
-								 * divide the document content into chunks if necessary so that each chunk is
-								 * under the DataStore byte length threshold
-								 */
-								List<String> chunkedPlainText = PipelineMain.chunkContent(plainText);
-
-								/* serialize the annotations into the BioNLP format */
-								BioNLPDocumentWriter bionlpWriter = new BioNLPDocumentWriter();
-								ByteArrayOutputStream baos = new ByteArrayOutputStream();
-								bionlpWriter.serialize(entry.getValue(), baos, CharacterEncoding.UTF_8);
-								String serializedAnnotations = baos
-										.toString(CharacterEncoding.UTF_8.getCharacterSetName());
-
-								List<String> chunkedAnnotations = PipelineMain.chunkContent(serializedAnnotations);
-
-								context.output(sectionAnnotationsTag, KV.of(docId, chunkedAnnotations));
-								context.output(plainTextTag, KV.of(docId, chunkedPlainText));
-								/*
-								 * output a {@link ProcessingStatus} for the document
-								 */
-								ProcessingStatus status = new ProcessingStatus(docId);
-								status.enableFlag(ProcessingStatusFlag.TEXT_DONE);
-								status.enableFlag(ProcessingStatusFlag.SECTIONS_DONE);
-								status.setYearPublished("2155");
-								status.addPublicationType("unknown");
-
-								if (collection != null) {
-									status.addCollection(collection);
-								}
-								context.output(processingStatusTag, status);
-
-							}
-						} catch (Throwable t) {
+						convert(context, fileId, new StringReader(biocXml), outputTextDocCriteria, timestamp, collection,
+								existingDocumentIds, overwriteOutput);
+					}
+				}).withSideInputs(existingDocumentIds).withOutputTags(plainTextTag,
+						TupleTagList.of(sectionAnnotationsTag).and(etlFailureTag).and(processingStatusTag)));
+	}
+
+	/**
+	 * Streams the BioC XML from each file so that documents are output as they are
+	 * parsed and only one document is held in memory at a time, rather than
+	 * reading the entire file into memory before conversion.
+	 * 
+	 * @param biocFiles
+	 * @param outputTextDocCriteria
+	 * @param outputAnnotationDocCriteria
+	 * @param timestamp
+	 * @param collection
+	 * @param existingDocumentIds
+	 * @param overwriteOutput
+	 * @return
+	 */
+	public static PCollectionTuple processFiles(PCollection<ReadableFile> biocFiles,
+			DocumentCriteria outputTextDocCriteria, DocumentCriteria outputAnnotationDocCriteria,
+			com.google.cloud.Timestamp timestamp, String collection, PCollectionView<Set<String>> existingDocumentIds,
+			OverwriteOutput overwriteOutput) {
+
+		return biocFiles.apply("Stream BioC XML to plain text -- reserve section annotations",
+				ParDo.of(new DoFn<ReadableFile, KV<String, List<String>>>() {
+					private static final long serialVersionUID = 1L;
+
+					@ProcessElement
+					public void processElement(ProcessContext context) {
+						ReadableFile file = context.element();
+						String fileId = file.getMetadata().resourceId().toString();
+						try (Reader reader = Channels.newReader(file.open(), StandardCharsets.UTF_8.name())) {
+							convert(context, fileId, reader, outputTextDocCriteria, timestamp, collection,
+									existingDocumentIds, overwriteOutput);
+						} catch (IOException e) {
 							EtlFailureData failure = new EtlFailureData(outputTextDocCriteria,
-									"Likely failure during BioC XML parsing.", fileId, t, timestamp);
+									"Failure while reading BioC XML file.", fileId, e, timestamp);
 							context.output(etlFailureTag, failure);
 						}
-
 					}
 				}).withSideInputs(existingDocumentIds).withOutputTags(plainTextTag,
 						TupleTagList.of(sectionAnnotationsTag).and(etlFailureTag).and(processingStatusTag)));
 	}
 
+	/**
+	 * Converts each document in the BioC XML and outputs its plain text, section
+	 * annotations and processing status as soon as it has been converted. A
+	 * failure is output if the BioC XML cannot be parsed; documents that were
+	 * converted before the failure are still output.
+	 */
+	private static void convert(DoFn<?, ?>.ProcessContext context, String fileId, Reader biocXml,
+			DocumentCriteria outputTextDocCriteria, com.google.cloud.Timestamp timestamp, String collection,
+			PCollectionView<Set<String>> existingDocumentIds, OverwriteOutput overwriteOutput) {
+		try {
+			Set<String> alreadyStoredDocIds = context.sideInput(existingDocumentIds);
+			/*
+			 * It's possible that there are multiple documents in the collection, but there
+			 * is likely only one document.
+			 */
+			BiocToTextConverter.convert(biocXml, td -> {
+				String docId = td.getSourceid();
+
+				// if the document id has already been stored, then don't store it again
+				if (overwriteOutput == OverwriteOutput.NO && alreadyStoredDocIds.contains(docId)) {
+					return;
+				}
+				String plainText = td.getText();
+
+				/*
+				 * divide the document content into chunks if necessary so that each chunk is
+				 * under the DataStore byte length threshold
+				 */
+				List<String> chunkedPlainText = PipelineMain.chunkContent(plainText);
+
+				/* serialize the annotations into the BioNLP format */
+				BioNLPDocumentWriter bionlpWriter = new BioNLPDocumentWriter();
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				bionlpWriter.serialize(td, baos, CharacterEncoding.UTF_8);
+				String serializedAnnotations = baos.toString(CharacterEncoding.UTF_8.getCharacterSetName());
+
+				List<String> chunkedAnnotations = PipelineMain.chunkContent(serializedAnnotations);
+
+				context.output(sectionAnnotationsTag, KV.of(docId, chunkedAnnotations));
+				context.output(plainTextTag, KV.of(docId, chunkedPlainText));
+				/*
+				 * output a {@link ProcessingStatus} for the document
+				 */
+				ProcessingStatus status = new ProcessingStatus(docId);
+				status.enableFlag(ProcessingStatusFlag.TEXT_DONE);
+				status.enableFlag(ProcessingStatusFlag.SECTIONS_DONE);
+				status.setYearPublished("2155");
+				status.addPublicationType("unknown");
+
+				if (collection != null) {
+					status.addCollection(collection);
+				}
+				context.output(processingStatusTag, status);
+			});
+		} catch (Throwable t) {
+			EtlFailureData failure = new EtlFailureData(outputTextDocCriteria, "Likely failure during BioC XML parsing.",
+					fileId, t, timestamp);
+			context.output(etlFailureTag, failure);
+		}
+	}
+
 }
@@ -3,7 +3,6 @@ package edu.cuanschutz.ccp.tm_provider.etl.fn;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -29,6 +28,7 @@ import edu.cuanschutz.ccp.tm_provider.etl.ProcessingStatus;
 import edu.cuanschutz.ccp.tm_provider.etl.fn.PCollectionUtil.Delimiter;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
+import edu.cuanschutz.ccp.tm_provider.etl.util.SpanIndex;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 import edu.ucdenver.ccp.common.digest.DigestUtil;
 import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
@@ -228,23 +228,12 @@ public class ConceptCooccurrenceCountsFn extends DoFn<KV<String, String>, KV<Str
 			Collection<TextAnnotation> levelAnnots, Collection<TextAnnotation> conceptAnnots) {
 		Map<TextAnnotation, Set<TextAnnotation>> map = new HashMap<TextAnnotation, Set<TextAnnotation>>();
 
-		// annotations must be in sorted lists so we can break the loops below
-		// efficiently
-		List<TextAnnotation> levelAnnotList = new ArrayList<TextAnnotation>();
-		for (TextAnnotation ta : levelAnnots) {
-			levelAnnotList.add(PipelineMain.clone(ta));
-		}
-		List<TextAnnotation> conceptAnnotList = new ArrayList<TextAnnotation>();
-		for (TextAnnotation ta : conceptAnnots) {
-			conceptAnnotList.add(PipelineMain.clone(ta));
-		}
-
-		Collections.sort(levelAnnotList, TextAnnotation.BY_SPAN());
-		Collections.sort(conceptAnnotList, TextAnnotation.BY_SPAN());
-
-		for (TextAnnotation concept : conceptAnnotList) {
-			for (TextAnnotation level : levelAnnotList) {
-				if (concept.overlaps(level) && level.getAggregateSpan().containsSpan(concept.getAggregateSpan())) {
+		SpanIndex<TextAnnotation> levelAnnotIndex = SpanIndex.create(levelAnnots);
+		for (TextAnnotation concept : conceptAnnots) {
+			// candidates are in span order, so the concept is assigned to the first level
+			// annotation that contains it
+			for (TextAnnotation level : levelAnnotIndex.getContaining(concept.getAggregateSpan())) {
+				if (concept.overlaps(level)) {
 					if (map.containsKey(level)) {
 						map.get(level).add(concept);
 					} else {
@@ -0,0 +1,245 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import edu.cuanschutz.ccp.tm_provider.etl.PipelineMain;
+import edu.cuanschutz.ccp.tm_provider.etl.util.AncestorIndex;
+import edu.ucdenver.ccp.nlp.core.annotation.Span;
+import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
+import edu.ucdenver.ccp.nlp.core.util.StopWordUtil;
+
+/**
+ * Applies the concept post-processing rules of {@link ConceptPostProcessingFn}
+ * in a single pass over the annotations of a document. The rules and their
+ * order are unchanged:
+ * <ol>
+ * <li>CRAFT extension class identifiers are converted to OBO identifiers</li>
+ * <li>PR identifiers are promoted to their gene-level class</li>
+ * <li>select NCBITaxon identifiers are excluded</li>
+ * <li>NCBITaxon annotations with the same span are reduced to the most general
+ * classes</li>
+ * <li>annotations covering stop words (or fewer than three characters) are
+ * removed</li>
+ * <li>HP, MONDO, UBERON and CHEBI annotations that are not descendants of the
+ * relevant root classes are removed</li>
+ * </ol>
+ * Except for the NCBITaxon promotion, which compares annotations with the same
+ * span, each rule depends only on the annotation itself, so the identifier
+ * rewrites and filters are applied to each annotation in turn and only the
+ * NCBITaxon annotations are grouped by span. Annotations are only copied if
+ * their identifier changes.
+ * <p>
+ * The number of annotations affected by each rule is recorded and is available
+ * from {@link #getHitCount(Rule)}.
+ * <p>
+ * An engine holds no per-document state other than the hit counts, so it can be
+ * created once, e.g. per DoFn instance, and applied to each document in turn.
+ * It is not thread-safe.
+ */
+public class ConceptPostProcessingEngine {
+
+	public enum Rule {
+		/* counts annotations whose identifier was converted */
+		EXTENSION_TO_OBO,
+		/* counts annotations whose identifier was promoted */
+		PR_PROMOTION,
+		/* the remaining rules count annotations that were removed */
+		NCBITAXON_EXCLUSION, NCBITAXON_PROMOTION, STOP_WORD, HP_FILTER, MONDO_FILTER, UBERON_FILTER, CHEBI_FILTER
+	}
+
+	private static final String NCBITAXON_PREFIX = "NCBITaxon:";
+
+	private static final Set<String> STOPWORDS = new HashSet<String>(StopWordUtil.STOPWORDS);
+
+	/**
+	 * Annotations with identifiers that start with one of these prefixes are only
+	 * kept if they are descendants of one of the corresponding classes. The
+	 * filters are applied in this order.
+	 */
+	private static final Map<Rule, String> ONTOLOGY_FILTER_PREFIXES = new LinkedHashMap<Rule, String>();
+	private static final Map<Rule, List<String>> ONTOLOGY_FILTER_ANCESTORS = new EnumMap<Rule, List<String>>(
+			Rule.class);
+	static {
+		addOntologyFilter(Rule.HP_FILTER, "HP", "HP:0000118" /* phenotypic abnormality */);
+		addOntologyFilter(Rule.MONDO_FILTER, "MONDO", "MONDO:0000001" /* disease or disorder */);
+		addOntologyFilter(Rule.UBERON_FILTER, "UBERON", "UBERON:0001062" /* anatomical entity */);
+		addOntologyFilter(Rule.CHEBI_FILTER, "CHEBI",
+				"CHEBI:59999" /* chemical substance */, "CHEBI:50906" /* role */);
+	}
+
+	private static void addOntologyFilter(Rule rule, String prefix, String... ancestorIds) {
+		ONTOLOGY_FILTER_PREFIXES.put(rule, prefix);
+		ONTOLOGY_FILTER_ANCESTORS.put(rule, Collections.unmodifiableList(Arrays.asList(ancestorIds)));
+	}
+
+	private final Map<String, Set<String>> extensionToOboMap;
+	private final Map<String, String> prPromotionMap;
+	private final NcbiTaxonPreferenceResolver taxonResolver;
+	private final Map<String, Set<String>> oboToAncestorsMap;
+
+	private final long[] hitCounts = new long[Rule.values().length];
+
+	public ConceptPostProcessingEngine(Map<String, Set<String>> extensionToOboMap, Map<String, String> prPromotionMap,
+			Map<String, Set<String>> ncbitaxonAncestorMap, Map<String, Set<String>> oboToAncestorsMap) {
+		this(extensionToOboMap, prPromotionMap, new NcbiTaxonPreferenceResolver(ncbitaxonAncestorMap),
+				oboToAncestorsMap);
+	}
+
+	/**
+	 * @param extensionToOboMap
+	 * @param prPromotionMap
+	 * @param taxonResolver     resolver for the NCBITaxon ancestor map, e.g. one
+	 *                          created once from an {@link AncestorIndex} file
+	 * @param oboToAncestorsMap
+	 */
+	public ConceptPostProcessingEngine(Map<String, Set<String>> extensionToOboMap, Map<String, String> prPromotionMap,
+			NcbiTaxonPreferenceResolver taxonResolver, Map<String, Set<String>> oboToAncestorsMap) {
+		this.extensionToOboMap = extensionToOboMap;
+		this.prPromotionMap = prPromotionMap;
+		this.taxonResolver = taxonResolver;
+		this.oboToAncestorsMap = oboToAncestorsMap;
+	}
+
+	/**
+	 * @param annots
+	 * @return the post-processed annotations
+	 */
+	public Set<TextAnnotation> apply(Collection<TextAnnotation> annots) {
+		Set<TextAnnotation> toKeep = new HashSet<TextAnnotation>();
+		Map<Span, Set<TextAnnotation>> spanToTaxonAnnotMap = new HashMap<Span, Set<TextAnnotation>>();
+
+		List<String> ids = new ArrayList<String>(1);
+		for (TextAnnotation annot : annots) {
+			String originalId = annot.getClassMention().getMentionName();
+
+			ids.clear();
+			Set<String> convertedIds = extensionToOboMap.get(originalId);
+			if (convertedIds != null) {
+				hit(Rule.EXTENSION_TO_OBO);
+				ids.addAll(convertedIds);
+			} else {
+				ids.add(originalId);
+			}
+
+			for (String id : ids) {
+				String promotedId = prPromotionMap.get(id);
+				if (promotedId != null) {
+					hit(Rule.PR_PROMOTION);
+					id = promotedId;
+				}
+
+				if (ConceptPostProcessingFn.NCBITAXON_IDS_TO_EXCLUDE.contains(id)) {
+					hit(Rule.NCBITAXON_EXCLUSION);
+					continue;
+				}
+
+				TextAnnotation ta = annot;
+				if (!id.equals(originalId)) {
+					ta = PipelineMain.clone(annot);
+					ta.getClassMention().setMentionName(id);
+				}
+
+				if (id.startsWith(NCBITAXON_PREFIX)) {
+					// taxon annotations are filtered once the annotations for each span are known
+					spanToTaxonAnnotMap.computeIfAbsent(ta.getAggregateSpan(), k -> new HashSet<TextAnnotation>())
+							.add(ta);
+				} else if (keep(ta, id)) {
+					toKeep.add(ta);
+				}
+			}
+		}
+
+		for (Set<TextAnnotation> taxonAnnots : spanToTaxonAnnotMap.values()) {
+			for (TextAnnotation ta : promoteNcbiTaxonAnnots(taxonAnnots)) {
+				if (keep(ta, ta.getClassMention().getMentionName())) {
+					toKeep.add(ta);
+				}
+			}
+		}
+
+		return toKeep;
+	}
+
+	/**
+	 * @param taxonAnnots NCBITaxon annotations that share the same span
+	 * @return the annotations for the most general classes
+	 */
+	private Collection<TextAnnotation> promoteNcbiTaxonAnnots(Set<TextAnnotation> taxonAnnots) {
+		if (taxonAnnots.size() == 1) {
+			return taxonAnnots;
+		}
+		Map<String, TextAnnotation> typeToAnnotMap = new HashMap<String, TextAnnotation>();
+		for (TextAnnotation annot : taxonAnnots) {
+			typeToAnnotMap.put(annot.getClassMention().getMentionName(), annot);
+		}
+		Set<String> typesToKeep = taxonResolver.prefer(typeToAnnotMap.keySet());
+		hit(Rule.NCBITAXON_PROMOTION, taxonAnnots.size() - typesToKeep.size());
+		List<TextAnnotation> kept = new ArrayList<TextAnnotation>(typesToKeep.size());
+		for (String type : typesToKeep) {
+			kept.add(typeToAnnotMap.get(type));
+		}
+		return kept;
+	}
+
+	/**
+	 * Applies the stop word and ontology filters
+	 *
+	 * @param annot
+	 * @param id
+	 * @return true if the annotation should be kept
+	 */
+	private boolean keep(TextAnnotation annot, String id) {
+		String coveredText = annot.getCoveredText();
+		if (coveredText.length() <= 2 || STOPWORDS.contains(coveredText.toLowerCase())) {
+			hit(Rule.STOP_WORD);
+			return false;
+		}
+		for (Entry<Rule, String> entry : ONTOLOGY_FILTER_PREFIXES.entrySet()) {
+			if (id.startsWith(entry.getValue())) {
+				Set<String> ancestorIds = oboToAncestorsMap.get(id);
+				if (ancestorIds == null
+						|| Collections.disjoint(ancestorIds, ONTOLOGY_FILTER_ANCESTORS.get(entry.getKey()))) {
+					hit(entry.getKey());
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private void hit(Rule rule) {
+		hitCounts[rule.ordinal()]++;
+	}
+
+	private void hit(Rule rule, long count) {
+		hitCounts[rule.ordinal()] += count;
+	}
+
+	/**
+	 * @param rule
+	 * @return the number of annotations affected by the rule since the engine was
+	 *         created or the hit counts were last reset
+	 */
+	public long getHitCount(Rule rule) {
+		return hitCounts[rule.ordinal()];
+	}
+
+	/**
+	 * Sets the hit counts of all rules to zero
+	 */
+	public void resetHitCounts() {
+		Arrays.fill(hitCounts, 0);
+	}
+
+}
@@ -10,8 +10,10 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.apache.beam.sdk.metrics.Metrics;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionTuple;
@@ -25,6 +27,8 @@ import edu.cuanschutz.ccp.tm_provider.etl.EtlFailureData;
 import edu.cuanschutz.ccp.tm_provider.etl.PipelineMain;
 import edu.cuanschutz.ccp.tm_provider.etl.PipelineMain.FilterFlag;
 import edu.cuanschutz.ccp.tm_provider.etl.ProcessingStatus;
+import edu.cuanschutz.ccp.tm_provider.etl.fn.ConceptPostProcessingEngine.Rule;
+import edu.cuanschutz.ccp.tm_provider.etl.util.AncestorIndex;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
@@ -50,6 +54,8 @@ public class ConceptPostProcessingFn extends DoFn<KV<String, String>, KV<String,
 	public static TupleTag<EtlFailureData> ETL_FAILURE_TAG = new TupleTag<EtlFailureData>() {
 	};
 
+	private static final String METRICS_NAMESPACE = "concept_post_processing";
+
 	public static final Set<String> NCBITAXON_IDS_TO_EXCLUDE = CollectionsUtil
 			.createSet("NCBITaxon:169495" /* matches "This" */);
 
@@ -61,21 +67,107 @@ public class ConceptPostProcessingFn extends DoFn<KV<String, String>, KV<String,
 			PCollectionView<Map<String, String>> prPromotionMapView,
 			PCollectionView<Map<String, Set<String>>> ncbiTaxonAncestorMapView,
 			PCollectionView<Map<String, Set<String>>> oboToAncestorsMapView, FilterFlag filterFlag) {
+		return process(statusEntityToText, outputDocCriteria, timestamp, requiredDocumentCriteria,
+				extensionToOboMapView, prPromotionMapView, ncbiTaxonAncestorMapView, oboToAncestorsMapView, null, null,
+				null, null, filterFlag);
+	}
+
+	/**
+	 * Each of the lookup tables can be supplied either as a map side input or as
+	 * the path to an {@link AncestorIndex} file. Index files are memory-mapped
+	 * once per worker and queried in place, so the (large) ancestor and NCBITaxon
+	 * maps do not need to be materialized on the heap of every worker. If an index
+	 * file path is specified, the corresponding view is ignored and may be null.
+	 */
+	public static PCollectionTuple process(
+			PCollection<KV<ProcessingStatus, Map<DocumentCriteria, String>>> statusEntityToText,
+			DocumentCriteria outputDocCriteria, com.google.cloud.Timestamp timestamp,
+			Set<DocumentCriteria> requiredDocumentCriteria,
+			PCollectionView<Map<String, Set<String>>> extensionToOboMapView,
+			PCollectionView<Map<String, String>> prPromotionMapView,
+			PCollectionView<Map<String, Set<String>>> ncbiTaxonAncestorMapView,
+			PCollectionView<Map<String, Set<String>>> oboToAncestorsMapView, String extensionToOboIndexFilePath,
+			String prPromotionIndexFilePath, String ncbiTaxonAncestorIndexFilePath, String oboToAncestorsIndexFilePath,
+			FilterFlag filterFlag) {
+
+		List<PCollectionView<?>> sideInputs = new ArrayList<PCollectionView<?>>();
+		if (extensionToOboIndexFilePath == null) {
+			sideInputs.add(extensionToOboMapView);
+		}
+		if (prPromotionIndexFilePath == null) {
+			sideInputs.add(prPromotionMapView);
+		}
+		if (ncbiTaxonAncestorIndexFilePath == null) {
+			sideInputs.add(ncbiTaxonAncestorMapView);
+		}
+		if (oboToAncestorsIndexFilePath == null) {
+			sideInputs.add(oboToAncestorsMapView);
+		}
+		boolean usesSideInputs = !sideInputs.isEmpty();
 
 		return statusEntityToText.apply("Identify concept annotations", ParDo.of(
 				new DoFn<KV<ProcessingStatus, Map<DocumentCriteria, String>>, KV<ProcessingStatus, List<String>>>() {
 					private static final long serialVersionUID = 1L;
 
+					private transient Map<String, Set<String>> extensionToOboIndexMap;
+					private transient Map<String, String> prPromotionIndexMap;
+					private transient NcbiTaxonPreferenceResolver ncbitaxonIndexResolver;
+					private transient Map<String, Set<String>> oboToAncestorsIndexMap;
+
+					/*
+					 * the engine is created once, in setup if all lookup tables are index files,
+					 * otherwise from the side inputs for the first element of each window. The
+					 * NCBITaxon resolver is likewise created once per window from the side input.
+					 */
+					private transient ConceptPostProcessingEngine engine;
+					private transient BoundedWindow engineWindow;
+
+					@Setup
+					public void setup() {
+						if (extensionToOboIndexFilePath != null) {
+							extensionToOboIndexMap = AncestorIndex.getSharedInstance(extensionToOboIndexFilePath)
+									.asMap();
+						}
+						if (prPromotionIndexFilePath != null) {
+							prPromotionIndexMap = AncestorIndex.getSharedInstance(prPromotionIndexFilePath)
+									.asSingleValueMap();
+						}
+						if (ncbiTaxonAncestorIndexFilePath != null) {
+							ncbitaxonIndexResolver = new NcbiTaxonPreferenceResolver(
+									AncestorIndex.getSharedInstance(ncbiTaxonAncestorIndexFilePath));
+						}
+						if (oboToAncestorsIndexFilePath != null) {
+							oboToAncestorsIndexMap = AncestorIndex.getSharedInstance(oboToAncestorsIndexFilePath)
+									.asMap();
+						}
+						if (!usesSideInputs) {
+							engine = new ConceptPostProcessingEngine(extensionToOboIndexMap, prPromotionIndexMap,
+									ncbitaxonIndexResolver, oboToAncestorsIndexMap);
+						}
+					}
+
 					@ProcessElement
-					public void processElement(ProcessContext context, MultiOutputReceiver out) {
+					public void processElement(ProcessContext context, BoundedWindow window, MultiOutputReceiver out) {
 						KV<ProcessingStatus, Map<DocumentCriteria, String>> statusEntityToText = context.element();
 						ProcessingStatus statusEntity = statusEntityToText.getKey();
 						String docId = statusEntity.getDocumentId();
 
-						Map<String, Set<String>> extensionToOboMap = context.sideInput(extensionToOboMapView);
-						Map<String, String> prPromotionMap = context.sideInput(prPromotionMapView);
-						Map<String, Set<String>> ncbitaxonPromotionMap = context.sideInput(ncbiTaxonAncestorMapView);
-						Map<String, Set<String>> oboToAncestorsMap = context.sideInput(oboToAncestorsMapView);
+						if (engine == null || (usesSideInputs && !window.equals(engineWindow))) {
+							Map<String, Set<String>> extensionToOboMap = (extensionToOboIndexMap != null)
+									? extensionToOboIndexMap
+									: context.sideInput(extensionToOboMapView);
+							Map<String, String> prPromotionMap = (prPromotionIndexMap != null) ? prPromotionIndexMap
+									: context.sideInput(prPromotionMapView);
+							NcbiTaxonPreferenceResolver ncbitaxonResolver = (ncbitaxonIndexResolver != null)
+									? ncbitaxonIndexResolver
+									: new NcbiTaxonPreferenceResolver(context.sideInput(ncbiTaxonAncestorMapView));
+							Map<String, Set<String>> oboToAncestorsMap = (oboToAncestorsIndexMap != null)
+									? oboToAncestorsIndexMap
+									: context.sideInput(oboToAncestorsMapView);
+							engine = new ConceptPostProcessingEngine(extensionToOboMap, prPromotionMap,
+									ncbitaxonResolver, oboToAncestorsMap);
+							engineWindow = window;
+						}
 
 						try {
 							// check to see if all documents are present
@@ -96,15 +188,15 @@ public class ConceptPostProcessingFn extends DoFn<KV<String, String>, KV<String,
 
 								Set<TextAnnotation> allAnnots = PipelineMain.spliceValues(docTypeToAnnotsMap.values());
 
-								allAnnots = convertExtensionToObo(allAnnots, extensionToOboMap);
-								allAnnots = promotePrAnnots(allAnnots, prPromotionMap);
-								allAnnots = excludeSelectNcbiTaxonAnnots(allAnnots);
-								allAnnots = promoteNcbiTaxonAnnots(allAnnots, ncbitaxonPromotionMap);
-								allAnnots = removeNcbiStopWords(allAnnots);
-								allAnnots = removeIrrelevantHpConcepts(allAnnots, oboToAncestorsMap);
-								allAnnots = removeIrrelevantMondoConcepts(allAnnots, oboToAncestorsMap);
-								allAnnots = removeIrrelevantUberonConcepts(allAnnots, oboToAncestorsMap);
-								allAnnots = removeIrrelevantChebiConcepts(allAnnots, oboToAncestorsMap);
+								allAnnots = engine.apply(allAnnots);
+								for (Rule rule : Rule.values()) {
+									long hits = engine.getHitCount(rule);
+									if (hits > 0) {
+										Metrics.counter(METRICS_NAMESPACE, rule.name().toLowerCase() + "_hits")
+												.inc(hits);
+									}
+								}
+								engine.resetHitCounts();
 
 								String documentText = PipelineMain.getDocumentText(docs);
 								TextDocument td = new TextDocument(statusEntity.getDocumentId(), "unknown",
@@ -125,119 +217,10 @@ public class ConceptPostProcessingFn extends DoFn<KV<String, String>, KV<String,
 						}
 					}
 
-				}).withSideInputs(extensionToOboMapView, prPromotionMapView, ncbiTaxonAncestorMapView,
-						oboToAncestorsMapView)
+				}).withSideInputs(sideInputs)
 				.withOutputTags(ANNOTATIONS_TAG, TupleTagList.of(ETL_FAILURE_TAG)));
 	}
 
-	/**
-	 * only keep descendants of chemical substance or role
-	 * (http://purl.obolibrary.org/obo/CHEBI_59999,
-	 * http://purl.obolibrary.org/obo/CHEBI_50906)
-	 * 
-	 * @param annots
-	 * @param oboToAncestorsMap
-	 * @return
-	 */
-	private static Set<TextAnnotation> removeIrrelevantChebiConcepts(Set<TextAnnotation> annots,
-			Map<String, Set<String>> oboToAncestorsMap) {
-		String chemicalSubstance = "CHEBI:59999";
-		String role = "CHEBI:50906";
-		Set<TextAnnotation> toKeep = new HashSet<TextAnnotation>();
-		for (TextAnnotation annot : annots) {
-			String id = annot.getClassMention().getMentionName();
-			if (id.startsWith("CHEBI")) {
-				if (oboToAncestorsMap.containsKey(id) && (oboToAncestorsMap.get(id).contains(chemicalSubstance)
-						|| oboToAncestorsMap.get(id).contains(role))) {
-					toKeep.add(annot);
-				}
-			} else {
-				toKeep.add(annot);
-			}
-		}
-
-		return toKeep;
-	}
-
-	/**
-	 * only keep descendants of anatomical entity
-	 * (http://purl.obolibrary.org/obo/UBERON_0001062)
-	 * 
-	 * @param annots
-	 * @param oboToAncestorsMap
-	 * @return
-	 */
-	private static Set<TextAnnotation> removeIrrelevantUberonConcepts(Set<TextAnnotation> annots,
-			Map<String, Set<String>> oboToAncestorsMap) {
-		String anatomicalEntity = "UBERON:0001062";
-		Set<TextAnnotation> toKeep = new HashSet<TextAnnotation>();
-		for (TextAnnotation annot : annots) {
-			String id = annot.getClassMention().getMentionName();
-			if (id.startsWith("UBERON")) {
-				if (oboToAncestorsMap.containsKey(id) && oboToAncestorsMap.get(id).contains(anatomicalEntity)) {
-					toKeep.add(annot);
-				}
-			} else {
-				toKeep.add(annot);
-			}
-		}
-
-		return toKeep;
-	}
-
-	/**
-	 * only keep descendants of Disease or Disorder
-	 * (http://purl.obolibrary.org/obo/MONDO_0000001)
-	 * 
-	 * @param annots
-	 * @param oboToAncestorsMap
-	 * @return
-	 */
-	private static Set<TextAnnotation> removeIrrelevantMondoConcepts(Set<TextAnnotation> annots,
-			Map<String, Set<String>> oboToAncestorsMap) {
-		String diseaseOrDisorder = "MONDO:0000001";
-		Set<TextAnnotation> toKeep = new HashSet<TextAnnotation>();
-		for (TextAnnotation annot : annots) {
-			String id = annot.getClassMention().getMentionName();
-			if (id.startsWith("MONDO")) {
-				if (oboToAncestorsMap.containsKey(id) && oboToAncestorsMap.get(id).contains(diseaseOrDisorder)) {
-					toKeep.add(annot);
-				}
-			} else {
-				toKeep.add(annot);
-			}
-		}
-
-		return toKeep;
-	}
-
-	/**
-	 * only keep descendants of Phenotypic Abnormality
-	 * (http://purl.obolibrary.org/obo/HP_0000118)
-	 * 
-	 * @param annots
-	 * @param oboToAncestorsMap
-	 * @return
-	 */
-	private static Set<TextAnnotation> removeIrrelevantHpConcepts(Set<TextAnnotation> annots,
-			Map<String, Set<String>> oboToAncestorsMap) {
-
-		String phenotypicAbnormality = "HP:0000118";
-		Set<TextAnnotation> toKeep = new HashSet<TextAnnotation>();
-		for (TextAnnotation annot : annots) {
-			String id = annot.getClassMention().getMentionName();
-			if (id.startsWith("HP")) {
-				if (oboToAncestorsMap.containsKey(id) && oboToAncestorsMap.get(id).contains(phenotypicAbnormality)) {
-					toKeep.add(annot);
-				}
-			} else {
-				toKeep.add(annot);
-			}
-		}
-
-		return toKeep;
-	}
-
 	@VisibleForTesting
 	protected static Set<TextAnnotation> removeNcbiStopWords(Set<TextAnnotation> annots) {
 		Set<TextAnnotation> toKeep = new HashSet<TextAnnotation>();
@@ -273,12 +256,12 @@ public class ConceptPostProcessingFn extends DoFn<KV<String, String>, KV<String,
 	 * class
 	 * 
 	 * @param allAnnots
-	 * @param ncbitaxonAncestorMap
+	 * @param ncbitaxonResolver
 	 * @return
 	 */
 	@VisibleForTesting
 	protected static Set<TextAnnotation> promoteNcbiTaxonAnnots(Set<TextAnnotation> allAnnots,
-			Map<String, Set<String>> ncbitaxonAncestorMap) {
+			NcbiTaxonPreferenceResolver ncbitaxonResolver) {
 
 		Set<TextAnnotation> toKeep = new HashSet<TextAnnotation>();
 
@@ -300,7 +283,7 @@ public class ConceptPostProcessingFn extends DoFn<KV<String, String>, KV<String,
 				for (TextAnnotation annot : annots) {
 					typeToAnnotMap.put(annot.getClassMention().getMentionName(), annot);
 				}
-				Set<String> typesToKeep = prefer(typeToAnnotMap.keySet(), ncbitaxonAncestorMap);
+				Set<String> typesToKeep = ncbitaxonResolver.prefer(typeToAnnotMap.keySet());
 				for (String typeToKeep : typesToKeep) {
 					toKeep.add(typeToAnnotMap.get(typeToKeep));
 				}
@@ -315,6 +298,15 @@ public class ConceptPostProcessingFn extends DoFn<KV<String, String>, KV<String,
 
 	}
 
+	/**
+	 * Compares each pair of identifiers; see {@link NcbiTaxonPreferenceResolver}
+	 * for a faster implementation for taxonomies
+	 * 
+	 * @param ids
+	 * @param ncbitaxonAncestorMap
+	 * @return the identifiers that do not have an ancestor in the set.
+	 *         Identifiers that are not in the ancestor map have no ancestors.
+	 */
 	@VisibleForTesting
 	protected static Set<String> prefer(Set<String> ids, Map<String, Set<String>> ncbitaxonAncestorMap) {
 
@@ -329,11 +321,11 @@ public class ConceptPostProcessingFn extends DoFn<KV<String, String>, KV<String,
 					String id2 = idList.get(j);
 
 					Set<String> ancestors1 = ncbitaxonAncestorMap.get(id1);
-					if (ancestors1.contains(id2)) {
+					if (ancestors1 != null && ancestors1.contains(id2)) {
 						toKeep.remove(id1);
 					} else {
 						Set<String> ancestors2 = ncbitaxonAncestorMap.get(id2);
-						if (ancestors2.contains(id1)) {
+						if (ancestors2 != null && ancestors2.contains(id1)) {
 							toKeep.remove(id2);
 						}
 					}
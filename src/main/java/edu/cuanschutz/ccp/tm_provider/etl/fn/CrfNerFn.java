@@ -43,6 +43,13 @@ public class CrfNerFn extends DoFn<KV<String, String>, KV<String, String>> {
 				new DoFn<KV<ProcessingStatus, Map<DocumentCriteria, String>>, KV<ProcessingStatus, List<String>>>() {
 					private static final long serialVersionUID = 1L;
 
+					private transient HttpPostUtil crfClient;
+
+					@Setup
+					public void setup() {
+						crfClient = new HttpPostUtil(getTargetUri(crfServiceUri));
+					}
+
 					@ProcessElement
 					public void processElement(
 							@Element KV<ProcessingStatus, Map<DocumentCriteria, String>> statusEntityToText,
@@ -62,7 +69,7 @@ public class CrfNerFn extends DoFn<KV<String, String>, KV<String, String>> {
 								// format returned is annotations in bionlp with an extra column 0 that contains
 								// the document id. This is for future use in possibly batching RPCs.
 								String crfOutputInBionlpPlusDocId = annotate(sentenceAnnotsInBioNLP, docId,
-										crfServiceUri);
+										crfClient);
 
 								String crfOutputInBionlp = extractBionlp(crfOutputInBionlpPlusDocId);
 
@@ -112,6 +119,15 @@ public class CrfNerFn extends DoFn<KV<String, String>, KV<String, String>> {
 
 	public static String annotate(String sentenceAnnotsInBioNLP, String docId, String crfServiceUri)
 			throws IOException {
+		return annotate(sentenceAnnotsInBioNLP, docId, new HttpPostUtil(getTargetUri(crfServiceUri)));
+	}
+
+	private static String getTargetUri(String crfServiceUri) {
+		return String.format("%s/crf", crfServiceUri);
+	}
+
+	public static String annotate(String sentenceAnnotsInBioNLP, String docId, HttpPostUtil crfClient)
+			throws IOException {
 
 		// add doc id
 		String withDocId = addLeadingColumn(sentenceAnnotsInBioNLP, docId);
@@ -150,9 +166,7 @@ public class CrfNerFn extends DoFn<KV<String, String>, KV<String, String>> {
 		}
 		// end debugging
 
-		String targetUri = String.format("%s/crf", crfServiceUri);
-
-		return new HttpPostUtil(targetUri).submit(withDocId);
+		return crfClient.submit(withDocId);
 	}
 
 	@VisibleForTesting
@@ -1,25 +1,52 @@
 package edu.cuanschutz.ccp.tm_provider.etl.fn;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.TupleTagList;
+import org.joda.time.Instant;
 
+import edu.cuanschutz.ccp.tm_provider.etl.DocumentStoreOptions;
+import edu.cuanschutz.ccp.tm_provider.etl.DocumentStoreOptions.DocumentStoreType;
 import edu.cuanschutz.ccp.tm_provider.etl.EtlFailureData;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreDocumentUtil;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
 
-public class DocumentDownloadFn extends DoFn<String, KV<String, Map<String, String>>> {
+/**
+ * Downloads the documents matching the specified {@link DocumentCriteria} for
+ * each document ID. Document IDs are buffered and the documents for each batch
+ * of IDs are fetched using multi-key lookups (see
+ * {@link DatastoreDocumentUtil#getDocumentTypeToContent(java.util.Collection, List)})
+ * with a Datastore client that is shared by all instances on a worker. If the
+ * lookup for a batch fails, the documents in the batch are fetched one at a time
+ * so that a failure is only reported for the documents that cannot be fetched.
+ * <p>
+ * Documents are read directly from Cloud Datastore rather than through the
+ * {@link edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore}, so pipelines
+ * that download documents by ID do not support the LOCAL document store (see
+ * {@link #checkDocumentStore(PipelineOptions)}).
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class DocumentDownloadFn extends DoFn<String, KV<String, Map<DocumentType, String>>> {
 
 	private static final long serialVersionUID = 1L;
 
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
 	@SuppressWarnings("serial")
 	public static TupleTag<EtlFailureData> FAILURE_TAG = new TupleTag<EtlFailureData>() {
 	};
@@ -30,30 +57,150 @@ public class DocumentDownloadFn extends DoFn<String, KV<String, Map<String, Stri
 	public static TupleTag<Map<DocumentType, String>> OUTPUT_TAG_NO_DOC_ID = new TupleTag<Map<DocumentType, String>>() {
 	};
 
+	private final com.google.cloud.Timestamp timestamp;
+	private final List<DocumentCriteria> documentCriteria;
+	private final int batchSize;
+
+	private transient DatastoreDocumentUtil util;
+	private transient List<BufferedDocumentId> buffer;
+
 	public static PCollectionTuple process(PCollection<String> documentIds, com.google.cloud.Timestamp timestamp,
 			List<DocumentCriteria> documentCriteria) {
+		return process(documentIds, timestamp, documentCriteria, DEFAULT_BATCH_SIZE);
+	}
 
+	/**
+	 * @param documentIds
+	 * @param timestamp
+	 * @param documentCriteria
+	 * @param batchSize        the number of document IDs whose documents are
+	 *                         fetched together
+	 * @return
+	 */
+	public static PCollectionTuple process(PCollection<String> documentIds, com.google.cloud.Timestamp timestamp,
+			List<DocumentCriteria> documentCriteria, int batchSize) {
 		return documentIds.apply("Download files for document ID",
-				ParDo.of(new DoFn<String, KV<String, Map<DocumentType, String>>>() {
-					private static final long serialVersionUID = 1L;
-
-					@ProcessElement
-					public void processElement(@Element String docId, MultiOutputReceiver out) {
-						DatastoreDocumentUtil util = new DatastoreDocumentUtil();
-						try {
-							Map<DocumentType, String> typeToContentMap = util.getDocumentTypeToContent(docId,
-									documentCriteria);
-							out.get(OUTPUT_TAG).output(KV.of(docId, typeToContentMap));
-						} catch (Throwable t) {
-							EtlFailureData failure = new EtlFailureData(documentCriteria.get(0),
-									"Failure during file download for document ID. (Document type listed is non-specific. "
-											+ "Could have been a different type that caused the error.",
-									docId, t, timestamp);
-							out.get(FAILURE_TAG).output(failure);
-						}
-
-					}
-				}).withOutputTags(OUTPUT_TAG, TupleTagList.of(FAILURE_TAG)));
+				ParDo.of(new DocumentDownloadFn(timestamp, documentCriteria, batchSize))
+						.withOutputTags(OUTPUT_TAG, TupleTagList.of(FAILURE_TAG)));
+	}
+
+	/**
+	 * @param options
+	 * @throws IllegalArgumentException if the pipeline is not configured to use
+	 *                                  the DATASTORE document store
+	 */
+	public static void checkDocumentStore(PipelineOptions options) {
+		DocumentStoreType documentStore = options.as(DocumentStoreOptions.class).getDocumentStore();
+		if (documentStore != DocumentStoreType.DATASTORE) {
+			throw new IllegalArgumentException("Documents are downloaded by document ID directly from Datastore, "
+					+ "so this pipeline does not support the " + documentStore + " document store.");
+		}
+	}
+
+	@Setup
+	public void setup() {
+		util = createDocumentUtil();
+	}
+
+	/**
+	 * @return the utility used to fetch documents from Datastore
+	 */
+	protected DatastoreDocumentUtil createDocumentUtil() {
+		return DatastoreDocumentUtil.getSharedInstance();
+	}
+
+	@StartBundle
+	public void startBundle() {
+		buffer = new ArrayList<BufferedDocumentId>(batchSize);
+	}
+
+	/**
+	 * A full batch is fetched here if all of its document IDs share the window and
+	 * timestamp of the current element; otherwise it is fetched when the bundle
+	 * finishes.
+	 */
+	@ProcessElement
+	public void processElement(@Element String docId, @Timestamp Instant elementTimestamp, BoundedWindow window,
+			MultiOutputReceiver out) {
+		buffer.add(new BufferedDocumentId(docId, elementTimestamp, window));
+		if (buffer.size() >= batchSize
+				&& buffer.stream().allMatch(buffered -> buffered.matches(elementTimestamp, window))) {
+			flush(new BatchOutput() {
+				@Override
+				public <T> void output(TupleTag<T> tag, T output, Instant timestamp, BoundedWindow window) {
+					out.get(tag).output(output);
+				}
+			});
+		}
+	}
+
+	@FinishBundle
+	public void finishBundle(FinishBundleContext context) {
+		flush(context::output);
+	}
+
+	private void flush(BatchOutput out) {
+		if (buffer.isEmpty()) {
+			return;
+		}
+		List<String> docIds = new ArrayList<String>(buffer.size());
+		for (BufferedDocumentId buffered : buffer) {
+			docIds.add(buffered.getDocId());
+		}
+		Map<String, Map<DocumentType, String>> docIdToTypeToContentMap = null;
+		Throwable batchFailure = null;
+		try {
+			docIdToTypeToContentMap = util.getDocumentTypeToContent(docIds, documentCriteria);
+		} catch (Throwable t) {
+			batchFailure = t;
+		}
+		for (BufferedDocumentId buffered : buffer) {
+			String docId = buffered.getDocId();
+			Map<DocumentType, String> typeToContentMap = null;
+			Throwable failure = batchFailure;
+			if (docIdToTypeToContentMap != null) {
+				typeToContentMap = docIdToTypeToContentMap.get(docId);
+			} else if (buffer.size() > 1) {
+				// the batch failed, so fetch the document on its own to find out whether it
+				// is the cause of the failure
+				try {
+					typeToContentMap = util.getDocumentTypeToContent(Collections.singletonList(docId), documentCriteria)
+							.get(docId);
+					failure = null;
+				} catch (Throwable t) {
+					failure = t;
+				}
+			}
+			if (failure == null) {
+				out.output(OUTPUT_TAG, KV.of(docId, typeToContentMap), buffered.getTimestamp(), buffered.getWindow());
+			} else {
+				EtlFailureData failureData = new EtlFailureData(documentCriteria.get(0),
+						"Failure during file download for document ID. (Document type listed is non-specific. "
+								+ "Could have been a different type that caused the error.",
+						docId, failure, timestamp);
+				out.output(FAILURE_TAG, failureData, buffered.getTimestamp(), buffered.getWindow());
+			}
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Outputs to either the {@link ProcessElement} or the {@link FinishBundle}
+	 * context
+	 */
+	private interface BatchOutput {
+		<T> void output(TupleTag<T> tag, T output, Instant timestamp, BoundedWindow window);
+	}
+
+	@Data
+	private static class BufferedDocumentId {
+		private final String docId;
+		private final Instant timestamp;
+		private final BoundedWindow window;
+
+		public boolean matches(Instant ts, BoundedWindow w) {
+			return timestamp.equals(ts) && window.equals(w);
+		}
 	}
 
 //	public static PCollectionTuple processNoTrackDocIds(PCollection<String> documentIds, PipelineKey pipeline,
@@ -21,7 +21,6 @@ import org.apache.beam.sdk.values.TupleTagList;
 import org.apache.commons.codec.digest.DigestUtils;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.gson.Gson;
 
 import edu.cuanschutz.ccp.tm_provider.etl.EtlFailureData;
 import edu.cuanschutz.ccp.tm_provider.etl.PipelineMain;
@@ -142,13 +141,14 @@ public class ElasticsearchDocumentCreatorFn extends DoFn<KV<String, String>, KV<
 		Map<TextAnnotation, Set<TextAnnotation>> sentenceAnnotToConceptAnnotMap = ConceptCooccurrenceCountsFn
 				.matchConceptsToLevelAnnots(sentenceAnnots, conceptAnnots);
 
+		SentenceJsonWriter writer = new SentenceJsonWriter();
 		for (Entry<TextAnnotation, Set<TextAnnotation>> entry : sentenceAnnotToConceptAnnotMap.entrySet()) {
 			TextAnnotation sentenceAnnot = entry.getKey();
 			Set<TextAnnotation> conceptAnnotsInSentence = entry.getValue();
 
 			String sentenceId = computeSentenceIdentifier(documentText, sentenceAnnot);
 
-			String elasticsearchSentenceDocumentJson = createJsonDocument(sentenceId, sentenceAnnot,
+			String elasticsearchSentenceDocumentJson = createJsonDocument(writer, sentenceId, sentenceAnnot,
 					conceptAnnotsInSentence, documentId, documentText);
 
 			jsonDocuments.add(elasticsearchSentenceDocumentJson);
@@ -161,20 +161,26 @@ public class ElasticsearchDocumentCreatorFn extends DoFn<KV<String, String>, KV<
 	protected static String createJsonDocument(String sentenceId, TextAnnotation sentenceAnnot,
 			Set<TextAnnotation> conceptAnnotsInSentence, String documentId, String documentText) { // , String documentSection, int
 																				// publicationYear) {
-		Sentence sentence = Sentence.buildSentence(sentenceAnnot, conceptAnnotsInSentence, sentenceId, documentId, documentText);
-//				documentSection, publicationYear);
-
-		System.out.println("sentence id: " + sentence.getId());
-		System.out.println("sentence doc id: " + sentence.getDocumentId());
-		
-		Gson gson = new Gson();
-		String json = gson.toJson(sentence);
-
-		// % sign must be URL encoded
-		json = json.replaceAll("%", "%25");
-		json = json.replaceAll("=", "%3D");
+		return createJsonDocument(new SentenceJsonWriter(), sentenceId, sentenceAnnot, conceptAnnotsInSentence,
+				documentId, documentText);
+	}
 
-		return json;
+	/**
+	 * @param writer                  reused for all sentences in a document
+	 * @param sentenceId
+	 * @param sentenceAnnot
+	 * @param conceptAnnotsInSentence
+	 * @param documentId
+	 * @param documentText
+	 * @return the Elasticsearch JSON document for the sentence
+	 */
+	private static String createJsonDocument(SentenceJsonWriter writer, String sentenceId,
+			TextAnnotation sentenceAnnot, Set<TextAnnotation> conceptAnnotsInSentence, String documentId,
+			String documentText) {
+		Sentence sentence = Sentence.buildSentence(sentenceAnnot, conceptAnnotsInSentence, sentenceId, documentId,
+				documentText);
+//				documentSection, publicationYear);
+		return writer.toJson(sentence);
 	}
 
 	/**
@@ -0,0 +1,271 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.beam.sdk.io.jdbc.JdbcIO.DataSourceConfiguration;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.transforms.DoFn;
+
+import edu.cuanschutz.ccp.tm_provider.etl.util.AdaptiveConcurrencyLimiter;
+import edu.cuanschutz.ccp.tm_provider.etl.util.SerializableFunction;
+
+/**
+ * Upserts elements into a MySQL table using multi-row
+ * <code>INSERT ... VALUES (...),(...) ON DUPLICATE KEY UPDATE</code>
+ * statements. Rows are buffered and written in batches of batchSize rows per
+ * statement. The number of concurrent statements on each worker is controlled
+ * by an {@link AdaptiveConcurrencyLimiter} that backs off when statements fail
+ * or are slow, in place of a fixed records-per-second rate limit. Failed
+ * statements are retried with exponential backoff.
+ * <p>
+ * The number of rows written and the per-statement latency are reported as
+ * Beam metrics (namespace "jdbc") so that rows/s can be monitored, and rows/s
+ * for each bundle is logged.
+ * <p>
+ * Nothing is output; the output {@link org.apache.beam.sdk.values.PCollection}
+ * can be used as the signal for {@link org.apache.beam.sdk.transforms.Wait}.
+ *
+ * @param <T>
+ */
+public class JdbcBatchUpsertFn<T> extends DoFn<T, Void> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger LOGGER = Logger.getLogger(JdbcBatchUpsertFn.class.getName());
+
+	/** MySQL does not allow more placeholders than this in a single statement */
+	private static final int MAX_PLACEHOLDERS = 65535;
+	private static final int MAX_ATTEMPTS = 5;
+	private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+	public static final int DEFAULT_MAX_CONCURRENCY = 8;
+	public static final long DEFAULT_LATENCY_THRESHOLD_MILLIS = 10000;
+
+	/** one limiter per table per worker JVM, shared by all DoFn instances */
+	private static final Map<String, AdaptiveConcurrencyLimiter> LIMITERS = new ConcurrentHashMap<String, AdaptiveConcurrencyLimiter>();
+
+	private final DataSourceConfiguration dbConfig;
+	private final String table;
+	private final String[] columns;
+	private final SerializableFunction<T, Object[]> rowValuesFn;
+	private final int batchSize;
+	private final int maxConcurrency;
+	private final long latencyThresholdMillis;
+
+	private transient DataSource dataSource;
+	private transient Connection connection;
+	private transient PreparedStatement fullBatchStatement;
+	private transient AdaptiveConcurrencyLimiter limiter;
+	private transient List<Object[]> rows;
+	private transient long bundleRowCount;
+	private transient long bundleStartMillis;
+
+	private final Counter rowCounter;
+	private final Distribution latencyDistribution;
+
+	/**
+	 * @param dbConfig
+	 * @param table       the table to upsert into
+	 * @param columns     the table columns; all columns are updated on duplicate
+	 *                    key
+	 * @param rowValuesFn returns the column values for an element in the order of
+	 *                    the columns
+	 * @param batchSize   the number of rows in each statement
+	 */
+	public JdbcBatchUpsertFn(DataSourceConfiguration dbConfig, String table, String[] columns,
+			SerializableFunction<T, Object[]> rowValuesFn, int batchSize) {
+		this(dbConfig, table, columns, rowValuesFn, batchSize, DEFAULT_MAX_CONCURRENCY,
+				DEFAULT_LATENCY_THRESHOLD_MILLIS);
+	}
+
+	public JdbcBatchUpsertFn(DataSourceConfiguration dbConfig, String table, String[] columns,
+			SerializableFunction<T, Object[]> rowValuesFn, int batchSize, int maxConcurrency,
+			long latencyThresholdMillis) {
+		if (batchSize < 1 || batchSize * columns.length > MAX_PLACEHOLDERS) {
+			throw new IllegalArgumentException(String.format(
+					"Invalid batch size (%d). The batch size must be at least 1 and no more than %d for a table with %d columns.",
+					batchSize, MAX_PLACEHOLDERS / columns.length, columns.length));
+		}
+		this.dbConfig = dbConfig;
+		this.table = table;
+		this.columns = columns;
+		this.rowValuesFn = rowValuesFn;
+		this.batchSize = batchSize;
+		this.maxConcurrency = maxConcurrency;
+		this.latencyThresholdMillis = latencyThresholdMillis;
+		this.rowCounter = Metrics.counter("jdbc", table + "_rows_written");
+		this.latencyDistribution = Metrics.distribution("jdbc", table + "_statement_latency_ms");
+	}
+
+	/**
+	 * @param table
+	 * @param columns
+	 * @param rowCount
+	 * @return a multi-row upsert statement for the specified number of rows
+	 */
+	protected static String buildUpsertStatement(String table, String[] columns, int rowCount) {
+		StringBuilder rowPlaceholders = new StringBuilder("(");
+		for (int i = 0; i < columns.length; i++) {
+			rowPlaceholders.append((i == 0) ? "?" : ",?");
+		}
+		rowPlaceholders.append(")");
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("INSERT INTO ").append(table).append(" (").append(String.join(",", columns)).append(") VALUES ");
+		for (int i = 0; i < rowCount; i++) {
+			if (i > 0) {
+				sb.append(",");
+			}
+			sb.append(rowPlaceholders);
+		}
+		sb.append(" ON DUPLICATE KEY UPDATE ");
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(columns[i]).append(" = VALUES(").append(columns[i]).append(")");
+		}
+		return sb.toString();
+	}
+
+	@Setup
+	public void setup() throws SQLException {
+		dataSource = dbConfig.buildDatasource();
+		connection = dataSource.getConnection();
+		connection.setAutoCommit(false);
+		fullBatchStatement = connection.prepareStatement(buildUpsertStatement(table, columns, batchSize));
+		limiter = LIMITERS.computeIfAbsent(table,
+				t -> new AdaptiveConcurrencyLimiter(1, 1, maxConcurrency, latencyThresholdMillis));
+	}
+
+	@StartBundle
+	public void startBundle() {
+		rows = new ArrayList<Object[]>(batchSize);
+		bundleRowCount = 0;
+		bundleStartMillis = System.currentTimeMillis();
+	}
+
+	@ProcessElement
+	public void processElement(@Element T element) throws SQLException, InterruptedException {
+		Object[] values = rowValuesFn.apply(element);
+		if (values.length != columns.length) {
+			throw new IllegalArgumentException(String.format("Expected %d values for table %s but observed %d.",
+					columns.length, table, values.length));
+		}
+		rows.add(values);
+		if (rows.size() == batchSize) {
+			flush();
+		}
+	}
+
+	@FinishBundle
+	public void finishBundle() throws SQLException, InterruptedException {
+		flush();
+		long elapsedMillis = Math.max(1, System.currentTimeMillis() - bundleStartMillis);
+		if (bundleRowCount > 0) {
+			LOGGER.log(Level.INFO, String.format("%s: wrote %d rows in %d ms (%.1f rows/s, concurrency limit: %d)",
+					table, bundleRowCount, elapsedMillis, bundleRowCount * 1000.0 / elapsedMillis, limiter.getLimit()));
+		}
+	}
+
+	@Teardown
+	public void teardown() throws SQLException {
+		if (fullBatchStatement != null) {
+			fullBatchStatement.close();
+		}
+		if (connection != null) {
+			connection.close();
+		}
+	}
+
+	private void flush() throws SQLException, InterruptedException {
+		if (rows.isEmpty()) {
+			return;
+		}
+		for (int attempt = 1;; attempt++) {
+			limiter.acquire();
+			long start = System.currentTimeMillis();
+			boolean success = false;
+			try {
+				executeUpsert();
+				success = true;
+			} catch (SQLException e) {
+				resetConnection();
+				if (attempt == MAX_ATTEMPTS) {
+					throw e;
+				}
+				LOGGER.log(Level.WARNING, String.format("Upsert into %s failed (attempt %d of %d). Retrying.", table,
+						attempt, MAX_ATTEMPTS), e);
+			} finally {
+				long latency = System.currentTimeMillis() - start;
+				limiter.release(latency, success);
+				if (success) {
+					latencyDistribution.update(latency);
+				}
+			}
+			if (success) {
+				break;
+			}
+			Thread.sleep(INITIAL_BACKOFF_MILLIS << (attempt - 1));
+		}
+		rowCounter.inc(rows.size());
+		bundleRowCount += rows.size();
+		rows.clear();
+	}
+
+	/**
+	 * Rolls back the failed statement. If the connection has been lost, it is
+	 * replaced.
+	 */
+	private void resetConnection() throws SQLException {
+		try {
+			connection.rollback();
+			if (connection.isValid(5)) {
+				return;
+			}
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, "Rollback failed. Reconnecting.", e);
+		}
+		teardown();
+		connection = dataSource.getConnection();
+		connection.setAutoCommit(false);
+		fullBatchStatement = connection.prepareStatement(buildUpsertStatement(table, columns, batchSize));
+	}
+
+	private void executeUpsert() throws SQLException {
+		if (rows.size() == batchSize) {
+			setParameters(fullBatchStatement);
+			fullBatchStatement.executeUpdate();
+		} else {
+			// the final batch of a bundle is typically smaller than the batch size
+			try (PreparedStatement statement = connection
+					.prepareStatement(buildUpsertStatement(table, columns, rows.size()))) {
+				setParameters(statement);
+				statement.executeUpdate();
+			}
+		}
+		connection.commit();
+	}
+
+	private void setParameters(PreparedStatement statement) throws SQLException {
+		int index = 1;
+		for (Object[] row : rows) {
+			for (Object value : row) {
+				statement.setObject(index++, value);
+			}
+		}
+	}
+
+}
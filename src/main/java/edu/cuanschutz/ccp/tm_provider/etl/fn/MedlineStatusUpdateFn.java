@@ -18,7 +18,9 @@ import edu.cuanschutz.ccp.tm_provider.etl.ProcessingStatus;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
+import edu.cuanschutz.ccp.tm_provider.etl.util.MedlineRecord;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
+import edu.cuanschutz.ccp.tm_provider.etl.util.SerializableFunction;
 
 /**
  * Updates status entities for Medline documents by adding the publication date
@@ -48,6 +50,28 @@ public class MedlineStatusUpdateFn extends DoFn<PubmedArticle, KV<String, List<S
 	public static PCollectionTuple process(PCollection<KV<String, CoGbkResult>> pubmedArticleAndStatusMergeResult,
 			TupleTag<PubmedArticle> articleTag, TupleTag<ProcessingStatus> statusEntityTag,
 			com.google.cloud.Timestamp timestamp) {
+		return process(pubmedArticleAndStatusMergeResult, articleTag, MedlineXmlToTextFn::toMedlineRecord,
+				statusEntityTag, timestamp);
+	}
+
+	/**
+	 * @param medlineRecordAndStatusMergeResult
+	 * @param recordTag                         tag for the {@link MedlineRecord}
+	 *                                          objects in the merge result
+	 * @param statusEntityTag
+	 * @param timestamp
+	 * @return
+	 */
+	public static PCollectionTuple processRecords(
+			PCollection<KV<String, CoGbkResult>> medlineRecordAndStatusMergeResult, TupleTag<MedlineRecord> recordTag,
+			TupleTag<ProcessingStatus> statusEntityTag, com.google.cloud.Timestamp timestamp) {
+		return process(medlineRecordAndStatusMergeResult, recordTag, record -> record, statusEntityTag, timestamp);
+	}
+
+	private static <T> PCollectionTuple process(
+			PCollection<KV<String, CoGbkResult>> pubmedArticleAndStatusMergeResult, TupleTag<T> articleTag,
+			SerializableFunction<T, MedlineRecord> toMedlineRecord, TupleTag<ProcessingStatus> statusEntityTag,
+			com.google.cloud.Timestamp timestamp) {
 
 		return pubmedArticleAndStatusMergeResult.apply("update status entities",
 				ParDo.of(new DoFn<KV<String, CoGbkResult>, ProcessingStatus>() {
@@ -65,18 +89,18 @@ public class MedlineStatusUpdateFn extends DoFn<PubmedArticle, KV<String, List<S
 						 * Below we get one line for each tag, check to make sure there aren't other
 						 * lines just in case, and handle the case of the bert output file header.
 						 */
-						PubmedArticle pubmedArticle = null;
-						Iterator<PubmedArticle> pubmedArticleIter = result.getAll(articleTag).iterator();
+						MedlineRecord medlineRecord = null;
+						Iterator<T> pubmedArticleIter = result.getAll(articleTag).iterator();
 						if (pubmedArticleIter.hasNext()) {
-							pubmedArticle = pubmedArticleIter.next();
-							// ensure that the pubmedArticle has the correct id - note that there are
+							medlineRecord = toMedlineRecord.apply(pubmedArticleIter.next());
+							// ensure that the medlineRecord has the correct id - note that there are
 							// sometime >1 pubmed articles stored in the iterator - but they all seem to
 							// have the correct id.
-							if (!("PMID:" + pubmedArticle.getMedlineCitation().getPMID().getvalue()).equals(pmid)) {
+							if (medlineRecord == null || !("PMID:" + medlineRecord.getPmid()).equals(pmid)) {
 								throw new IllegalArgumentException(
 										"Extracted PubMed article has unexpected PMID. Expected: " + element.getKey()
 												+ " but observed: "
-												+ pubmedArticle.getMedlineCitation().getPMID().getvalue());
+												+ ((medlineRecord == null) ? null : medlineRecord.getPmid()));
 							}
 						}
 
@@ -95,13 +119,11 @@ public class MedlineStatusUpdateFn extends DoFn<PubmedArticle, KV<String, List<S
 						 * if there is a match - then update the status entity with data from the pubmed
 						 * article
 						 */
-						if (statusEntity != null && pubmedArticle != null) {
+						if (statusEntity != null && medlineRecord != null) {
 							ProcessingStatus updatedStatusEntity = new ProcessingStatus(statusEntity);
-							try {
-								String yearPublished = MedlineXmlToTextFn
-										.getYearPublished(pubmedArticle.getMedlineCitation());
-								updatedStatusEntity.setYearPublished(yearPublished);
-							} catch (NullPointerException e) {
+							if (medlineRecord.getYearPublished() != null) {
+								updatedStatusEntity.setYearPublished(medlineRecord.getYearPublished());
+							} else {
 								updatedStatusEntity.setYearPublished(MedlineXmlToTextFn.DEFAULT_PUB_YEAR);
 								EtlFailureData failure = new EtlFailureData(
 										new DocumentCriteria(DocumentType.TEXT, DocumentFormat.TEXT,
@@ -111,13 +133,11 @@ public class MedlineStatusUpdateFn extends DoFn<PubmedArticle, KV<String, List<S
 								context.output(etlFailureTag, failure);
 							}
 
-							try {
-								List<String> publicationTypes = MedlineXmlToTextFn
-										.getPublicationTypes(pubmedArticle.getMedlineCitation());
-								for (String pubType : publicationTypes) {
+							if (medlineRecord.getPublicationTypes() != null) {
+								for (String pubType : medlineRecord.getPublicationTypes()) {
 									updatedStatusEntity.addPublicationType(pubType);
 								}
-							} catch (NullPointerException e) {
+							} else {
 								updatedStatusEntity.addPublicationType(MedlineXmlToTextFn.UNKNOWN_PUBLICATION_TYPE);
 								EtlFailureData failure = new EtlFailureData(
 										new DocumentCriteria(DocumentType.TEXT, DocumentFormat.TEXT,
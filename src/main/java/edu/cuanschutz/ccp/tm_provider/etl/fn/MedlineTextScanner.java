@@ -0,0 +1,319 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Stack;
+
+import edu.ucdenver.ccp.nlp.core.annotation.Span;
+import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
+import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotationFactory;
+
+/**
+ * Cleans the title and abstract text of Medline records in a single pass over
+ * the characters. The output, including the sub- and superscript annotations,
+ * is identical to applying the following steps in order, as was previously done
+ * with a series of regular expressions:
+ * <ol>
+ * <li>trim the text and replace narrow no-break spaces (U+202F) with
+ * spaces</li>
+ * <li>remove line breaks (and the whitespace that follows) before and after
+ * tags: <code>\n\s+&lt;</code> becomes <code>&lt;</code> and
+ * <code>&gt;\n\s+</code> becomes <code>&gt;</code></li>
+ * <li>remove the &lt;b&gt;, &lt;i&gt; and &lt;u&gt; formatting tags</li>
+ * <li>replace each run of two or more whitespace characters with a space</li>
+ * <li>unescape &amp;lt; &amp;gt; &amp;amp; &amp;quot; and &amp;apos;, in that
+ * order, so &amp;amp;quot; and &amp;amp;apos; are unescaped twice</li>
+ * <li>remove the &lt;sub&gt; and &lt;sup&gt; tags, recording the spans of the
+ * sub- and superscript text as annotations</li>
+ * </ol>
+ * Each character is appended to the output and the effects of the later steps
+ * are applied to the end of the output when the character completes a tag, an
+ * entity or a whitespace run. Characters produced by unescaping are tracked so
+ * that they are not treated as part of a formatting tag or entity.
+ * <p>
+ * In the rare case that removing a tag joins the surrounding text into another
+ * tag, e.g. <code>&lt;&lt;b&gt;b&gt;</code>, the result of the step-wise
+ * processing depends on the order of the steps, so the text cannot be
+ * processed in a single pass and {@link #scan(String, List, String)} returns
+ * null.
+ */
+public class MedlineTextScanner {
+
+	private static final char NARROW_NO_BREAK_SPACE = '\u202F';
+
+	private static final String[] FORMATTING_TAGS = { "<b>", "</b>", "<i>", "</i>", "<u>", "</u>" };
+
+	private static final String[] ENTITIES = { "&lt;", "&gt;", "&amp;", "&quot;", "&apos;" };
+	private static final char[] ENTITY_CHARS = { '<', '>', '&', '"', '\'' };
+	/*
+	 * the entities that are unescaped after &amp;, and can therefore start with an
+	 * ampersand that was produced by unescaping &amp;
+	 */
+	private static final boolean[] UNESCAPED_AFTER_AMP = { false, false, false, true, true };
+
+	private enum TagType {
+		OPEN, CLOSE, EMPTY
+	}
+
+	private static final String[] SUB_SUP_TAGS = { "<sup>", "</sup>", "<sup/>", "<sub>", "</sub>", "<sub/>" };
+	private static final String[] SUB_SUP_TAG_NAMES = { "sup", "sup", "sup", "sub", "sub", "sub" };
+	private static final TagType[] SUB_SUP_TAG_TYPES = { TagType.OPEN, TagType.CLOSE, TagType.EMPTY, TagType.OPEN,
+			TagType.CLOSE, TagType.EMPTY };
+
+	private final String docId;
+	private final StringBuilder out;
+	/* positions in the output of characters that were produced by unescaping */
+	private final BitSet unescaped = new BitSet();
+	/* the output length after the most recent formatting tag removal */
+	private int formattingTagRemovalEnd = -1;
+	/* the output length after the most recent sub/superscript tag removal */
+	private int subSupTagRemovalEnd = -1;
+	private boolean tagJoined = false;
+
+	private final TextAnnotationFactory factory = TextAnnotationFactory.createFactoryWithDefaults();
+	private final Stack<TextAnnotation> openAnnotations = new Stack<TextAnnotation>();
+	private final List<TextAnnotation> annotations = new ArrayList<TextAnnotation>();
+
+	private MedlineTextScanner(String docId, int length) {
+		this.docId = docId;
+		this.out = new StringBuilder(length);
+	}
+
+	/**
+	 * @param text                title or abstract text from a Medline record
+	 * @param observedAnnotations sub- and superscript annotations are added to this
+	 *                            list
+	 * @param docId
+	 * @return the cleaned text, or null if the text cannot be processed in a single
+	 *         pass, in which case no annotations are added
+	 */
+	public static String scan(String text, List<TextAnnotation> observedAnnotations, String docId) {
+		MedlineTextScanner scanner = new MedlineTextScanner(docId, text.length());
+		if (!scanner.scan(text)) {
+			return null;
+		}
+		observedAnnotations.addAll(scanner.annotations);
+		return scanner.out.toString();
+	}
+
+	/**
+	 * @param text
+	 * @return false if a tag was joined by the removal of another tag
+	 */
+	private boolean scan(String text) {
+		// equivalent to String.trim()
+		int begin = 0;
+		int end = text.length();
+		while (begin < end && text.charAt(begin) <= ' ') {
+			begin++;
+		}
+		while (end > begin && text.charAt(end - 1) <= ' ') {
+			end--;
+		}
+
+		char previous = 0;
+		int whitespaceRunStart = -1;
+		for (int i = begin; i < end && !tagJoined; i++) {
+			char c = normalizeSpace(text.charAt(i));
+			if (isWhitespace(c)) {
+				if (whitespaceRunStart < 0) {
+					whitespaceRunStart = i;
+				}
+				continue;
+			}
+			if (whitespaceRunStart >= 0) {
+				appendWhitespaceRun(text, whitespaceRunStart, i, previous, c);
+				whitespaceRunStart = -1;
+			}
+			append(c);
+			previous = c;
+		}
+		if (whitespaceRunStart >= 0) {
+			appendWhitespaceRun(text, whitespaceRunStart, end, previous, (char) 0);
+		}
+		return !tagJoined;
+	}
+
+	/**
+	 * Appends a run of whitespace from the input, removing line breaks next to
+	 * tags (step 2)
+	 *
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @param previous the character before the run
+	 * @param next     the character after the run, or 0 if the run ends the text
+	 */
+	private void appendWhitespaceRun(String text, int start, int end, char previous, char next) {
+		// >\n\s+ becomes >
+		if (previous == '>' && normalizeSpace(text.charAt(start)) == '\n' && end - start > 1) {
+			return;
+		}
+		// \n\s+< becomes <, starting from the first line break that is followed by
+		// whitespace
+		int keepEnd = end;
+		if (next == '<') {
+			for (int i = start; i < end - 1; i++) {
+				if (normalizeSpace(text.charAt(i)) == '\n') {
+					keepEnd = i;
+					break;
+				}
+			}
+		}
+		for (int i = start; i < keepEnd; i++) {
+			append(normalizeSpace(text.charAt(i)));
+		}
+	}
+
+	private void append(char c) {
+		if (tagJoined) {
+			return;
+		}
+		if (isWhitespace(c)) {
+			appendWhitespace(c);
+			return;
+		}
+		out.append(c);
+		if (c == '>') {
+			if (!removeFormattingTag()) {
+				processSubSupTag();
+			}
+		} else if (c == ';') {
+			unescapeEntity();
+		}
+	}
+
+	/**
+	 * Replaces runs of two or more whitespace characters with a space (step 4).
+	 * Whitespace on either side of a removed sub/superscript tag is not part of
+	 * the same run, as those tags are removed after the runs are replaced.
+	 */
+	private void appendWhitespace(char c) {
+		int length = out.length();
+		if (length > 0 && isWhitespace(out.charAt(length - 1)) && subSupTagRemovalEnd != length) {
+			out.setCharAt(length - 1, ' ');
+		} else {
+			out.append(c);
+		}
+	}
+
+	/**
+	 * Removes a formatting tag (step 3) at the end of the output
+	 *
+	 * @return true if the output ended with a formatting tag
+	 */
+	private boolean removeFormattingTag() {
+		for (String tag : FORMATTING_TAGS) {
+			int start = out.length() - tag.length();
+			if (endsWith(tag)) {
+				if (unescaped.nextSetBit(start) >= 0 || start < subSupTagRemovalEnd) {
+					/*
+					 * the tag was produced by a later step, i.e. by unescaping or by removing a
+					 * sub/superscript tag
+					 */
+					return false;
+				}
+				if (start < formattingTagRemovalEnd) {
+					tagJoined = true;
+					return true;
+				}
+				out.setLength(start);
+				formattingTagRemovalEnd = start;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Unescapes an entity (step 5) at the end of the output
+	 */
+	private void unescapeEntity() {
+		for (int i = 0; i < ENTITIES.length; i++) {
+			int start = out.length() - ENTITIES[i].length();
+			if (endsWith(ENTITIES[i])) {
+				if (start < subSupTagRemovalEnd || (unescaped.get(start) && !UNESCAPED_AFTER_AMP[i])) {
+					/*
+					 * the entity was produced by removing a sub/superscript tag, or starts with an
+					 * ampersand that was unescaped after this entity would have been
+					 */
+					return;
+				}
+				out.setLength(start);
+				out.append(ENTITY_CHARS[i]);
+				unescaped.set(start);
+				if (ENTITY_CHARS[i] == '>') {
+					processSubSupTag();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes a sub- or superscript tag (step 6) at the end of the output and
+	 * updates the annotations
+	 */
+	private void processSubSupTag() {
+		for (int i = 0; i < SUB_SUP_TAGS.length; i++) {
+			int start = out.length() - SUB_SUP_TAGS[i].length();
+			if (endsWith(SUB_SUP_TAGS[i])) {
+				if (start < subSupTagRemovalEnd) {
+					tagJoined = true;
+					return;
+				}
+				out.setLength(start);
+				unescaped.clear(start, start + SUB_SUP_TAGS[i].length());
+				subSupTagRemovalEnd = start;
+				updateAnnotations(SUB_SUP_TAG_NAMES[i], SUB_SUP_TAG_TYPES[i], start);
+				return;
+			}
+		}
+	}
+
+	private void updateAnnotations(String tagName, TagType type, int position) {
+		if (type == TagType.OPEN) {
+			openAnnotations.push(factory.createAnnotation(position, position + 1, "", tagName));
+		} else if (!openAnnotations.isEmpty() && type != TagType.EMPTY) {
+			// There is at least one example of a </sup> tag that did not have a <sup>
+			// tag: https://pubmed.ncbi.nlm.nih.gov/12897808/
+			TextAnnotation annot = openAnnotations.pop();
+			if (!tagName.equals(annot.getClassMention().getMentionName())) {
+				System.err.println(String.format("Popped annot not of expected type: %s != %s for document %s",
+						tagName, annot.getClassMention().getMentionName(), docId));
+			} else {
+				int start = annot.getAnnotationSpanStart();
+				annot.setSpan(new Span(start, position));
+				annot.setCoveredText(out.substring(start, position));
+				annotations.add(annot);
+			}
+		}
+	}
+
+	private boolean endsWith(String s) {
+		int offset = out.length() - s.length();
+		if (offset < 0) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (out.charAt(offset + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static char normalizeSpace(char c) {
+		return (c == NARROW_NO_BREAK_SPACE) ? ' ' : c;
+	}
+
+	/**
+	 * @param c
+	 * @return true if c matches the \s regular expression character class
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+}
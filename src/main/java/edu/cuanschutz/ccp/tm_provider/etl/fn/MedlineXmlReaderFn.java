@@ -0,0 +1,67 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.beam.sdk.io.FileIO.ReadableFile;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Reshuffle;
+import org.apache.beam.sdk.values.PCollection;
+
+import edu.cuanschutz.ccp.tm_provider.etl.util.MedlineRecord;
+import edu.cuanschutz.ccp.tm_provider.etl.util.MedlineXmlReader;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Reads the PubmedArticle records from (decompressed) Medline XML files as
+ * {@link MedlineRecord} objects using {@link MedlineXmlReader}. This replaces
+ * reading the files with XmlIO into JAXB-bound PubmedArticle objects, which
+ * binds the entire record.
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class MedlineXmlReaderFn extends DoFn<ReadableFile, MedlineRecord> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Counter recordCounter = Metrics.counter("medline", "records_read");
+
+	/**
+	 * Gzipped files cannot be read from an arbitrary offset, so each file is read
+	 * sequentially by a single worker. The records are then redistributed so that
+	 * their processing is spread across workers instead of being fused to the
+	 * worker that read the file.
+	 *
+	 * @param files Medline XML files, e.g. from
+	 *              FileIO.readMatches().withCompression(Compression.GZIP)
+	 * @return the PubmedArticle records in the files
+	 */
+	public static PCollection<MedlineRecord> readRecords(PCollection<ReadableFile> files) {
+		return files.apply("Medline XML --> MedlineRecord", ParDo.of(new MedlineXmlReaderFn()))
+				.apply("redistribute Medline records", Reshuffle.viaRandomKey());
+	}
+
+	@ProcessElement
+	public void processElement(@Element ReadableFile file, OutputReceiver<MedlineRecord> out) throws IOException {
+		String fileId = file.getMetadata().resourceId().toString();
+		try (Reader reader = Channels.newReader(file.open(), StandardCharsets.UTF_8.name());
+				MedlineXmlReader medlineReader = new MedlineXmlReader(reader)) {
+			MedlineRecord record;
+			while ((record = medlineReader.readRecord()) != null) {
+				recordCounter.inc();
+				out.output(record);
+			}
+		} catch (XMLStreamException e) {
+			throw new IllegalStateException("Error while parsing Medline XML file: " + fileId, e);
+		}
+	}
+
+}
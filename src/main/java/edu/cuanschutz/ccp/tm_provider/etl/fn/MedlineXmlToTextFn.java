@@ -21,15 +21,19 @@ import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.TupleTagList;
 import org.medline.Abstract;
 import org.medline.AbstractText;
+import org.medline.Article;
 import org.medline.MedlineCitation;
 import org.medline.PublicationType;
 import org.medline.PubmedArticle;
 
+import com.google.common.annotations.VisibleForTesting;
+
 import edu.cuanschutz.ccp.tm_provider.etl.EtlFailureData;
 import edu.cuanschutz.ccp.tm_provider.etl.PipelineMain;
 import edu.cuanschutz.ccp.tm_provider.etl.ProcessingStatus;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
+import edu.cuanschutz.ccp.tm_provider.etl.util.MedlineRecord;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ProcessingStatusFlag;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil.SortOrder;
@@ -91,8 +95,8 @@ public class MedlineXmlToTextFn extends DoFn<PubmedArticle, KV<String, List<Stri
 			DocumentCriteria outputTextDocCriteria, com.google.cloud.Timestamp timestamp, String collection,
 			PCollectionView<Set<String>> docIdsAlreadyInDatastore, OverwriteOutput overwrite) {
 
-		return pubmedArticles.apply("Extract section annotations",
-				ParDo.of(new DoFn<PubmedArticle, KV<String, List<String>>>() {
+		PCollection<MedlineRecord> medlineRecords = pubmedArticles.apply("PubmedArticle->MedlineRecord",
+				ParDo.of(new DoFn<PubmedArticle, MedlineRecord>() {
 					private static final long serialVersionUID = 1L;
 
 					@ProcessElement
@@ -100,8 +104,42 @@ public class MedlineXmlToTextFn extends DoFn<PubmedArticle, KV<String, List<Stri
 						PubmedArticle pubmedArticle = context.element();
 						/* pubmedArticle was observed to be null in the daily update files */
 						if (pubmedArticle != null) {
+							MedlineRecord record = toMedlineRecord(pubmedArticle);
+							if (record != null) {
+								context.output(record);
+							}
+						}
+					}
+				}));
+
+		return processRecords(medlineRecords, outputTextDocCriteria, timestamp, collection, docIdsAlreadyInDatastore,
+				overwrite);
+	}
+
+	/**
+	 * @param medlineRecords              records from
+	 *                                    {@link MedlineXmlReaderFn#readRecords(PCollection)}
+	 * @param outputTextDocCriteria
+	 * @param timestamp
+	 * @param collection
+	 * @param docIdsAlreadyInDatastore
+	 * @param overwrite
+	 * @return
+	 */
+	public static PCollectionTuple processRecords(PCollection<MedlineRecord> medlineRecords,
+			DocumentCriteria outputTextDocCriteria, com.google.cloud.Timestamp timestamp, String collection,
+			PCollectionView<Set<String>> docIdsAlreadyInDatastore, OverwriteOutput overwrite) {
+
+		return medlineRecords.apply("Extract section annotations",
+				ParDo.of(new DoFn<MedlineRecord, KV<String, List<String>>>() {
+					private static final long serialVersionUID = 1L;
+
+					@ProcessElement
+					public void processElement(ProcessContext context) {
+						MedlineRecord record = context.element();
+						if (record != null) {
 							Set<String> alreadyStoredDocIds = context.sideInput(docIdsAlreadyInDatastore);
-							TextDocumentWithMetadata td = buildDocument(pubmedArticle);
+							TextDocumentWithMetadata td = buildDocument(record);
 							if (td != null) {
 								// only store new documents unless overwrite = OverwriteOutput.YES
 								if (overwrite == OverwriteOutput.YES
@@ -128,16 +166,18 @@ public class MedlineXmlToTextFn extends DoFn<PubmedArticle, KV<String, List<Stri
 	 *         corresponding section annotations
 	 */
 	static TextDocumentWithMetadata buildDocument(PubmedArticle pubmedArticle) {
-		MedlineCitation medlineCitation = pubmedArticle.getMedlineCitation();
-		/*
-		 * There are cases when processing Medline update files where either the
-		 * MedlineCitation or the PMID are null. This is likely when processing the
-		 * DeleteCitation entries at the bottom of each update file. To handle these
-		 * cases, we check for nulls here and skip any documents where the
-		 * MedlineCitation or PMID are null
-		 */
-		if (medlineCitation != null && medlineCitation.getPMID() != null) {
-			String pmid = "PMID:" + medlineCitation.getPMID().getvalue();
+		MedlineRecord record = toMedlineRecord(pubmedArticle);
+		return (record == null) ? null : buildDocument(record);
+	}
+
+	/**
+	 * @param record
+	 * @return a {@link TextDocument} containing the title/abstract text and
+	 *         corresponding section annotations
+	 */
+	static TextDocumentWithMetadata buildDocument(MedlineRecord record) {
+		if (record.getPmid() != null) {
+			String pmid = "PMID:" + record.getPmid();
 
 			/*
 			 * the titleAnnotations and abstractAnnotations lists will store annotations for
@@ -146,13 +186,14 @@ public class MedlineXmlToTextFn extends DoFn<PubmedArticle, KV<String, List<Stri
 			List<TextAnnotation> titleAnnotations = new ArrayList<TextAnnotation>();
 			List<TextAnnotation> abstractAnnotations = new ArrayList<TextAnnotation>();
 
-			String title = extractTitleText(medlineCitation, titleAnnotations);
-			String abstractText = getAbstractText(pubmedArticle, abstractAnnotations);
+			String title = processTitleAndAbstractText(record.getTitle(), titleAnnotations, record.getPmid());
+			String abstractText = getAbstractText(record.getAbstractTexts(), abstractAnnotations, record.getPmid());
 			String documentText = (abstractText == null || abstractText.isEmpty()) ? title
 					: String.format("%s\n\n%s", title, abstractText);
 
-			String yearPublished = getYearPublished(medlineCitation);
-			List<String> publicationTypes = getPublicationTypes(medlineCitation);
+			String yearPublished = (record.getYearPublished() == null) ? DEFAULT_PUB_YEAR : record.getYearPublished();
+			List<String> publicationTypes = (record.getPublicationTypes() == null) ? new ArrayList<String>()
+					: record.getPublicationTypes();
 
 			TextAnnotationFactory factory = TextAnnotationFactory.createFactoryWithDefaults(pmid);
 			TextAnnotation titleAnnotation = factory.createAnnotation(0, title.length(), title, "title");
@@ -201,6 +242,52 @@ public class MedlineXmlToTextFn extends DoFn<PubmedArticle, KV<String, List<Stri
 		return null;
 	}
 
+	/**
+	 * @param pubmedArticle
+	 * @return a {@link MedlineRecord} containing the fields of the
+	 *         {@link PubmedArticle} that are used to build the document, or null if
+	 *         the MedlineCitation or PMID are null
+	 */
+	public static MedlineRecord toMedlineRecord(PubmedArticle pubmedArticle) {
+		MedlineCitation medlineCitation = pubmedArticle.getMedlineCitation();
+		/*
+		 * There are cases when processing Medline update files where either the
+		 * MedlineCitation or the PMID are null. This is likely when processing the
+		 * DeleteCitation entries at the bottom of each update file. To handle these
+		 * cases, we check for nulls here and skip any documents where the
+		 * MedlineCitation or PMID are null
+		 */
+		if (medlineCitation == null || medlineCitation.getPMID() == null) {
+			return null;
+		}
+		Article article = medlineCitation.getArticle();
+		String title = null;
+		List<String> abstractTexts = null;
+		if (article != null && article.getArticleTitle() != null) {
+			title = article.getArticleTitle().getvalue();
+		}
+		if (article != null && article.getAbstract() != null) {
+			abstractTexts = new ArrayList<String>();
+			for (AbstractText aText : article.getAbstract().getAbstractText()) {
+				abstractTexts.add(aText.getvalue());
+			}
+		}
+		String yearPublished = null;
+		try {
+			yearPublished = getYearPublished(medlineCitation);
+		} catch (NullPointerException e) {
+			// the record does not have a PubDate
+		}
+		List<String> publicationTypes = null;
+		try {
+			publicationTypes = getPublicationTypes(medlineCitation);
+		} catch (NullPointerException e) {
+			// the record does not have a PublicationTypeList
+		}
+		return new MedlineRecord(medlineCitation.getPMID().getvalue(), title, abstractTexts, yearPublished,
+				publicationTypes);
+	}
+
 	public static String extractTitleText(MedlineCitation medlineCitation, List<TextAnnotation> titleAnnotations) {
 		return processTitleAndAbstractText(medlineCitation.getArticle().getArticleTitle().getvalue(), titleAnnotations,
 				medlineCitation.getPMID().getvalue());
@@ -224,10 +311,14 @@ public class MedlineXmlToTextFn extends DoFn<PubmedArticle, KV<String, List<Stri
 	}
 
 	protected static String extractYearFromMedlineDate(org.medline.MedlineDate md) {
+		return extractYearFromMedlineDate(md.getvalue());
+	}
+
+	public static String extractYearFromMedlineDate(String medlineDate) {
 		// <MedlineDate>1998 Dec-1999 Jan</MedlineDate>
 		// <MedlineDate>2015 Nov-Dec</MedlineDate>
 		/* year should be 1st four characters */
-		String yearStr = md.getvalue().split(" ")[0];
+		String yearStr = medlineDate.split(" ")[0];
 		if (yearStr.matches("[1-2][0-9][0-9][0-9]")) {
 			return yearStr;
 		}
@@ -253,10 +344,27 @@ public class MedlineXmlToTextFn extends DoFn<PubmedArticle, KV<String, List<Stri
 		if (theAbstract == null) {
 			return null;
 		}
-		StringBuilder sb = new StringBuilder();
+		List<String> abstractTexts = new ArrayList<String>();
 		for (AbstractText aText : theAbstract.getAbstractText()) {
-			String text = aText.getvalue();
+			abstractTexts.add(aText.getvalue());
+		}
+		return getAbstractText(abstractTexts, annotations, pubmedArticle.getMedlineCitation().getPMID().getvalue());
+	}
 
+	/**
+	 * @param abstractTexts
+	 * @param annotations
+	 * @param docId
+	 * @return the abstract text compiled from the AbstractText values, or null if
+	 *         abstractTexts is null
+	 */
+	private static String getAbstractText(List<String> abstractTexts, List<TextAnnotation> annotations,
+			String docId) {
+		if (abstractTexts == null) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String text : abstractTexts) {
 			if (sb.length() == 0) {
 				sb.append(text);
 			} else {
@@ -264,13 +372,14 @@ public class MedlineXmlToTextFn extends DoFn<PubmedArticle, KV<String, List<Stri
 			}
 		}
 
-		return processTitleAndAbstractText(sb.toString(), annotations,
-				pubmedArticle.getMedlineCitation().getPMID().getvalue());
+		return processTitleAndAbstractText(sb.toString(), annotations, docId);
 	}
 
 	/**
 	 * Replace multiple whitespace with single space. Remove <b>, <i>, <u>, <sup>,
-	 * <sub>
+	 * <sub>. The text is processed in a single pass by {@link MedlineTextScanner}
+	 * unless it contains tags that are joined by the removal of other tags, in
+	 * which case the regular expression based processing is used.
 	 * 
 	 * @param observedAnnotations annotations indicating where sub- and superscript
 	 *                            text was observed in the input text (title or
@@ -280,7 +389,31 @@ public class MedlineXmlToTextFn extends DoFn<PubmedArticle, KV<String, List<Stri
 	 * @param aText
 	 * @return
 	 */
-	private static String processTitleAndAbstractText(String text, List<TextAnnotation> observedAnnotations,
+	@VisibleForTesting
+	protected static String processTitleAndAbstractText(String text, List<TextAnnotation> observedAnnotations,
+			String docId) {
+		List<TextAnnotation> annotations = new ArrayList<TextAnnotation>();
+		String updatedText = MedlineTextScanner.scan(text, annotations, docId);
+		if (updatedText == null) {
+			return processTitleAndAbstractTextWithRegex(text, observedAnnotations, docId);
+		}
+		observedAnnotations.addAll(annotations);
+		validateObservedAnnotations(observedAnnotations, updatedText);
+		return updatedText;
+	}
+
+	/**
+	 * Processes the text using a series of regular expressions. The output is
+	 * identical to that of {@link MedlineTextScanner}, which is used instead for
+	 * all but a rare few texts.
+	 * 
+	 * @param text
+	 * @param observedAnnotations
+	 * @param docId
+	 * @return
+	 */
+	@VisibleForTesting
+	protected static String processTitleAndAbstractTextWithRegex(String text, List<TextAnnotation> observedAnnotations,
 			String docId) {
 		String updatedText = text.trim();
 		// below is a special space being replaced by a regular space
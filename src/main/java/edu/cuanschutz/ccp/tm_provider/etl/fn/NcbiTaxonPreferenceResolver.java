@@ -0,0 +1,205 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import edu.cuanschutz.ccp.tm_provider.etl.util.AncestorIndex;
+
+/**
+ * Chooses the most general classes from a set of NCBITaxon classes, i.e. the
+ * classes that do not have an ancestor in the set (see
+ * {@link ConceptPostProcessingFn#prefer(Set, Map)}).
+ * <p>
+ * The NCBITaxon hierarchy is a tree, so each class is numbered in a pre-order
+ * traversal of the tree, and the classes in its subtree are exactly those
+ * numbered from its own number to the largest number in its subtree. Sorting
+ * a set of classes by number places each class after its ancestors, so the
+ * most general classes are found with a single sweep that drops each class
+ * that falls inside the subtree of the last class kept. This takes O(k log k)
+ * time for k classes instead of comparing every pair of classes.
+ * <p>
+ * The numbering is computed from an {@link AncestorIndex} of the ancestor map
+ * when the resolver is created, so a resolver should be created once, e.g. in
+ * a DoFn's {@code @Setup} method or once per side input window, and reused.
+ * An ancestor map that is not backed by an index, e.g. a map side input, is
+ * first written to an index on the heap. If the ancestor map does not
+ * describe a tree, e.g. in tests that use other ontologies, the pairwise
+ * comparison is used instead. Classes that are not in the ancestor map are
+ * always kept.
+ */
+public class NcbiTaxonPreferenceResolver {
+
+	private final Map<String, Set<String>> ancestorMap;
+	private final AncestorIndex index;
+	/* pre-order numbers and the largest number in each subtree; null if the map is not a tree */
+	private final int[] preOrder;
+	private final int[] subtreeEnd;
+
+	/**
+	 * @param index index of the mapping from NCBITaxon class to all of its
+	 *              ancestors
+	 */
+	public NcbiTaxonPreferenceResolver(AncestorIndex index) {
+		this.index = index;
+		this.ancestorMap = index.asMap();
+
+		int conceptCount = index.size();
+		int[] depths = new int[conceptCount];
+		int[] parents = new int[conceptCount];
+		boolean isTree = true;
+		for (int i = 0; i < conceptCount; i++) {
+			depths[i] = index.getAncestors(i).length;
+		}
+		// the parent of a class is its deepest ancestor. The map describes a tree if
+		// the ancestors of each class are its parent and the ancestors of its parent.
+		for (int i = 0; i < conceptCount && isTree; i++) {
+			int parent = -1;
+			for (int ancestor : index.getAncestors(i)) {
+				if (parent < 0 || depths[ancestor] > depths[parent]) {
+					parent = ancestor;
+				}
+			}
+			parents[i] = parent;
+			isTree = (parent < 0) ? depths[i] == 0 : depths[i] == depths[parent] + 1;
+			for (int ancestor : index.getAncestors(i)) {
+				if (isTree && ancestor != parent) {
+					isTree = index.isAncestor(parent, ancestor);
+				}
+			}
+		}
+
+		if (isTree) {
+			this.preOrder = new int[conceptCount];
+			this.subtreeEnd = new int[conceptCount];
+			number(parents, preOrder, subtreeEnd);
+		} else {
+			this.preOrder = null;
+			this.subtreeEnd = null;
+		}
+	}
+
+	/**
+	 * @param ancestorMap mapping from NCBITaxon class to all of its ancestors,
+	 *                    e.g. a map side input
+	 */
+	public NcbiTaxonPreferenceResolver(Map<String, Set<String>> ancestorMap) {
+		this(toIndex(ancestorMap));
+	}
+
+	private static AncestorIndex toIndex(Map<String, Set<String>> ancestorMap) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			AncestorIndex.write(ancestorMap, out);
+		} catch (IOException e) {
+			throw new IllegalStateException("Error while indexing the NCBITaxon ancestor map.", e);
+		}
+		return AncestorIndex.fromBuffer(ByteBuffer.wrap(out.toByteArray()));
+	}
+
+	/**
+	 * @return true if the ancestor map describes a tree, in which case the
+	 *         pre-order numbering is used
+	 */
+	public boolean isTree() {
+		return preOrder != null;
+	}
+
+	/**
+	 * @param ids
+	 * @return the identifiers that do not have an ancestor in the set
+	 */
+	public Set<String> prefer(Set<String> ids) {
+		if (!isTree()) {
+			return ConceptPostProcessingFn.prefer(ids, ancestorMap);
+		}
+
+		Set<String> toKeep = new HashSet<String>();
+		String[] idArray = ids.toArray(new String[ids.size()]);
+		int[] indexes = new int[idArray.length];
+		Integer[] order = new Integer[idArray.length];
+		int count = 0;
+		for (int i = 0; i < idArray.length; i++) {
+			indexes[i] = index.getIndex(idArray[i]);
+			if (indexes[i] < 0) {
+				// unknown classes have no ancestors in the set
+				toKeep.add(idArray[i]);
+			} else {
+				order[count++] = i;
+			}
+		}
+		Arrays.sort(order, 0, count, (i1, i2) -> Integer.compare(preOrder[indexes[i1]], preOrder[indexes[i2]]));
+
+		int lastKeptSubtreeEnd = -1;
+		for (int k = 0; k < count; k++) {
+			int i = order[k];
+			int pre = preOrder[indexes[i]];
+			if (pre > lastKeptSubtreeEnd) {
+				toKeep.add(idArray[i]);
+				lastKeptSubtreeEnd = subtreeEnd[indexes[i]];
+			}
+		}
+		return toKeep;
+	}
+
+	/**
+	 * Numbers the classes in pre-order, starting from each root in turn
+	 *
+	 * @param parents
+	 * @param preOrder   populated with the pre-order number of each class
+	 * @param subtreeEnd populated with the largest pre-order number in the
+	 *                   subtree of each class
+	 */
+	private static void number(int[] parents, int[] preOrder, int[] subtreeEnd) {
+		int conceptCount = parents.length;
+		// children in compressed sparse row form
+		int[] childOffsets = new int[conceptCount + 1];
+		for (int parent : parents) {
+			if (parent >= 0) {
+				childOffsets[parent + 1]++;
+			}
+		}
+		for (int i = 0; i < conceptCount; i++) {
+			childOffsets[i + 1] += childOffsets[i];
+		}
+		int[] children = new int[childOffsets[conceptCount]];
+		int[] fill = Arrays.copyOf(childOffsets, conceptCount);
+		for (int i = 0; i < conceptCount; i++) {
+			if (parents[i] >= 0) {
+				children[fill[parents[i]]++] = i;
+			}
+		}
+
+		// iterative depth-first traversal; the stack holds each class on the path
+		// from the root along with the position of its next child
+		int[] stack = new int[conceptCount];
+		int[] nextChild = new int[conceptCount];
+		int next = 0;
+		for (int root = 0; root < conceptCount; root++) {
+			if (parents[root] >= 0) {
+				continue;
+			}
+			int depth = 0;
+			stack[0] = root;
+			nextChild[root] = childOffsets[root];
+			preOrder[root] = next++;
+			while (depth >= 0) {
+				int node = stack[depth];
+				if (nextChild[node] < childOffsets[node + 1]) {
+					int child = children[nextChild[node]++];
+					nextChild[child] = childOffsets[child];
+					preOrder[child] = next++;
+					stack[++depth] = child;
+				} else {
+					subtreeEnd[node] = next - 1;
+					depth--;
+				}
+			}
+		}
+	}
+
+}
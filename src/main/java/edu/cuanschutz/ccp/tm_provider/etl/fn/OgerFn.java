@@ -3,17 +3,27 @@ package edu.cuanschutz.ccp.tm_provider.etl.fn;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.TupleTagList;
+import org.joda.time.Instant;
+
+import com.google.common.annotations.VisibleForTesting;
 
 import edu.cuanschutz.ccp.tm_provider.etl.EtlFailureData;
 import edu.cuanschutz.ccp.tm_provider.etl.PipelineMain;
@@ -60,11 +70,43 @@ public class OgerFn extends DoFn<KV<String, String>, KV<String, String>> {
 	public static PCollectionTuple process(
 			PCollection<KV<ProcessingStatus, Map<DocumentCriteria, String>>> statusEntityToText, String ogerServiceUri,
 			DocumentCriteria outputDocCriteria, com.google.cloud.Timestamp timestamp, OgerOutputType ogerOutputType) {
+		return process(statusEntityToText, ogerServiceUri, outputDocCriteria, timestamp, ogerOutputType, 1);
+	}
+
+	/**
+	 * @param statusEntityToText
+	 * @param ogerServiceUri
+	 * @param outputDocCriteria
+	 * @param timestamp
+	 * @param ogerOutputType
+	 * @param maxConcurrentRequests if greater than 1, each DoFn instance sends up
+	 *                              to this many requests to the OGER service
+	 *                              concurrently (see
+	 *                              {@link ConcurrentAnnotationFn})
+	 * @return
+	 */
+	public static PCollectionTuple process(
+			PCollection<KV<ProcessingStatus, Map<DocumentCriteria, String>>> statusEntityToText, String ogerServiceUri,
+			DocumentCriteria outputDocCriteria, com.google.cloud.Timestamp timestamp, OgerOutputType ogerOutputType,
+			int maxConcurrentRequests) {
+
+		if (maxConcurrentRequests > 1) {
+			return statusEntityToText.apply("Identify concept annotations",
+					ParDo.of(new ConcurrentAnnotationFn(ogerServiceUri, outputDocCriteria, timestamp, ogerOutputType,
+							maxConcurrentRequests)).withOutputTags(ANNOTATIONS_TAG, TupleTagList.of(ETL_FAILURE_TAG)));
+		}
 
 		return statusEntityToText.apply("Identify concept annotations", ParDo.of(
 				new DoFn<KV<ProcessingStatus, Map<DocumentCriteria, String>>, KV<ProcessingStatus, List<String>>>() {
 					private static final long serialVersionUID = 1L;
 
+					private transient HttpPostUtil ogerClient;
+
+					@Setup
+					public void setup() {
+						ogerClient = new HttpPostUtil(getTargetUri(ogerServiceUri, ogerOutputType));
+					}
+
 					@ProcessElement
 					public void processElement(
 							@Element KV<ProcessingStatus, Map<DocumentCriteria, String>> statusEntityToText,
@@ -76,13 +118,8 @@ public class OgerFn extends DoFn<KV<String, String>, KV<String, String>> {
 						String plainText = statusEntityToText.getValue().entrySet().iterator().next().getValue();
 
 						try {
-							String ogerOutput = annotate(plainText, ogerServiceUri, ogerOutputType);
-
-							if (outputDocCriteria.getDocumentFormat() == DocumentFormat.BIONLP) {
-								ogerOutput = convertToBioNLP(ogerOutput, docId, plainText, ogerOutputType);
-							}
-
-							List<String> chunkedOgerOutput = PipelineMain.chunkContent(ogerOutput);
+							List<String> chunkedOgerOutput = annotateDocument(docId, plainText, ogerClient,
+									outputDocCriteria, ogerOutputType);
 							out.get(ANNOTATIONS_TAG).output(KV.of(statusEntity, chunkedOgerOutput));
 						} catch (Throwable t) {
 							EtlFailureData failure = new EtlFailureData(outputDocCriteria,
@@ -94,6 +131,204 @@ public class OgerFn extends DoFn<KV<String, String>, KV<String, String>> {
 				}).withOutputTags(ANNOTATIONS_TAG, TupleTagList.of(ETL_FAILURE_TAG)));
 	}
 
+	/**
+	 * Annotates a single document and formats the output for storage
+	 * 
+	 * @param docId
+	 * @param plainText
+	 * @param ogerClient
+	 * @param outputDocCriteria
+	 * @param ogerOutputType
+	 * @return the (chunked) OGER output
+	 * @throws IOException
+	 */
+	protected static List<String> annotateDocument(String docId, String plainText, HttpPostUtil ogerClient,
+			DocumentCriteria outputDocCriteria, OgerOutputType ogerOutputType) throws IOException {
+		String ogerOutput = annotate(plainText, ogerClient);
+
+		if (outputDocCriteria.getDocumentFormat() == DocumentFormat.BIONLP) {
+			ogerOutput = convertToBioNLP(ogerOutput, docId, plainText, ogerOutputType);
+		}
+
+		return PipelineMain.chunkContent(ogerOutput);
+	}
+
+	/**
+	 * Annotates documents by sending up to maxConcurrentRequests requests to the
+	 * OGER service concurrently, so that the DoFn thread does not sit idle waiting
+	 * on each response. Documents are submitted as they arrive. Once
+	 * maxConcurrentRequests requests are in flight, processElement blocks until the
+	 * oldest completes, regardless of the window of the oldest document. Results
+	 * are output in the order the documents were received, either as soon as
+	 * possible or at the end of the bundle.
+	 */
+	protected static class ConcurrentAnnotationFn
+			extends DoFn<KV<ProcessingStatus, Map<DocumentCriteria, String>>, KV<ProcessingStatus, List<String>>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String ogerServiceUri;
+		private final DocumentCriteria outputDocCriteria;
+		private final com.google.cloud.Timestamp timestamp;
+		private final OgerOutputType ogerOutputType;
+		private final int maxConcurrentRequests;
+
+		private transient HttpPostUtil ogerClient;
+		private transient ExecutorService executor;
+		/* requests that have been submitted but whose results have not been output */
+		private transient Deque<PendingAnnotation> pending;
+		/*
+		 * completed requests whose results cannot be output until the end of the
+		 * bundle because they belong to a different window/timestamp than the element
+		 * being processed when they were removed from the pending queue
+		 */
+		private transient Deque<PendingAnnotation> held;
+
+		public ConcurrentAnnotationFn(String ogerServiceUri, DocumentCriteria outputDocCriteria,
+				com.google.cloud.Timestamp timestamp, OgerOutputType ogerOutputType, int maxConcurrentRequests) {
+			this.ogerServiceUri = ogerServiceUri;
+			this.outputDocCriteria = outputDocCriteria;
+			this.timestamp = timestamp;
+			this.ogerOutputType = ogerOutputType;
+			this.maxConcurrentRequests = maxConcurrentRequests;
+		}
+
+		@Setup
+		public void setup() {
+			ogerClient = createOgerClient();
+			executor = Executors.newFixedThreadPool(maxConcurrentRequests, runnable -> {
+				Thread thread = new Thread(runnable, "oger-request");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		/**
+		 * @return the client used to submit requests to the OGER service
+		 */
+		protected HttpPostUtil createOgerClient() {
+			return new HttpPostUtil(getTargetUri(ogerServiceUri, ogerOutputType));
+		}
+
+		@StartBundle
+		public void startBundle() {
+			pending = new ArrayDeque<PendingAnnotation>();
+			held = new ArrayDeque<PendingAnnotation>();
+		}
+
+		@ProcessElement
+		public void processElement(@Element KV<ProcessingStatus, Map<DocumentCriteria, String>> statusEntityToText,
+				@Timestamp Instant elementTimestamp, BoundedWindow window, MultiOutputReceiver out) {
+			// output completed results in order, waiting for the oldest request if the max
+			// number of requests are in flight. Results for a different window/timestamp
+			// cannot be output here so they are held until the end of the bundle, as are
+			// all later results so that the output order is preserved.
+			while (!pending.isEmpty() && (pending.size() >= maxConcurrentRequests || pending.peekFirst().isDone())) {
+				PendingAnnotation oldest = pending.removeFirst();
+				if (held.isEmpty() && oldest.matches(elementTimestamp, window)) {
+					oldest.output(out);
+				} else {
+					oldest.await();
+					held.addLast(oldest);
+				}
+			}
+
+			ProcessingStatus statusEntity = statusEntityToText.getKey();
+			String docId = statusEntity.getDocumentId();
+			// there is only one entry in the input map and it is the plain text of the
+			// input document
+			String plainText = statusEntityToText.getValue().entrySet().iterator().next().getValue();
+
+			CompletableFuture<List<String>> future = CompletableFuture.supplyAsync(() -> {
+				try {
+					return annotateDocument(docId, plainText, ogerClient, outputDocCriteria, ogerOutputType);
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				}
+			}, executor);
+			pending.addLast(new PendingAnnotation(statusEntity, future, elementTimestamp, window));
+		}
+
+		/**
+		 * @return the number of submitted requests whose results have not been output
+		 *         or held until the end of the bundle
+		 */
+		@VisibleForTesting
+		protected int getPendingCount() {
+			return pending.size();
+		}
+
+		@FinishBundle
+		public void finishBundle(FinishBundleContext context) {
+			while (!held.isEmpty()) {
+				held.removeFirst().output(context);
+			}
+			while (!pending.isEmpty()) {
+				pending.removeFirst().output(context);
+			}
+		}
+
+		@Teardown
+		public void teardown() {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+
+		private class PendingAnnotation {
+			private final ProcessingStatus statusEntity;
+			private final CompletableFuture<List<String>> future;
+			private final Instant elementTimestamp;
+			private final BoundedWindow window;
+
+			public PendingAnnotation(ProcessingStatus statusEntity, CompletableFuture<List<String>> future,
+					Instant elementTimestamp, BoundedWindow window) {
+				this.statusEntity = statusEntity;
+				this.future = future;
+				this.elementTimestamp = elementTimestamp;
+				this.window = window;
+			}
+
+			public boolean isDone() {
+				return future.isDone();
+			}
+
+			public void await() {
+				try {
+					future.join();
+				} catch (CompletionException e) {
+					// the failure is output along with the result
+				}
+			}
+
+			public boolean matches(Instant ts, BoundedWindow w) {
+				return elementTimestamp.equals(ts) && window.equals(w);
+			}
+
+			public void output(MultiOutputReceiver out) {
+				try {
+					out.get(ANNOTATIONS_TAG).output(KV.of(statusEntity, future.join()));
+				} catch (CompletionException e) {
+					out.get(ETL_FAILURE_TAG).output(createFailure(e));
+				}
+			}
+
+			public void output(FinishBundleContext context) {
+				try {
+					context.output(ANNOTATIONS_TAG, KV.of(statusEntity, future.join()), elementTimestamp, window);
+				} catch (CompletionException e) {
+					context.output(ETL_FAILURE_TAG, createFailure(e), elementTimestamp, window);
+				}
+			}
+
+			private EtlFailureData createFailure(CompletionException e) {
+				return new EtlFailureData(outputDocCriteria, "Failure during OGER annotation.",
+						statusEntity.getDocumentId(), e.getCause(), timestamp);
+			}
+		}
+
+	}
+
 	/**
 	 * Expected OGER system output is either TSV or PubAnnotation. TSV is output by
 	 * the OGER system when it is not paired with BioBERT, PubAnnotation when it is.
@@ -177,7 +412,23 @@ public class OgerFn extends DoFn<KV<String, String>, KV<String, String>> {
 	 */
 	public static String annotate(String plainText, String ogerServiceUri, OgerOutputType ogerOutputType)
 			throws IOException {
+		return annotate(plainText, new HttpPostUtil(getTargetUri(ogerServiceUri, ogerOutputType)));
+	}
 
+	/**
+	 * Invoke the OGER service using the specified client, e.g. one that is
+	 * initialized once per DoFn instance
+	 * 
+	 * @param plainText
+	 * @param ogerClient
+	 * @return
+	 * @throws IOException
+	 */
+	public static String annotate(String plainText, HttpPostUtil ogerClient) throws IOException {
+		return ogerClient.submit(plainText);
+	}
+
+	private static String getTargetUri(String ogerServiceUri, OgerOutputType ogerOutputType) {
 		String targetUri = null;
 
 		if (ogerOutputType == OgerOutputType.TSV) {
@@ -188,8 +439,7 @@ public class OgerFn extends DoFn<KV<String, String>, KV<String, String>> {
 		} else if (ogerOutputType == OgerOutputType.PUBANNOTATION) {
 			targetUri = String.format("%s/oger", ogerServiceUri);
 		}
-
-		return new HttpPostUtil(targetUri).submit(plainText);
+		return targetUri;
 	}
 
 }
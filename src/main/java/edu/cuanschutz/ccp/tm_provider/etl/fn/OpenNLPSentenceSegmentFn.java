@@ -57,6 +57,21 @@ public class OpenNLPSentenceSegmentFn extends DoFn<KV<String, String>, KV<String
 	public static TupleTag<EtlFailureData> ETL_FAILURE_TAG = new TupleTag<EtlFailureData>() {
 	};
 
+	static final String SENTENCE_MODEL_RESOURCE = "/de/tudarmstadt/ukp/dkpro/core/opennlp/lib/sentence-en-maxent.bin";
+
+	/**
+	 * The model is immutable and is shared by all threads in the JVM. It is
+	 * loaded on first use.
+	 */
+	private static volatile SentenceModel sentenceModel;
+
+	/**
+	 * {@link SentenceDetectorME} is not thread-safe so each thread gets its own
+	 * instance backed by the shared model when segmenting outside of the DoFn,
+	 * e.g. via {@link #segmentSentences(String)}.
+	 */
+	private static final ThreadLocal<SentenceDetectorME> SENTENCE_DETECTOR = new ThreadLocal<SentenceDetectorME>();
+
 	public static PCollectionTuple process(
 			PCollection<KV<ProcessingStatus, Map<DocumentCriteria, String>>> statusEntityToInputText,
 			DocumentCriteria dc, com.google.cloud.Timestamp timestamp) {
@@ -65,6 +80,18 @@ public class OpenNLPSentenceSegmentFn extends DoFn<KV<String, String>, KV<String
 				new DoFn<KV<ProcessingStatus, Map<DocumentCriteria, String>>, KV<ProcessingStatus, List<String>>>() {
 					private static final long serialVersionUID = 1L;
 
+					/*
+					 * each DoFn instance has its own detector; a detector obtained from the
+					 * thread-local in setup could be shared with another instance that is set up
+					 * on the same thread
+					 */
+					private transient SentenceDetectorME sentenceDetector;
+
+					@Setup
+					public void setup() throws IOException {
+						sentenceDetector = new SentenceDetectorME(getSentenceModel());
+					}
+
 					@ProcessElement
 					public void processElement(
 							@Element KV<ProcessingStatus, Map<DocumentCriteria, String>> statusEntityToText,
@@ -76,7 +103,7 @@ public class OpenNLPSentenceSegmentFn extends DoFn<KV<String, String>, KV<String
 						String plainText = statusEntityToText.getValue().entrySet().iterator().next().getValue();
 
 						try {
-							String bionlp = getSentencesAsBioNLP(docId, plainText);
+							String bionlp = getSentencesAsBioNLP(docId, plainText, sentenceDetector);
 
 							/*
 							 * divide the document content into chunks if necessary so that each chunk is
@@ -102,9 +129,10 @@ public class OpenNLPSentenceSegmentFn extends DoFn<KV<String, String>, KV<String
 	 * @return
 	 * @throws IOException
 	 */
-	private static String getSentencesAsBioNLP(String docId, String docText) throws IOException {
+	private static String getSentencesAsBioNLP(String docId, String docText, SentenceDetectorME sentenceDetector)
+			throws IOException {
 
-		TextDocument td = segmentSentences(docText);
+		TextDocument td = segmentSentences(docText, sentenceDetector);
 
 		// validate spans match document text
 		for (TextAnnotation ta : td.getAnnotations()) {
@@ -124,24 +152,49 @@ public class OpenNLPSentenceSegmentFn extends DoFn<KV<String, String>, KV<String
 		return bionlp;
 	}
 
+	/**
+	 * @return the shared sentence model, loading it from the classpath if this is
+	 *         the first request
+	 * @throws IOException
+	 */
+	static SentenceModel getSentenceModel() throws IOException {
+		SentenceModel model = sentenceModel;
+		if (model == null) {
+			synchronized (OpenNLPSentenceSegmentFn.class) {
+				model = sentenceModel;
+				if (model == null) {
+					try (InputStream modelStream = ClassPathUtil
+							.getResourceStreamFromClasspath(OpenNLPSentenceSegmentFn.class, SENTENCE_MODEL_RESOURCE)) {
+						model = new SentenceModel(modelStream);
+					}
+					sentenceModel = model;
+				}
+			}
+		}
+		return model;
+	}
+
+	/**
+	 * @return the sentence detector for the current thread
+	 * @throws IOException
+	 */
+	static SentenceDetectorME getSentenceDetector() throws IOException {
+		SentenceDetectorME sentenceDetector = SENTENCE_DETECTOR.get();
+		if (sentenceDetector == null) {
+			sentenceDetector = new SentenceDetectorME(getSentenceModel());
+			SENTENCE_DETECTOR.set(sentenceDetector);
+		}
+		return sentenceDetector;
+	}
+
 	static TextDocument segmentSentences(String plainText) throws IOException {
-		// TODO: Note that this is **incredibly** inefficient as the model is getting
-		// loaded
-		// for every document processed. This is because the SentenceDetectorME class is
-		// not Serializable. This should be investigated and/or this should be converted
-		// into a service that is hosted in the K8s cluster and is queried from this
-		// class instead.
-		InputStream modelStream = ClassPathUtil.getResourceStreamFromClasspath(OpenNLPSentenceSegmentFn.class,
-				"/de/tudarmstadt/ukp/dkpro/core/opennlp/lib/sentence-en-maxent.bin");
-		SentenceModel model = new SentenceModel(modelStream);
-		SentenceDetectorME sentenceDetector = new SentenceDetectorME(model);
+		return segmentSentences(plainText, getSentenceDetector());
+	}
 
+	static TextDocument segmentSentences(String plainText, SentenceDetectorME sentenceDetector) {
 		List<TextAnnotation> annots = new ArrayList<TextAnnotation>();
 		Span[] spans = sentenceDetector.sentPosDetect(plainText);
 		for (Span span : spans) {
-			span.getStart();
-			span.getEnd();
-			span.getType();
 			TextAnnotation annot = createSentenceAnnot(span.getStart(), span.getEnd(),
 					span.getCoveredText(plainText).toString());
 			annots.add(annot);
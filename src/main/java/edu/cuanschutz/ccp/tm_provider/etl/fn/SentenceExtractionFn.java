@@ -10,7 +10,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.ParDo;
@@ -28,8 +27,9 @@ import edu.cuanschutz.ccp.tm_provider.etl.PipelineMain;
 import edu.cuanschutz.ccp.tm_provider.etl.ProcessingStatus;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
+import edu.cuanschutz.ccp.tm_provider.etl.util.KeywordMatcher;
+import edu.cuanschutz.ccp.tm_provider.etl.util.SpanIndex;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
-import edu.ucdenver.ccp.common.string.RegExPatterns;
 import edu.ucdenver.ccp.nlp.core.annotation.Span;
 import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
 import lombok.Data;
@@ -74,6 +74,13 @@ public class SentenceExtractionFn extends DoFn<KV<String, String>, KV<String, St
 				new DoFn<KV<ProcessingStatus, Map<DocumentCriteria, String>>, KV<ProcessingStatus, ExtractedSentence>>() {
 					private static final long serialVersionUID = 1L;
 
+					private transient KeywordMatcher keywordMatcher;
+
+					@Setup
+					public void setup() {
+						keywordMatcher = createKeywordMatcher(keywords);
+					}
+
 					@ProcessElement
 					public void processElement(ProcessContext context, MultiOutputReceiver out) {
 						KV<ProcessingStatus, Map<DocumentCriteria, String>> statusEntityToText = context.element();
@@ -101,7 +108,7 @@ public class SentenceExtractionFn extends DoFn<KV<String, String>, KV<String, St
 									.getDocTypeToContentMap(docId, statusEntityToText.getValue());
 
 							Set<ExtractedSentence> extractedSentences = extractSentences(docId, documentText,
-									documentPublicationTypes, documentYearPublished, docTypeToContentMap, keywords,
+									documentPublicationTypes, documentYearPublished, docTypeToContentMap, keywordMatcher,
 									prefixesToPlaceholderMap, conceptDocType, ancestorsMap, conceptIdsToExclude);
 							if (extractedSentences == null) {
 								PipelineMain.logFailure(ETL_FAILURE_TAG,
@@ -130,6 +137,16 @@ public class SentenceExtractionFn extends DoFn<KV<String, String>, KV<String, St
 			Map<DocumentType, Collection<TextAnnotation>> docTypeToContentMap, Set<String> keywords,
 			Map<List<String>, String> prefixesToPlaceholderMap, DocumentType conceptDocType,
 			Map<String, Set<String>> ancestorMap, Set<String> conceptIdsToExclude) throws IOException {
+		return extractSentences(documentId, documentText, documentPublicationTypes, documentYearPublished,
+				docTypeToContentMap, createKeywordMatcher(keywords), prefixesToPlaceholderMap, conceptDocType,
+				ancestorMap, conceptIdsToExclude);
+	}
+
+	private static Set<ExtractedSentence> extractSentences(String documentId, String documentText,
+			Set<String> documentPublicationTypes, int documentYearPublished,
+			Map<DocumentType, Collection<TextAnnotation>> docTypeToContentMap, KeywordMatcher keywordMatcher,
+			Map<List<String>, String> prefixesToPlaceholderMap, DocumentType conceptDocType,
+			Map<String, Set<String>> ancestorMap, Set<String> conceptIdsToExclude) throws IOException {
 
 		Collection<TextAnnotation> sentenceAnnots = docTypeToContentMap.get(DocumentType.SENTENCE);
 		Collection<TextAnnotation> conceptAnnots = docTypeToContentMap.get(conceptDocType);
@@ -172,7 +189,7 @@ public class SentenceExtractionFn extends DoFn<KV<String, String>, KV<String, St
 			String yPlaceholder = prefixesToPlaceholderMap.get(yPrefixes);
 
 			extractedSentences
-					.addAll(catalogExtractedSentences(keywords, documentText, documentId, documentPublicationTypes,
+					.addAll(catalogExtractedSentences(keywordMatcher, documentText, documentId, documentPublicationTypes,
 							documentYearPublished, sentenceToConceptMap, xPlaceholder, yPlaceholder, sectionAnnots));
 
 		}
@@ -254,13 +271,24 @@ public class SentenceExtractionFn extends DoFn<KV<String, String>, KV<String, St
 			String documentId, Set<String> documentPublicationTypes, int documentYearPublished,
 			Map<TextAnnotation, Map<String, Set<TextAnnotation>>> sentenceToConceptMap, String xPlaceholder,
 			String yPlaceholder, Collection<TextAnnotation> sectionAnnots) {
+		return catalogExtractedSentences(createKeywordMatcher(keywords), documentText, documentId,
+				documentPublicationTypes, documentYearPublished, sentenceToConceptMap, xPlaceholder, yPlaceholder,
+				sectionAnnots);
+	}
+
+	private static Set<ExtractedSentence> catalogExtractedSentences(KeywordMatcher keywordMatcher,
+			String documentText, String documentId, Set<String> documentPublicationTypes, int documentYearPublished,
+			Map<TextAnnotation, Map<String, Set<TextAnnotation>>> sentenceToConceptMap, String xPlaceholder,
+			String yPlaceholder, Collection<TextAnnotation> sectionAnnots) {
 
 		Set<ExtractedSentence> extractedSentences = new HashSet<ExtractedSentence>();
+		SpanIndex<TextAnnotation> sectionAnnotIndex = SpanIndex
+				.create((sectionAnnots == null) ? Collections.<TextAnnotation>emptyList() : sectionAnnots);
 		for (Entry<TextAnnotation, Map<String, Set<TextAnnotation>>> entry : sentenceToConceptMap.entrySet()) {
 			TextAnnotation sentenceAnnot = entry.getKey();
-			String documentZone = determineDocumentZone(sentenceAnnot, sectionAnnots);
-			String keywordInSentence = sentenceContainsKeyword(sentenceAnnot.getCoveredText(), keywords);
-			if (keywords == null || keywords.isEmpty() || keywordInSentence != null) {
+			String documentZone = determineDocumentZone(sentenceAnnot, sectionAnnotIndex);
+			String keywordInSentence = keywordMatcher.findKeyword(sentenceAnnot.getCoveredText());
+			if (keywordMatcher.isEmpty() || keywordInSentence != null) {
 				if (entry.getValue().size() > 1) {
 					// then this sentence contains at least 1 concept X and 1 concept Y
 					Set<TextAnnotation> xConceptsInSentence = entry.getValue().get(X_CONCEPTS);
@@ -329,11 +357,12 @@ public class SentenceExtractionFn extends DoFn<KV<String, String>, KV<String, St
 	 */
 	protected static String determineDocumentZone(TextAnnotation sentenceAnnot,
 			Collection<TextAnnotation> sectionAnnots) {
+		return determineDocumentZone(sentenceAnnot, SpanIndex.create(sectionAnnots));
+	}
 
-		List<TextAnnotation> sortedSectionAnnots = new ArrayList<TextAnnotation>(sectionAnnots);
-		Collections.sort(sortedSectionAnnots, TextAnnotation.BY_SPAN());
-
-		for (TextAnnotation section : sortedSectionAnnots) {
+	private static String determineDocumentZone(TextAnnotation sentenceAnnot,
+			SpanIndex<TextAnnotation> sectionAnnotIndex) {
+		for (TextAnnotation section : sectionAnnotIndex.getOverlapping(sentenceAnnot.getAggregateSpan())) {
 			if (sentenceAnnot.overlaps(section)) {
 				return section.getClassMention().getMentionName();
 			}
@@ -368,20 +397,19 @@ public class SentenceExtractionFn extends DoFn<KV<String, String>, KV<String, St
 
 		Map<TextAnnotation, Map<String, Set<TextAnnotation>>> map = new HashMap<TextAnnotation, Map<String, Set<TextAnnotation>>>();
 
-		List<TextAnnotation> sentenceAnnotList = new ArrayList<TextAnnotation>(sentenceAnnots);
-		Collections.sort(sentenceAnnotList, TextAnnotation.BY_SPAN());
+		SpanIndex<TextAnnotation> sentenceAnnotIndex = SpanIndex.create(sentenceAnnots);
 
-		matchConceptsToSentence(map, sentenceAnnotList, conceptXAnnots, X_CONCEPTS);
-		matchConceptsToSentence(map, sentenceAnnotList, conceptYAnnots, Y_CONCEPTS);
+		matchConceptsToSentence(map, sentenceAnnotIndex, conceptXAnnots, X_CONCEPTS);
+		matchConceptsToSentence(map, sentenceAnnotIndex, conceptYAnnots, Y_CONCEPTS);
 
 		return map;
 
 	}
 
 	private static void matchConceptsToSentence(Map<TextAnnotation, Map<String, Set<TextAnnotation>>> map,
-			List<TextAnnotation> sentenceAnnots, List<TextAnnotation> conceptXAnnots, String conceptKey) {
+			SpanIndex<TextAnnotation> sentenceAnnotIndex, List<TextAnnotation> conceptXAnnots, String conceptKey) {
 		for (TextAnnotation xAnnot : conceptXAnnots) {
-			for (TextAnnotation sentence : sentenceAnnots) {
+			for (TextAnnotation sentence : sentenceAnnotIndex.getOverlapping(xAnnot.getAggregateSpan())) {
 				if (xAnnot.overlaps(sentence)) {
 					if (map.containsKey(sentence)) {
 						Map<String, Set<TextAnnotation>> innerMap = map.get(sentence);
@@ -401,19 +429,24 @@ public class SentenceExtractionFn extends DoFn<KV<String, String>, KV<String, St
 		}
 	}
 
+	/**
+	 * @param keywords
+	 * @return a matcher for the keywords; if keywords is null the matcher is empty
+	 */
+	protected static KeywordMatcher createKeywordMatcher(Set<String> keywords) {
+		return new KeywordMatcher((keywords == null) ? Collections.<String>emptySet() : keywords);
+	}
+
+	/**
+	 * @param sentence
+	 * @param keywords
+	 * @return the first keyword (in the iteration order of the keywords set) that
+	 *         appears as a whole word in the sentence, ignoring case, or null if no
+	 *         keyword appears in the sentence
+	 */
 	@VisibleForTesting
 	protected static String sentenceContainsKeyword(String sentence, Set<String> keywords) {
-		if (keywords == null || keywords.isEmpty()) {
-			return null;
-		}
-		for (String keyword : keywords) {
-			Pattern p = Pattern.compile(String.format("\\b%s\\b", RegExPatterns.escapeCharacterForRegEx(keyword)),
-					Pattern.CASE_INSENSITIVE);
-			if (p.matcher(sentence).find()) {
-				return keyword;
-			}
-		}
-		return null;
+		return createKeywordMatcher(keywords).findKeyword(sentence);
 	}
 
 }
@@ -30,6 +30,7 @@ import edu.cuanschutz.ccp.tm_provider.etl.PipelineMain;
 import edu.cuanschutz.ccp.tm_provider.etl.ProcessingStatus;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
+import edu.cuanschutz.ccp.tm_provider.etl.util.KeywordMatcher;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 import edu.ucdenver.ccp.common.io.ClassPathUtil;
 import edu.ucdenver.ccp.nlp.core.annotation.Span;
@@ -191,10 +192,10 @@ public class SentenceExtractionWebAnnoFn extends DoFn<KV<String, String>, KV<Str
 			String yPlaceholder, SimpleTokenizer tokenizer) {
 
 		Set<String> extractedSentences = new HashSet<String>();
+		KeywordMatcher keywordMatcher = SentenceExtractionFn.createKeywordMatcher(keywords);
 		for (Entry<TextAnnotation, Map<String, Set<TextAnnotation>>> entry : sentenceToConceptMap.entrySet()) {
 			TextAnnotation sentenceAnnot = entry.getKey();
-			String keywordInSentence = SentenceExtractionFn.sentenceContainsKeyword(sentenceAnnot.getCoveredText(),
-					keywords);
+			String keywordInSentence = keywordMatcher.findKeyword(sentenceAnnot.getCoveredText());
 			if (keywords == null || keywords.isEmpty() || keywordInSentence != null) {
 				if (entry.getValue().size() > 1) {
 					// then this sentence contains at least 1 concept X and 1 concept Y
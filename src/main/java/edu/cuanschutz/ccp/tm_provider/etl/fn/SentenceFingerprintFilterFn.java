@@ -0,0 +1,219 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Metrics;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Values;
+import org.apache.beam.sdk.transforms.join.CoGbkResult;
+import org.apache.beam.sdk.transforms.join.CoGroupByKey;
+import org.apache.beam.sdk.transforms.join.KeyedPCollectionTuple;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionTuple;
+import org.apache.beam.sdk.values.TupleTag;
+import org.apache.beam.sdk.values.TupleTagList;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+
+import edu.cuanschutz.ccp.tm_provider.etl.fn.ElasticsearchDocumentCreatorFn.Sentence;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Supports incremental loading of Elasticsearch sentence documents. Each
+ * sentence document is identified by its Elasticsearch identifier (see
+ * {@link #getElasticsearchId(JsonNode)}) and fingerprinted with the SHA-256 of
+ * its JSON, which changes whenever the sentence's concept annotations change.
+ * The fingerprints of the sentences that have been indexed are kept in a
+ * snapshot of tab-delimited lines (identifier, fingerprint).
+ * <p>
+ * Sentence documents whose identifier and fingerprint are already in the
+ * snapshot are dropped, as are duplicate sentence documents within the input.
+ * A sentence that is repeated within a document has a single identifier, so if
+ * its occurrences have different concept annotations, only the occurrence with
+ * the smallest fingerprint is kept. Each identifier is therefore loaded with a
+ * single document and has a single fingerprint, and the choice does not change
+ * from one load to the next. The updated snapshot contains the fingerprints of
+ * all input sentences along with the previous fingerprints of sentences that
+ * were not in the input.
+ * <p>
+ * When all sentences are loaded, {@link #selectSentencePerId(PCollection)}
+ * makes the same choice for repeated sentences, so both indexing modes load
+ * the same version of each sentence.
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class SentenceFingerprintFilterFn extends DoFn<KV<String, CoGbkResult>, String> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String METRICS_NAMESPACE = "elasticsearch";
+	private static final String SNAPSHOT_DELIMITER = "\t";
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	@SuppressWarnings("serial")
+	public static TupleTag<String> CHANGED_SENTENCE_JSON_TAG = new TupleTag<String>() {
+	};
+
+	@SuppressWarnings("serial")
+	public static TupleTag<String> SNAPSHOT_LINE_TAG = new TupleTag<String>() {
+	};
+
+	private final TupleTag<String> sentenceJsonTag;
+	private final TupleTag<String> snapshotFingerprintTag;
+
+	private final Counter changedCounter = Metrics.counter(METRICS_NAMESPACE, "changed_sentences");
+	private final Counter unchangedCounter = Metrics.counter(METRICS_NAMESPACE, "unchanged_sentences");
+	private final Counter repeatedCounter = Metrics.counter(METRICS_NAMESPACE, "repeated_sentences_dropped");
+
+	/**
+	 * @param sentenceJson     Elasticsearch sentence documents
+	 * @param snapshotLines    the lines of the snapshot from the previous load
+	 * @return a {@link PCollectionTuple} containing the sentence documents that
+	 *         are new or have changed ({@link #CHANGED_SENTENCE_JSON_TAG}) and the
+	 *         lines of the updated snapshot ({@link #SNAPSHOT_LINE_TAG})
+	 */
+	public static PCollectionTuple filterUnchangedSentences(PCollection<String> sentenceJson,
+			PCollection<String> snapshotLines) {
+		PCollection<KV<String, String>> idToJson = keyByElasticsearchId(sentenceJson);
+
+		PCollection<KV<String, String>> idToFingerprint = snapshotLines.apply("snapshot line->es id",
+				ParDo.of(new DoFn<String, KV<String, String>>() {
+					private static final long serialVersionUID = 1L;
+
+					@ProcessElement
+					public void processElement(@Element String line, OutputReceiver<KV<String, String>> out) {
+						String[] cols = line.split(SNAPSHOT_DELIMITER);
+						if (cols.length != 2) {
+							throw new IllegalArgumentException("Invalid sentence fingerprint snapshot line: " + line);
+						}
+						out.output(KV.of(cols[0], cols[1]));
+					}
+				}));
+
+		final TupleTag<String> sentenceJsonTag = new TupleTag<String>();
+		final TupleTag<String> snapshotFingerprintTag = new TupleTag<String>();
+		PCollection<KV<String, CoGbkResult>> joined = KeyedPCollectionTuple.of(sentenceJsonTag, idToJson)
+				.and(snapshotFingerprintTag, idToFingerprint).apply("join sentences & snapshot", CoGroupByKey.create());
+
+		return joined.apply("filter unchanged sentences",
+				ParDo.of(new SentenceFingerprintFilterFn(sentenceJsonTag, snapshotFingerprintTag))
+						.withOutputTags(CHANGED_SENTENCE_JSON_TAG, TupleTagList.of(SNAPSHOT_LINE_TAG)));
+	}
+
+	/**
+	 * Selects a single sentence document for each Elasticsearch identifier so
+	 * that the documents loaded for a repeated sentence do not depend on the order
+	 * of the bulk operations. As when filtering unchanged sentences, the document
+	 * with the smallest fingerprint is kept.
+	 *
+	 * @param sentenceJson Elasticsearch sentence documents
+	 * @return a single sentence document for each Elasticsearch identifier
+	 */
+	public static PCollection<String> selectSentencePerId(PCollection<String> sentenceJson) {
+		return keyByElasticsearchId(sentenceJson)
+				.apply("select sentence per es id", Combine.perKey(new SmallestFingerprintFn()))
+				.apply("es id->sentence json", Values.create());
+	}
+
+	private static PCollection<KV<String, String>> keyByElasticsearchId(PCollection<String> sentenceJson) {
+		return sentenceJson.apply("sentence json->es id", ParDo.of(new DoFn<String, KV<String, String>>() {
+			private static final long serialVersionUID = 1L;
+
+			@ProcessElement
+			public void processElement(@Element String json, OutputReceiver<KV<String, String>> out)
+					throws IOException {
+				out.output(KV.of(getElasticsearchId(OBJECT_MAPPER.readTree(json)), json));
+			}
+		}));
+	}
+
+	/**
+	 * Keeps the sentence document with the smallest fingerprint
+	 */
+	private static class SmallestFingerprintFn extends Combine.BinaryCombineFn<String> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public String apply(String left, String right) {
+			return (computeFingerprint(right).compareTo(computeFingerprint(left)) < 0) ? right : left;
+		}
+	}
+
+	@ProcessElement
+	public void processElement(ProcessContext c) {
+		String id = c.element().getKey();
+		CoGbkResult result = c.element().getValue();
+
+		Set<String> previousFingerprints = new HashSet<String>();
+		for (String fingerprint : result.getAll(snapshotFingerprintTag)) {
+			previousFingerprints.add(fingerprint);
+		}
+
+		// duplicate sentence documents have the same fingerprint
+		TreeMap<String, String> fingerprintToJson = new TreeMap<String, String>();
+		for (String json : result.getAll(sentenceJsonTag)) {
+			fingerprintToJson.putIfAbsent(computeFingerprint(json), json);
+		}
+
+		if (fingerprintToJson.isEmpty()) {
+			// the sentence was not part of this load, so keep its previous fingerprint
+			for (String fingerprint : previousFingerprints) {
+				c.output(SNAPSHOT_LINE_TAG, toSnapshotLine(id, fingerprint));
+			}
+			return;
+		}
+
+		// occurrences of a repeated sentence with different annotations share the
+		// identifier; keep one of them
+		repeatedCounter.inc(fingerprintToJson.size() - 1);
+		Entry<String, String> entry = fingerprintToJson.firstEntry();
+		if (previousFingerprints.contains(entry.getKey())) {
+			unchangedCounter.inc();
+		} else {
+			changedCounter.inc();
+			c.output(CHANGED_SENTENCE_JSON_TAG, entry.getValue());
+		}
+		c.output(SNAPSHOT_LINE_TAG, toSnapshotLine(id, entry.getKey()));
+	}
+
+	/**
+	 * Sentence identifiers are computed from the sentence text (see
+	 * {@link ElasticsearchDocumentCreatorFn#computeSentenceIdentifier(String)}),
+	 * so the same sentence in different documents has the same identifier. The
+	 * Elasticsearch identifier therefore combines the document identifier and the
+	 * sentence identifier. A sentence that is repeated within a document is a
+	 * single Elasticsearch document, which is selected by
+	 * {@link #selectSentencePerId(PCollection)} or
+	 * {@link #filterUnchangedSentences(PCollection, PCollection)}.
+	 *
+	 * @param sentenceJson an Elasticsearch sentence document
+	 * @return the identifier of the sentence document in Elasticsearch
+	 */
+	public static String getElasticsearchId(JsonNode sentenceJson) {
+		return sentenceJson.path(Sentence.DOCUMENT_ID).asText() + "_" + sentenceJson.path(Sentence.ID).asText();
+	}
+
+	@VisibleForTesting
+	protected static String computeFingerprint(String sentenceJson) {
+		return DigestUtils.sha256Hex(sentenceJson);
+	}
+
+	private static String toSnapshotLine(String id, String fingerprint) {
+		return id + SNAPSHOT_DELIMITER + fingerprint;
+	}
+
+}
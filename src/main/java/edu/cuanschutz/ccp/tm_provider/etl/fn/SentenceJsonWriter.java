@@ -0,0 +1,114 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import edu.cuanschutz.ccp.tm_provider.etl.fn.ElasticsearchDocumentCreatorFn.Sentence;
+
+/**
+ * Serializes {@link Sentence} objects to the JSON documents that are loaded
+ * into Elasticsearch. The output is identical to serializing the sentence with
+ * a default {@link com.google.gson.Gson} instance and then URL-encoding the
+ * percent and equals signs, but each string is escaped and encoded in a single
+ * pass into a buffer that is reused for each sentence.
+ * <p>
+ * As with Gson's default (HTML-safe) settings, quotes and backslashes are
+ * escaped, control characters and the characters &lt; &gt; &amp; = ' as well
+ * as the line and paragraph separators (U+2028, U+2029) are written as
+ * unicode escapes, and all other characters are written as is. The percent
+ * sign is then written as %25. Because the equals sign is always escaped in
+ * strings, it never needs to be written as %3D.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class SentenceJsonWriter {
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/*
+	 * the replacement for each ASCII character, or null if the character is
+	 * written as is
+	 */
+	private static final String[] REPLACEMENTS = new String[128];
+	static {
+		for (int c = 0; c < 0x20; c++) {
+			REPLACEMENTS[c] = unicodeEscape((char) c);
+		}
+		REPLACEMENTS['"'] = "\\\"";
+		REPLACEMENTS['\\'] = "\\\\";
+		REPLACEMENTS['\t'] = "\\t";
+		REPLACEMENTS['\b'] = "\\b";
+		REPLACEMENTS['\n'] = "\\n";
+		REPLACEMENTS['\r'] = "\\r";
+		REPLACEMENTS['\f'] = "\\f";
+		for (char c : new char[] { '<', '>', '&', '=', '\'' }) {
+			REPLACEMENTS[c] = unicodeEscape(c);
+		}
+		REPLACEMENTS['%'] = "%25";
+	}
+
+	private final StringBuilder buffer = new StringBuilder(256);
+
+	/**
+	 * @param sentence
+	 * @return the JSON document for the sentence. Fields with null values are
+	 *         omitted.
+	 */
+	public String toJson(Sentence sentence) {
+		buffer.setLength(0);
+		buffer.append('{');
+		boolean first = true;
+		first = writeField(Sentence.ID, sentence.getId(), first);
+		first = writeField(Sentence.DOCUMENT_ID, sentence.getDocumentId(), first);
+		writeField(Sentence.ANNOTATED_TEXT, sentence.getAnnotatedText(), first);
+		buffer.append('}');
+		return buffer.toString();
+	}
+
+	/**
+	 * @param name
+	 * @param value
+	 * @param first true if no field has been written yet
+	 * @return true if no field has been written yet, including this one
+	 */
+	private boolean writeField(String name, String value, boolean first) {
+		if (value == null) {
+			return first;
+		}
+		if (!first) {
+			buffer.append(',');
+		}
+		writeString(name);
+		buffer.append(':');
+		writeString(value);
+		return false;
+	}
+
+	private void writeString(String s) {
+		buffer.append('"');
+		int length = s.length();
+		// characters are copied in runs between characters that need to be replaced
+		int runStart = 0;
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			String replacement;
+			if (c < 128) {
+				replacement = REPLACEMENTS[c];
+			} else if (c == '\u2028' || c == '\u2029') {
+				replacement = unicodeEscape(c);
+			} else {
+				continue;
+			}
+			if (replacement != null) {
+				buffer.append(s, runStart, i);
+				buffer.append(replacement);
+				runStart = i + 1;
+			}
+		}
+		buffer.append(s, runStart, length);
+		buffer.append('"');
+	}
+
+	private static String unicodeEscape(char c) {
+		return new String(new char[] { '\\', 'u', HEX_DIGITS[(c >> 12) & 0xF], HEX_DIGITS[(c >> 8) & 0xF],
+				HEX_DIGITS[(c >> 4) & 0xF], HEX_DIGITS[c & 0xF] });
+	}
+
+}
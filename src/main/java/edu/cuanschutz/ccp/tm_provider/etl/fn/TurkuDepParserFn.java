@@ -49,6 +49,13 @@ public class TurkuDepParserFn extends DoFn<KV<String, String>, KV<String, String
 				ParDo.of(new DoFn<KV<ProcessingStatus, Map<DocumentCriteria, String>>, KV<ProcessingStatus, List<String>>>() {
 					private static final long serialVersionUID = 1L;
 
+					private transient HttpPostUtil dependencyParserClient;
+
+					@Setup
+					public void setup() {
+						dependencyParserClient = new HttpPostUtil(dependencyParserServiceUri);
+					}
+
 					@ProcessElement
 					public void processElement(@Element KV<ProcessingStatus, Map<DocumentCriteria, String>> statusEntityToText,
 							MultiOutputReceiver out) {
@@ -67,7 +74,7 @@ public class TurkuDepParserFn extends DoFn<KV<String, String>, KV<String, String
 						String plainTextWithBreaks = plainText.replaceAll("\\n", "\n\n");
 
 						try {
-							String conllu = parseText(plainTextWithBreaks, dependencyParserServiceUri);
+							String conllu = parseText(plainTextWithBreaks, dependencyParserClient);
 
 							/*
 							 * divide the document content into chunks if necessary so that each chunk is
@@ -89,12 +96,13 @@ public class TurkuDepParserFn extends DoFn<KV<String, String>, KV<String, String
 	 * parse in CoNLL-U format.
 	 * 
 	 * @param plainTextWithBreaks
-	 * @param dependencyParserServiceUri
+	 * @param dependencyParserClient
 	 * @return
 	 * @throws IOException
 	 */
-	private static String parseText(String plainTextWithBreaks, String dependencyParserServiceUri) throws IOException {
-		return new HttpPostUtil(dependencyParserServiceUri).submit(plainTextWithBreaks);
+	private static String parseText(String plainTextWithBreaks, HttpPostUtil dependencyParserClient)
+			throws IOException {
+		return dependencyParserClient.submit(plainTextWithBreaks);
 	}
 
 }
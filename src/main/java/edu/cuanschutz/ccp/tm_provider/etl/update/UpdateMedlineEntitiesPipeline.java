@@ -5,8 +5,6 @@ import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.io.Compression;
 import org.apache.beam.sdk.io.FileIO;
 import org.apache.beam.sdk.io.FileIO.ReadableFile;
-import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
-import org.apache.beam.sdk.io.xml.XmlIO;
 import org.apache.beam.sdk.options.Default;
 import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptionsFactory;
@@ -28,7 +26,10 @@ import edu.cuanschutz.ccp.tm_provider.etl.PipelineMain;
 import edu.cuanschutz.ccp.tm_provider.etl.ProcessingStatus;
 import edu.cuanschutz.ccp.tm_provider.etl.fn.EtlFailureToEntityFn;
 import edu.cuanschutz.ccp.tm_provider.etl.fn.MedlineStatusUpdateFn;
+import edu.cuanschutz.ccp.tm_provider.etl.fn.MedlineXmlReaderFn;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentStore;
+import edu.cuanschutz.ccp.tm_provider.etl.util.MedlineRecord;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ProcessingStatusFlag;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 
@@ -57,23 +58,22 @@ public class UpdateMedlineEntitiesPipeline {
 		PCollection<ReadableFile> files = p.apply(FileIO.match().filepattern(medlineXmlFilePattern))
 				.apply(FileIO.readMatches().withCompression(Compression.GZIP));
 
-		PCollection<PubmedArticle> pubmedArticles = files
-				.apply(XmlIO.<PubmedArticle>readFiles().withRootElement("PubmedArticleSet")
-						.withRecordElement("PubmedArticle").withRecordClass(PubmedArticle.class));
+		PCollection<MedlineRecord> medlineRecords = MedlineXmlReaderFn.readRecords(files);
 
-		PCollection<KV<String, PubmedArticle>> docIdToArticle = keyByPubmedId(pubmedArticles);
+		PCollection<KV<String, MedlineRecord>> docIdToRecord = keyRecordsByPubmedId(medlineRecords);
 
 		PCollection<KV<String, ProcessingStatus>> docIdToStatusEntity = PipelineMain.getStatusEntitiesToProcess(p,
 				ProcessingStatusFlag.NOOP, CollectionsUtil.createSet(ProcessingStatusFlag.TEXT_DONE),
 				options.getProject(), "PUBMED", OverwriteOutput.YES);
 
 		/* group the lines by their ids */
-		final TupleTag<PubmedArticle> articleTag = new TupleTag<>();
+		final TupleTag<MedlineRecord> recordTag = new TupleTag<>();
 		final TupleTag<ProcessingStatus> statusEntityTag = new TupleTag<>();
-		PCollection<KV<String, CoGbkResult>> result = KeyedPCollectionTuple.of(articleTag, docIdToArticle)
+		PCollection<KV<String, CoGbkResult>> result = KeyedPCollectionTuple.of(recordTag, docIdToRecord)
 				.and(statusEntityTag, docIdToStatusEntity).apply(CoGroupByKey.create());
 
-		PCollectionTuple output = MedlineStatusUpdateFn.process(result, articleTag, statusEntityTag, timestamp);
+		PCollectionTuple output = MedlineStatusUpdateFn.processRecords(result, recordTag, statusEntityTag,
+				timestamp);
 		PCollection<EtlFailureData> failures = output.get(MedlineStatusUpdateFn.etlFailureTag);
 		PCollection<ProcessingStatus> status = output.get(MedlineStatusUpdateFn.processingStatusTag);
 
@@ -85,7 +85,7 @@ public class UpdateMedlineEntitiesPipeline {
 		PCollection<Entity> updatedEntities = PipelineMain.updateStatusEntities(status);
 		PCollection<Entity> nonredundantStatusEntities = PipelineMain.deduplicateStatusEntities(updatedEntities);
 		nonredundantStatusEntities.apply("status_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		/*
 		 * store the failures for this pipeline in Cloud Datastore - deduplication is
@@ -95,7 +95,7 @@ public class UpdateMedlineEntitiesPipeline {
 				ParDo.of(new EtlFailureToEntityFn()));
 		PCollection<Entity> nonredundantFailureEntities = PipelineMain.deduplicateEntitiesByKey(failureEntities);
 		nonredundantFailureEntities.apply("failure_entity->datastore",
-				DatastoreIO.v1().write().withProjectId(options.getProject()));
+				DocumentStore.fromOptions(options, options.getProject()).write());
 
 		p.run().waitUntilFinish();
 
@@ -119,4 +119,22 @@ public class UpdateMedlineEntitiesPipeline {
 				}));
 	}
 
+	/**
+	 * @param medlineRecords
+	 * @return the input collection of MedlineRecords as a KV keyed by the PubMed ID
+	 */
+	public static PCollection<KV<String, MedlineRecord>> keyRecordsByPubmedId(
+			PCollection<MedlineRecord> medlineRecords) {
+		return medlineRecords.apply("create id/record kv pair",
+				ParDo.of(new DoFn<MedlineRecord, KV<String, MedlineRecord>>() {
+					private static final long serialVersionUID = 1L;
+
+					@ProcessElement
+					public void processElement(ProcessContext context) {
+						MedlineRecord record = context.element();
+						context.output(KV.of("PMID:" + record.getPmid(), record));
+					}
+				}));
+	}
+
 }
@@ -0,0 +1,70 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+/**
+ * Limits the number of concurrent requests, e.g. database writes, using an
+ * additive-increase/multiplicative-decrease (AIMD) policy. The limit grows by
+ * one after a full limit's worth of consecutive fast, successful requests and
+ * is halved whenever a request fails or exceeds the latency threshold.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyThresholdMillis;
+
+	private int limit;
+	private int inFlight = 0;
+	private int successesSinceIncrease = 0;
+
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis) {
+		if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException(String.format(
+					"Invalid concurrency limits. Required: 1 <= min (%d) <= initial (%d) <= max (%d)", minLimit,
+					initialLimit, maxLimit));
+		}
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.latencyThresholdMillis = latencyThresholdMillis;
+	}
+
+	/**
+	 * Blocks until the number of in-flight requests is below the current limit
+	 *
+	 * @throws InterruptedException
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		while (inFlight >= limit) {
+			wait();
+		}
+		inFlight++;
+	}
+
+	/**
+	 * Must be called once for each call to {@link #acquire()} when the request
+	 * completes
+	 *
+	 * @param latencyMillis the observed latency of the request
+	 * @param success       false if the request failed
+	 */
+	public synchronized void release(long latencyMillis, boolean success) {
+		inFlight--;
+		if (!success || latencyMillis > latencyThresholdMillis) {
+			limit = Math.max(minLimit, limit / 2);
+			successesSinceIncrease = 0;
+		} else if (limit < maxLimit && ++successesSinceIncrease >= limit) {
+			limit++;
+			successesSinceIncrease = 0;
+		}
+		notifyAll();
+	}
+
+	public synchronized int getLimit() {
+		return limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+}
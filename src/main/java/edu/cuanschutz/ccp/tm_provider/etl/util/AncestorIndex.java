@@ -0,0 +1,624 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.beam.sdk.io.FileSystems;
+import org.apache.beam.sdk.io.fs.ResourceId;
+
+import edu.cuanschutz.ccp.tm_provider.etl.fn.PCollectionUtil.Delimiter;
+
+/**
+ * A compact, read-only index of the ancestor closure of ontology classes. The
+ * index is built offline from the mapping file produced by
+ * {@link OntologyClassAncestorMapFactory} and is memory-mapped by workers, so
+ * the closure does not need to be deserialized into Java collections on each
+ * worker.
+ * <p>
+ * Any mapping from a concept identifier to a set of concept identifiers can be
+ * stored in the same way, e.g. the NCBITaxon and PR promotion maps and the
+ * CRAFT extension class to OBO class map used during concept post-processing
+ * (see {@link #createIndexFile(File, Delimiter, Delimiter, File)}). Those
+ * mappings can be accessed through the {@link Map} views returned by
+ * {@link #asMap()} and {@link #asSingleValueMap()}.
+ * <p>
+ * Concept identifiers are assigned dense integer identifiers in (UTF-8 byte)
+ * sorted order. Ancestors are stored in compressed sparse row (CSR) form: for
+ * concept i, its ancestor identifiers are stored in ascending order at
+ * positions [ancestorOffsets[i], ancestorOffsets[i + 1]) of the ancestor
+ * array, so ancestor tests are a binary search over a (typically very short)
+ * row.
+ * <p>
+ * File layout (all ints are big-endian):
+ *
+ * <pre>
+ * int MAGIC, int VERSION, int conceptCount, int ancestorCount, int idByteCount
+ * int[conceptCount + 1]  offsets into the id bytes
+ * int[conceptCount + 1]  offsets into the ancestor array
+ * int[ancestorCount]     ancestor identifiers
+ * byte[idByteCount]      UTF-8 encoded concept identifiers
+ * byte[(conceptCount + 7) / 8]  bit set of the concepts that are keys of the
+ *                               mapping, i.e. that have a row
+ * </pre>
+ */
+public class AncestorIndex {
+
+	private static final int MAGIC = 0x414E4349;
+	private static final int VERSION = 2;
+	private static final int HEADER_BYTES = 5 * Integer.BYTES;
+
+	private static final Map<String, AncestorIndex> SHARED_INSTANCES = new ConcurrentHashMap<String, AncestorIndex>();
+
+	private final int conceptCount;
+	private final IntBuffer idOffsets;
+	private final IntBuffer ancestorOffsets;
+	private final IntBuffer ancestors;
+	private final ByteBuffer idBytes;
+	private final ByteBuffer keyFlags;
+
+	private AncestorIndex(ByteBuffer buffer) {
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("Input is not an ancestor index.");
+		}
+		int version = buffer.getInt(Integer.BYTES);
+		if (version != VERSION) {
+			throw new IllegalArgumentException("Unsupported ancestor index version: " + version);
+		}
+		this.conceptCount = buffer.getInt(2 * Integer.BYTES);
+		int ancestorCount = buffer.getInt(3 * Integer.BYTES);
+		int idByteCount = buffer.getInt(4 * Integer.BYTES);
+
+		int position = HEADER_BYTES;
+		int offsetBytes = (conceptCount + 1) * Integer.BYTES;
+		this.idOffsets = buffer.slice(position, offsetBytes).asIntBuffer();
+		position += offsetBytes;
+		this.ancestorOffsets = buffer.slice(position, offsetBytes).asIntBuffer();
+		position += offsetBytes;
+		this.ancestors = buffer.slice(position, ancestorCount * Integer.BYTES).asIntBuffer();
+		position += ancestorCount * Integer.BYTES;
+		this.idBytes = buffer.slice(position, idByteCount);
+		position += idByteCount;
+		this.keyFlags = buffer.slice(position, (conceptCount + 7) / 8);
+	}
+
+	/**
+	 * @param buffer a buffer containing an index as written by
+	 *               {@link #write(Map, OutputStream)}
+	 * @return
+	 */
+	public static AncestorIndex fromBuffer(ByteBuffer buffer) {
+		return new AncestorIndex(buffer);
+	}
+
+	/**
+	 * Memory-maps the specified local index file
+	 *
+	 * @param indexFile
+	 * @return
+	 * @throws IOException
+	 */
+	public static AncestorIndex load(Path indexFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			// the mapping remains valid after the channel is closed
+			return new AncestorIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Returns an index that is shared by all callers in the JVM, e.g. by all DoFn
+	 * instances on a worker. Index files that are not on the local file system,
+	 * e.g. gs:// paths, are copied to a local temporary file before they are
+	 * memory-mapped.
+	 *
+	 * @param indexFileSpec
+	 * @return
+	 */
+	public static AncestorIndex getSharedInstance(String indexFileSpec) {
+		return SHARED_INSTANCES.computeIfAbsent(indexFileSpec, spec -> {
+			try {
+				return load(toLocalFile(spec));
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to load ancestor index: " + spec, e);
+			}
+		});
+	}
+
+	private static Path toLocalFile(String indexFileSpec) throws IOException {
+		ResourceId resourceId = FileSystems.matchSingleFileSpec(indexFileSpec).resourceId();
+		if (resourceId.getScheme().equals("file")) {
+			return Paths.get(resourceId.toString());
+		}
+		Path localFile = Files.createTempFile("ancestor-index", ".bin");
+		localFile.toFile().deleteOnExit();
+		try (InputStream is = Channels.newInputStream(FileSystems.open(resourceId))) {
+			Files.copy(is, localFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+		return localFile;
+	}
+
+	/**
+	 * @return the number of concepts in the index
+	 */
+	public int size() {
+		return conceptCount;
+	}
+
+	/**
+	 * @param conceptId
+	 * @return the integer identifier for the specified concept identifier, or -1
+	 *         if the concept is not in the index
+	 */
+	public int getIndex(String conceptId) {
+		byte[] query = conceptId.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = conceptCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareId(mid, query);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private int compareId(int index, byte[] query) {
+		int start = idOffsets.get(index);
+		int length = idOffsets.get(index + 1) - start;
+		int n = Math.min(length, query.length);
+		for (int i = 0; i < n; i++) {
+			int cmp = Byte.compareUnsigned(idBytes.get(start + i), query[i]);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return length - query.length;
+	}
+
+	/**
+	 * @param index
+	 * @return the concept identifier for the specified integer identifier
+	 */
+	public String getConceptId(int index) {
+		int start = idOffsets.get(index);
+		byte[] bytes = new byte[idOffsets.get(index + 1) - start];
+		idBytes.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param index
+	 * @return the integer identifiers of the ancestors of the specified concept
+	 */
+	public int[] getAncestors(int index) {
+		int start = ancestorOffsets.get(index);
+		int[] result = new int[ancestorOffsets.get(index + 1) - start];
+		ancestors.get(start, result);
+		return result;
+	}
+
+	/**
+	 * @param conceptId
+	 * @return the identifiers of the ancestors of the specified concept; empty if
+	 *         the concept is not in the index
+	 */
+	public List<String> getAncestorIds(String conceptId) {
+		int index = getIndex(conceptId);
+		if (index < 0) {
+			return Collections.emptyList();
+		}
+		int start = ancestorOffsets.get(index);
+		int end = ancestorOffsets.get(index + 1);
+		List<String> ancestorIds = new ArrayList<String>(end - start);
+		for (int i = start; i < end; i++) {
+			ancestorIds.add(getConceptId(ancestors.get(i)));
+		}
+		return ancestorIds;
+	}
+
+	/**
+	 * @param index
+	 * @return true if the concept with the specified integer identifier is a key
+	 *         of the mapping used to create the index, i.e. it was not only
+	 *         present as an ancestor
+	 */
+	public boolean isKey(int index) {
+		return (keyFlags.get(index >>> 3) & (1 << (index & 7))) != 0;
+	}
+
+	/**
+	 * @param conceptId
+	 * @return true if the concept identifier is a key of the mapping used to
+	 *         create the index
+	 */
+	public boolean containsKey(String conceptId) {
+		int index = getIndex(conceptId);
+		return index >= 0 && isKey(index);
+	}
+
+	/**
+	 * Returns a read-only view of the index as a map from concept identifier to
+	 * the set of its ancestor (or mapped) identifiers. Nothing is copied to the
+	 * heap: lookups binary search the index and the returned sets test membership
+	 * by binary searching the concept's row, so the view can replace a map side
+	 * input without changing the code that uses it.
+	 *
+	 * @return
+	 */
+	public Map<String, Set<String>> asMap() {
+		return new IndexMap<Set<String>>() {
+			@Override
+			protected Set<String> getValue(int index) {
+				return new RowSet(index);
+			}
+		};
+	}
+
+	/**
+	 * Returns a read-only view of an index of a one-to-one mapping, e.g. the PR
+	 * promotion map, as a map from concept identifier to its mapped identifier.
+	 * If a concept is mapped to more than one identifier, the first in index
+	 * order is returned.
+	 *
+	 * @return
+	 */
+	public Map<String, String> asSingleValueMap() {
+		return new IndexMap<String>() {
+			@Override
+			protected String getValue(int index) {
+				int start = ancestorOffsets.get(index);
+				return (start == ancestorOffsets.get(index + 1)) ? null : getConceptId(ancestors.get(start));
+			}
+		};
+	}
+
+	/**
+	 * A map view of the keys of the index
+	 *
+	 * @param <V>
+	 */
+	private abstract class IndexMap<V> extends AbstractMap<String, V> {
+
+		protected abstract V getValue(int index);
+
+		@Override
+		public boolean containsKey(Object key) {
+			return (key instanceof String) && AncestorIndex.this.containsKey((String) key);
+		}
+
+		@Override
+		public V get(Object key) {
+			if (!(key instanceof String)) {
+				return null;
+			}
+			int index = getIndex((String) key);
+			return (index >= 0 && isKey(index)) ? getValue(index) : null;
+		}
+
+		@Override
+		public Set<Entry<String, V>> entrySet() {
+			return new AbstractSet<Entry<String, V>>() {
+
+				@Override
+				public Iterator<Entry<String, V>> iterator() {
+					return new Iterator<Entry<String, V>>() {
+						private int next = nextKey(0);
+
+						@Override
+						public boolean hasNext() {
+							return next < conceptCount;
+						}
+
+						@Override
+						public Entry<String, V> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							int index = next;
+							next = nextKey(index + 1);
+							return new SimpleImmutableEntry<String, V>(getConceptId(index), getValue(index));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					int size = 0;
+					for (int index = nextKey(0); index < conceptCount; index = nextKey(index + 1)) {
+						size++;
+					}
+					return size;
+				}
+			};
+		}
+
+		private int nextKey(int index) {
+			while (index < conceptCount && !isKey(index)) {
+				index++;
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * A set view of the row of a concept
+	 */
+	private class RowSet extends AbstractSet<String> {
+
+		private final int index;
+
+		public RowSet(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof String)) {
+				return false;
+			}
+			int ancestorIndex = getIndex((String) o);
+			return ancestorIndex >= 0 && isAncestor(index, ancestorIndex);
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return getAncestorIds(getConceptId(index)).iterator();
+		}
+
+		@Override
+		public int size() {
+			return ancestorOffsets.get(index + 1) - ancestorOffsets.get(index);
+		}
+	}
+
+	/**
+	 * @param index
+	 * @param ancestorIndex
+	 * @return true if the concept with identifier ancestorIndex is an ancestor of
+	 *         the concept with identifier index
+	 */
+	public boolean isAncestor(int index, int ancestorIndex) {
+		int low = ancestorOffsets.get(index);
+		int high = ancestorOffsets.get(index + 1) - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int value = ancestors.get(mid);
+			if (value < ancestorIndex) {
+				low = mid + 1;
+			} else if (value > ancestorIndex) {
+				high = mid - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param index1
+	 * @param index2
+	 * @return true if one of the concepts is an ancestor of the other. Negative
+	 *         identifiers (concepts not in the index) are never ancestors.
+	 */
+	public boolean areAncestors(int index1, int index2) {
+		if (index1 < 0 || index2 < 0) {
+			return false;
+		}
+		return isAncestor(index1, index2) || isAncestor(index2, index1);
+	}
+
+	/**
+	 * Serializes the specified ancestor map as an index. Blank identifiers are
+	 * ignored. A concept that is mapped to itself, e.g. an extension class that
+	 * has the same identifier as its OBO class, keeps that mapping.
+	 *
+	 * @param ancestorMap mapping from concept identifier to ancestor identifiers
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(Map<String, ? extends Collection<String>> ancestorMap, OutputStream out)
+			throws IOException {
+		List<byte[]> ids = new ArrayList<byte[]>();
+		for (Entry<String, ? extends Collection<String>> entry : ancestorMap.entrySet()) {
+			addId(ids, entry.getKey());
+			for (String ancestorId : entry.getValue()) {
+				addId(ids, ancestorId);
+			}
+		}
+		ids.sort(Arrays::compareUnsigned);
+		List<byte[]> uniqueIds = new ArrayList<byte[]>(ids.size());
+		for (byte[] id : ids) {
+			if (uniqueIds.isEmpty() || !Arrays.equals(uniqueIds.get(uniqueIds.size() - 1), id)) {
+				uniqueIds.add(id);
+			}
+		}
+		byte[][] sortedIds = uniqueIds.toArray(new byte[0][]);
+		int conceptCount = sortedIds.length;
+
+		int[][] rows = new int[conceptCount][];
+		int ancestorCount = 0;
+		for (Entry<String, ? extends Collection<String>> entry : ancestorMap.entrySet()) {
+			if (entry.getKey().trim().isEmpty()) {
+				continue;
+			}
+			int index = indexOf(sortedIds, entry.getKey());
+			int[] row = entry.getValue().stream().filter(id -> !id.trim().isEmpty())
+					.mapToInt(id -> indexOf(sortedIds, id)).sorted().distinct().toArray();
+			if (rows[index] != null) {
+				// the same concept may appear on multiple lines
+				row = Arrays.stream(concat(rows[index], row)).sorted().distinct().toArray();
+				ancestorCount -= rows[index].length;
+			}
+			rows[index] = row;
+			ancestorCount += row.length;
+		}
+
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+		int idByteCount = 0;
+		for (byte[] id : sortedIds) {
+			idByteCount += id.length;
+		}
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		dos.writeInt(conceptCount);
+		dos.writeInt(ancestorCount);
+		dos.writeInt(idByteCount);
+
+		int offset = 0;
+		for (byte[] id : sortedIds) {
+			dos.writeInt(offset);
+			offset += id.length;
+		}
+		dos.writeInt(offset);
+
+		offset = 0;
+		for (int[] row : rows) {
+			dos.writeInt(offset);
+			offset += (row == null) ? 0 : row.length;
+		}
+		dos.writeInt(offset);
+
+		for (int[] row : rows) {
+			if (row != null) {
+				for (int ancestor : row) {
+					dos.writeInt(ancestor);
+				}
+			}
+		}
+		for (byte[] id : sortedIds) {
+			dos.write(id);
+		}
+
+		byte[] keyFlags = new byte[(conceptCount + 7) / 8];
+		for (int index = 0; index < conceptCount; index++) {
+			if (rows[index] != null) {
+				keyFlags[index >>> 3] |= 1 << (index & 7);
+			}
+		}
+		dos.write(keyFlags);
+		dos.flush();
+	}
+
+	/**
+	 * Serializes the specified ancestor map as an index file
+	 *
+	 * @param ancestorMap
+	 * @param indexFile
+	 * @throws IOException
+	 */
+	public static void write(Map<String, ? extends Collection<String>> ancestorMap, File indexFile)
+			throws IOException {
+		try (OutputStream out = new FileOutputStream(indexFile)) {
+			write(ancestorMap, out);
+		}
+	}
+
+	/**
+	 * Converts a two-column mapping file, where the second column is a delimited
+	 * set of concept identifiers, into an index file. A key that appears on more
+	 * than one line is mapped to the union of its sets.
+	 *
+	 * @param mappingFile    the mapping file; may be gzipped
+	 * @param fileDelimiter  separates the columns
+	 * @param setDelimiter   separates the identifiers in the second column
+	 * @param indexFile
+	 * @throws IOException
+	 */
+	public static void createIndexFile(File mappingFile, Delimiter fileDelimiter, Delimiter setDelimiter,
+			File indexFile) throws IOException {
+		Map<String, Set<String>> map = new HashMap<String, Set<String>>();
+		InputStream is = new FileInputStream(mappingFile);
+		if (mappingFile.getName().endsWith(".gz")) {
+			is = new GZIPInputStream(is);
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] cols = line.split(fileDelimiter.regex(), -1);
+				Set<String> ids = map.computeIfAbsent(cols[0], k -> new HashSet<String>());
+				if (cols.length > 1 && !cols[1].isEmpty()) {
+					ids.addAll(Arrays.asList(cols[1].split(setDelimiter.regex())));
+				}
+			}
+		}
+		write(map, indexFile);
+	}
+
+	/**
+	 * Creates an index file from a mapping file, e.g. the CRAFT extension class
+	 * to OBO class map, for which there is no factory class.
+	 *
+	 * @param args MAPPING_FILE INDEX_FILE [FILE_DELIMITER SET_DELIMITER], where the
+	 *             delimiters are names of {@link Delimiter} values and default to
+	 *             TAB and PIPE
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2 && args.length != 4) {
+			System.err.println("Usage: MAPPING_FILE INDEX_FILE [FILE_DELIMITER SET_DELIMITER]");
+			System.exit(-1);
+		}
+		Delimiter fileDelimiter = (args.length == 4) ? Delimiter.valueOf(args[2]) : Delimiter.TAB;
+		Delimiter setDelimiter = (args.length == 4) ? Delimiter.valueOf(args[3]) : Delimiter.PIPE;
+		try {
+			createIndexFile(new File(args[0]), fileDelimiter, setDelimiter, new File(args[1]));
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	private static void addId(List<byte[]> ids, String id) {
+		if (!id.trim().isEmpty()) {
+			ids.add(id.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static int indexOf(byte[][] sortedIds, String id) {
+		return Arrays.binarySearch(sortedIds, id.getBytes(StandardCharsets.UTF_8), Arrays::compareUnsigned);
+	}
+
+	private static int[] concat(int[] a, int[] b) {
+		int[] c = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, c, a.length, b.length);
+		return c;
+	}
+
+}
@@ -2,6 +2,7 @@ package edu.cuanschutz.ccp.tm_provider.etl.util;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -16,6 +17,7 @@ import javax.xml.stream.XMLStreamException;
 
 import org.apache.log4j.Logger;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.pengyifan.bioc.BioCDocument;
 import com.pengyifan.bioc.BioCPassage;
 import com.pengyifan.bioc.io.BioCDocumentReader;
@@ -44,43 +46,77 @@ public class BiocToTextConverter {
 
 	private static final Logger logger = org.apache.log4j.Logger.getLogger(BiocToTextConverter.class);
 
+	/**
+	 * @param input
+	 * @return a mapping from document ID to the plain text document for each
+	 *         document in the BioC collection
+	 * @throws FactoryConfigurationError
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
 	public static Map<String, TextDocument> convert(InputStreamReader input)
 			throws FactoryConfigurationError, XMLStreamException, IOException {
-		String text = "";
-
 		Map<String, TextDocument> docId2DocumentMap = new HashMap<String, TextDocument>();
+		convert(input, td -> docId2DocumentMap.put(td.getSourceid(), td));
+		return docId2DocumentMap;
+	}
+
+	/**
+	 * Converts the documents in a BioC collection one at a time as they are read
+	 * from the input, so that only a single document is held in memory regardless
+	 * of the size of the collection.
+	 * 
+	 * @param input
+	 * @param handler receives each plain text document as soon as it has been
+	 *                converted
+	 * @throws FactoryConfigurationError
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public static void convert(Reader input, DocumentHandler handler)
+			throws FactoryConfigurationError, XMLStreamException, IOException {
 		try (BioCDocumentReader reader = new BioCDocumentReader(input, getBioCXmlResolver())) {
 //			reader.readCollectionInfo().setEncoding(CharacterEncoding.UTF_8.getCharacterSetName());
 			String source = reader.readCollectionInfo().getSource();
 			BioCDocument doc = null;
 			while ((doc = reader.readDocument()) != null) {
-				String docId = source + doc.getID();
-//				logger.debug("TMPLOG -- converting bioc-to-text for document: " + docId);
-				TextAnnotationFactory taFactory = TextAnnotationFactory.createFactoryWithDefaults(docId);
-
-				List<TextAnnotation> sections = new ArrayList<TextAnnotation>();
-				Stack<OpenSection> openSections = new Stack<OpenSection>();
+				handler.handle(convert(source, doc));
+			}
+		}
+	}
 
-				text = processBioCDocument(text, doc, sections, openSections, taFactory);
+	private static TextDocument convert(String source, BioCDocument doc) {
+		String docId = source + doc.getID();
+//		logger.debug("TMPLOG -- converting bioc-to-text for document: " + docId);
+		TextAnnotationFactory taFactory = TextAnnotationFactory.createFactoryWithDefaults(docId);
 
-				/*
-				 * close any remaining open sections - likely should just be the reference
-				 * section at this point.
-				 */
-				while (!openSections.isEmpty()) {
-					closeSection(text, sections, openSections, taFactory);
-				}
+		// the passage offsets of each document are relative to the start of the document
+		DocumentTextBuilder text = new DocumentTextBuilder();
+		List<TextAnnotation> sections = new ArrayList<TextAnnotation>();
+		Stack<OpenSection> openSections = new Stack<OpenSection>();
 
-				TextDocument td = new TextDocument(docId, source, text);
-				td.addAnnotations(sections);
-				// check annotations for any that start with whitespace and adjust accordingly.
-				adjustForAddedWhitespace(td);
+		processBioCDocument(text, doc, sections, openSections, taFactory);
 
-				docId2DocumentMap.put(docId, td);
-			}
+		/*
+		 * close any remaining open sections - likely should just be the reference
+		 * section at this point.
+		 */
+		while (!openSections.isEmpty()) {
+			closeSection(text, sections, openSections, taFactory);
 		}
 
-		return docId2DocumentMap;
+		TextDocument td = new TextDocument(docId, source, text.toString());
+		td.addAnnotations(sections);
+		// check annotations for any that start with whitespace and adjust accordingly.
+		adjustForAddedWhitespace(td);
+		return td;
+	}
+
+	/**
+	 * Receives the documents converted by {@link BiocToTextConverter#convert(Reader, DocumentHandler)}
+	 */
+	public interface DocumentHandler {
+		void handle(TextDocument td) throws IOException;
 	}
 
 	private static void adjustForAddedWhitespace(TextDocument td) {
@@ -109,7 +145,8 @@ public class BiocToTextConverter {
 	 * 
 	 * @return
 	 */
-	private static XMLResolver getBioCXmlResolver() {
+	@VisibleForTesting
+	protected static XMLResolver getBioCXmlResolver() {
 		return new XMLResolver() {
 
 			@Override
@@ -159,19 +196,19 @@ public class BiocToTextConverter {
 	}
 
 	/**
-	 * process each passage in a BioC document. Return the plain text of the
-	 * document with passage byte offsets corresponding to those stipulated by the
-	 * document. During processing, create section annotations for main sections,
-	 * e.g. INTRO, RESULTS, etc., as well as for paragraphs, section headings, etc.
+	 * process each passage in a BioC document. Append the plain text of the
+	 * document to the text with passage byte offsets corresponding to those
+	 * stipulated by the document. During processing, create section annotations
+	 * for main sections, e.g. INTRO, RESULTS, etc., as well as for paragraphs,
+	 * section headings, etc.
 	 * 
 	 * @param text
 	 * @param doc
 	 * @param sections
 	 * @param openSections
 	 * @param taFactory
-	 * @return
 	 */
-	private static String processBioCDocument(String text, BioCDocument doc, List<TextAnnotation> sections,
+	private static void processBioCDocument(DocumentTextBuilder text, BioCDocument doc, List<TextAnnotation> sections,
 			Stack<OpenSection> openSections, TextAnnotationFactory taFactory) {
 		for (BioCPassage passage : doc.getPassages()) {
 			String passageType = passage.getInfon("type").get();
@@ -194,7 +231,7 @@ public class BiocToTextConverter {
 				// annotation that was just added. And if a section was just opened, we need to
 				// adjust its starting offset.
 				TextAnnotation lastPassageAnnot = sections.get(sections.size() - 1);
-				text = updateText(text, doc, passage, lastPassageAnnot, justOpennedSection);
+				updateText(text, doc, passage, lastPassageAnnot, justOpennedSection);
 
 				// remove any leading spaces from annotations
 				String substring = text.substring(lastPassageAnnot.getAnnotationSpanStart(),
@@ -211,7 +248,6 @@ public class BiocToTextConverter {
 				// encountered passage with no text
 			}
 		}
-		return text;
 	}
 
 	/**
@@ -225,7 +261,7 @@ public class BiocToTextConverter {
 	 * @param taFactory
 	 * @return true if a section was just opened
 	 */
-	private static boolean updateSectionTypes(String text, List<TextAnnotation> sections,
+	private static boolean updateSectionTypes(DocumentTextBuilder text, List<TextAnnotation> sections,
 			Stack<OpenSection> openSections, String sectionName, TextAnnotationFactory taFactory) {
 		if (openSections.isEmpty()) {
 			openSection(text, openSections, sectionName);
@@ -273,7 +309,7 @@ public class BiocToTextConverter {
 	 * @param passage
 	 * @param sectionType
 	 */
-	private static TextAnnotation getPassageAnnotation(String text, String passageText, String sectionType,
+	private static TextAnnotation getPassageAnnotation(DocumentTextBuilder text, String passageText, String sectionType,
 			TextAnnotationFactory taFactory) {
 		if (sectionType.equals("abstract")) {
 			sectionType = "paragraph";
@@ -296,7 +332,7 @@ public class BiocToTextConverter {
 	 * @param sections
 	 * @param openSections
 	 */
-	private static void closeSection(String text, List<TextAnnotation> sections, Stack<OpenSection> openSections,
+	private static void closeSection(DocumentTextBuilder text, List<TextAnnotation> sections, Stack<OpenSection> openSections,
 			TextAnnotationFactory factory) {
 		OpenSection sectionToClose = openSections.pop();
 		int startOffset = sectionToClose.getStartOffset();
@@ -321,7 +357,7 @@ public class BiocToTextConverter {
 	 * @param openSections
 	 * @param sectionName
 	 */
-	private static void openSection(String text, Stack<OpenSection> openSections, String sectionName) {
+	private static void openSection(DocumentTextBuilder text, Stack<OpenSection> openSections, String sectionName) {
 		openSections.push(new OpenSection(text.length(), sectionName));
 	}
 
@@ -335,15 +371,10 @@ public class BiocToTextConverter {
 	 * @param passage
 	 * @param lastPassageAnnot
 	 * @param justOpenedSection
-	 * @return
 	 */
-	private static String updateText(String text, BioCDocument doc, BioCPassage passage,
+	private static void updateText(DocumentTextBuilder text, BioCDocument doc, BioCPassage passage,
 			TextAnnotation lastPassageAnnot, OpenSection justOpenedSection) {
-		int lengthBefore = text.length();
-		text = matchTextByteOffsetToBioCByteOffset(doc, text, passage.getOffset());
-
-		int lengthAfter = text.length();
-		int diff = lengthAfter - lengthBefore;
+		int diff = matchTextByteOffsetToBioCByteOffset(doc, text, passage.getOffset());
 
 		// adjust the most recently added passage
 		Span span = lastPassageAnnot.getSpans().get(0);
@@ -356,41 +387,81 @@ public class BiocToTextConverter {
 		}
 
 		/* each passage is by default separated by a line break */
-		text += (((!text.isEmpty()) ? "\n" : "") + passage.getText().get());
-		return text;
+		if (text.length() > 0) {
+			text.append("\n");
+		}
+		text.append(passage.getText().get());
 	}
 
 	/**
 	 * The BioC files stipulate a byte offset for each passage. When converting the
 	 * BioC documents to plain text, we must ensure that the plain text byte offsets
 	 * match those that are provided by the BioC documents. Aligning the offsets is
-	 * achieved by adding line breaks to the text.
+	 * achieved by adding spaces to the text.
 	 * 
 	 * @param doc
 	 * @param text
-	 * @param passage
-	 * @return
+	 * @param passageByteOffset
+	 * @return the number of spaces that were added
 	 */
-	private static String matchTextByteOffsetToBioCByteOffset(BioCDocument doc, String text, int passageByteOffset) {
+	private static int matchTextByteOffsetToBioCByteOffset(BioCDocument doc, DocumentTextBuilder text,
+			int passageByteOffset) {
 
 		/*
 		 * we assume that the text byteoffset is equal to or less than the offset
 		 * stipulated by the BioC document. If this is not the case, then throw an
 		 * exception because this code is unable to recover from such a situation.
 		 */
-		int byteCount = text.getBytes().length;
+		long byteCount = text.getByteCount();
 		if (byteCount > passageByteOffset) {
 			throw new IllegalStateException(
 					"Unable to convert document to plain text due to byte offset issue: " + doc.getID());
 		}
 
-		String updatedText = text;
-		while (passageByteOffset > byteCount) {
-			updatedText += " ";
-			byteCount = updatedText.getBytes().length;
+		// each space is a single byte
+		int padding = (int) (passageByteOffset - byteCount);
+		text.appendSpaces(padding);
+		return padding;
+	}
+
+	/**
+	 * Accumulates the plain text of the documents in a single buffer while keeping
+	 * a running count of its UTF-8 byte length, so that aligning the text with the
+	 * BioC passage byte offsets does not require re-encoding the text.
+	 */
+	@VisibleForTesting
+	protected static class DocumentTextBuilder {
+		private final StringBuilder sb = new StringBuilder();
+		private long byteCount = 0;
+
+		public void append(String s) {
+			sb.append(s);
+			byteCount += ContentChunkUtil.utf8Length(s);
+		}
+
+		public void appendSpaces(int count) {
+			for (int i = 0; i < count; i++) {
+				sb.append(' ');
+			}
+			byteCount += count;
+		}
+
+		public int length() {
+			return sb.length();
 		}
 
-		return updatedText;
+		public String substring(int start, int end) {
+			return sb.substring(start, end);
+		}
+
+		public long getByteCount() {
+			return byteCount;
+		}
+
+		@Override
+		public String toString() {
+			return sb.toString();
+		}
 	}
 
 	/**
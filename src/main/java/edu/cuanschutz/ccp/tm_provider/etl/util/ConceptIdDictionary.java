@@ -0,0 +1,80 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+
+import org.apache.beam.sdk.coders.DefaultCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+
+/**
+ * Maps concept identifiers (CURIEs) to dense integer identifiers. Identifiers
+ * are assigned in lexicographic order of the CURIEs so that, for two concepts,
+ * the one with the lower integer identifier is also the one that sorts first
+ * as a String. This allows a pair of concepts to be packed into a single long
+ * (see {@link #packPair(int, int)}) while preserving the concept order used by
+ * the String-based pair keys.
+ */
+@DefaultCoder(SerializableCoder.class)
+public class ConceptIdDictionary implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String[] sortedConceptIds;
+
+	public ConceptIdDictionary(Collection<String> conceptIds) {
+		this.sortedConceptIds = new TreeSet<String>(conceptIds).toArray(new String[0]);
+	}
+
+	/**
+	 * @param conceptId
+	 * @return the integer identifier for the specified concept identifier, or -1
+	 *         if the concept identifier is not in the dictionary
+	 */
+	public int getIndex(String conceptId) {
+		int index = Arrays.binarySearch(sortedConceptIds, conceptId);
+		return (index < 0) ? -1 : index;
+	}
+
+	/**
+	 * @param index
+	 * @return the concept identifier for the specified integer identifier
+	 */
+	public String getConceptId(int index) {
+		return sortedConceptIds[index];
+	}
+
+	public int size() {
+		return sortedConceptIds.length;
+	}
+
+	/**
+	 * @param index1
+	 * @param index2
+	 * @return the two integer identifiers packed into a single long with the lower
+	 *         identifier in the upper 32 bits
+	 */
+	public static long packPair(int index1, int index2) {
+		int low = Math.min(index1, index2);
+		int high = Math.max(index1, index2);
+		return ((long) low << 32) | (high & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @param packedPair
+	 * @return the first (lower) integer identifier in the packed pair
+	 */
+	public static int getFirstIndex(long packedPair) {
+		return (int) (packedPair >>> 32);
+	}
+
+	/**
+	 * @param packedPair
+	 * @return the second (higher) integer identifier in the packed pair
+	 */
+	public static int getSecondIndex(long packedPair) {
+		return (int) packedPair;
+	}
+
+}
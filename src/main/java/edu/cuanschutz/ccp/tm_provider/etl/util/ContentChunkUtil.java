@@ -0,0 +1,122 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Divides strings into chunks whose UTF-8 encoded length does not exceed a
+ * specified number of bytes, e.g. the max property size imposed by Datastore.
+ * The UTF-8 length of each character is computed directly from its value, so
+ * the input is scanned a single time and no byte arrays, encoders or buffers
+ * are allocated. Chunk boundaries never split a surrogate pair.
+ */
+public class ContentChunkUtil {
+
+	/**
+	 * @param s
+	 * @return the number of bytes required to encode the input as UTF-8. Unpaired
+	 *         surrogates are counted as a single byte as they are replaced by '?'
+	 *         when encoded by {@link String#getBytes(String)}.
+	 */
+	public static long utf8Length(CharSequence s) {
+		long byteCount = 0;
+		int length = s.length();
+		int i = 0;
+		while (i < length) {
+			int charBytes = utf8Width(s, i);
+			byteCount += charBytes;
+			i += charCount(charBytes);
+		}
+		return byteCount;
+	}
+
+	/**
+	 * @param s
+	 * @param i
+	 * @return the number of bytes required to encode the code point at offset i
+	 *         as UTF-8. A surrogate pair is 4 bytes; an unpaired surrogate is a
+	 *         single byte.
+	 */
+	private static int utf8Width(CharSequence s, int i) {
+		char c = s.charAt(i);
+		if (c < 0x80) {
+			return 1;
+		}
+		if (c < 0x800) {
+			return 2;
+		}
+		if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+			return 4;
+		}
+		if (Character.isSurrogate(c)) {
+			return 1;
+		}
+		return 3;
+	}
+
+	/**
+	 * @param utf8Width
+	 * @return the number of chars of the code point, i.e. 2 for a surrogate pair
+	 */
+	private static int charCount(int utf8Width) {
+		return (utf8Width == 4) ? 2 : 1;
+	}
+
+	/**
+	 * @param s
+	 * @param maxBytes
+	 * @return the (exclusive) end character offset of each chunk of the input such
+	 *         that no chunk exceeds maxBytes when encoded as UTF-8. There is always
+	 *         at least one chunk, so an empty input returns a single boundary at
+	 *         offset 0.
+	 */
+	public static int[] chunkBoundaries(CharSequence s, int maxBytes) {
+		if (maxBytes < 4) {
+			throw new IllegalArgumentException(
+					"The max chunk size must be at least 4 bytes in order to accommodate any UTF-8 character.");
+		}
+		int[] boundaries = new int[4];
+		int boundaryCount = 0;
+		int length = s.length();
+		int chunkBytes = 0;
+		int i = 0;
+		while (i < length) {
+			int charBytes = utf8Width(s, i);
+			if (chunkBytes + charBytes > maxBytes) {
+				if (boundaryCount == boundaries.length) {
+					boundaries = Arrays.copyOf(boundaries, boundaryCount * 2);
+				}
+				boundaries[boundaryCount++] = i;
+				chunkBytes = 0;
+			}
+			chunkBytes += charBytes;
+			i += charCount(charBytes);
+		}
+
+		if (boundaryCount == boundaries.length) {
+			boundaries = Arrays.copyOf(boundaries, boundaryCount + 1);
+		}
+		boundaries[boundaryCount++] = length;
+		return Arrays.copyOf(boundaries, boundaryCount);
+	}
+
+	/**
+	 * @param s
+	 * @param maxBytes
+	 * @return the input divided (if necessary) into chunks that do not exceed
+	 *         maxBytes when encoded as UTF-8. If no division is necessary, the
+	 *         returned list contains the input string itself.
+	 */
+	public static List<String> chunk(String s, int maxBytes) {
+		int[] boundaries = chunkBoundaries(s, maxBytes);
+		List<String> chunks = new ArrayList<String>(boundaries.length);
+		int start = 0;
+		for (int end : boundaries) {
+			chunks.add(s.substring(start, end));
+			start = end;
+		}
+		return chunks;
+	}
+
+}
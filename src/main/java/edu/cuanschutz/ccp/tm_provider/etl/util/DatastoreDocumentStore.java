@@ -0,0 +1,44 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import org.apache.beam.sdk.io.gcp.datastore.DatastoreIO;
+import org.apache.beam.sdk.io.gcp.datastore.DatastoreV1;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.values.PBegin;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PDone;
+
+import com.google.datastore.v1.Entity;
+import com.google.datastore.v1.Query;
+
+import lombok.Data;
+
+/**
+ * Stores entities in Cloud Datastore
+ */
+@Data
+public class DatastoreDocumentStore implements DocumentStore {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String gcpProjectId;
+	/*
+	 * the number of __key__ ranges each query is split into; if 0, the number is
+	 * estimated by Datastore
+	 */
+	private final int numQuerySplits;
+
+	@Override
+	public PTransform<PBegin, PCollection<Entity>> read(Query query) {
+		DatastoreV1.Read read = DatastoreIO.v1().read().withQuery(query).withProjectId(gcpProjectId);
+		if (numQuerySplits > 0) {
+			read = read.withNumQuerySplits(numQuerySplits);
+		}
+		return read;
+	}
+
+	@Override
+	public PTransform<PCollection<Entity>, PDone> write() {
+		return DatastoreIO.v1().write().withProjectId(gcpProjectId);
+	}
+
+}
@@ -1,10 +1,14 @@
 package edu.cuanschutz.ccp.tm_provider.etl.util;
 
 import static edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreConstants.DOCUMENT_KIND;
+import static edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreConstants.DOCUMENT_PROPERTY_CHUNK_TOTAL;
 import static edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreConstants.DOCUMENT_PROPERTY_CONTENT;
 import static edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreConstants.STATUS_KIND;
 import static edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreConstants.STATUS_PROPERTY_DOCUMENT_ID;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,17 +20,52 @@ import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.datastore.Entity;
 import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.PathElement;
+import com.google.common.annotations.VisibleForTesting;
 
 /**
- * NOTE: This class is no longer used. Use DatastoreIO.v1 instead for efficiency
- * purposes.
- * 
- * Utility for querying 'Documents' in Cloud Datastore.
+ * Utility for querying 'Documents' in Cloud Datastore. Where possible, use
+ * DatastoreIO.v1 instead for efficiency purposes.
+ * <p>
+ * Document content is fetched using multi-key lookups: one lookup for the
+ * first chunk of every requested document, then one lookup for the remaining
+ * chunks as indicated by the chunk total stored in each first chunk (see
+ * {@link #getDocumentTypeToContent(Collection, List)}).
  */
 public class DatastoreDocumentUtil {
 
-	// Create an authorized Datastore service using Application Default Credentials.
-	private final Datastore datastore = DatastoreOptions.getDefaultInstance().getService();
+	/**
+	 * Documents written before the chunk total was stored have at most this many
+	 * chunks (the max in the CORD data)
+	 */
+	@VisibleForTesting
+	protected static final int MAX_CHUNK_COUNT_WITHOUT_CHUNK_TOTAL = 7;
+
+	/** Datastore limits the number of keys in a single lookup */
+	private static final int MAX_KEYS_PER_LOOKUP = 1000;
+
+	private static DatastoreDocumentUtil sharedInstance;
+
+	private final Datastore datastore;
+
+	public DatastoreDocumentUtil() {
+		// Create an authorized Datastore service using Application Default Credentials.
+		this(DatastoreOptions.getDefaultInstance().getService());
+	}
+
+	public DatastoreDocumentUtil(Datastore datastore) {
+		this.datastore = datastore;
+	}
+
+	/**
+	 * @return a {@link DatastoreDocumentUtil} that is shared within the JVM so
+	 *         that each worker uses a single Datastore client
+	 */
+	public static synchronized DatastoreDocumentUtil getSharedInstance() {
+		if (sharedInstance == null) {
+			sharedInstance = new DatastoreDocumentUtil();
+		}
+		return sharedInstance;
+	}
 
 	/**
 	 * @param statusEntity
@@ -53,50 +92,106 @@ public class DatastoreDocumentUtil {
 
 	/**
 	 * @param documentId
-	 * @param documentTypes
-	 * @param documentFormats
-	 * @param pipelines
-	 * @param pipelineVersions
+	 * @param documentCriteria
 	 * @return for the given document ID, return a mapping from {@link DocumentType}
 	 *         to the document content for all types specified
 	 */
 	public Map<DocumentType, String> getDocumentTypeToContent(String documentId,
 			List<DocumentCriteria> documentCriteria) {
+		return getDocumentTypeToContent(Collections.singletonList(documentId), documentCriteria).get(documentId);
+	}
 
-		Map<DocumentType, String> typeToContentMap = new HashMap<DocumentType, String>();
-
-		for (DocumentCriteria dc : documentCriteria) {
-
-			// TODO: Workaround - there are max 7 chunks in the CORD data, so we try to grab
-			// as many as there are
-			// the chunkCount fields are not in the status entity for some reason
-			// int chunkCount = getChunkCount(statusEntity, dc);
-			int chunkCount = 7;
-			// get each chunk and combine to create the document content
-			StringBuffer content = new StringBuffer();
-			for (int chunkIndex = 0; chunkIndex < chunkCount; chunkIndex++) {
-				try {
-					Key key = createDocumentKey(documentId, dc, chunkIndex);
-					Entity entity = datastore.get(key);
-					content.append(getDocumentContent(entity));
-				} catch (Exception e) {
-					// TODO: this is part of the workaround - if an exception is thrown then we
-					// assume that we have all of the chunks
-					break;
+	/**
+	 * Fetches the content of the specified documents using two rounds of
+	 * multi-key lookups. The first round fetches the first chunk of each
+	 * document; the second round fetches the remaining chunks of all documents,
+	 * the number of which is given by the chunk total of the first chunk. If a
+	 * first chunk has no chunk total, up to
+	 * {@link #MAX_CHUNK_COUNT_WITHOUT_CHUNK_TOTAL} chunks are requested.
+	 * <p>
+	 * A missing document has empty content, and the content of a document with a
+	 * missing chunk consists of the chunks that precede the missing chunk.
+	 *
+	 * @param documentIds
+	 * @param documentCriteria
+	 * @return a mapping from each document ID to a mapping from
+	 *         {@link DocumentType} to the document content for all types specified
+	 */
+	public Map<String, Map<DocumentType, String>> getDocumentTypeToContent(Collection<String> documentIds,
+			List<DocumentCriteria> documentCriteria) {
+
+		List<Key> firstChunkKeys = new ArrayList<Key>();
+		for (String documentId : documentIds) {
+			for (DocumentCriteria dc : documentCriteria) {
+				firstChunkKeys.add(createDocumentKey(documentId, dc, 0));
+			}
+		}
+		Map<Key, Entity> keyToChunk = fetch(firstChunkKeys);
+
+		List<Key> remainingChunkKeys = new ArrayList<Key>();
+		for (String documentId : documentIds) {
+			for (DocumentCriteria dc : documentCriteria) {
+				Entity firstChunk = keyToChunk.get(createDocumentKey(documentId, dc, 0));
+				if (firstChunk != null) {
+					int chunkCount = getChunkCount(firstChunk);
+					for (int chunkIndex = 1; chunkIndex < chunkCount; chunkIndex++) {
+						remainingChunkKeys.add(createDocumentKey(documentId, dc, chunkIndex));
+					}
 				}
 			}
-
-			typeToContentMap.put(dc.getDocumentType(), content.toString());
-
+		}
+		keyToChunk.putAll(fetch(remainingChunkKeys));
+
+		Map<String, Map<DocumentType, String>> docIdToTypeToContentMap = new HashMap<String, Map<DocumentType, String>>();
+		for (String documentId : documentIds) {
+			Map<DocumentType, String> typeToContentMap = new HashMap<DocumentType, String>();
+			for (DocumentCriteria dc : documentCriteria) {
+				// get each chunk and combine to create the document content
+				StringBuilder content = new StringBuilder();
+				Entity chunk;
+				for (int chunkIndex = 0; (chunk = keyToChunk
+						.get(createDocumentKey(documentId, dc, chunkIndex))) != null; chunkIndex++) {
+					content.append(getDocumentContent(chunk));
+				}
+				typeToContentMap.put(dc.getDocumentType(), content.toString());
+			}
+			docIdToTypeToContentMap.put(documentId, typeToContentMap);
 		}
 
-//		for (Iterator<Entity> entityIter = datastore.get(keys); entityIter.hasNext();) {
-//			Entity entity = entityIter.next();
-//			typeToContentMap.put(getDocumentType(entity), getDocumentContent(entity));
-//		}
+		return docIdToTypeToContentMap;
 
-		return typeToContentMap;
+	}
 
+	/**
+	 * @param keys
+	 * @return a mapping from key to entity for the keys that exist
+	 */
+	private Map<Key, Entity> fetch(List<Key> keys) {
+		Map<Key, Entity> keyToEntity = new HashMap<Key, Entity>();
+		for (int start = 0; start < keys.size(); start += MAX_KEYS_PER_LOOKUP) {
+			List<Key> batch = keys.subList(start, Math.min(keys.size(), start + MAX_KEYS_PER_LOOKUP));
+			// entities are returned in key order; missing entities are null
+			List<Entity> entities = datastore.fetch(batch);
+			for (int i = 0; i < batch.size(); i++) {
+				if (entities.get(i) != null) {
+					keyToEntity.put(batch.get(i), entities.get(i));
+				}
+			}
+		}
+		return keyToEntity;
+	}
+
+	/**
+	 * @param firstChunk
+	 * @return the number of chunks of the document, or
+	 *         {@link #MAX_CHUNK_COUNT_WITHOUT_CHUNK_TOTAL} if the chunk total was
+	 *         not stored
+	 */
+	private static int getChunkCount(Entity firstChunk) {
+		if (firstChunk.contains(DOCUMENT_PROPERTY_CHUNK_TOTAL)) {
+			return (int) firstChunk.getLong(DOCUMENT_PROPERTY_CHUNK_TOTAL);
+		}
+		return MAX_CHUNK_COUNT_WITHOUT_CHUNK_TOTAL;
 	}
 
 	/**
@@ -46,6 +46,20 @@ public class DatastoreKeyUtil {
 		return key;
 	}
 
+	/**
+	 * @param statusKey a key created by {@link #createStatusKey(String)}
+	 * @return the document identifier encoded in the status key
+	 */
+	public static String getDocumentIdFromStatusKey(Key statusKey) {
+		PathElement pathElement = statusKey.getPath(statusKey.getPathCount() - 1);
+		String suffix = getStatusKeyName("");
+		if (!pathElement.getKind().equals(STATUS_KIND) || !pathElement.getName().endsWith(suffix)) {
+			throw new IllegalArgumentException("Not a status key: " + statusKey);
+		}
+		String name = pathElement.getName();
+		return name.substring(0, name.length() - suffix.length());
+	}
+
 	///////////////////////////////
 	//////// FAILURE KEY /////////
 	///////////////////////////////
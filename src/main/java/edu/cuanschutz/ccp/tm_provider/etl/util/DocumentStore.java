@@ -0,0 +1,62 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.io.Serializable;
+
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.values.PBegin;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PDone;
+
+import com.google.datastore.v1.Entity;
+import com.google.datastore.v1.Query;
+
+import edu.cuanschutz.ccp.tm_provider.etl.DatastoreReadOptions;
+import edu.cuanschutz.ccp.tm_provider.etl.DocumentStoreOptions;
+
+/**
+ * Storage for the status, document and failure entities that are shared by the
+ * pipelines. Entities are keyed using the scheme in {@link DatastoreKeyUtil},
+ * so every backend stores the same entities that are stored in Cloud
+ * Datastore. The backend used by a pipeline is selected using
+ * {@link DocumentStoreOptions}; see {@link #fromOptions(PipelineOptions, String)}.
+ */
+public interface DocumentStore extends Serializable {
+
+	/**
+	 * @param query a query for a single kind. Filters are limited to equality
+	 *              filters combined with AND, which are the only filters used by
+	 *              the pipelines.
+	 * @return a transform that reads the entities matching the query
+	 */
+	PTransform<PBegin, PCollection<Entity>> read(Query query);
+
+	/**
+	 * @return a transform that stores entities, replacing any stored entities with
+	 *         the same key
+	 */
+	PTransform<PCollection<Entity>, PDone> write();
+
+	/**
+	 * @param options
+	 * @param gcpProjectId the project used by the Datastore backend
+	 * @return the document store specified by the {@link DocumentStoreOptions}
+	 */
+	public static DocumentStore fromOptions(PipelineOptions options, String gcpProjectId) {
+		DocumentStoreOptions storeOptions = options.as(DocumentStoreOptions.class);
+		switch (storeOptions.getDocumentStore()) {
+		case DATASTORE:
+			return new DatastoreDocumentStore(gcpProjectId,
+					options.as(DatastoreReadOptions.class).getDatastoreNumQuerySplits());
+		case LOCAL:
+			if (storeOptions.getLocalDocumentStoreDirectory() == null) {
+				throw new IllegalArgumentException(
+						"The localDocumentStoreDirectory option must be set when using the LOCAL document store.");
+			}
+			return new LocalDocumentStore(storeOptions.getLocalDocumentStoreDirectory());
+		default:
+			throw new IllegalArgumentException("Unhandled document store: " + storeOptions.getDocumentStore());
+		}
+	}
+
+}
@@ -2,36 +2,85 @@ package edu.cuanschutz.ccp.tm_provider.etl.util;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
 import com.google.api.client.http.ByteArrayContent;
 import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpBackOffIOExceptionHandler;
+import com.google.api.client.http.HttpBackOffUnsuccessfulResponseHandler;
 import com.google.api.client.http.HttpContent;
 import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
 import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.util.ExponentialBackOff;
 import com.google.auth.http.HttpCredentialsAdapter;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.auth.oauth2.IdTokenCredentials;
 import com.google.auth.oauth2.IdTokenProvider;
 
 import edu.ucdenver.ccp.common.file.CharacterEncoding;
-import lombok.Data;
+import lombok.Getter;
 
 /**
- * Simple utility for submitting an HTTP POST request
+ * Simple utility for submitting an HTTP POST request to an authenticated Cloud
+ * Run service. The HTTP transport (and therefore its pool of keep-alive
+ * connections) and the ID token credentials are shared by all instances in the
+ * JVM. ID tokens are cached by the credentials and refreshed prior to
+ * expiration, so creating an instance, e.g. in a DoFn's {@code @Setup} method,
+ * is inexpensive. Requests that fail with an I/O error or a 429 or 5xx status
+ * are retried with exponential backoff.
  */
-@Data
 public class HttpPostUtil {
 
 	private static final Logger logger = org.apache.log4j.Logger.getLogger(HttpPostUtil.class);
 
+	/* the timeout defaults match those used by the google-http-client library */
+	public static final int DEFAULT_CONNECT_TIMEOUT_MS = 20000;
+	public static final int DEFAULT_READ_TIMEOUT_MS = 20000;
+	public static final int DEFAULT_MAX_RETRIES = 3;
+	private static final int INITIAL_BACKOFF_MS = 5000;
+
+	/**
+	 * NetHttpTransport is thread-safe; connections are kept alive and reused by the
+	 * underlying HttpURLConnection implementation as long as each response is
+	 * fully consumed
+	 */
+	private static final HttpTransport TRANSPORT = new NetHttpTransport();
+
+	/** ID token credentials by target audience */
+	private static final Map<String, IdTokenCredentials> CREDENTIALS = new ConcurrentHashMap<String, IdTokenCredentials>();
+
+	private static GoogleCredentials applicationDefaultCredentials;
+
+	@Getter
 	private final String targetUri;
+	@Getter
+	private final int connectTimeoutMs;
+	@Getter
+	private final int readTimeoutMs;
+	@Getter
+	private final int maxRetries;
+
+	private HttpRequestFactory requestFactory;
+
+	public HttpPostUtil(String targetUri) {
+		this(targetUri, DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS, DEFAULT_MAX_RETRIES);
+	}
+
+	public HttpPostUtil(String targetUri, int connectTimeoutMs, int readTimeoutMs, int maxRetries) {
+		this.targetUri = targetUri;
+		this.connectTimeoutMs = connectTimeoutMs;
+		this.readTimeoutMs = readTimeoutMs;
+		this.maxRetries = maxRetries;
+	}
 
 	/**
-	 * submit makes a GET request to the specified Cloud Run or Cloud Functions
+	 * submit makes a POST request to the specified Cloud Run or Cloud Functions
 	 * endpoint, serviceUrl (must be a complete URL), by authenticating with an Id
 	 * token retrieved from Application Default Credentials.
 	 * 
@@ -41,39 +90,12 @@ public class HttpPostUtil {
 	 * @param payload
 	 * @return
 	 * @throws IOException
-	 * @throws InterruptedException
 	 */
 	public String submit(String payload) throws IOException {
 
 		HttpResponse response = makeHttpRequest(payload);
-//		/*
-//		 * occasionally the server does not respond, or does not respond in time and an
-//		 * exception is thrown. In these cases we will catch the exception, wait 5
-//		 * seconds, and retry up to 3 times total before officially failing.
-//		 */
-//		int tryCount = 0;
-//		HttpResponse response = null;
-//		while (tryCount++ < 4) {
-//			try {
-//				response = makeHttpRequest(payload);
-//				// request was successful so break out of the while loop
-//				break;
-//			} catch (HttpResponseException e) {
-//				if (tryCount == 4) {
-//					throw new HttpResponseException(response);
-//				}
-//				/* sleep for 5s before trying again */
-//				try {
-//					Thread.sleep(5000);
-//				} catch (InterruptedException e1) {
-//					throw new IOException(e1);
-//				}
-//			}
-//		}
-//		if (tryCount > 1) {
-//			logger.info("TMPLOG -- recovered HTTPReponse after sleeping.");
-//		}
 
+		// the response must be read completely so that the connection can be reused
 		ByteArrayOutputStream os = new ByteArrayOutputStream();
 		try {
 			response.download(os);
@@ -86,23 +108,65 @@ public class HttpPostUtil {
 	}
 
 	private HttpResponse makeHttpRequest(String payload) throws IOException {
-		HttpResponse response;
-		GoogleCredentials credentials = GoogleCredentials.getApplicationDefault();
-		if (!(credentials instanceof IdTokenProvider)) {
-			throw new IllegalArgumentException("Credentials are not an instance of IdTokenProvider.");
-		}
-		IdTokenCredentials tokenCredential = IdTokenCredentials.newBuilder()
-				.setIdTokenProvider((IdTokenProvider) credentials).setTargetAudience(targetUri).build();
-
 		GenericUrl genericUrl = new GenericUrl(targetUri);
-		HttpCredentialsAdapter adapter = new HttpCredentialsAdapter(tokenCredential);
-		HttpTransport transport = new NetHttpTransport();
 		HttpContent content = new ByteArrayContent("application/text; charset=utf-8",
 				payload.getBytes(CharacterEncoding.UTF_8.getCharacterSetName()));
-		HttpRequest request = transport.createRequestFactory(adapter).buildPostRequest(genericUrl, content);
+		HttpRequest request = getRequestFactory().buildPostRequest(genericUrl, content);
+		return request.execute();
+	}
 
-		response = request.execute();
-		return response;
+	private synchronized HttpRequestFactory getRequestFactory() throws IOException {
+		if (requestFactory == null) {
+			HttpCredentialsAdapter adapter = new HttpCredentialsAdapter(getIdTokenCredentials(targetUri));
+			requestFactory = TRANSPORT.createRequestFactory(request -> {
+				adapter.initialize(request);
+				request.setConnectTimeout(connectTimeoutMs);
+				request.setReadTimeout(readTimeoutMs);
+				request.setNumberOfRetries(maxRetries);
+
+				HttpBackOffUnsuccessfulResponseHandler backOffHandler = new HttpBackOffUnsuccessfulResponseHandler(
+						createBackOff()).setBackOffRequired(
+								response -> response.getStatusCode() == 429 || response.getStatusCode() / 100 == 5);
+				// the credentials adapter handles a 401 by refreshing the token
+				request.setUnsuccessfulResponseHandler((req, response, supportsRetry) -> {
+					if (adapter.handleResponse(req, response, supportsRetry)) {
+						return true;
+					}
+					boolean retry = backOffHandler.handleResponse(req, response, supportsRetry);
+					if (retry) {
+						logger.warn(String.format("Retrying request to %s after HTTP status %d", targetUri,
+								response.getStatusCode()));
+					}
+					return retry;
+				});
+				request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(createBackOff()));
+			});
+		}
+		return requestFactory;
+	}
+
+	private static ExponentialBackOff createBackOff() {
+		return new ExponentialBackOff.Builder().setInitialIntervalMillis(INITIAL_BACKOFF_MS).build();
+	}
+
+	private static IdTokenCredentials getIdTokenCredentials(String targetAudience) throws IOException {
+		IdTokenCredentials credentials = CREDENTIALS.get(targetAudience);
+		if (credentials == null) {
+			GoogleCredentials adc = getApplicationDefaultCredentials();
+			if (!(adc instanceof IdTokenProvider)) {
+				throw new IllegalArgumentException("Credentials are not an instance of IdTokenProvider.");
+			}
+			credentials = CREDENTIALS.computeIfAbsent(targetAudience, audience -> IdTokenCredentials.newBuilder()
+					.setIdTokenProvider((IdTokenProvider) adc).setTargetAudience(audience).build());
+		}
+		return credentials;
+	}
+
+	private static synchronized GoogleCredentials getApplicationDefaultCredentials() throws IOException {
+		if (applicationDefaultCredentials == null) {
+			applicationDefaultCredentials = GoogleCredentials.getApplicationDefault();
+		}
+		return applicationDefaultCredentials;
 	}
 
 //	public String submit(String payload) throws IOException {
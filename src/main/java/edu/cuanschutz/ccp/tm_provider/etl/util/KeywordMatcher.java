@@ -0,0 +1,201 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Finds keywords in text using an Aho-Corasick automaton, so that all keywords
+ * are matched in a single pass over the text regardless of how many keywords
+ * there are.
+ * <p>
+ * Matching is equivalent to testing each keyword in turn with the pattern
+ * <code>\bkeyword\b</code> compiled with {@link java.util.regex.Pattern#CASE_INSENSITIVE}:
+ * <ul>
+ * <li>case is ignored for US-ASCII letters only</li>
+ * <li>a match must start and end at a word boundary, where word characters are
+ * letters, digits and the underscore</li>
+ * <li>if more than one keyword is present, the keyword that comes first in the
+ * iteration order of the collection used to create the matcher is
+ * returned</li>
+ * </ul>
+ * Instances are immutable and can be shared between threads.
+ */
+public class KeywordMatcher {
+
+	private static final int ROOT = 0;
+
+	private final String[] keywords;
+	/* keyword lengths, indexed by keyword rank */
+	private final int[] keywordLengths;
+	/* the rank of the empty keyword, which matches at any word boundary, or -1 */
+	private final int emptyKeywordRank;
+
+	/* trie transitions; the labels for each state are sorted for binary search */
+	private final char[][] labels;
+	private final int[][] targets;
+	private final int[] failure;
+	/* the ranks of keywords that end at each state, excluding those of suffix states */
+	private final int[][] outputs;
+	/* the nearest state on the failure path that has outputs, or -1 */
+	private final int[] outputLink;
+
+	/**
+	 * @param keywords keywords are preferred in the iteration order of this
+	 *                 collection when more than one is found in a text
+	 */
+	public KeywordMatcher(Collection<String> keywords) {
+		this.keywords = keywords.toArray(new String[keywords.size()]);
+		this.keywordLengths = new int[this.keywords.length];
+
+		List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+		List<List<Integer>> stateOutputs = new ArrayList<List<Integer>>();
+		trie.add(new TreeMap<Character, Integer>());
+		stateOutputs.add(new ArrayList<Integer>());
+
+		int emptyRank = -1;
+		for (int rank = 0; rank < this.keywords.length; rank++) {
+			String keyword = this.keywords[rank];
+			keywordLengths[rank] = keyword.length();
+			if (keyword.isEmpty()) {
+				if (emptyRank < 0) {
+					emptyRank = rank;
+				}
+				continue;
+			}
+			int state = ROOT;
+			for (int i = 0; i < keyword.length(); i++) {
+				char c = fold(keyword.charAt(i));
+				Integer next = trie.get(state).get(c);
+				if (next == null) {
+					next = trie.size();
+					trie.add(new TreeMap<Character, Integer>());
+					stateOutputs.add(new ArrayList<Integer>());
+					trie.get(state).put(c, next);
+				}
+				state = next;
+			}
+			stateOutputs.get(state).add(rank);
+		}
+		this.emptyKeywordRank = emptyRank;
+
+		int stateCount = trie.size();
+		labels = new char[stateCount][];
+		targets = new int[stateCount][];
+		outputs = new int[stateCount][];
+		for (int state = 0; state < stateCount; state++) {
+			TreeMap<Character, Integer> transitions = trie.get(state);
+			labels[state] = new char[transitions.size()];
+			targets[state] = new int[transitions.size()];
+			int i = 0;
+			for (Entry<Character, Integer> entry : transitions.entrySet()) {
+				labels[state][i] = entry.getKey();
+				targets[state][i++] = entry.getValue();
+			}
+			outputs[state] = stateOutputs.get(state).stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		// compute failure and output links breadth-first
+		failure = new int[stateCount];
+		outputLink = new int[stateCount];
+		Arrays.fill(outputLink, -1);
+		Deque<Integer> queue = new ArrayDeque<Integer>();
+		for (int child : targets[ROOT]) {
+			failure[child] = ROOT;
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			for (int i = 0; i < labels[state].length; i++) {
+				char c = labels[state][i];
+				int child = targets[state][i];
+				int f = failure[state];
+				while (f != ROOT && transition(f, c) < 0) {
+					f = failure[f];
+				}
+				int next = transition(f, c);
+				failure[child] = (next < 0 || next == child) ? ROOT : next;
+				int fc = failure[child];
+				outputLink[child] = (outputs[fc].length > 0) ? fc : outputLink[fc];
+				queue.add(child);
+			}
+		}
+	}
+
+	/**
+	 * @param text
+	 * @return the preferred keyword found in the text, or null if no keyword is
+	 *         found
+	 */
+	public String findKeyword(String text) {
+		int best = Integer.MAX_VALUE;
+		if (emptyKeywordRank >= 0 && hasAnyBoundary(text)) {
+			best = emptyKeywordRank;
+		}
+
+		int state = ROOT;
+		for (int i = 0; i < text.length() && best > 0; i++) {
+			char c = fold(text.charAt(i));
+			int next;
+			while ((next = transition(state, c)) < 0 && state != ROOT) {
+				state = failure[state];
+			}
+			state = (next < 0) ? ROOT : next;
+
+			int end = i + 1;
+			for (int s = (outputs[state].length > 0) ? state : outputLink[state]; s >= 0; s = outputLink[s]) {
+				for (int rank : outputs[s]) {
+					if (rank < best && isBoundary(text, end - keywordLengths[rank]) && isBoundary(text, end)) {
+						best = rank;
+					}
+				}
+			}
+		}
+		return (best == Integer.MAX_VALUE) ? null : keywords[best];
+	}
+
+	/**
+	 * @return true if the matcher was created without any keywords
+	 */
+	public boolean isEmpty() {
+		return keywords.length == 0;
+	}
+
+	private int transition(int state, char c) {
+		int index = Arrays.binarySearch(labels[state], c);
+		return (index < 0) ? -1 : targets[state][index];
+	}
+
+	/**
+	 * CASE_INSENSITIVE without UNICODE_CASE only folds US-ASCII letters
+	 */
+	private static char fold(char c) {
+		return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	private static boolean isWord(int codePoint) {
+		return codePoint == '_' || Character.isLetterOrDigit(codePoint);
+	}
+
+	/**
+	 * @param text
+	 * @param index
+	 * @return true if there is a word boundary at the index, i.e. the characters
+	 *         on either side of it are not both word or both non-word characters
+	 */
+	private static boolean isBoundary(String text, int index) {
+		boolean wordBefore = index > 0 && isWord(text.codePointBefore(index));
+		boolean wordAfter = index < text.length() && isWord(text.codePointAt(index));
+		return wordBefore != wordAfter;
+	}
+
+	private static boolean hasAnyBoundary(String text) {
+		return text.codePoints().anyMatch(KeywordMatcher::isWord);
+	}
+
+}
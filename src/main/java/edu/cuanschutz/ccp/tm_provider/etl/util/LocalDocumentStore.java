@@ -0,0 +1,239 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.io.IOException;
+
+import org.apache.beam.sdk.extensions.protobuf.ProtoCoder;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.Impulse;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Reshuffle;
+import org.apache.beam.sdk.values.PBegin;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PDone;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.datastore.v1.CompositeFilter;
+import com.google.datastore.v1.Entity;
+import com.google.datastore.v1.Filter;
+import com.google.datastore.v1.Key;
+import com.google.datastore.v1.Key.PathElement;
+import com.google.datastore.v1.PropertyFilter;
+import com.google.datastore.v1.PropertyReference;
+import com.google.datastore.v1.Query;
+import com.google.datastore.v1.Value;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Stores entities in a {@link LocalKeyValueStore} so that pipelines can be run
+ * on a single machine, e.g. with the DirectRunner, without Cloud Datastore.
+ * Each entity is stored under a key composed of its kind followed by the names
+ * in its Datastore key path (see {@link #toStoreKey(Key)}), so the entities of
+ * a kind can be scanned in key order. Queries are evaluated by scanning the
+ * entities of the queried kind.
+ */
+@Data
+public class LocalDocumentStore implements DocumentStore {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String KEY_PROPERTY_NAME = "__key__";
+	private static final String KEY_SEPARATOR = "/";
+
+	private final String directory;
+
+	@Override
+	public PTransform<PBegin, PCollection<Entity>> read(Query query) {
+		if (query.getKindCount() != 1) {
+			throw new IllegalArgumentException("Queries of the local document store must specify a single kind.");
+		}
+		return new Read(directory, query);
+	}
+
+	@Override
+	public PTransform<PCollection<Entity>, PDone> write() {
+		return new Write(directory);
+	}
+
+	/**
+	 * @param key
+	 * @return the key used to store the entity with the specified Datastore key,
+	 *         e.g. document/PMID:1.status/PMID:1.0.text.text.medline_xml_to_text.0.1.0
+	 */
+	@VisibleForTesting
+	protected static String toStoreKey(Key key) {
+		StringBuilder sb = new StringBuilder(getKindPrefix(key.getPath(key.getPathCount() - 1).getKind()));
+		for (int i = 0; i < key.getPathCount(); i++) {
+			PathElement pathElement = key.getPath(i);
+			if (i > 0) {
+				sb.append(KEY_SEPARATOR);
+			}
+			sb.append(pathElement.hasName() ? pathElement.getName() : Long.toString(pathElement.getId()));
+		}
+		return sb.toString();
+	}
+
+	private static String getKindPrefix(String kind) {
+		return kind + KEY_SEPARATOR;
+	}
+
+	/**
+	 * @param query
+	 * @param entity
+	 * @return true if the entity satisfies the query filter
+	 */
+	@VisibleForTesting
+	protected static boolean matches(Query query, Entity entity) {
+		return !query.hasFilter() || matches(query.getFilter(), entity);
+	}
+
+	private static boolean matches(Filter filter, Entity entity) {
+		switch (filter.getFilterTypeCase()) {
+		case COMPOSITE_FILTER:
+			CompositeFilter compositeFilter = filter.getCompositeFilter();
+			if (compositeFilter.getOp() != CompositeFilter.Operator.AND) {
+				throw new IllegalArgumentException(
+						"Unsupported composite filter for the local document store: " + compositeFilter.getOp());
+			}
+			for (Filter f : compositeFilter.getFiltersList()) {
+				if (!matches(f, entity)) {
+					return false;
+				}
+			}
+			return true;
+		case PROPERTY_FILTER:
+			PropertyFilter propertyFilter = filter.getPropertyFilter();
+			if (propertyFilter.getOp() != PropertyFilter.Operator.EQUAL) {
+				throw new IllegalArgumentException(
+						"Unsupported property filter for the local document store: " + propertyFilter.getOp());
+			}
+			Value value = entity.getPropertiesMap().get(propertyFilter.getProperty().getName());
+			return value != null && valueEquals(value, propertyFilter.getValue());
+		case FILTERTYPE_NOT_SET:
+			return true;
+		default:
+			throw new IllegalArgumentException("Unsupported filter for the local document store: " + filter);
+		}
+	}
+
+	/**
+	 * As in Datastore, an array property equals a value if any of its elements
+	 * equals the value
+	 *
+	 * @param propertyValue
+	 * @param filterValue
+	 * @return
+	 */
+	private static boolean valueEquals(Value propertyValue, Value filterValue) {
+		if (propertyValue.hasArrayValue()) {
+			for (Value element : propertyValue.getArrayValue().getValuesList()) {
+				if (valueEquals(element, filterValue)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return normalize(propertyValue).equals(normalize(filterValue));
+	}
+
+	private static Value normalize(Value value) {
+		return value.toBuilder().clearExcludeFromIndexes().clearMeaning().build();
+	}
+
+	/**
+	 * @param query
+	 * @param entity
+	 * @return the entity, or if the query has a projection, an entity with only
+	 *         the key and the projected properties
+	 */
+	@VisibleForTesting
+	protected static Entity project(Query query, Entity entity) {
+		if (query.getProjectionCount() == 0) {
+			return entity;
+		}
+		Entity.Builder builder = Entity.newBuilder().setKey(entity.getKey());
+		for (int i = 0; i < query.getProjectionCount(); i++) {
+			PropertyReference property = query.getProjection(i).getProperty();
+			Value value = entity.getPropertiesMap().get(property.getName());
+			if (!property.getName().equals(KEY_PROPERTY_NAME) && value != null) {
+				builder.putProperties(property.getName(), value);
+			}
+		}
+		return builder.build();
+	}
+
+	@Data
+	@EqualsAndHashCode(callSuper = false)
+	private static class Read extends PTransform<PBegin, PCollection<Entity>> {
+		private static final long serialVersionUID = 1L;
+
+		private final String directory;
+		private final Query query;
+
+		@Override
+		public PCollection<Entity> expand(PBegin input) {
+			return input.apply("impulse", Impulse.create())
+					.apply("scan local document store", ParDo.of(new ScanFn(directory, query)))
+					.setCoder(ProtoCoder.of(Entity.class))
+					// the scan is performed by a single worker; redistribute the entities
+					.apply("redistribute", Reshuffle.viaRandomKey());
+		}
+	}
+
+	@Data
+	@EqualsAndHashCode(callSuper = false)
+	private static class ScanFn extends DoFn<byte[], Entity> {
+		private static final long serialVersionUID = 1L;
+
+		private final String directory;
+		private final Query query;
+
+		@ProcessElement
+		public void processElement(OutputReceiver<Entity> out) throws IOException {
+			LocalKeyValueStore store = LocalKeyValueStore.getSharedInstance(directory);
+			for (String key : store.getKeys(getKindPrefix(query.getKind(0).getName()))) {
+				Entity entity = Entity.parseFrom(store.get(key));
+				if (matches(query, entity)) {
+					out.output(project(query, entity));
+				}
+			}
+		}
+	}
+
+	@Data
+	@EqualsAndHashCode(callSuper = false)
+	private static class Write extends PTransform<PCollection<Entity>, PDone> {
+		private static final long serialVersionUID = 1L;
+
+		private final String directory;
+
+		@Override
+		public PDone expand(PCollection<Entity> input) {
+			input.apply("write to local document store", ParDo.of(new WriteFn(directory)));
+			return PDone.in(input.getPipeline());
+		}
+	}
+
+	@Data
+	@EqualsAndHashCode(callSuper = false)
+	private static class WriteFn extends DoFn<Entity, Void> {
+		private static final long serialVersionUID = 1L;
+
+		private final String directory;
+
+		private transient LocalKeyValueStore store;
+
+		@Setup
+		public void setup() {
+			store = LocalKeyValueStore.getSharedInstance(directory);
+		}
+
+		@ProcessElement
+		public void processElement(@Element Entity entity) throws IOException {
+			store.put(toStoreKey(entity.getKey()), entity.toByteArray());
+		}
+	}
+
+}
@@ -0,0 +1,187 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An embedded, persistent key-value store for running pipelines on a single
+ * machine, e.g. with the DirectRunner. Records are appended to a single log
+ * file in the store directory and an in-memory index, sorted by key, maps each
+ * key to the location of its most recent value in the log. The index is
+ * rebuilt by scanning the log when the store is opened.
+ * <p>
+ * Record layout (all ints are big-endian):
+ *
+ * <pre>
+ * int keyByteCount, int valueByteCount
+ * byte[keyByteCount]    UTF-8 encoded key
+ * byte[valueByteCount]  value
+ * </pre>
+ *
+ * A record that was only partially written, e.g. because the process was
+ * killed, is discarded when the store is opened. Values that have been
+ * overwritten remain in the log. A store directory must only be opened by a
+ * single process at a time; within a process use
+ * {@link #getSharedInstance(String)}.
+ */
+public class LocalKeyValueStore implements Closeable {
+
+	private static final String LOG_FILE_NAME = "store.log";
+	private static final int HEADER_BYTE_COUNT = 8;
+
+	private static final Map<String, LocalKeyValueStore> SHARED_INSTANCES = new ConcurrentHashMap<String, LocalKeyValueStore>();
+
+	private final FileChannel channel;
+	/* maps each key to the {offset, length} of its value in the log */
+	private final NavigableMap<String, long[]> index = new ConcurrentSkipListMap<String, long[]>();
+	private long end;
+
+	public LocalKeyValueStore(File directory) throws IOException {
+		Files.createDirectories(directory.toPath());
+		Path logFile = directory.toPath().resolve(LOG_FILE_NAME);
+		this.channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.end = load();
+		if (end < channel.size()) {
+			channel.truncate(end);
+		}
+	}
+
+	/**
+	 * Returns the store for the specified directory that is shared by all callers
+	 * in the JVM so that the DoFn instances of a pipeline append to the same log.
+	 *
+	 * @param directory
+	 * @return
+	 */
+	public static LocalKeyValueStore getSharedInstance(String directory) {
+		String path = new File(directory).getAbsolutePath();
+		return SHARED_INSTANCES.computeIfAbsent(path, p -> {
+			try {
+				return new LocalKeyValueStore(new File(p));
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to open local key-value store: " + p, e);
+			}
+		});
+	}
+
+	/**
+	 * Scans the log and indexes the value of each complete record
+	 *
+	 * @return the offset following the last complete record
+	 * @throws IOException
+	 */
+	private long load() throws IOException {
+		long size = channel.size();
+		long offset = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTE_COUNT);
+		while (offset + HEADER_BYTE_COUNT <= size) {
+			header.clear();
+			readFully(header, offset);
+			header.flip();
+			int keyByteCount = header.getInt();
+			int valueByteCount = header.getInt();
+			long valueOffset = offset + HEADER_BYTE_COUNT + keyByteCount;
+			if (keyByteCount < 0 || valueByteCount < 0 || valueOffset + valueByteCount > size) {
+				break;
+			}
+			ByteBuffer keyBytes = ByteBuffer.allocate(keyByteCount);
+			readFully(keyBytes, offset + HEADER_BYTE_COUNT);
+			String key = new String(keyBytes.array(), StandardCharsets.UTF_8);
+			index.put(key, new long[] { valueOffset, valueByteCount });
+			offset = valueOffset + valueByteCount;
+		}
+		return offset;
+	}
+
+	/**
+	 * Stores the value for the key, replacing any existing value
+	 *
+	 * @param key
+	 * @param value
+	 * @throws IOException
+	 */
+	public void put(String key, byte[] value) throws IOException {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer record = ByteBuffer.allocate(HEADER_BYTE_COUNT + keyBytes.length + value.length);
+		record.putInt(keyBytes.length).putInt(value.length).put(keyBytes).put(value);
+		record.flip();
+		synchronized (this) {
+			long offset = end;
+			while (record.hasRemaining()) {
+				channel.write(record, offset + record.position());
+			}
+			end = offset + record.limit();
+			index.put(key, new long[] { offset + HEADER_BYTE_COUNT + keyBytes.length, value.length });
+		}
+	}
+
+	/**
+	 * @param key
+	 * @return the value for the key, or null if the key is not in the store
+	 * @throws IOException
+	 */
+	public byte[] get(String key) throws IOException {
+		long[] location = index.get(key);
+		if (location == null) {
+			return null;
+		}
+		ByteBuffer value = ByteBuffer.allocate((int) location[1]);
+		readFully(value, location[0]);
+		return value.array();
+	}
+
+	/**
+	 * @param prefix
+	 * @return the keys that start with the prefix, in sorted order. Keys added
+	 *         after this method returns are not included.
+	 */
+	public List<String> getKeys(String prefix) {
+		List<String> keys = new ArrayList<String>();
+		for (String key : index.tailMap(prefix, true).keySet()) {
+			if (!key.startsWith(prefix)) {
+				break;
+			}
+			keys.add(key);
+		}
+		return keys;
+	}
+
+	/**
+	 * @return the number of keys in the store
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	private void readFully(ByteBuffer buffer, long offset) throws IOException {
+		long position = offset;
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new EOFException("Unexpected end of local key-value store log at offset " + position);
+			}
+			position += read;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
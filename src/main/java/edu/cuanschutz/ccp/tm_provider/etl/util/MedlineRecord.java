@@ -0,0 +1,43 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.apache.beam.sdk.coders.DefaultCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+
+import lombok.Data;
+
+/**
+ * The fields of a Medline PubmedArticle record that are used by the Medline
+ * pipelines. See {@link MedlineXmlReader}.
+ */
+@Data
+@DefaultCoder(SerializableCoder.class)
+public class MedlineRecord implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * the PMID, without the PMID: prefix
+	 */
+	private final String pmid;
+	/**
+	 * the raw ArticleTitle text, possibly containing HTML formatting tags
+	 */
+	private final String title;
+	/**
+	 * the raw text of each AbstractText, or null if the record has no Abstract
+	 */
+	private final List<String> abstractTexts;
+	/**
+	 * the publication year extracted from the journal issue PubDate, or null if
+	 * the record has no PubDate
+	 */
+	private final String yearPublished;
+	/**
+	 * the publication types, or null if the record has no PublicationTypeList
+	 */
+	private final List<String> publicationTypes;
+
+}
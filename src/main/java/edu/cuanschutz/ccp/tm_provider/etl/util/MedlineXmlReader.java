@@ -0,0 +1,278 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import edu.cuanschutz.ccp.tm_provider.etl.fn.MedlineXmlToTextFn;
+
+/**
+ * Streams the PubmedArticle records of a Medline PubmedArticleSet XML file as
+ * {@link MedlineRecord} objects. Only the fields used by the Medline pipelines
+ * are extracted; the remainder of each record is skipped without being bound
+ * to objects. DeleteCitation and PubmedBookArticle elements are ignored.
+ * <p>
+ * The ArticleTitle and AbstractText values are returned as they would be
+ * returned by the JAXB-generated org.medline classes, i.e. the raw text of
+ * CDATA sections is returned as is and other text is unescaped. If the title
+ * or abstract has not been wrapped in CDATA, any HTML formatting elements it
+ * contains, e.g. &lt;sup&gt;, are returned as tags in the text.
+ */
+public class MedlineXmlReader implements Closeable {
+
+	private static final String PUBMED_ARTICLE = "PubmedArticle";
+	private static final String MEDLINE_CITATION = "MedlineCitation";
+	private static final String PMID = "PMID";
+	private static final String ARTICLE = "Article";
+	private static final String ARTICLE_TITLE = "ArticleTitle";
+	private static final String ABSTRACT = "Abstract";
+	private static final String ABSTRACT_TEXT = "AbstractText";
+	private static final String JOURNAL = "Journal";
+	private static final String JOURNAL_ISSUE = "JournalIssue";
+	private static final String PUB_DATE = "PubDate";
+	private static final String YEAR = "Year";
+	private static final String MEDLINE_DATE = "MedlineDate";
+	private static final String PUBLICATION_TYPE_LIST = "PublicationTypeList";
+	private static final String PUBLICATION_TYPE = "PublicationType";
+
+	private final XMLStreamReader xsr;
+
+	public MedlineXmlReader(Reader reader) throws XMLStreamException {
+		XMLInputFactory xif = XMLInputFactory.newInstance();
+		xif.setXMLResolver(getPubmedXmlResolver());
+		this.xsr = xif.createXMLStreamReader(reader);
+	}
+
+	/**
+	 * @return the next PubmedArticle record in the file, or null if there are no
+	 *         more records
+	 * @throws XMLStreamException
+	 */
+	public MedlineRecord readRecord() throws XMLStreamException {
+		while (xsr.hasNext()) {
+			if (xsr.next() == XMLStreamConstants.START_ELEMENT && xsr.getLocalName().equals(PUBMED_ARTICLE)) {
+				MedlineRecord record = readPubmedArticle();
+				if (record != null) {
+					return record;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the record for the PubmedArticle element at the current position, or
+	 *         null if it does not have a MedlineCitation PMID
+	 * @throws XMLStreamException
+	 */
+	private MedlineRecord readPubmedArticle() throws XMLStreamException {
+		RecordFields fields = new RecordFields();
+		int depth = 1;
+		while (depth > 0) {
+			int event = xsr.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (depth == 1 && xsr.getLocalName().equals(MEDLINE_CITATION)) {
+					readMedlineCitation(fields);
+				} else {
+					depth++;
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+		if (fields.pmid == null) {
+			return null;
+		}
+		return new MedlineRecord(fields.pmid, fields.title, fields.abstractTexts, fields.yearPublished,
+				fields.publicationTypes);
+	}
+
+	private void readMedlineCitation(RecordFields fields) throws XMLStreamException {
+		while (nextChildElement()) {
+			String name = xsr.getLocalName();
+			if (name.equals(PMID) && fields.pmid == null) {
+				fields.pmid = xsr.getElementText();
+			} else if (name.equals(ARTICLE)) {
+				readArticle(fields);
+			} else {
+				skipElement();
+			}
+		}
+	}
+
+	private void readArticle(RecordFields fields) throws XMLStreamException {
+		while (nextChildElement()) {
+			String name = xsr.getLocalName();
+			if (name.equals(JOURNAL)) {
+				readJournal(fields);
+			} else if (name.equals(ARTICLE_TITLE)) {
+				fields.title = readMixedContent();
+			} else if (name.equals(ABSTRACT)) {
+				fields.abstractTexts = new ArrayList<String>();
+				while (nextChildElement()) {
+					if (xsr.getLocalName().equals(ABSTRACT_TEXT)) {
+						fields.abstractTexts.add(readMixedContent());
+					} else {
+						skipElement();
+					}
+				}
+			} else if (name.equals(PUBLICATION_TYPE_LIST)) {
+				fields.publicationTypes = new ArrayList<String>();
+				while (nextChildElement()) {
+					if (xsr.getLocalName().equals(PUBLICATION_TYPE)) {
+						fields.publicationTypes.add(xsr.getElementText());
+					} else {
+						skipElement();
+					}
+				}
+			} else {
+				skipElement();
+			}
+		}
+	}
+
+	/**
+	 * Extracts the publication year from Journal/JournalIssue/PubDate using the
+	 * first Year or MedlineDate element, in the same way as
+	 * {@link MedlineXmlToTextFn#getYearPublished(org.medline.MedlineCitation)}
+	 */
+	private void readJournal(RecordFields fields) throws XMLStreamException {
+		while (nextChildElement()) {
+			if (!xsr.getLocalName().equals(JOURNAL_ISSUE)) {
+				skipElement();
+				continue;
+			}
+			while (nextChildElement()) {
+				if (!xsr.getLocalName().equals(PUB_DATE)) {
+					skipElement();
+					continue;
+				}
+				String yearPublished = null;
+				while (nextChildElement()) {
+					String name = xsr.getLocalName();
+					if (yearPublished == null && name.equals(YEAR)) {
+						yearPublished = xsr.getElementText();
+					} else if (yearPublished == null && name.equals(MEDLINE_DATE)) {
+						yearPublished = MedlineXmlToTextFn.extractYearFromMedlineDate(xsr.getElementText());
+					} else {
+						skipElement();
+					}
+				}
+				fields.yearPublished = (yearPublished == null) ? MedlineXmlToTextFn.DEFAULT_PUB_YEAR : yearPublished;
+			}
+		}
+	}
+
+	/**
+	 * Advances to the next child element of the current element
+	 *
+	 * @return true if positioned at the start of a child element, false if
+	 *         positioned at the end of the current element
+	 * @throws XMLStreamException
+	 */
+	private boolean nextChildElement() throws XMLStreamException {
+		while (true) {
+			int event = xsr.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			}
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Advances to the end of the current element
+	 *
+	 * @throws XMLStreamException
+	 */
+	private void skipElement() throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = xsr.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * @return the text content of the current element, including any child
+	 *         elements as tags (without attributes)
+	 * @throws XMLStreamException
+	 */
+	private String readMixedContent() throws XMLStreamException {
+		StringBuilder sb = new StringBuilder();
+		int depth = 1;
+		while (depth > 0) {
+			int event = xsr.next();
+			switch (event) {
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+			case XMLStreamConstants.ENTITY_REFERENCE:
+				sb.append(xsr.getText());
+				break;
+			case XMLStreamConstants.START_ELEMENT:
+				sb.append("<").append(xsr.getLocalName()).append(">");
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				if (depth > 0) {
+					sb.append("</").append(xsr.getLocalName()).append(">");
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			xsr.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Error while closing Medline XML reader.", e);
+		}
+	}
+
+	/**
+	 * The PubMed DTD is loaded from the classpath so that it is not retrieved from
+	 * the NLM server for each file
+	 *
+	 * @return
+	 */
+	private static XMLResolver getPubmedXmlResolver() {
+		return new XMLResolver() {
+
+			@Override
+			public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace)
+					throws XMLStreamException {
+				return Thread.currentThread().getContextClassLoader().getResourceAsStream("pubmed/pubmed_190101.dtd");
+			}
+		};
+	}
+
+	private static class RecordFields {
+		private String pmid;
+		private String title;
+		private List<String> abstractTexts;
+		private String yearPublished;
+		private List<String> publicationTypes;
+	}
+
+}
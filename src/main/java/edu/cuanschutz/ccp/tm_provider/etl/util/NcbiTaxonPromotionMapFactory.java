@@ -12,6 +12,7 @@ import java.util.zip.GZIPInputStream;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 
+import edu.cuanschutz.ccp.tm_provider.etl.fn.PCollectionUtil.Delimiter;
 import edu.ucdenver.ccp.common.file.FileWriterUtil;
 import edu.ucdenver.ccp.datasource.fileparsers.obo.OntologyUtil;
 import lombok.Data;
@@ -46,6 +47,19 @@ public class NcbiTaxonPromotionMapFactory {
 		}
 	}
 
+	/**
+	 * Converts the NCBITaxon promotion mapping file created by {@link #createMappingFile(BufferedWriter)}
+	 * into an {@link AncestorIndex} file that can be memory-mapped by pipeline
+	 * workers
+	 * 
+	 * @param mappingFile the mapping file; may be gzipped
+	 * @param indexFile
+	 * @throws IOException
+	 */
+	public static void createIndexFile(File mappingFile, File indexFile) throws IOException {
+		AncestorIndex.createIndexFile(mappingFile, Delimiter.TAB, Delimiter.PIPE, indexFile);
+	}
+
 	private void writeMapping(BufferedWriter writer, String id1, String id2) throws IOException {
 		writer.write(String.format("%s\t%s\n", id1, id2));
 	}
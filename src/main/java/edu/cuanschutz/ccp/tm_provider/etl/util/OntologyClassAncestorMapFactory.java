@@ -50,6 +50,19 @@ public class OntologyClassAncestorMapFactory {
 		}
 	}
 
+	/**
+	 * Converts a mapping file created by
+	 * {@link #createMappingFile(OntologyUtil, BufferedWriter)} into an
+	 * {@link AncestorIndex} file that can be memory-mapped by pipeline workers
+	 * 
+	 * @param mappingFile the mapping file; may be gzipped
+	 * @param indexFile
+	 * @throws IOException
+	 */
+	public static void createIndexFile(File mappingFile, File indexFile) throws IOException {
+		AncestorIndex.createIndexFile(mappingFile, FILE_DELIMITER, SET_DELIMITER, indexFile);
+	}
+
 	private void writeMapping(BufferedWriter writer, String id1, String id2) throws IOException {
 		writer.write(String.format("%s%s%s\n", id1, FILE_DELIMITER.delimiter(), id2));
 	}
@@ -104,6 +117,15 @@ public class OntologyClassAncestorMapFactory {
 			e.printStackTrace();
 			System.exit(-1);
 		}
+
+		// the index file is used by the cooccurrence pipeline in place of the mapping
+		// file when ancestors are added to the cooccurrence computation
+		try {
+			createIndexFile(outputFile, new File(ontologyDir, "ontology-class-ancestor-index.bin"));
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
 	}
 
 }
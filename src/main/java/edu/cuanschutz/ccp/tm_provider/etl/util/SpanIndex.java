@@ -0,0 +1,148 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import edu.ucdenver.ccp.nlp.core.annotation.Span;
+import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
+
+/**
+ * An index over a collection of items that each have a {@link Span}, e.g.
+ * sentence annotations, that answers containment and overlap queries without
+ * scanning the whole collection. Items are stored sorted by span start along
+ * with the running maximum span end, so a query binary searches for the last
+ * item that could match and then walks backwards only as far as an item could
+ * still reach the query span. For non-nested items such as sentences this
+ * visits a constant number of items per query.
+ * <p>
+ * Candidates are confirmed using {@link Span#containsSpan(Span)} and
+ * {@link Span#overlaps(Span)}, so results are the same as testing every item.
+ * Results are returned in index order, i.e. by span start, with ties broken by
+ * the order specified when the index is created.
+ *
+ * @param <T>
+ */
+public class SpanIndex<T> {
+
+	private final List<T> items;
+	private final Span[] spans;
+	private final int[] starts;
+	/* maxEnds[i] is the largest span end of items 0..i */
+	private final int[] maxEnds;
+
+	/**
+	 * @param items
+	 * @param spanFn    returns the span used to index an item
+	 * @param tieOrder  orders items with the same span start
+	 */
+	public SpanIndex(Collection<? extends T> items, Function<? super T, Span> spanFn, Comparator<? super T> tieOrder) {
+		List<T> sorted = new ArrayList<T>(items);
+		// the sort is stable, so the tie order is kept for items that share a start
+		Collections.sort(sorted, tieOrder);
+		Collections.sort(sorted, Comparator.comparingInt(item -> spanFn.apply(item).getSpanStart()));
+
+		this.items = sorted;
+		this.spans = new Span[sorted.size()];
+		this.starts = new int[sorted.size()];
+		this.maxEnds = new int[sorted.size()];
+		int maxEnd = Integer.MIN_VALUE;
+		for (int i = 0; i < sorted.size(); i++) {
+			Span span = spanFn.apply(sorted.get(i));
+			spans[i] = span;
+			starts[i] = span.getSpanStart();
+			maxEnd = Math.max(maxEnd, span.getSpanEnd());
+			maxEnds[i] = maxEnd;
+		}
+	}
+
+	/**
+	 * Items with the same span start are ordered with the longest span first
+	 *
+	 * @param items
+	 * @param spanFn returns the span used to index an item
+	 */
+	public SpanIndex(Collection<? extends T> items, Function<? super T, Span> spanFn) {
+		this(items, spanFn, Comparator.comparingInt((T item) -> spanFn.apply(item).getSpanEnd()).reversed());
+	}
+
+	/**
+	 * @param annots
+	 * @return an index of the annotations by their aggregate spans, in
+	 *         {@link TextAnnotation#BY_SPAN()} order
+	 */
+	public static SpanIndex<TextAnnotation> create(Collection<TextAnnotation> annots) {
+		return new SpanIndex<TextAnnotation>(annots, TextAnnotation::getAggregateSpan, TextAnnotation.BY_SPAN());
+	}
+
+	/**
+	 * @param spans
+	 * @return an index of the spans
+	 */
+	public static SpanIndex<Span> createForSpans(Collection<Span> spans) {
+		return new SpanIndex<Span>(spans, Function.identity(), Span.ASCENDING());
+	}
+
+	public int size() {
+		return items.size();
+	}
+
+	/**
+	 * @param span
+	 * @return the items whose spans contain the specified span
+	 */
+	public List<T> getContaining(Span span) {
+		// only items that start at or before the span can contain it
+		int last = lastIndexStartingAtOrBefore(span.getSpanStart());
+		List<T> containing = new ArrayList<T>();
+		for (int i = last; i >= 0 && maxEnds[i] >= span.getSpanEnd(); i--) {
+			if (spans[i].containsSpan(span)) {
+				containing.add(items.get(i));
+			}
+		}
+		Collections.reverse(containing);
+		return containing;
+	}
+
+	/**
+	 * @param span
+	 * @return the items whose spans overlap the specified span
+	 */
+	public List<T> getOverlapping(Span span) {
+		// only items that start at or before the span end can overlap it
+		int last = lastIndexStartingAtOrBefore(span.getSpanEnd());
+		List<T> overlapping = new ArrayList<T>();
+		for (int i = last; i >= 0 && maxEnds[i] >= span.getSpanStart(); i--) {
+			if (spans[i].overlaps(span)) {
+				overlapping.add(items.get(i));
+			}
+		}
+		Collections.reverse(overlapping);
+		return overlapping;
+	}
+
+	/**
+	 * @param position
+	 * @return the index of the last item whose span starts at or before the
+	 *         specified position, or -1 if there is no such item
+	 */
+	private int lastIndexStartingAtOrBefore(int position) {
+		int low = 0;
+		int high = starts.length - 1;
+		int result = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] <= position) {
+				result = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return result;
+	}
+
+}
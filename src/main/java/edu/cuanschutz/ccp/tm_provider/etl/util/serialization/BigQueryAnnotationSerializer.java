@@ -3,12 +3,13 @@ package edu.cuanschutz.ccp.tm_provider.etl.util.serialization;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
+import edu.cuanschutz.ccp.tm_provider.etl.util.SpanIndex;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil.SortOrder;
 import edu.ucdenver.ccp.common.string.StringUtil;
@@ -53,6 +54,9 @@ public class BigQueryAnnotationSerializer implements Serializable {
 	private Map<Span, Set<String>> sentenceSpanToIdMap;
 	private Map<Span, Set<String>> conceptSpanToIdMap;
 
+	/* indexes of the span maps above, used to find covering spans */
+	private transient Map<Layer, SpanIndex<Span>> layerToSpanIndexMap;
+
 	private final String documentId;
 //	private final Calendar publicationDate;
 //	private final Integer publicationYear;
@@ -185,6 +189,24 @@ public class BigQueryAnnotationSerializer implements Serializable {
 
 	}
 
+	/**
+	 * @param mapLayer
+	 * @param spanToIdMap
+	 * @return an index of the spans in the map, created on first use and reused
+	 *         for all annotations in the document
+	 */
+	private SpanIndex<Span> getSpanIndex(Layer mapLayer, Map<Span, Set<String>> spanToIdMap) {
+		if (layerToSpanIndexMap == null) {
+			layerToSpanIndexMap = new EnumMap<Layer, SpanIndex<Span>>(Layer.class);
+		}
+		SpanIndex<Span> spanIndex = layerToSpanIndexMap.get(mapLayer);
+		if (spanIndex == null) {
+			spanIndex = SpanIndex.createForSpans(spanToIdMap.keySet());
+			layerToSpanIndexMap.put(mapLayer, spanIndex);
+		}
+		return spanIndex;
+	}
+
 	private List<String> getCoveringSpanIds(String annotationId, List<Span> annotationSpans, Layer annotationLayer,
 			Map<Span, Set<String>> spanToIdMap, Layer mapLayer) {
 		List<String> identifiers = new ArrayList<String>();
@@ -197,38 +219,15 @@ public class BigQueryAnnotationSerializer implements Serializable {
 		 * section title and sentence likely have the same span).
 		 */
 		if (layerOrdering.indexOf(annotationLayer) >= layerOrdering.indexOf(mapLayer)) {
-			/*
-			 * spanToIdMap is sorted by span (ascending) so we can break once we encounter a
-			 * span that is past the start of the input span(s)
-			 */
-			for (Entry<Span, Set<String>> entry : spanToIdMap.entrySet()) {
-				boolean exitNow = true;
-				for (Span span : annotationSpans) {
-
-					// System.out.println();
-					// System.out.println("LAYER=" + annotationLayer + "/" +
-					// mapLayer + " Is " + span.toString() + " encompassed by "
-					// + entry.getKey().toString() + "? "
-					// + (entry.getKey().containsSpan(span)) + " -- " +
-					// entry.getValue());
-
-					if (entry.getKey().containsSpan(span)) {
-						for (String id : entry.getValue()) {
-							if (!id.equals(annotationId)) {
-								identifiers.add(id);
-							}
+			SpanIndex<Span> spanIndex = getSpanIndex(mapLayer, spanToIdMap);
+			for (Span span : annotationSpans) {
+				for (Span coveringSpan : spanIndex.getContaining(span)) {
+					for (String id : spanToIdMap.get(coveringSpan)) {
+						if (!id.equals(annotationId)) {
+							identifiers.add(id);
 						}
-						exitNow = false;
-					} else if (entry.getKey().getSpanEnd() <= span.getSpanStart()) {
-						// System.out.println("map span end: " +
-						// entry.getKey().getSpanEnd() + " > annot span start: "
-						// + span.getSpanStart() + " -- NOT exiting...");
-						exitNow = false;
 					}
 				}
-				if (exitNow) {
-					break;
-				}
 			}
 		}
 
@@ -13,6 +13,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
+import edu.cuanschutz.ccp.tm_provider.etl.util.SpanIndex;
 import edu.cuanschutz.ccp.tm_provider.etl.util.serialization.BigQueryAnnotationSerializer.Layer;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil.SortOrder;
@@ -76,6 +77,7 @@ public class SentenceCooccurrenceBuilder implements Serializable {
 		builder.append(String.format("SENT_COUNT\t%d\t%s\n", sortedSpanToSentenceMap.size(), docId));
 
 		Map<TextAnnotation, Set<TextAnnotation>> sentenceIdToConceptAnnotMap = new HashMap<TextAnnotation, Set<TextAnnotation>>();
+		SpanIndex<Span> sentenceSpanIndex = SpanIndex.createForSpans(sortedSpanToSentenceMap.keySet());
 
 		for (TextAnnotation ta : td.getAnnotations()) {
 			if (!ta.getClassMention().getMentionName().equalsIgnoreCase("sentence")) {
@@ -91,16 +93,15 @@ public class SentenceCooccurrenceBuilder implements Serializable {
 //					throw new RuntimeException("sentence text not as expected");
 //				}
 
-				for (Entry<Span, TextAnnotation> entry : sortedSpanToSentenceMap.entrySet()) {
-					if (entry.getKey().overlaps(ta.getAggregateSpan())) {
-//						String coveredText = ta.getCoveredText();
-						if (!stopwords.contains(coveredText.toLowerCase())) {
-							CollectionsUtil.addToOne2ManyUniqueMap(entry.getValue(), ta, sentenceIdToConceptAnnotMap);
-						}
-//						else {
-//							System.out.println("remove stopword: " + coveredText);
-//						}
+				for (Span sentenceSpan : sentenceSpanIndex.getOverlapping(ta.getAggregateSpan())) {
+//					String coveredText = ta.getCoveredText();
+					if (!stopwords.contains(coveredText.toLowerCase())) {
+						CollectionsUtil.addToOne2ManyUniqueMap(sortedSpanToSentenceMap.get(sentenceSpan), ta,
+								sentenceIdToConceptAnnotMap);
 					}
+//					else {
+//						System.out.println("remove stopword: " + coveredText);
+//					}
 				}
 			}
 		}
@@ -1,7 +1,10 @@
 package edu.cuanschutz.ccp.tm_provider.etl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -28,11 +31,15 @@ import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import edu.cuanschutz.ccp.tm_provider.etl.ConceptCooccurrenceMetricsPipeline.BoundedSampleFn;
 import edu.cuanschutz.ccp.tm_provider.etl.ConceptCooccurrenceMetricsPipeline.ConceptId;
 import edu.cuanschutz.ccp.tm_provider.etl.ConceptCooccurrenceMetricsPipeline.CooccurrencePublication;
 import edu.cuanschutz.ccp.tm_provider.etl.fn.ConceptCooccurrenceCountsFn.ConceptPair;
 import edu.cuanschutz.ccp.tm_provider.etl.fn.ConceptCooccurrenceCountsFn.CooccurLevel;
+import edu.cuanschutz.ccp.tm_provider.etl.util.AncestorIndex;
+import edu.cuanschutz.ccp.tm_provider.etl.util.ConceptIdDictionary;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 
 public class ConceptCooccurrenceMetricsPipelineTest {
@@ -40,6 +47,9 @@ public class ConceptCooccurrenceMetricsPipelineTest {
 	@Rule
 	public final transient TestPipeline pipeline = TestPipeline.create();
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void testRounding() {
 		BigDecimal a = new BigDecimal("0.6666666666666666666666666").setScale(8, BigDecimal.ROUND_HALF_UP);
@@ -162,6 +172,55 @@ public class ConceptCooccurrenceMetricsPipelineTest {
 		pipeline.run();
 	}
 
+	@Test
+	public void testAddAncestorConceptIdsFromIndex() throws IOException {
+
+		Map<String, Set<String>> input = new HashMap<String, Set<String>>();
+
+		input.put("PMID:1", CollectionsUtil.createSet("AA:1", "AA:2", "AA:3", "AA:4", "ZZ:1", "ZZ:2", "ZZ:3", "ZZ:4"));
+		input.put("PMID:2", CollectionsUtil.createSet("AA:2", "AA:3", "AA:4", "ZZ:2", "ZZ:3", "ZZ:4"));
+		input.put("PMID:3", CollectionsUtil.createSet("AA:3", "AA:4", "ZZ:3", "ZZ:4"));
+		input.put("PMID:4", CollectionsUtil.createSet("AA:4", "ZZ:4"));
+
+		PCollection<KV<String, Set<String>>> textIdToConceptIdCollection = pipeline.apply("input",
+				Create.of(input).withCoder(KvCoder.of(StringUtf8Coder.of(), SetCoder.of(StringUtf8Coder.of()))));
+
+		Map<String, Set<String>> ancestorMap = new HashMap<String, Set<String>>();
+		ancestorMap.put("AA:1", new HashSet<String>(Arrays.asList("AA:0", "AA:00")));
+		// note that BB:00 should get excluded when ancestor concept IDs are added since
+		// it has a different prefix than the ZZ concepts
+		ancestorMap.put("ZZ:3", new HashSet<String>(Arrays.asList("ZZ:0", "BB:00")));
+
+		File indexFile = folder.newFile("ancestors.bin");
+		AncestorIndex.write(ancestorMap, indexFile);
+
+		boolean addAncestors = true;
+		PCollection<KV<String, Set<ConceptId>>> output = ConceptCooccurrenceMetricsPipeline.addAncestorConceptIds(
+				pipeline, CooccurLevel.DOCUMENT, textIdToConceptIdCollection, addAncestors, null,
+				indexFile.getAbsolutePath());
+
+		List<KV<String, Set<ConceptId>>> expectedOutput = new ArrayList<KV<String, Set<ConceptId>>>();
+
+		expectedOutput.add(KV.of("PMID:1",
+				CollectionsUtil.createSet(new ConceptId("AA:0", false), new ConceptId("AA:00", false),
+						new ConceptId("AA:1", true), new ConceptId("AA:2", true), new ConceptId("AA:3", true),
+						new ConceptId("AA:4", true), new ConceptId("ZZ:1", true), new ConceptId("ZZ:2", true),
+						new ConceptId("ZZ:0", false), new ConceptId("ZZ:3", true), new ConceptId("ZZ:4", true))));
+		expectedOutput.add(KV.of("PMID:2",
+				CollectionsUtil.createSet(new ConceptId("AA:2", true), new ConceptId("AA:3", true),
+						new ConceptId("AA:4", true), new ConceptId("ZZ:2", true), new ConceptId("ZZ:0", false),
+						new ConceptId("ZZ:3", true), new ConceptId("ZZ:4", true))));
+		expectedOutput
+				.add(KV.of("PMID:3", CollectionsUtil.createSet(new ConceptId("AA:3", true), new ConceptId("AA:4", true),
+						new ConceptId("ZZ:0", false), new ConceptId("ZZ:3", true), new ConceptId("ZZ:4", true))));
+		expectedOutput.add(
+				KV.of("PMID:4", CollectionsUtil.createSet(new ConceptId("AA:4", true), new ConceptId("ZZ:4", true))));
+
+		PAssert.that(output).containsInAnyOrder(expectedOutput);
+
+		pipeline.run();
+	}
+
 	@Test
 	public void testAddAncestorFalseConceptIds() {
 
@@ -284,70 +343,55 @@ public class ConceptCooccurrenceMetricsPipelineTest {
 
 		PCollection<KV<String, String>> conceptPairIdToTextId = pairAndPubs
 				.get(ConceptCooccurrenceMetricsPipeline.PAIR_KEY_TO_DOC_ID_TAG);
-		PCollection<KV<String, Set<String>>> pairToDocIds = ConceptCooccurrenceMetricsPipeline
-				.groupByPairId(CooccurLevel.DOCUMENT, conceptPairIdToTextId);
+		PCollection<KV<String, Long>> pairToCount = ConceptCooccurrenceMetricsPipeline
+				.countPairs(CooccurLevel.DOCUMENT, conceptPairIdToTextId);
 
-		Set<KV<String, Set<String>>> expectedOutput = new HashSet<KV<String, Set<String>>>();
+		Set<KV<String, Long>> expectedOutput = new HashSet<KV<String, Long>>();
 		expectedOutput
-				.add(KV.of(new ConceptPair("AA:1", "AA:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
+				.add(KV.of(new ConceptPair("AA:1", "AA:2").toReproducibleKey(), 1l));
 		expectedOutput
-				.add(KV.of(new ConceptPair("AA:1", "AA:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
+				.add(KV.of(new ConceptPair("AA:1", "AA:3").toReproducibleKey(), 1l));
 		expectedOutput
-				.add(KV.of(new ConceptPair("AA:1", "AA:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:3").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:4").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:3", "AA:4").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
+				.add(KV.of(new ConceptPair("AA:1", "AA:4").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:3").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:4").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:3", "AA:4").toReproducibleKey(), 3l));
 
 		expectedOutput
-				.add(KV.of(new ConceptPair("ZZ:1", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
+				.add(KV.of(new ConceptPair("ZZ:1", "ZZ:2").toReproducibleKey(), 1l));
 		expectedOutput
-				.add(KV.of(new ConceptPair("ZZ:1", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
+				.add(KV.of(new ConceptPair("ZZ:1", "ZZ:3").toReproducibleKey(), 1l));
 		expectedOutput
-				.add(KV.of(new ConceptPair("ZZ:1", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:3").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:4").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("ZZ:3", "ZZ:4").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
+				.add(KV.of(new ConceptPair("ZZ:1", "ZZ:4").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:3").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:4").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("ZZ:3", "ZZ:4").toReproducibleKey(), 3l));
 
 		expectedOutput
-				.add(KV.of(new ConceptPair("AA:1", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
+				.add(KV.of(new ConceptPair("AA:1", "ZZ:1").toReproducibleKey(), 1l));
 		expectedOutput
-				.add(KV.of(new ConceptPair("AA:1", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
+				.add(KV.of(new ConceptPair("AA:1", "ZZ:2").toReproducibleKey(), 1l));
 		expectedOutput
-				.add(KV.of(new ConceptPair("AA:1", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
+				.add(KV.of(new ConceptPair("AA:1", "ZZ:3").toReproducibleKey(), 1l));
 		expectedOutput
-				.add(KV.of(new ConceptPair("AA:1", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
+				.add(KV.of(new ConceptPair("AA:1", "ZZ:4").toReproducibleKey(), 1l));
 		expectedOutput
-				.add(KV.of(new ConceptPair("AA:2", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:2").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:3").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:4").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2")));
+				.add(KV.of(new ConceptPair("AA:2", "ZZ:1").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:2").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:3").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:4").toReproducibleKey(), 2l));
 		expectedOutput
-				.add(KV.of(new ConceptPair("AA:3", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:2").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:3").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:4").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
+				.add(KV.of(new ConceptPair("AA:3", "ZZ:1").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:2").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:3").toReproducibleKey(), 3l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:4").toReproducibleKey(), 3l));
 		expectedOutput
-				.add(KV.of(new ConceptPair("AA:4", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:2").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:3").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:4").toReproducibleKey(),
-				CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3", "PMID:4")));
+				.add(KV.of(new ConceptPair("AA:4", "ZZ:1").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:2").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:3").toReproducibleKey(), 3l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:4").toReproducibleKey(), 4l));
 
-		PAssert.that(pairToDocIds).containsInAnyOrder(expectedOutput);
+		PAssert.that(pairToCount).containsInAnyOrder(expectedOutput);
 
 		pipeline.run();
 	}
@@ -388,45 +432,45 @@ public class ConceptCooccurrenceMetricsPipelineTest {
 
 		PCollection<KV<String, String>> conceptPairIdToTextId = pairAndPubs
 				.get(ConceptCooccurrenceMetricsPipeline.PAIR_KEY_TO_DOC_ID_TAG);
-		PCollection<KV<String, Set<String>>> pairToDocIds = ConceptCooccurrenceMetricsPipeline
-				.groupByPairId(CooccurLevel.DOCUMENT, conceptPairIdToTextId);
+		PCollection<KV<String, Long>> pairToCount = ConceptCooccurrenceMetricsPipeline
+				.countPairs(CooccurLevel.DOCUMENT, conceptPairIdToTextId);
 
 		// @formatter:off
-		Set<KV<String, Set<String>>> expectedOutput = new HashSet<KV<String, Set<String>>>();
-		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
+		Set<KV<String, Long>> expectedOutput = new HashSet<KV<String, Long>>();
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:2").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:3").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:4").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:3").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:4").toReproducibleKey(), 2l));
 		// this pair is excluded b/c of the ancestor relationship between AA:4 and AA:3
-		// expectedOutput.add(KV.of(new ConceptPair("AA:3", "AA:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
-
-		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("ZZ:3", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
-
-		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
+		// expectedOutput.add(KV.of(new ConceptPair("AA:3", "AA:4").toReproducibleKey(), 3l));
+
+		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:2").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:3").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:4").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:3").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:4").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("ZZ:3", "ZZ:4").toReproducibleKey(), 3l));
+
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:1").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:2").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:3").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:4").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:1").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:2").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:3").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:4").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:1").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:2").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:3").toReproducibleKey(), 3l));
 		// the AA:3, ZZ:4 pair in  PMID:4 is due to the ancestor relationship between AA:4 and AA:3
-		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3", "PMID:4")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3", "PMID:4")));
+		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:4").toReproducibleKey(), 4l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:1").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:2").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:3").toReproducibleKey(), 3l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:4").toReproducibleKey(), 4l));
 		// @formatter:on
-		PAssert.that(pairToDocIds).containsInAnyOrder(expectedOutput);
+		PAssert.that(pairToCount).containsInAnyOrder(expectedOutput);
 
 		PCollection<KV<String, CooccurrencePublication>> pairIdToPublication = pairAndPubs
 				.get(ConceptCooccurrenceMetricsPipeline.PAIR_PUBLICATIONS_TAG);
@@ -532,49 +576,151 @@ public class ConceptCooccurrenceMetricsPipelineTest {
 
 		PCollection<KV<String, String>> conceptPairIdToTextId = pairAndPubs
 				.get(ConceptCooccurrenceMetricsPipeline.PAIR_KEY_TO_DOC_ID_TAG);
-		PCollection<KV<String, Set<String>>> pairToDocIds = ConceptCooccurrenceMetricsPipeline
-				.groupByPairId(CooccurLevel.DOCUMENT, conceptPairIdToTextId);
+		PCollection<KV<String, Long>> pairToCount = ConceptCooccurrenceMetricsPipeline
+				.countPairs(CooccurLevel.DOCUMENT, conceptPairIdToTextId);
 
 		// @formatter:off
-		Set<KV<String, Set<String>>> expectedOutput = new HashSet<KV<String, Set<String>>>();
-		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
+		Set<KV<String, Long>> expectedOutput = new HashSet<KV<String, Long>>();
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:2").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:3").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:4").toReproducibleKey(), 1l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:3").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "AA:4").toReproducibleKey(), 2l));
 		// this pair is excluded b/c of the ancestor relationship between AA:4 and AA:3
-		// expectedOutput.add(KV.of(new ConceptPair("AA:3", "AA:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
-
-//		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-//		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-//		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-//		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-//		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-//		expectedOutput.add(KV.of(new ConceptPair("ZZ:3", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
+		// expectedOutput.add(KV.of(new ConceptPair("AA:3", "AA:4").toReproducibleKey(), 3l));
+
+//		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:2").toReproducibleKey(), 1l));
+//		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:3").toReproducibleKey(), 1l));
+//		expectedOutput.add(KV.of(new ConceptPair("ZZ:1", "ZZ:4").toReproducibleKey(), 1l));
+//		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:3").toReproducibleKey(), 2l));
+//		expectedOutput.add(KV.of(new ConceptPair("ZZ:2", "ZZ:4").toReproducibleKey(), 2l));
+//		expectedOutput.add(KV.of(new ConceptPair("ZZ:3", "ZZ:4").toReproducibleKey(), 3l));
 //
-//		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:1").toReproducibleKey(), 1l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:2").toReproducibleKey(), 1l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:3").toReproducibleKey(), 1l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:4").toReproducibleKey(), 1l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:1").toReproducibleKey(), 1l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:2").toReproducibleKey(), 2l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:3").toReproducibleKey(), 2l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:4").toReproducibleKey(), 2l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:1").toReproducibleKey(), 1l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:2").toReproducibleKey(), 2l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:3").toReproducibleKey(), 3l));
 //		// the AA:3, ZZ:4 pair in  PMID:4 is due to the ancestor relationship between AA:4 and AA:3
-//		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3", "PMID:4")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:1").toReproducibleKey(), CollectionsUtil.createSet("PMID:1")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:2").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:3").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3")));
-//		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:4").toReproducibleKey(), CollectionsUtil.createSet("PMID:1", "PMID:2", "PMID:3", "PMID:4")));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:4").toReproducibleKey(), 4l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:1").toReproducibleKey(), 1l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:2").toReproducibleKey(), 2l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:3").toReproducibleKey(), 3l));
+//		expectedOutput.add(KV.of(new ConceptPair("AA:4", "ZZ:4").toReproducibleKey(), 4l));
 		// @formatter:on
-		PAssert.that(pairToDocIds).containsInAnyOrder(expectedOutput);
+		PAssert.that(pairToCount).containsInAnyOrder(expectedOutput);
 
 		pipeline.run();
 	}
 
+	@Test
+	public void testComputeCompactConceptPairs() {
+		Map<String, Set<ConceptId>> input = new HashMap<String, Set<ConceptId>>();
+
+		input.put("PMID:1", CollectionsUtil.createSet(new ConceptId("AA:1", true), new ConceptId("AA:2", true),
+				new ConceptId("ZZ:1", true)));
+		// AA:1 is present both as an original concept and as an ancestor of AA:3
+		input.put("PMID:2", CollectionsUtil.createSet(new ConceptId("AA:1", true), new ConceptId("AA:1", false),
+				new ConceptId("AA:3", true), new ConceptId("ZZ:1", true)));
+		input.put("PMID:3", CollectionsUtil.createSet(new ConceptId("AA:1", false), new ConceptId("AA:2", true),
+				new ConceptId("BB:1", true)));
+
+		PCollection<KV<String, Set<ConceptId>>> textIdToConceptIdWithAncestorsCollection = pipeline
+				.apply(Create.of(input).withCoder(
+						KvCoder.of(StringUtf8Coder.of(), SetCoder.of(SerializableCoder.of(ConceptId.class)))));
+
+		Map<String, Set<String>> ancestorMap = new HashMap<String, Set<String>>();
+		ancestorMap.put("AA:3", new HashSet<String>(Arrays.asList("AA:1")));
+
+		PCollectionView<Map<String, Set<String>>> ancestorMapView = pipeline
+				.apply("ancestor view", Create.of(ancestorMap)).apply(View.asMap());
+
+		Map<String, Long> conceptCounts = new HashMap<String, Long>();
+		for (String id : Arrays.asList("AA:1", "AA:2", "AA:3", "ZZ:1", "BB:1")) {
+			conceptCounts.put(id, 1l);
+		}
+		PCollection<KV<String, Long>> conceptIdToCounts = pipeline.apply("counts",
+				Create.of(conceptCounts).withCoder(KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of())));
+		PCollectionView<ConceptIdDictionary> dictionaryView = ConceptCooccurrenceMetricsPipeline
+				.buildConceptIdDictionary(CooccurLevel.DOCUMENT, conceptIdToCounts);
+
+		Set<String> conceptPrefixesToInclude = new HashSet<String>(Arrays.asList("AA", "ZZ"));
+		PCollectionTuple pairAndPubs = ConceptCooccurrenceMetricsPipeline.computeCompactConceptPairs(pipeline,
+				CooccurLevel.DOCUMENT, textIdToConceptIdWithAncestorsCollection, ancestorMapView, dictionaryView,
+				conceptPrefixesToInclude);
+
+		PCollection<KV<String, Long>> pairToCount = ConceptCooccurrenceMetricsPipeline.decodeCompactPairIds(
+				CooccurLevel.DOCUMENT,
+				ConceptCooccurrenceMetricsPipeline.countCompactPairs(CooccurLevel.DOCUMENT,
+						pairAndPubs.get(ConceptCooccurrenceMetricsPipeline.COMPACT_PAIR_KEY_TO_DOC_ID_TAG)),
+				dictionaryView);
+
+		// @formatter:off
+		Set<KV<String, Long>> expectedOutput = new HashSet<KV<String, Long>>();
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "AA:2").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:1", "ZZ:1").toReproducibleKey(), 2l));
+		expectedOutput.add(KV.of(new ConceptPair("AA:2", "ZZ:1").toReproducibleKey(), 1l));
+		// AA:1/AA:3 is excluded b/c of the ancestor relationship
+		expectedOutput.add(KV.of(new ConceptPair("AA:3", "ZZ:1").toReproducibleKey(), 1l));
+		// @formatter:on
+		PAssert.that(pairToCount).containsInAnyOrder(expectedOutput);
+
+		PCollection<CooccurrencePublication> pubs = ConceptCooccurrenceMetricsPipeline.limitPublicationsByCompactPairId(
+				CooccurLevel.DOCUMENT, pairAndPubs.get(ConceptCooccurrenceMetricsPipeline.COMPACT_PAIR_PUBLICATIONS_TAG),
+				dictionaryView);
+
+		// AA:1 is only an ancestor in PMID:3 so it is not linked to that publication
+		PAssert.that(pubs).containsInAnyOrder(new CooccurrencePublication(new ConceptPair("AA:1", "AA:2"), "PMID:1"),
+				new CooccurrencePublication(new ConceptPair("AA:1", "ZZ:1"), "PMID:1"),
+				new CooccurrencePublication(new ConceptPair("AA:1", "ZZ:1"), "PMID:2"),
+				new CooccurrencePublication(new ConceptPair("AA:2", "ZZ:1"), "PMID:1"),
+				new CooccurrencePublication(new ConceptPair("AA:3", "ZZ:1"), "PMID:2"));
+
+		pipeline.run();
+	}
+
+	@Test
+	public void testPackConceptPair() {
+		long packed = ConceptIdDictionary.packPair(7, 3);
+		assertEquals(3, ConceptIdDictionary.getFirstIndex(packed));
+		assertEquals(7, ConceptIdDictionary.getSecondIndex(packed));
+
+		packed = ConceptIdDictionary.packPair(Integer.MAX_VALUE - 1, Integer.MAX_VALUE);
+		assertEquals(Integer.MAX_VALUE - 1, ConceptIdDictionary.getFirstIndex(packed));
+		assertEquals(Integer.MAX_VALUE, ConceptIdDictionary.getSecondIndex(packed));
+
+		ConceptIdDictionary dictionary = new ConceptIdDictionary(Arrays.asList("ZZ:1", "AA:2", "AA:1", "AA:2"));
+		assertEquals(3, dictionary.size());
+		assertEquals(0, dictionary.getIndex("AA:1"));
+		assertEquals(2, dictionary.getIndex("ZZ:1"));
+		assertEquals(-1, dictionary.getIndex("BB:1"));
+		assertEquals("AA:2", dictionary.getConceptId(1));
+	}
+
+	@Test
+	public void testBoundedSampleFn() {
+		BoundedSampleFn<String> fn = new BoundedSampleFn<String>(3);
+
+		Set<String> acc1 = fn.createAccumulator();
+		for (String s : Arrays.asList("a", "b", "b", "c", "d", "e")) {
+			acc1 = fn.addInput(acc1, s);
+		}
+		assertEquals(3, acc1.size());
+
+		Set<String> acc2 = fn.addInput(fn.createAccumulator(), "f");
+		assertEquals(1, acc2.size());
+
+		Set<String> merged = fn.mergeAccumulators(Arrays.asList(acc2, acc1));
+		assertEquals(3, fn.extractOutput(merged).size());
+		assertTrue(merged.contains("f"));
+	}
+
 	@Test
 	public void testGetDocumentIdToStore() {
 
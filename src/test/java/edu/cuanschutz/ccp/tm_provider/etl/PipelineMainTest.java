@@ -1,9 +1,12 @@
 package edu.cuanschutz.ccp.tm_provider.etl;
 
+import static com.google.datastore.v1.client.DatastoreHelper.makeValue;
 import static edu.cuanschutz.ccp.tm_provider.etl.PipelineTestUtil.createEntity;
 import static edu.cuanschutz.ccp.tm_provider.etl.PipelineTestUtil.createProcessingStatus;
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -11,23 +14,37 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.metrics.MetricNameFilter;
+import org.apache.beam.sdk.metrics.MetricQueryResults;
+import org.apache.beam.sdk.metrics.MetricResult;
+import org.apache.beam.sdk.metrics.MetricsFilter;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.Keys;
+import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.SerializableFunction;
 import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.google.datastore.v1.Entity;
+import com.google.datastore.v1.Query;
 
+import edu.cuanschutz.ccp.tm_provider.etl.DocumentStoreOptions.DocumentStoreType;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreConstants;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreKeyUtil;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
+import edu.cuanschutz.ccp.tm_provider.etl.util.LocalKeyValueStore;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.cuanschutz.ccp.tm_provider.etl.util.ProcessingStatusFlag;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
@@ -41,6 +58,9 @@ public class PipelineMainTest {
 	@Rule
 	public final transient TestPipeline pipeline = TestPipeline.create();
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void testChunkString() throws UnsupportedEncodingException {
 		StringBuffer s = new StringBuffer();
@@ -254,6 +274,118 @@ public class PipelineMainTest {
 		assertEquals(expectedResult, result);
 	}
 	
+	@Test
+	public void testJoinStatusAndDocuments() {
+		DocumentCriteria textCriteria = new DocumentCriteria(DocumentType.TEXT, DocumentFormat.TEXT,
+				PipelineKey.MEDLINE_XML_TO_TEXT, "0.1.0");
+		DocumentCriteria chebiCriteria = new DocumentCriteria(DocumentType.CONCEPT_CHEBI, DocumentFormat.BIONLP,
+				PipelineKey.OGER, "0.1.0");
+
+		String docId1 = "PMID:1";
+		String docId2 = "PMID:2";
+		String docId3 = "PMID:3";
+
+		ProcessingStatus status1 = createProcessingStatus(docId1, ProcessingStatusFlag.TEXT_DONE);
+		ProcessingStatus status2 = createProcessingStatus(docId2, ProcessingStatusFlag.TEXT_DONE);
+		ProcessingStatus status3 = createProcessingStatus(docId3, ProcessingStatusFlag.TEXT_DONE);
+
+		Set<String> collections = CollectionsUtil.createSet("PUBMED");
+
+		// doc1 has all chunks for both criteria
+		ProcessedDocument doc1Text1 = new ProcessedDocument(docId1, textCriteria, "doc1 ", 0, 2, collections);
+		ProcessedDocument doc1Text2 = new ProcessedDocument(docId1, textCriteria, "text", 1, 2, collections);
+		ProcessedDocument doc1Chebi = new ProcessedDocument(docId1, chebiCriteria, "doc1 chebi", 0, 1, collections);
+		// doc2 is missing a text chunk
+		ProcessedDocument doc2Text1 = new ProcessedDocument(docId2, textCriteria, "doc2 ", 0, 2, collections);
+		ProcessedDocument doc2Chebi = new ProcessedDocument(docId2, chebiCriteria, "doc2 chebi", 0, 1, collections);
+		// doc3 is missing the chebi document
+		ProcessedDocument doc3Text = new ProcessedDocument(docId3, textCriteria, "doc3 text", 0, 1, collections);
+
+		PCollection<KV<String, ProcessingStatus>> docId2Status = pipeline.apply("status", Create.of(
+				KV.of(docId1, status1), KV.of(docId2, status2), KV.of(docId3, status3)));
+		PCollection<KV<String, ProcessedDocument>> docId2Document = pipeline.apply("documents",
+				Create.of(KV.of(docId1, doc1Text2), KV.of(docId1, doc1Chebi), KV.of(docId1, doc1Text1),
+						KV.of(docId2, doc2Text1), KV.of(docId2, doc2Chebi), KV.of(docId3, doc3Text)));
+
+		PCollection<KV<ProcessingStatus, Map<DocumentCriteria, String>>> output = PipelineMain
+				.joinStatusAndDocuments(docId2Status, docId2Document,
+						CollectionsUtil.createSet(textCriteria, chebiCriteria));
+
+		Map<DocumentCriteria, String> expectedContent = new HashMap<DocumentCriteria, String>();
+		expectedContent.put(textCriteria, "doc1 text");
+		expectedContent.put(chebiCriteria, "doc1 chebi");
+
+		PAssert.that(output).containsInAnyOrder(KV.of(status1, expectedContent));
+
+		pipeline.run();
+	}
+
+	@Test
+	public void testBuildStatusQuery() {
+		Query query = PipelineMain.buildStatusQuery(ProcessingStatusFlag.OGER_CHEBI_DONE,
+				CollectionsUtil.createSet(ProcessingStatusFlag.TEXT_DONE), "PUBMED", OverwriteOutput.NO);
+		assertEquals(DatastoreConstants.STATUS_KIND, query.getKind(0).getName());
+		// text done, chebi not done, collection
+		assertEquals(3, query.getFilter().getCompositeFilter().getFiltersCount());
+		assertEquals(0, query.getProjectionCount());
+
+		query = PipelineMain.buildStatusQuery(ProcessingStatusFlag.OGER_CHEBI_DONE,
+				CollectionsUtil.createSet(ProcessingStatusFlag.TEXT_DONE), null, OverwriteOutput.YES);
+		assertEquals(1, query.getFilter().getCompositeFilter().getFiltersCount());
+
+		Query keysOnlyQuery = PipelineMain.toKeysOnlyQuery(query);
+		assertEquals(query.getFilter(), keysOnlyQuery.getFilter());
+		assertEquals(1, keysOnlyQuery.getProjectionCount());
+		assertEquals("__key__", keysOnlyQuery.getProjection(0).getProperty().getName());
+	}
+
+	@Test
+	public void testReadDocumentIds() {
+		// stands in for the entities returned by a keys-only Datastore query
+		Entity key1 = Entity.newBuilder().setKey(DatastoreKeyUtil.createStatusKey("PMID:1")).build();
+		Entity key2 = Entity.newBuilder().setKey(DatastoreKeyUtil.createStatusKey("PMC12345")).build();
+
+		PCollection<Entity> entities = pipeline.apply(Create.of(key1, key2))
+				.apply(ParDo.of(new PipelineMain.EntityReadMetricsFn("test")));
+		PAssert.that(PipelineMain.toDocumentIds(entities)).containsInAnyOrder("PMID:1", "PMC12345");
+
+		PipelineResult result = pipeline.run();
+		result.waitUntilFinish();
+		MetricQueryResults metrics = result.metrics()
+				.queryMetrics(MetricsFilter.builder()
+						.addNameFilter(MetricNameFilter.named("datastore", "test_entities_read")).build());
+		List<MetricResult<Long>> counters = StreamSupport.stream(metrics.getCounters().spliterator(), false)
+				.filter(counter -> counter.getName().getNamespace().equals("datastore")
+						&& counter.getName().getName().equals("test_entities_read"))
+				.collect(Collectors.toList());
+		assertEquals("datastore:test_entities_read counter not found", 1, counters.size());
+		assertEquals(Long.valueOf(2), counters.get(0).getAttempted());
+	}
+
+	@Test
+	public void testGetStatusEntitiesToProcessFromLocalStore() throws IOException {
+		File directory = folder.newFolder();
+		Entity entity1 = createEntity("PMID:1", ProcessingStatusFlag.TEXT_DONE);
+		Entity entity2 = createEntity("PMID:2", ProcessingStatusFlag.TEXT_DONE, ProcessingStatusFlag.SENTENCE_DONE);
+		Entity entity3 = createEntity("PMID:3", ProcessingStatusFlag.SENTENCE_DONE);
+		LocalKeyValueStore store = LocalKeyValueStore.getSharedInstance(directory.getPath());
+		store.put("status/PMID:1.status", entity1.toBuilder()
+				.putProperties(ProcessingStatusFlag.SENTENCE_DONE.getDatastoreFlagPropertyName(), makeValue(false).build())
+				.build().toByteArray());
+		store.put("status/PMID:2.status", entity2.toByteArray());
+		store.put("status/PMID:3.status", entity3.toByteArray());
+
+		DocumentStoreOptions options = pipeline.getOptions().as(DocumentStoreOptions.class);
+		options.setDocumentStore(DocumentStoreType.LOCAL);
+		options.setLocalDocumentStoreDirectory(directory.getPath());
+
+		PCollection<KV<String, ProcessingStatus>> docIdToStatus = PipelineMain.getStatusEntitiesToProcess(pipeline,
+				ProcessingStatusFlag.SENTENCE_DONE, CollectionsUtil.createSet(ProcessingStatusFlag.TEXT_DONE), null,
+				null, OverwriteOutput.NO);
+		PAssert.that(docIdToStatus.apply(Keys.<String>create())).containsInAnyOrder("PMID:1");
+		pipeline.run();
+	}
+
 	@Test
 	public void testCompileInputDocumentCriteria() {
 		String s = "TEXT|TEXT|MEDLINE_XML_TO_TEXT|0.1.0;CONCEPT_CHEBI|BIONLP|OGER|0.1.0";
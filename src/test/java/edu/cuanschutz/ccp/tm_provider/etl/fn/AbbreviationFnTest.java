@@ -6,17 +6,22 @@ import static org.junit.Assert.assertEquals;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
 import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import edu.cuanschutz.ccp.tm_provider.etl.ProcessingStatus;
+import edu.cuanschutz.ccp.tm_provider.etl.fn.AbbreviationFn.PendingDocument;
 import edu.ucdenver.ccp.common.file.CharacterEncoding;
 import edu.ucdenver.ccp.common.file.FileReaderUtil;
 import edu.ucdenver.ccp.common.io.ClassPathUtil;
@@ -24,6 +29,7 @@ import edu.ucdenver.ccp.file.conversion.TextDocument;
 import edu.ucdenver.ccp.file.conversion.bionlp.BioNLPDocumentReader;
 import edu.ucdenver.ccp.nlp.core.annotation.Span;
 import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
+import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotationFactory;
 
 public class AbbreviationFnTest {
 
@@ -120,4 +126,36 @@ public class AbbreviationFnTest {
 				documentText);
 	}
 
+	@Test
+	public void testWriteBatchAndSplitResults() throws IOException {
+		TextAnnotationFactory factory = TextAnnotationFactory.createFactoryWithDefaults();
+		String text1 = "Parkinson's disease (PD) is common. It is not contagious.";
+		PendingDocument doc1 = new PendingDocument(new ProcessingStatus("PMID:1"), text1,
+				Arrays.asList(factory.createAnnotation(0, 35, "Parkinson's disease (PD) is common.", "sentence"),
+						factory.createAnnotation(36, 57, "It is not contagious.", "sentence")),
+				BoundedWindow.TIMESTAMP_MIN_VALUE, GlobalWindow.INSTANCE);
+		String text2 = "Aldehyde dehydrogenase 1 (ALDH1) is an enzyme.";
+		PendingDocument doc2 = new PendingDocument(new ProcessingStatus("PMID:2"), text2,
+				Arrays.asList(factory.createAnnotation(0, 46, text2, "sentence")), BoundedWindow.TIMESTAMP_MIN_VALUE,
+				GlobalWindow.INSTANCE);
+
+		StringWriter writer = new StringWriter();
+		AbbreviationFn.writeBatch(Arrays.asList(doc1, doc2), writer);
+		String expectedInput = "Parkinson's disease (PD) is common.\nIt is not contagious.\n"
+				+ AbbreviationFn.DOCUMENT_BOUNDARY + "\n" + text2 + "\n";
+		assertEquals(expectedInput, writer.toString());
+
+		// Ab3P echoes each input line followed by any abbreviations it contains
+		List<String> results = Arrays.asList("Parkinson's disease (PD) is common.",
+				"  PD|Parkinson's disease|0.99818", "It is not contagious.", AbbreviationFn.DOCUMENT_BOUNDARY, text2,
+				"  ALDH1|Aldehyde dehydrogenase 1|0.999613");
+		List<List<String>> resultsByDocument = AbbreviationFn.splitResultsByDocument(results, 2);
+		assertEquals(Arrays.asList(results.subList(0, 3), results.subList(4, 6)), resultsByDocument);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSplitResultsByDocumentMisaligned() {
+		AbbreviationFn.splitResultsByDocument(Arrays.asList("sentence 1", "sentence 2"), 2);
+	}
+
 }
@@ -1,10 +1,15 @@
 package edu.cuanschutz.ccp.tm_provider.etl.fn;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Set;
 
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.io.FileIO;
+import org.apache.beam.sdk.io.FileIO.ReadableFile;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
 import org.apache.beam.sdk.transforms.Create;
@@ -15,6 +20,7 @@ import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import edu.cuanschutz.ccp.tm_provider.etl.util.BiocToTextConverterTest;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.OverwriteOutput;
@@ -31,6 +37,9 @@ public class BiocToTextFnTest {
 	@Rule
 	public final transient TestPipeline pipeline = TestPipeline.create();
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void testBiocToTextConversionFn() throws IOException {
@@ -72,6 +81,42 @@ public class BiocToTextFnTest {
 		pipeline.run();
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testBiocToTextConversionFnStreamingFiles() throws IOException {
+		PipelineKey pipelineKey = PipelineKey.BIOC_TO_TEXT;
+		String pipelineVersion = "0.1.0";
+		com.google.cloud.Timestamp timestamp = com.google.cloud.Timestamp.now();
+
+		String biocXml = ClassPathUtil.getContentsFromClasspathResource(BiocToTextConverterTest.class, "PMC1790863.xml",
+				CharacterEncoding.UTF_8);
+		File biocFile = folder.newFile("PMC1790863.xml");
+		Files.write(biocFile.toPath(), biocXml.getBytes(StandardCharsets.UTF_8));
+
+		PCollection<ReadableFile> input = pipeline.apply(FileIO.match().filepattern(biocFile.getAbsolutePath()))
+				.apply(FileIO.readMatches());
+
+		DocumentCriteria outputTextDocCriteria = new DocumentCriteria(DocumentType.TEXT, DocumentFormat.TEXT,
+				pipelineKey, pipelineVersion);
+		DocumentCriteria outputAnnotationDocCriteria = new DocumentCriteria(DocumentType.SECTIONS,
+				DocumentFormat.BIONLP, pipelineKey, pipelineVersion);
+		String collection = null;
+
+		// simulate empty PCollectionView
+		PCollectionView<Set<String>> docIdsAlreadyStoredView = pipeline
+				.apply("Create schema view", Create.<Set<String>>of(CollectionsUtil.createSet("")))
+				.apply(View.<Set<String>>asSingleton());
+		PCollectionTuple output = BiocToTextFn.processFiles(input, outputTextDocCriteria, outputAnnotationDocCriteria,
+				timestamp, collection, docIdsAlreadyStoredView, OverwriteOutput.YES);
+
+		String expectedText = ClassPathUtil.getContentsFromClasspathResource(BiocToTextConverterTest.class,
+				"PMC1790863.txt", CharacterEncoding.UTF_8);
+		PAssert.that(output.get(BiocToTextFn.plainTextTag))
+				.containsInAnyOrder(KV.of("PMC1790863", CollectionsUtil.createList(expectedText)));
+		PAssert.that(output.get(BiocToTextFn.etlFailureTag)).empty();
+
+		pipeline.run();
+	}
 	
 	@SuppressWarnings("unchecked")
 	@Test
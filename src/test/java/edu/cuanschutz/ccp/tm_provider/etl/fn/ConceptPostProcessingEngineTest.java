@@ -0,0 +1,152 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.cuanschutz.ccp.tm_provider.etl.fn.ConceptPostProcessingEngine.Rule;
+import edu.cuanschutz.ccp.tm_provider.etl.util.AncestorIndex;
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
+import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotationFactory;
+
+public class ConceptPostProcessingEngineTest {
+
+	private static final TextAnnotationFactory FACTORY = TextAnnotationFactory.createFactoryWithDefaults("PMID:12345");
+
+	private static Map<String, Set<String>> getExtensionToOboMap() {
+		Map<String, Set<String>> extensionToOboMap = new HashMap<String, Set<String>>();
+		extensionToOboMap.put("PR_EXT:00000000022", CollectionsUtil.createSet("PR:00000000022"));
+		extensionToOboMap.put("PR:some_extension_cls", CollectionsUtil.createSet("PR:00000000123", "PR:00000000456"));
+		return extensionToOboMap;
+	}
+
+	private static Map<String, String> getPrPromotionMap() {
+		Map<String, String> promotionMap = new HashMap<String, String>();
+		promotionMap.put("PR:00000000025", "PR:00000000020");
+		// applies to the output of the extension class conversion
+		promotionMap.put("PR:00000000456", "PR:00000000400");
+		return promotionMap;
+	}
+
+	private static Map<String, Set<String>> getNcbiTaxonAncestorMap() {
+		Map<String, Set<String>> ancestorMap = new HashMap<String, Set<String>>();
+		ancestorMap.put("NCBITaxon:9606", CollectionsUtil.createSet("NCBITaxon:1", "NCBITaxon:9605"));
+		ancestorMap.put("NCBITaxon:9605", CollectionsUtil.createSet("NCBITaxon:1"));
+		ancestorMap.put("NCBITaxon:10090", CollectionsUtil.createSet("NCBITaxon:1"));
+		return ancestorMap;
+	}
+
+	private static Map<String, Set<String>> getOboToAncestorsMap() {
+		Map<String, Set<String>> ancestorMap = new HashMap<String, Set<String>>();
+		ancestorMap.put("HP:0001250", CollectionsUtil.createSet("HP:0000118", "HP:0000001"));
+		ancestorMap.put("HP:0000005", CollectionsUtil.createSet("HP:0000001"));
+		ancestorMap.put("MONDO:0005148", CollectionsUtil.createSet("MONDO:0000001"));
+		ancestorMap.put("UBERON:0002107", CollectionsUtil.createSet("UBERON:0001062"));
+		ancestorMap.put("CHEBI:15377", CollectionsUtil.createSet("CHEBI:24431"));
+		ancestorMap.put("CHEBI:35222", CollectionsUtil.createSet("CHEBI:50906"));
+		return ancestorMap;
+	}
+
+	@Test
+	public void testApply() {
+		TextAnnotation extAnnot = FACTORY.createAnnotation(0, 10, "some protein", "PR:some_extension_cls");
+		TextAnnotation prAnnot = FACTORY.createAnnotation(20, 30, "other protein", "PR:00000000025");
+		TextAnnotation unchangedAnnot = FACTORY.createAnnotation(40, 50, "gene product", "PR:00000000999");
+		TextAnnotation excludedTaxonAnnot = FACTORY.createAnnotation(60, 64, "This", "NCBITaxon:169495");
+		TextAnnotation humanAnnot = FACTORY.createAnnotation(70, 75, "human", "NCBITaxon:9606");
+		TextAnnotation homoAnnot = FACTORY.createAnnotation(70, 75, "human", "NCBITaxon:9605");
+		TextAnnotation mouseAnnot = FACTORY.createAnnotation(80, 85, "mouse", "NCBITaxon:10090");
+		TextAnnotation stopWordAnnot = FACTORY.createAnnotation(90, 93, "the", "CL:0000000");
+		TextAnnotation shortAnnot = FACTORY.createAnnotation(95, 97, "ab", "CL:0000001");
+		TextAnnotation hpAnnot = FACTORY.createAnnotation(100, 108, "seizures", "HP:0001250");
+		TextAnnotation irrelevantHpAnnot = FACTORY.createAnnotation(110, 118, "heredity", "HP:0000005");
+		TextAnnotation mondoAnnot = FACTORY.createAnnotation(120, 128, "diabetes", "MONDO:0005148");
+		TextAnnotation unknownMondoAnnot = FACTORY.createAnnotation(130, 138, "disorder", "MONDO:9999999");
+		TextAnnotation uberonAnnot = FACTORY.createAnnotation(140, 145, "liver", "UBERON:0002107");
+		TextAnnotation waterAnnot = FACTORY.createAnnotation(150, 155, "water", "CHEBI:15377");
+		TextAnnotation drugAnnot = FACTORY.createAnnotation(160, 169, "inhibitor", "CHEBI:35222");
+
+		Set<TextAnnotation> annots = CollectionsUtil.createSet(extAnnot, prAnnot, unchangedAnnot, excludedTaxonAnnot,
+				humanAnnot, homoAnnot, mouseAnnot, stopWordAnnot, shortAnnot, hpAnnot, irrelevantHpAnnot, mondoAnnot,
+				unknownMondoAnnot, uberonAnnot, waterAnnot, drugAnnot);
+
+		ConceptPostProcessingEngine engine = new ConceptPostProcessingEngine(getExtensionToOboMap(),
+				getPrPromotionMap(), getNcbiTaxonAncestorMap(), getOboToAncestorsMap());
+		Set<TextAnnotation> output = engine.apply(annots);
+
+		Set<TextAnnotation> expectedOutput = CollectionsUtil.createSet(
+				FACTORY.createAnnotation(0, 10, "some protein", "PR:00000000123"),
+				FACTORY.createAnnotation(0, 10, "some protein", "PR:00000000400"),
+				FACTORY.createAnnotation(20, 30, "other protein", "PR:00000000020"), unchangedAnnot, homoAnnot,
+				mouseAnnot, hpAnnot, mondoAnnot, uberonAnnot, drugAnnot);
+		assertEquals(expectedOutput, output);
+
+		// annotations whose identifier does not change are not copied
+		for (TextAnnotation annot : output) {
+			if (annot.equals(unchangedAnnot)) {
+				assertSame(unchangedAnnot, annot);
+			}
+		}
+
+		assertEquals(1, engine.getHitCount(Rule.EXTENSION_TO_OBO));
+		assertEquals(2, engine.getHitCount(Rule.PR_PROMOTION));
+		assertEquals(1, engine.getHitCount(Rule.NCBITAXON_EXCLUSION));
+		assertEquals(1, engine.getHitCount(Rule.NCBITAXON_PROMOTION));
+		assertEquals(2, engine.getHitCount(Rule.STOP_WORD));
+		assertEquals(1, engine.getHitCount(Rule.HP_FILTER));
+		assertEquals(1, engine.getHitCount(Rule.MONDO_FILTER));
+		assertEquals(0, engine.getHitCount(Rule.UBERON_FILTER));
+		assertEquals(1, engine.getHitCount(Rule.CHEBI_FILTER));
+
+		// the engine can be reused for the next document
+		engine.resetHitCounts();
+		assertEquals(0, engine.getHitCount(Rule.PR_PROMOTION));
+		assertEquals(expectedOutput, engine.apply(annots));
+		assertEquals(2, engine.getHitCount(Rule.PR_PROMOTION));
+		assertEquals(1, engine.getHitCount(Rule.NCBITAXON_PROMOTION));
+	}
+
+	@Test
+	public void testMatchesRuleChain() throws IOException {
+		TextAnnotation annot1 = FACTORY.createAnnotation(25, 35, "some text", "PR_EXT:00000000022");
+		TextAnnotation annot2 = FACTORY.createAnnotation(25, 35, "some text", "PR:some_extension_cls");
+		TextAnnotation annot3 = FACTORY.createAnnotation(0, 5, "some text", "PR:00000000025");
+		TextAnnotation annot4 = FACTORY.createAnnotation(0, 5, "some text", "PR:00000000020");
+		TextAnnotation annot5 = FACTORY.createAnnotation(40, 45, "human", "NCBITaxon:9606");
+		TextAnnotation annot6 = FACTORY.createAnnotation(40, 45, "human", "NCBITaxon:9605");
+		TextAnnotation annot7 = FACTORY.createAnnotation(50, 53, "the", "NCBITaxon:10090");
+		Set<TextAnnotation> annots = CollectionsUtil.createSet(annot1, annot2, annot3, annot4, annot5, annot6, annot7);
+
+		// the individual rules applied in sequence, as they were before the rules
+		// were combined
+		Set<TextAnnotation> expectedOutput = ConceptPostProcessingFn.convertExtensionToObo(annots,
+				getExtensionToOboMap());
+		expectedOutput = ConceptPostProcessingFn.promotePrAnnots(expectedOutput, getPrPromotionMap());
+		expectedOutput = ConceptPostProcessingFn.excludeSelectNcbiTaxonAnnots(expectedOutput);
+		expectedOutput = ConceptPostProcessingFn.promoteNcbiTaxonAnnots(expectedOutput,
+				new NcbiTaxonPreferenceResolver(getNcbiTaxonAncestorMap()));
+		expectedOutput = ConceptPostProcessingFn.removeNcbiStopWords(expectedOutput);
+
+		ConceptPostProcessingEngine engine = new ConceptPostProcessingEngine(getExtensionToOboMap(),
+				getPrPromotionMap(), getNcbiTaxonAncestorMap(), getOboToAncestorsMap());
+		assertEquals(expectedOutput, engine.apply(annots));
+
+		// a resolver created from an NCBITaxon ancestor index
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AncestorIndex.write(getNcbiTaxonAncestorMap(), out);
+		AncestorIndex ncbitaxonIndex = AncestorIndex.fromBuffer(ByteBuffer.wrap(out.toByteArray()));
+		engine = new ConceptPostProcessingEngine(getExtensionToOboMap(), getPrPromotionMap(),
+				new NcbiTaxonPreferenceResolver(ncbitaxonIndex), getOboToAncestorsMap());
+		assertEquals(expectedOutput, engine.apply(annots));
+	}
+
+}
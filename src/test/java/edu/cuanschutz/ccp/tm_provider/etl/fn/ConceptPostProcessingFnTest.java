@@ -2,6 +2,9 @@ package edu.cuanschutz.ccp.tm_provider.etl.fn;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -10,6 +13,7 @@ import java.util.Set;
 
 import org.junit.Test;
 
+import edu.cuanschutz.ccp.tm_provider.etl.util.AncestorIndex;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
 import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotationFactory;
@@ -99,6 +103,26 @@ public class ConceptPostProcessingFnTest {
 
 	}
 
+	@Test
+	public void testPreferWithAncestorIndex() throws IOException {
+		Map<String, Set<String>> ancestorMap = new HashMap<String, Set<String>>();
+		ancestorMap.put("PR:000002012", CollectionsUtil.createSet("PR:000000008"));
+		ancestorMap.put("PR:000000101", CollectionsUtil.createSet("PR:000000008", "PR:000000123"));
+		ancestorMap.put("PR:000000286",
+				CollectionsUtil.createSet("PR:000000008", "PR:000000101", "PR:000000046", "PR:000000123"));
+		ancestorMap.put("PR:000002517", CollectionsUtil.createSet("PR:000000008", "PR:000000101", "PR:000000046",
+				"PR:000000123", "PR:000000286"));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AncestorIndex.write(ancestorMap, out);
+		Map<String, Set<String>> indexMap = AncestorIndex.fromBuffer(ByteBuffer.wrap(out.toByteArray())).asMap();
+
+		Set<String> ids = CollectionsUtil.createSet("PR:000002517", "PR:000000101", "PR:000000286", "PR:000002012");
+		assertEquals(CollectionsUtil.createSet("PR:000000101", "PR:000002012"),
+				ConceptPostProcessingFn.prefer(ids, indexMap));
+		assertEquals(ConceptPostProcessingFn.prefer(ids, ancestorMap), ConceptPostProcessingFn.prefer(ids, indexMap));
+	}
+
 	@Test
 	public void testPromoteNcbiTaxonAnnots() {
 
@@ -124,7 +148,8 @@ public class ConceptPostProcessingFnTest {
 
 		Set<TextAnnotation> input = CollectionsUtil.createSet(taxonAnnot1, taxonAnnot2, taxonAnnot3, clAnnot, prAnnot);
 
-		Set<TextAnnotation> output = ConceptPostProcessingFn.promoteNcbiTaxonAnnots(input, ancestorMap);
+		Set<TextAnnotation> output = ConceptPostProcessingFn.promoteNcbiTaxonAnnots(input,
+				new NcbiTaxonPreferenceResolver(ancestorMap));
 
 		Set<TextAnnotation> expectedOutput = CollectionsUtil.createSet(taxonAnnot1, taxonAnnot3, clAnnot, prAnnot);
 
@@ -0,0 +1,158 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionTuple;
+import org.apache.beam.sdk.values.TupleTagList;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
+import org.junit.Test;
+
+import edu.cuanschutz.ccp.tm_provider.etl.DocumentStoreOptions;
+import edu.cuanschutz.ccp.tm_provider.etl.DocumentStoreOptions.DocumentStoreType;
+import edu.cuanschutz.ccp.tm_provider.etl.EtlFailureData;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreDocumentUtil;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
+import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
+
+public class DocumentDownloadFnTest {
+
+	private static final String BAD_DOC_ID = "PMID:bad";
+
+	@Rule
+	public final transient TestPipeline pipeline = TestPipeline.create();
+
+	/**
+	 * Fails any lookup that includes {@link #BAD_DOC_ID}; otherwise returns the
+	 * text "text of [docId]" for each document
+	 */
+	private static final DatastoreDocumentUtil UTIL = createMockDocumentUtil();
+
+	@SuppressWarnings("unchecked")
+	private static DatastoreDocumentUtil createMockDocumentUtil() {
+		DatastoreDocumentUtil util = mock(DatastoreDocumentUtil.class);
+		when(util.getDocumentTypeToContent(any(Collection.class), any(List.class))).thenAnswer(invocation -> {
+			Collection<String> docIds = invocation.getArgument(0);
+			if (docIds.contains(BAD_DOC_ID)) {
+				throw new IllegalStateException("Unable to fetch document: " + BAD_DOC_ID);
+			}
+			Map<String, Map<DocumentType, String>> docIdToTypeToContentMap =
+					new HashMap<String, Map<DocumentType, String>>();
+			for (String docId : docIds) {
+				Map<DocumentType, String> typeToContentMap = new HashMap<DocumentType, String>();
+				typeToContentMap.put(DocumentType.TEXT, "text of " + docId);
+				docIdToTypeToContentMap.put(docId, typeToContentMap);
+			}
+			return docIdToTypeToContentMap;
+		});
+		return util;
+	}
+
+	private static class StubDocumentDownloadFn extends DocumentDownloadFn {
+
+		private static final long serialVersionUID = 1L;
+
+		public StubDocumentDownloadFn(com.google.cloud.Timestamp timestamp, List<DocumentCriteria> documentCriteria,
+				int batchSize) {
+			super(timestamp, documentCriteria, batchSize);
+		}
+
+		@Override
+		protected DatastoreDocumentUtil createDocumentUtil() {
+			return UTIL;
+		}
+	}
+
+	@Test
+	public void testFailedBatchOnlyFailsFailingDocument() {
+		List<DocumentCriteria> documentCriteria = Arrays.asList(new DocumentCriteria(DocumentType.TEXT,
+				DocumentFormat.TEXT, PipelineKey.MEDLINE_XML_TO_TEXT, "0.1.0"));
+		com.google.cloud.Timestamp timestamp = com.google.cloud.Timestamp.now();
+
+		// the batch size is larger than the number of documents so that the bad
+		// document shares its batch with other documents
+		PCollectionTuple output = pipeline.apply(Create.of("PMID:1", "PMID:2", BAD_DOC_ID, "PMID:3", "PMID:4"))
+				.apply(ParDo.of(new StubDocumentDownloadFn(timestamp, documentCriteria, 10))
+						.withOutputTags(DocumentDownloadFn.OUTPUT_TAG,
+								TupleTagList.of(DocumentDownloadFn.FAILURE_TAG)));
+
+		PAssert.that(output.get(DocumentDownloadFn.OUTPUT_TAG)
+				.apply(MapElements.into(TypeDescriptors.strings())
+						.via((KV<String, Map<DocumentType, String>> kv) -> kv.getKey())))
+				.containsInAnyOrder("PMID:1", "PMID:2", "PMID:3", "PMID:4");
+		PAssert.that(output.get(DocumentDownloadFn.OUTPUT_TAG)
+				.apply(MapElements.into(TypeDescriptors.strings())
+						.via((KV<String, Map<DocumentType, String>> kv) -> kv.getValue().get(DocumentType.TEXT))))
+				.containsInAnyOrder("text of PMID:1", "text of PMID:2", "text of PMID:3", "text of PMID:4");
+		PAssert.that(output.get(DocumentDownloadFn.FAILURE_TAG)
+				.apply(MapElements.into(TypeDescriptors.strings()).via(EtlFailureData::getDocumentId)))
+				.containsInAnyOrder(BAD_DOC_ID);
+
+		pipeline.run();
+	}
+
+	@Test
+	public void testDocumentsKeepTheirWindows() {
+		List<DocumentCriteria> documentCriteria = Arrays.asList(new DocumentCriteria(DocumentType.TEXT,
+				DocumentFormat.TEXT, PipelineKey.MEDLINE_XML_TO_TEXT, "0.1.0"));
+		com.google.cloud.Timestamp timestamp = com.google.cloud.Timestamp.now();
+
+		// the document IDs alternate between windows, so full batches mix windows
+		Instant start = new Instant(0);
+		Instant later = start.plus(Duration.standardMinutes(1));
+		PCollection<String> docIds = pipeline
+				.apply(Create.timestamped(TimestampedValue.of("PMID:1", start), TimestampedValue.of("PMID:2", later),
+						TimestampedValue.of("PMID:3", start), TimestampedValue.of("PMID:4", later)))
+				.apply(Window.into(FixedWindows.of(Duration.standardMinutes(1))));
+		PCollectionTuple output = docIds.apply(ParDo.of(new StubDocumentDownloadFn(timestamp, documentCriteria, 2))
+				.withOutputTags(DocumentDownloadFn.OUTPUT_TAG, TupleTagList.of(DocumentDownloadFn.FAILURE_TAG)));
+
+		PCollection<String> outputDocIds = output.get(DocumentDownloadFn.OUTPUT_TAG)
+				.apply(MapElements.into(TypeDescriptors.strings())
+						.via((KV<String, Map<DocumentType, String>> kv) -> kv.getKey()));
+		PAssert.that(outputDocIds).inWindow(new IntervalWindow(start, later)).containsInAnyOrder("PMID:1", "PMID:3");
+		PAssert.that(outputDocIds).inWindow(new IntervalWindow(later, later.plus(Duration.standardMinutes(1))))
+				.containsInAnyOrder("PMID:2", "PMID:4");
+		PAssert.that(output.get(DocumentDownloadFn.FAILURE_TAG)).empty();
+
+		pipeline.run();
+	}
+
+	@Test
+	public void testCheckDocumentStore() {
+		DocumentStoreOptions options = PipelineOptionsFactory.create().as(DocumentStoreOptions.class);
+		DocumentDownloadFn.checkDocumentStore(options);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCheckDocumentStoreLocal() {
+		DocumentStoreOptions options = PipelineOptionsFactory.create().as(DocumentStoreOptions.class);
+		options.setDocumentStore(DocumentStoreType.LOCAL);
+		DocumentDownloadFn.checkDocumentStore(options);
+	}
+
+}
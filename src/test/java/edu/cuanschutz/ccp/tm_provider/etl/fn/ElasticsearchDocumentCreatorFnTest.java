@@ -148,6 +148,20 @@ public class ElasticsearchDocumentCreatorFnTest {
 
 	}
 
+	@Test
+	public void testSentenceJsonWriterMatchesGson() {
+		SentenceJsonWriter writer = new SentenceJsonWriter();
+		List<Sentence> sentences = Arrays.asList(
+				new Sentence("a4bd6", "pmid:12345", "(water)[CHEBI_15377&_CHEBI] is 100% H2O, i.e. x = y"),
+				new Sentence("a4bd6", "pmid:12345", "quote \" backslash \\ tab \t newline \n cr \r nul \u0000"),
+				new Sentence("a4bd6", "pmid:12345", "<b>'%28%29'</b> \u03B1\u03B2 \u2028 \u2029 \uD83D\uDE00"),
+				new Sentence("a4bd6", null, ""));
+		for (Sentence sentence : sentences) {
+			assertEquals(GsonSentenceJsonWriter.toJson(sentence), writer.toJson(sentence));
+		}
+		assertEquals("{\"id\":\"a4bd6\",\"annotatedText\":\"\"}", writer.toJson(sentences.get(3)));
+	}
+
 	@Test
 	public void testCreateJsonDocumentWithUtf8Char() throws IOException {
 		TextAnnotationFactory factory = TextAnnotationFactory.createFactoryWithDefaults("12345");
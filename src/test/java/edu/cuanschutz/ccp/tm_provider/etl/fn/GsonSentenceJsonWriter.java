@@ -0,0 +1,30 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import com.google.gson.Gson;
+
+import edu.cuanschutz.ccp.tm_provider.etl.fn.ElasticsearchDocumentCreatorFn.Sentence;
+
+/**
+ * The previous serialization of Elasticsearch sentence documents by
+ * {@link ElasticsearchDocumentCreatorFn}, which was superseded by
+ * {@link SentenceJsonWriter}. Used as the reference implementation when
+ * testing and benchmarking {@link SentenceJsonWriter}.
+ */
+public class GsonSentenceJsonWriter {
+
+	/**
+	 * @param sentence
+	 * @return the JSON document for the sentence
+	 */
+	public static String toJson(Sentence sentence) {
+		Gson gson = new Gson();
+		String json = gson.toJson(sentence);
+
+		// % sign must be URL encoded
+		json = json.replaceAll("%", "%25");
+		json = json.replaceAll("=", "%3D");
+
+		return json;
+	}
+
+}
@@ -0,0 +1,76 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.io.jdbc.JdbcIO;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.values.KV;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class JdbcBatchUpsertFnTest {
+
+	@Rule
+	public final transient TestPipeline pipeline = TestPipeline.create();
+
+	private static final String JDBC_URL = "jdbc:h2:mem:upsert_test;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+	@Test
+	public void testBuildUpsertStatement() {
+		String expected = "INSERT INTO t (a,b) VALUES (?,?),(?,?),(?,?) ON DUPLICATE KEY UPDATE a = VALUES(a), b = VALUES(b)";
+		assertEquals(expected, JdbcBatchUpsertFn.buildUpsertStatement("t", new String[] { "a", "b" }, 3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBatchSizeTooLarge() {
+		new JdbcBatchUpsertFn<KV<String, Long>>(null, "t", new String[] { "a", "b" },
+				kv -> new Object[] { kv.getKey(), kv.getValue() }, 40000);
+	}
+
+	@Test
+	public void testUpsert() throws SQLException {
+		try (Connection c = DriverManager.getConnection(JDBC_URL); Statement s = c.createStatement()) {
+			s.execute("CREATE TABLE counts (id VARCHAR(16) PRIMARY KEY, count BIGINT)");
+			// this row should be updated by the pipeline
+			s.execute("INSERT INTO counts (id, count) VALUES ('c', -1)");
+		}
+
+		Map<String, Long> input = new HashMap<String, Long>();
+		input.put("a", 1l);
+		input.put("b", 2l);
+		input.put("c", 3l);
+		input.put("d", 4l);
+		input.put("e", 5l);
+
+		// a batch size of 2 exercises both full and partial batches
+		pipeline.apply(Create.of(input).withCoder(KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of())))
+				.apply(ParDo.of(new JdbcBatchUpsertFn<KV<String, Long>>(
+						JdbcIO.DataSourceConfiguration.create("org.h2.Driver", JDBC_URL), "counts",
+						new String[] { "id", "count" }, kv -> new Object[] { kv.getKey(), kv.getValue() }, 2)));
+		pipeline.run().waitUntilFinish();
+
+		Map<String, Long> observed = new HashMap<String, Long>();
+		try (Connection c = DriverManager.getConnection(JDBC_URL);
+				Statement s = c.createStatement();
+				ResultSet rs = s.executeQuery("SELECT id, count FROM counts")) {
+			while (rs.next()) {
+				observed.put(rs.getString(1), rs.getLong(2));
+			}
+		}
+		assertEquals(input, observed);
+	}
+
+}
@@ -0,0 +1,88 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+
+import org.medline.AbstractText;
+import org.medline.MedlineCitation;
+import org.medline.PubmedArticle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
+
+/**
+ * Compares the throughput of the single-pass {@link MedlineTextScanner} to the
+ * regular expression based processing it replaced
+ * ({@link MedlineXmlToTextFn#processTitleAndAbstractTextWithRegex(String, List, String)})
+ * on the titles and abstracts of the sample Medline XML files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MedlineTextScannerBenchmark {
+
+	@Param({ MedlineXmlToTextFnTest.SAMPLE_PUBMED20N0001_XML_GZ, MedlineXmlToTextFnTest.SAMPLE_PUBMED_XML_GZ,
+			MedlineXmlToTextFnTest.SAMPLE_SUPERSCRIPT_PUBMED_XML_GZ })
+	private String medlineFile;
+
+	private List<String> texts;
+	private List<String> docIds;
+
+	@Setup
+	public void setup() throws IOException, JAXBException, XMLStreamException {
+		texts = new ArrayList<String>();
+		docIds = new ArrayList<String>();
+		for (PubmedArticle article : MedlineXmlToTextFnTest.getSamplePubmedArticles(medlineFile)) {
+			MedlineCitation citation = article.getMedlineCitation();
+			texts.add(citation.getArticle().getArticleTitle().getvalue());
+			docIds.add(citation.getPMID().getvalue());
+			if (citation.getArticle().getAbstract() != null) {
+				List<String> abstractTexts = new ArrayList<String>();
+				for (AbstractText aText : citation.getArticle().getAbstract().getAbstractText()) {
+					abstractTexts.add(aText.getvalue());
+				}
+				texts.add(String.join("\n", abstractTexts));
+				docIds.add(citation.getPMID().getvalue());
+			}
+		}
+	}
+
+	@Benchmark
+	public void scanner(Blackhole blackhole) {
+		for (int i = 0; i < texts.size(); i++) {
+			List<TextAnnotation> annotations = new ArrayList<TextAnnotation>();
+			blackhole.consume(MedlineXmlToTextFn.processTitleAndAbstractText(texts.get(i), annotations, docIds.get(i)));
+			blackhole.consume(annotations);
+		}
+	}
+
+	@Benchmark
+	public void regex(Blackhole blackhole) {
+		for (int i = 0; i < texts.size(); i++) {
+			List<TextAnnotation> annotations = new ArrayList<TextAnnotation>();
+			blackhole.consume(
+					MedlineXmlToTextFn.processTitleAndAbstractTextWithRegex(texts.get(i), annotations, docIds.get(i)));
+			blackhole.consume(annotations);
+		}
+	}
+
+}
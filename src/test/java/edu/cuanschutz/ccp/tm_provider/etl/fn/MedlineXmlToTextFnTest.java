@@ -7,6 +7,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -22,6 +24,9 @@ import javax.xml.stream.XMLResolver;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
+import org.apache.beam.sdk.io.Compression;
+import org.apache.beam.sdk.io.FileIO;
+import org.apache.beam.sdk.io.FileIO.ReadableFile;
 import org.apache.beam.sdk.io.xml.JAXBCoder;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.testing.TestPipeline;
@@ -33,6 +38,9 @@ import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.medline.AbstractText;
+import org.medline.MedlineCitation;
 import org.medline.MedlineDate;
 import org.medline.PubmedArticle;
 import org.medline.PubmedArticleSet;
@@ -42,6 +50,7 @@ import edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreProcessingStatusUtil.Ove
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
 import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
+import edu.cuanschutz.ccp.tm_provider.etl.util.MedlineRecord;
 import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 import edu.ucdenver.ccp.common.file.CharacterEncoding;
@@ -59,6 +68,9 @@ public class MedlineXmlToTextFnTest {
 	@Rule
 	public final transient TestPipeline pipeline = TestPipeline.create();
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void testTextDocumentConstruction()
 			throws ParserConfigurationException, SAXException, IOException, JAXBException, XMLStreamException {
@@ -420,4 +432,102 @@ public class MedlineXmlToTextFnTest {
 		pipeline.run();
 	}
 
+	@Test
+	public void testSuperscriptSpacing_medlineXmlReader() throws IOException {
+		PipelineKey pipelineKey = PipelineKey.MEDLINE_XML_TO_TEXT;
+		String pipelineVersion = "0.1.0";
+		com.google.cloud.Timestamp timestamp = com.google.cloud.Timestamp.now();
+
+		File medlineFile = folder.newFile(SAMPLE_SUPERSCRIPT_PUBMED_XML_GZ);
+		Files.copy(ClassPathUtil.getResourceStreamFromClasspath(getClass(), SAMPLE_SUPERSCRIPT_PUBMED_XML_GZ),
+				medlineFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		PCollection<ReadableFile> files = pipeline.apply(FileIO.match().filepattern(medlineFile.getAbsolutePath()))
+				.apply(FileIO.readMatches().withCompression(Compression.GZIP));
+		PCollection<MedlineRecord> input = MedlineXmlReaderFn.readRecords(files);
+
+		DocumentCriteria outputTextDocCriteria = new DocumentCriteria(DocumentType.TEXT, DocumentFormat.TEXT,
+				pipelineKey, pipelineVersion);
+		String collection = null;
+
+		// simulate empty PCollectionView
+		PCollectionView<Set<String>> docIdsAlreadyStoredView = pipeline
+				.apply("Create schema view", Create.<Set<String>>of(CollectionsUtil.createSet("")))
+				.apply(View.<Set<String>>asSingleton());
+
+		PCollectionTuple output = MedlineXmlToTextFn.processRecords(input, outputTextDocCriteria, timestamp,
+				collection, docIdsAlreadyStoredView, OverwriteOutput.YES);
+
+		String expectedPmid_1 = "PMID:31040849";
+		String expectedText_1 = ClassPathUtil.getContentsFromClasspathResource(MedlineXmlToTextFnTest.class,
+				SAMPLE_SUPERSCRIPT_PUBMED_TXT, CharacterEncoding.UTF_8);
+
+		PAssert.that(output.get(MedlineXmlToTextFn.plainTextTag))
+				.containsInAnyOrder(KV.of(expectedPmid_1, Arrays.asList(expectedText_1)));
+
+		pipeline.run();
+	}
+
+	@Test
+	public void testProcessTitleAndAbstractTextMatchesRegex() throws IOException, JAXBException, XMLStreamException {
+		for (String filename : Arrays.asList(SAMPLE_PUBMED20N0001_XML_GZ, SAMPLE_PUBMED_XML_GZ,
+				SAMPLE_SUPERSCRIPT_PUBMED_XML_GZ)) {
+			for (PubmedArticle article : getSamplePubmedArticles(filename)) {
+				MedlineCitation citation = article.getMedlineCitation();
+				String pmid = citation.getPMID().getvalue();
+				assertProcessedTextMatchesRegex(citation.getArticle().getArticleTitle().getvalue(), pmid);
+				if (citation.getArticle().getAbstract() != null) {
+					List<String> abstractTexts = new ArrayList<String>();
+					for (AbstractText aText : citation.getArticle().getAbstract().getAbstractText()) {
+						abstractTexts.add(aText.getvalue());
+					}
+					assertProcessedTextMatchesRegex(String.join("\n", abstractTexts), pmid);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testProcessTitleAndAbstractTextMatchesRegex_edgeCases() {
+		List<String> texts = Arrays.asList("", "  \n ", "H<sub>2</sub>O", "x<sup>2<sub>i</sub></sup> + 1",
+				"unclosed <sub>tag", "unopened </sup>tag", "mismatched <sup>tags</sub>", "empty <sub/> and <sup/> tags",
+				"&lt;sup&gt;escaped&lt;/sup&gt; tags", "&lt;b&gt;escaped&lt;/b&gt; formatting",
+				"&amp;quot; &amp;apos; &amp;lt; &amp;amp;quot;", "&lt;&gt;&amp;&quot;&apos;",
+				"&l<b>t;sup&g</b>t;joined entity", "&l<sup>t;", "<b>bold</b> <i>italic</i> <u>underlined</u>",
+				"spaced <b> </b> formatting", "spaced <sup> </sup> superscript", "a\u202F\u202Fb\u202F<sub>c</sub>",
+				"line\n   <sup>break</sup>\n   after", "tag>\n<tag", "tag>\n\n", "a \n\t b",
+				"\u202Fleading and trailing\u202F", "<<b>b>joined", "</<b>b>joined", "<su<sup>b>joined",
+				"<su<b>p>joined</sup>");
+		for (String text : texts) {
+			assertProcessedTextMatchesRegex(text, "PMID:1");
+		}
+	}
+
+	@Test
+	public void testProcessTitleAndAbstractText() {
+		List<TextAnnotation> annotations = new ArrayList<TextAnnotation>();
+		assertEquals("H2O and x2i \"quoted\"", MedlineXmlToTextFn.processTitleAndAbstractText(
+				" H<sub>2</sub>O  <b>and</b> \nx<sup>2<sub>i</sub></sup> &amp;quot;quoted&quot; ", annotations, "PMID:1"));
+		assertEquals(Arrays.asList("sub [1..2] 2", "sub [10..11] i", "sup [9..11] 2i"), toStrings(annotations));
+	}
+
+	private static void assertProcessedTextMatchesRegex(String text, String docId) {
+		List<TextAnnotation> expectedAnnotations = new ArrayList<TextAnnotation>();
+		String expectedText = MedlineXmlToTextFn.processTitleAndAbstractTextWithRegex(text, expectedAnnotations,
+				docId);
+		List<TextAnnotation> annotations = new ArrayList<TextAnnotation>();
+		String processedText = MedlineXmlToTextFn.processTitleAndAbstractText(text, annotations, docId);
+		assertEquals(expectedText, processedText);
+		assertEquals(toStrings(expectedAnnotations), toStrings(annotations));
+	}
+
+	private static List<String> toStrings(List<TextAnnotation> annotations) {
+		List<String> strings = new ArrayList<String>();
+		for (TextAnnotation annot : annotations) {
+			strings.add(String.format("%s [%d..%d] %s", annot.getClassMention().getMentionName(),
+					annot.getAnnotationSpanStart(), annot.getAnnotationSpanEnd(), annot.getCoveredText()));
+		}
+		return strings;
+	}
+
 }
@@ -0,0 +1,106 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.cuanschutz.ccp.tm_provider.etl.util.AncestorIndex;
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+
+public class NcbiTaxonPreferenceResolverTest {
+
+	/**
+	 * @param random
+	 * @param size
+	 * @return the ancestor map for a random forest. As in the NCBITaxon promotion
+	 *         map, the roots are not keys of the map.
+	 */
+	private static Map<String, Set<String>> createRandomTaxonomy(Random random, int size) {
+		Map<String, Set<String>> ancestorMap = new HashMap<String, Set<String>>();
+		for (int i = 0; i < size; i++) {
+			String id = "NCBITaxon:" + i;
+			// roughly one in ten classes is a root
+			if (i > 0 && random.nextInt(10) > 0) {
+				String parent = "NCBITaxon:" + random.nextInt(i);
+				Set<String> ancestors = new HashSet<String>();
+				ancestors.add(parent);
+				if (ancestorMap.containsKey(parent)) {
+					ancestors.addAll(ancestorMap.get(parent));
+				}
+				ancestorMap.put(id, ancestors);
+			}
+		}
+		return ancestorMap;
+	}
+
+	private static AncestorIndex toIndex(Map<String, Set<String>> ancestorMap) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AncestorIndex.write(ancestorMap, out);
+		return AncestorIndex.fromBuffer(ByteBuffer.wrap(out.toByteArray()));
+	}
+
+	@Test
+	public void testMatchesPairwiseComparison() throws IOException {
+		Random random = new Random(12345);
+		for (int trial = 0; trial < 20; trial++) {
+			int size = 1 + random.nextInt(200);
+			Map<String, Set<String>> ancestorMap = createRandomTaxonomy(random, size);
+			NcbiTaxonPreferenceResolver resolver = new NcbiTaxonPreferenceResolver(toIndex(ancestorMap));
+			assertTrue(resolver.isTree());
+			// e.g. a map side input
+			NcbiTaxonPreferenceResolver mapResolver = new NcbiTaxonPreferenceResolver(ancestorMap);
+			assertTrue(mapResolver.isTree());
+
+			for (int i = 0; i < 100; i++) {
+				Set<String> ids = new HashSet<String>();
+				int count = 1 + random.nextInt(30);
+				for (int j = 0; j < count; j++) {
+					// include some identifiers that are not in the taxonomy
+					ids.add("NCBITaxon:" + random.nextInt(size + 5));
+				}
+				Set<String> expected = ConceptPostProcessingFn.prefer(ids, ancestorMap);
+				assertEquals(expected, resolver.prefer(ids));
+				assertEquals(expected, mapResolver.prefer(ids));
+			}
+		}
+	}
+
+	@Test
+	public void testRootIsNotAKey() throws IOException {
+		Map<String, Set<String>> ancestorMap = new HashMap<String, Set<String>>();
+		ancestorMap.put("NCBITaxon:9606", CollectionsUtil.createSet("NCBITaxon:1", "NCBITaxon:9605"));
+		ancestorMap.put("NCBITaxon:9605", CollectionsUtil.createSet("NCBITaxon:1"));
+		NcbiTaxonPreferenceResolver resolver = new NcbiTaxonPreferenceResolver(toIndex(ancestorMap));
+
+		assertEquals(CollectionsUtil.createSet("NCBITaxon:1"),
+				resolver.prefer(CollectionsUtil.createSet("NCBITaxon:9606", "NCBITaxon:1")));
+		assertEquals(CollectionsUtil.createSet("NCBITaxon:1"),
+				ConceptPostProcessingFn.prefer(CollectionsUtil.createSet("NCBITaxon:9606", "NCBITaxon:1"), ancestorMap));
+	}
+
+	@Test
+	public void testNotATree() throws IOException {
+		// PR:000000101 has two unrelated ancestors
+		Map<String, Set<String>> ancestorMap = new HashMap<String, Set<String>>();
+		ancestorMap.put("PR:000000101", CollectionsUtil.createSet("PR:000000008", "PR:000000123"));
+		ancestorMap.put("PR:000000286", CollectionsUtil.createSet("PR:000000008", "PR:000000101", "PR:000000123"));
+		ancestorMap.put("PR:000002012", CollectionsUtil.createSet("PR:000000008"));
+		NcbiTaxonPreferenceResolver resolver = new NcbiTaxonPreferenceResolver(toIndex(ancestorMap));
+
+		assertFalse(resolver.isTree());
+		assertEquals(CollectionsUtil.createSet("PR:000000101", "PR:000002012"),
+				resolver.prefer(CollectionsUtil.createSet("PR:000000286", "PR:000000101", "PR:000002012")));
+	}
+
+}
@@ -1,18 +1,55 @@
 package edu.cuanschutz.ccp.tm_provider.etl.fn;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.beam.sdk.coders.ListCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionTuple;
+import org.apache.beam.sdk.values.TupleTagList;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Rule;
 import org.junit.Test;
 
+import edu.cuanschutz.ccp.tm_provider.etl.EtlFailureData;
+import edu.cuanschutz.ccp.tm_provider.etl.ProcessingStatus;
+import edu.cuanschutz.ccp.tm_provider.etl.fn.OgerFn.ConcurrentAnnotationFn;
 import edu.cuanschutz.ccp.tm_provider.etl.fn.OgerFn.OgerOutputType;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentCriteria;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentFormat;
+import edu.cuanschutz.ccp.tm_provider.etl.util.DocumentType;
+import edu.cuanschutz.ccp.tm_provider.etl.util.HttpPostUtil;
+import edu.cuanschutz.ccp.tm_provider.etl.util.PipelineKey;
 import edu.ucdenver.ccp.common.file.CharacterEncoding;
 import edu.ucdenver.ccp.common.io.ClassPathUtil;
 
 public class OgerFnTest {
 
+	@Rule
+	public final transient TestPipeline pipeline = TestPipeline.create();
+
 	private final String TEXT_SAMPLE_1 = "Neurons and blood cells are cells.";
 	private final String PUBANNOTATION_SAMPLE_1 = "{\n" + "    \"text\": \"Neurons and blood cells are cells. \",\n"
 			+ "    \"denotations\": [\n" + "        {\n" + "            \"id\": \"T1\",\n" + "            \"span\": {\n"
@@ -128,4 +165,137 @@ public class OgerFnTest {
 
 	}
 
+	private static final int MAX_CONCURRENT_REQUESTS = 2;
+	private static final AtomicInteger MAX_PENDING = new AtomicInteger();
+	private static final List<String> OUTPUT_ORDER = Collections.synchronizedList(new ArrayList<String>());
+
+	/**
+	 * Returns the payload after sleeping for the number of milliseconds specified
+	 * by the payload, so that later documents can complete before earlier ones;
+	 * fails if the payload is "fail"
+	 */
+	private static class StubOgerClient extends HttpPostUtil {
+
+		public StubOgerClient() {
+			super("http://localhost/oger");
+		}
+
+		@Override
+		public String submit(String payload) throws IOException {
+			if (payload.equals("fail")) {
+				throw new IOException("simulated OGER failure");
+			}
+			try {
+				Thread.sleep(Long.parseLong(payload));
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			return payload;
+		}
+	}
+
+	private static class StubConcurrentAnnotationFn extends ConcurrentAnnotationFn {
+
+		private static final long serialVersionUID = 1L;
+
+		public StubConcurrentAnnotationFn(DocumentCriteria outputDocCriteria, com.google.cloud.Timestamp timestamp) {
+			super("http://localhost", outputDocCriteria, timestamp, OgerOutputType.TSV, MAX_CONCURRENT_REQUESTS);
+		}
+
+		@Override
+		protected HttpPostUtil createOgerClient() {
+			return new StubOgerClient();
+		}
+
+		@Override
+		@ProcessElement
+		public void processElement(@Element KV<ProcessingStatus, Map<DocumentCriteria, String>> statusEntityToText,
+				@Timestamp Instant elementTimestamp, BoundedWindow window, MultiOutputReceiver out) {
+			super.processElement(statusEntityToText, elementTimestamp, window, out);
+			MAX_PENDING.accumulateAndGet(getPendingCount(), Math::max);
+		}
+	}
+
+	/**
+	 * Creates one input document per payload. Consecutive documents are assigned
+	 * timestamps in different one-minute windows.
+	 */
+	private static class CreateDocumentsFn
+			extends DoFn<List<String>, KV<ProcessingStatus, Map<DocumentCriteria, String>>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final DocumentCriteria textDocCriteria;
+
+		public CreateDocumentsFn(DocumentCriteria textDocCriteria) {
+			this.textDocCriteria = textDocCriteria;
+		}
+
+		@ProcessElement
+		public void processElement(@Element List<String> payloads,
+				OutputReceiver<KV<ProcessingStatus, Map<DocumentCriteria, String>>> out) {
+			for (int i = 0; i < payloads.size(); i++) {
+				out.outputWithTimestamp(
+						KV.of(new ProcessingStatus("doc" + i), Collections.singletonMap(textDocCriteria, payloads.get(i))),
+						new Instant(0).plus(Duration.standardMinutes(i % 2)));
+			}
+		}
+	}
+
+	/**
+	 * Records the order in which annotations are received
+	 */
+	private static class RecordOutputOrderFn extends DoFn<KV<ProcessingStatus, List<String>>, String> {
+
+		private static final long serialVersionUID = 1L;
+
+		@ProcessElement
+		public void processElement(@Element KV<ProcessingStatus, List<String>> annotation, OutputReceiver<String> out) {
+			String docId = annotation.getKey().getDocumentId();
+			OUTPUT_ORDER.add(docId);
+			out.output(docId + "=" + String.join("", annotation.getValue()));
+		}
+	}
+
+	@Test
+	public void testConcurrentAnnotationFn() {
+		MAX_PENDING.set(0);
+		OUTPUT_ORDER.clear();
+
+		DocumentCriteria textDocCriteria = new DocumentCriteria(DocumentType.TEXT, DocumentFormat.TEXT,
+				PipelineKey.OGER, "0.1.0");
+		DocumentCriteria outputDocCriteria = new DocumentCriteria(DocumentType.CONCEPT_CL, DocumentFormat.TSV,
+				PipelineKey.OGER, "0.1.0");
+		com.google.cloud.Timestamp timestamp = com.google.cloud.Timestamp.now();
+
+		// the payload of each document is the time in ms it takes to be annotated, so
+		// requests complete out of order. All documents are created from a single
+		// element so that they are processed in a single bundle.
+		List<String> payloads = Arrays.asList("300", "200", "100", "fail", "250", "50", "150");
+		PCollection<KV<ProcessingStatus, Map<DocumentCriteria, String>>> input = pipeline
+				.apply(Create.of(Collections.singletonList(payloads)).withCoder(ListCoder.of(StringUtf8Coder.of())))
+				.apply(ParDo.of(new CreateDocumentsFn(textDocCriteria)))
+				.apply(Window.into(FixedWindows.of(Duration.standardMinutes(1))));
+
+		PCollectionTuple output = input
+				.apply(ParDo.of(new StubConcurrentAnnotationFn(outputDocCriteria, timestamp))
+						.withOutputTags(OgerFn.ANNOTATIONS_TAG, TupleTagList.of(OgerFn.ETL_FAILURE_TAG)));
+
+		PCollection<String> annotations = output.get(OgerFn.ANNOTATIONS_TAG).apply(ParDo.of(new RecordOutputOrderFn()));
+		PAssert.that(annotations).containsInAnyOrder("doc0=300", "doc1=200", "doc2=100", "doc4=250", "doc5=50",
+				"doc6=150");
+		PAssert.that(output.get(OgerFn.ETL_FAILURE_TAG)
+				.apply(MapElements.into(TypeDescriptors.strings()).via(EtlFailureData::getDocumentId)))
+				.containsInAnyOrder("doc3");
+
+		pipeline.run();
+
+		// results are output in the order the documents were received, including
+		// those output when the bundle finishes
+		assertEquals(Arrays.asList("doc0", "doc1", "doc2", "doc4", "doc5", "doc6"), OUTPUT_ORDER);
+		// the documents alternate between windows, which must not lift the limit on
+		// the number of requests in flight
+		assertTrue("max pending: " + MAX_PENDING.get(), MAX_PENDING.get() <= MAX_CONCURRENT_REQUESTS);
+	}
+
 }
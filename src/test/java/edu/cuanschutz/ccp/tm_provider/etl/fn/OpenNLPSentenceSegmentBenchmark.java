@@ -0,0 +1,78 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ucdenver.ccp.common.file.CharacterEncoding;
+import edu.ucdenver.ccp.common.io.ClassPathUtil;
+import edu.ucdenver.ccp.file.conversion.TextDocument;
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+
+/**
+ * Compares segmenting a sample of Medline abstracts with a sentence model that
+ * is loaded for every document (the previous behavior of
+ * {@link OpenNLPSentenceSegmentFn}) to segmenting with the shared model and
+ * per-thread detector. Each invocation segments the whole sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenNLPSentenceSegmentBenchmark {
+
+	private static final String[] SAMPLE_FILES = { "PMID31000267.txt", "PMID31040849.txt", "PMID31839728.txt",
+			"PMID31839729.txt" };
+
+	private List<String> documents;
+
+	@Setup
+	public void setup() throws IOException {
+		documents = new ArrayList<String>();
+		for (String file : SAMPLE_FILES) {
+			documents.add(ClassPathUtil.getContentsFromClasspathResource(OpenNLPSentenceSegmentBenchmark.class, file,
+					CharacterEncoding.UTF_8));
+		}
+	}
+
+	@Benchmark
+	public int modelLoadedPerDocument() throws IOException {
+		int sentenceCount = 0;
+		for (String document : documents) {
+			try (InputStream modelStream = ClassPathUtil.getResourceStreamFromClasspath(OpenNLPSentenceSegmentFn.class,
+					OpenNLPSentenceSegmentFn.SENTENCE_MODEL_RESOURCE)) {
+				SentenceDetectorME sentenceDetector = new SentenceDetectorME(new SentenceModel(modelStream));
+				TextDocument td = OpenNLPSentenceSegmentFn.segmentSentences(document, sentenceDetector);
+				sentenceCount += td.getAnnotations().size();
+			}
+		}
+		return sentenceCount;
+	}
+
+	@Benchmark
+	public int sharedModel() throws IOException {
+		int sentenceCount = 0;
+		for (String document : documents) {
+			TextDocument td = OpenNLPSentenceSegmentFn.segmentSentences(document);
+			sentenceCount += td.getAnnotations().size();
+		}
+		return sentenceCount;
+	}
+
+}
@@ -2,6 +2,9 @@ package edu.cuanschutz.ccp.tm_provider.etl.fn;
 
 import static edu.cuanschutz.ccp.tm_provider.etl.PipelineTestUtil.createProcessingStatus;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -37,6 +40,7 @@ import edu.ucdenver.ccp.common.io.ClassPathUtil;
 import edu.ucdenver.ccp.file.conversion.TextDocument;
 import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
 import lombok.Data;
+import opennlp.tools.sentdetect.SentenceDetectorME;
 
 public class OpenNLPSentenceSegmentFnTest {
 
@@ -170,4 +174,25 @@ public class OpenNLPSentenceSegmentFnTest {
 
 	}
 
+	@Test
+	public void testSharedSentenceModel() throws Exception {
+		// the model is shared by all threads, but each thread has its own detector
+		assertSame(OpenNLPSentenceSegmentFn.getSentenceModel(), OpenNLPSentenceSegmentFn.getSentenceModel());
+		SentenceDetectorME detector = OpenNLPSentenceSegmentFn.getSentenceDetector();
+		assertSame(detector, OpenNLPSentenceSegmentFn.getSentenceDetector());
+
+		SentenceDetectorME[] otherThreadDetector = new SentenceDetectorME[1];
+		Thread thread = new Thread(() -> {
+			try {
+				otherThreadDetector[0] = OpenNLPSentenceSegmentFn.getSentenceDetector();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		thread.start();
+		thread.join();
+		assertNotNull(otherThreadDetector[0]);
+		assertNotSame(detector, otherThreadDetector[0]);
+	}
+
 }
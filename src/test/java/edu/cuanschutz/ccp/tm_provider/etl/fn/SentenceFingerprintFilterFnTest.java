@@ -0,0 +1,106 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionTuple;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SentenceFingerprintFilterFnTest {
+
+	@Rule
+	public final transient TestPipeline pipeline = TestPipeline.create();
+
+	private static final String UNCHANGED_JSON = "{\"id\":\"s1\",\"documentId\":\"PMID:1\",\"annotatedText\":\"unchanged\"}";
+	private static final String CHANGED_JSON = "{\"id\":\"s2\",\"documentId\":\"PMID:1\",\"annotatedText\":\"changed\"}";
+	private static final String NEW_JSON = "{\"id\":\"s3\",\"documentId\":\"PMID:2\",\"annotatedText\":\"new\"}";
+	/* the same sentence in a different document is a different ES document */
+	private static final String NEW_JSON_OTHER_DOC = "{\"id\":\"s3\",\"documentId\":\"PMID:3\",\"annotatedText\":\"new\"}";
+
+	@Test
+	public void testGetElasticsearchId() throws IOException {
+		assertEquals("PMID:1_s1", SentenceFingerprintFilterFn.getElasticsearchId(new ObjectMapper().readTree(UNCHANGED_JSON)));
+	}
+
+	@Test
+	public void testFilterUnchangedSentences() {
+		String unchangedFingerprint = SentenceFingerprintFilterFn.computeFingerprint(UNCHANGED_JSON);
+		String changedFingerprint = SentenceFingerprintFilterFn.computeFingerprint(CHANGED_JSON);
+		String newFingerprint = SentenceFingerprintFilterFn.computeFingerprint(NEW_JSON);
+
+		PCollection<String> sentenceJson = pipeline.apply("sentences",
+				Create.of(UNCHANGED_JSON, CHANGED_JSON, NEW_JSON, NEW_JSON, NEW_JSON_OTHER_DOC)
+						.withCoder(StringUtf8Coder.of()));
+		PCollection<String> snapshotLines = pipeline.apply("snapshot",
+				Create.of("PMID:1_s1\t" + unchangedFingerprint, "PMID:1_s2\tprevious-fingerprint",
+						"PMID:9_s9\tabsent-fingerprint").withCoder(StringUtf8Coder.of()));
+
+		PCollectionTuple output = SentenceFingerprintFilterFn.filterUnchangedSentences(sentenceJson, snapshotLines);
+
+		PAssert.that(output.get(SentenceFingerprintFilterFn.CHANGED_SENTENCE_JSON_TAG))
+				.containsInAnyOrder(CHANGED_JSON, NEW_JSON, NEW_JSON_OTHER_DOC);
+		PAssert.that(output.get(SentenceFingerprintFilterFn.SNAPSHOT_LINE_TAG)).containsInAnyOrder(
+				"PMID:1_s1\t" + unchangedFingerprint, "PMID:1_s2\t" + changedFingerprint, "PMID:2_s3\t" + newFingerprint,
+				"PMID:3_s3\t" + SentenceFingerprintFilterFn.computeFingerprint(NEW_JSON_OTHER_DOC),
+				"PMID:9_s9\tabsent-fingerprint");
+
+		pipeline.run();
+	}
+
+	@Test
+	public void testRepeatedSentence() {
+		// the same sentence occurs twice in a document with different annotations
+		String repeatedJson1 = "{\"id\":\"s4\",\"documentId\":\"PMID:4\",\"annotatedText\":\"(cell)[CL_0000000&_CL]\"}";
+		String repeatedJson2 = "{\"id\":\"s4\",\"documentId\":\"PMID:4\",\"annotatedText\":\"cell\"}";
+		String fingerprint1 = SentenceFingerprintFilterFn.computeFingerprint(repeatedJson1);
+		String fingerprint2 = SentenceFingerprintFilterFn.computeFingerprint(repeatedJson2);
+		String expectedJson = (fingerprint1.compareTo(fingerprint2) < 0) ? repeatedJson1 : repeatedJson2;
+		String expectedFingerprint = (fingerprint1.compareTo(fingerprint2) < 0) ? fingerprint1 : fingerprint2;
+
+		PCollection<String> sentenceJson = pipeline.apply("sentences",
+				Create.of(repeatedJson1, repeatedJson2, repeatedJson1).withCoder(StringUtf8Coder.of()));
+		PCollection<String> snapshotLines = pipeline.apply("snapshot", Create.empty(StringUtf8Coder.of()));
+
+		PCollectionTuple output = SentenceFingerprintFilterFn.filterUnchangedSentences(sentenceJson, snapshotLines);
+
+		// a single document and fingerprint for the Elasticsearch identifier
+		PAssert.that(output.get(SentenceFingerprintFilterFn.CHANGED_SENTENCE_JSON_TAG))
+				.containsInAnyOrder(expectedJson);
+		PAssert.that(output.get(SentenceFingerprintFilterFn.SNAPSHOT_LINE_TAG))
+				.containsInAnyOrder("PMID:4_s4\t" + expectedFingerprint);
+
+		pipeline.run();
+	}
+
+	@Test
+	public void testSelectSentencePerIdRepeatedSentence() {
+		// FULL indexing mode: the same sentence occurs twice in a document with
+		// different annotations
+		String repeatedJson1 = "{\"id\":\"s4\",\"documentId\":\"PMID:4\",\"annotatedText\":\"(cell)[CL_0000000&_CL]\"}";
+		String repeatedJson2 = "{\"id\":\"s4\",\"documentId\":\"PMID:4\",\"annotatedText\":\"cell\"}";
+		String fingerprint1 = SentenceFingerprintFilterFn.computeFingerprint(repeatedJson1);
+		String fingerprint2 = SentenceFingerprintFilterFn.computeFingerprint(repeatedJson2);
+		String expectedJson = (fingerprint1.compareTo(fingerprint2) < 0) ? repeatedJson1 : repeatedJson2;
+
+		PCollection<String> sentenceJson = pipeline.apply("sentences",
+				Create.of(repeatedJson1, repeatedJson2, repeatedJson1, NEW_JSON, NEW_JSON_OTHER_DOC)
+						.withCoder(StringUtf8Coder.of()));
+
+		// the same version of the repeated sentence that is loaded in INCREMENTAL
+		// mode (see testRepeatedSentence)
+		PAssert.that(SentenceFingerprintFilterFn.selectSentencePerId(sentenceJson)).containsInAnyOrder(expectedJson,
+				NEW_JSON, NEW_JSON_OTHER_DOC);
+
+		pipeline.run();
+	}
+
+}
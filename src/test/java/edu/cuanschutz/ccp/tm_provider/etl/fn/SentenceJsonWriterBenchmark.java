@@ -0,0 +1,109 @@
+package edu.cuanschutz.ccp.tm_provider.etl.fn;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cuanschutz.ccp.tm_provider.etl.fn.ElasticsearchDocumentCreatorFn.Sentence;
+import edu.ucdenver.ccp.common.file.CharacterEncoding;
+import edu.ucdenver.ccp.common.io.ClassPathUtil;
+
+/**
+ * Compares serializing Elasticsearch sentence documents with a new Gson
+ * instance per sentence followed by URL-encoding (the previous behavior of
+ * {@link ElasticsearchDocumentCreatorFn}, see {@link GsonSentenceJsonWriter})
+ * to serializing with a reused {@link SentenceJsonWriter}. The sentences are
+ * taken from a sample of Medline abstracts and marked up with concept
+ * identifiers in the annotated text format. The setup verifies that both
+ * serializers produce the same bytes for every sentence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SentenceJsonWriterBenchmark {
+
+	private static final String[] SAMPLE_FILES = { "PMID31000267.txt", "PMID31040849.txt", "PMID31839728.txt",
+			"PMID31839729.txt" };
+
+	private List<Sentence> sentences;
+	private SentenceJsonWriter writer;
+
+	@Setup
+	public void setup() throws IOException {
+		sentences = new ArrayList<Sentence>();
+		for (String file : SAMPLE_FILES) {
+			String document = ClassPathUtil.getContentsFromClasspathResource(SentenceJsonWriterBenchmark.class, file,
+					CharacterEncoding.UTF_8);
+			for (String sentenceText : document.split("(?<=\\.)\\s+")) {
+				sentences.add(new Sentence(ElasticsearchDocumentCreatorFn.computeSentenceIdentifier(sentenceText),
+						"PMID:" + file.substring(4, file.indexOf('.')), markUp(sentenceText)));
+			}
+		}
+
+		writer = new SentenceJsonWriter();
+		for (Sentence sentence : sentences) {
+			byte[] expected = GsonSentenceJsonWriter.toJson(sentence).getBytes(StandardCharsets.UTF_8);
+			byte[] observed = writer.toJson(sentence).getBytes(StandardCharsets.UTF_8);
+			if (!Arrays.equals(expected, observed)) {
+				throw new IllegalStateException("Serialized sentences differ for sentence: " + sentence.getId());
+			}
+		}
+	}
+
+	/**
+	 * @param sentenceText
+	 * @return the sentence text with parentheses encoded and every fifth token
+	 *         marked up as a concept, e.g. (protein)[PR_000000001&_PR]
+	 */
+	private static String markUp(String sentenceText) {
+		String[] tokens = sentenceText.replace("(", "%28").replace(")", "%29").split(" ");
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < tokens.length; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			if (i % 5 == 0) {
+				sb.append(String.format("(%s)[CHEBI_%d&PR_%09d&_CHEBI&_PR]", tokens[i], i, i));
+			} else {
+				sb.append(tokens[i]);
+			}
+		}
+		return sb.toString();
+	}
+
+	@Benchmark
+	public int gsonPerSentence() {
+		int length = 0;
+		for (Sentence sentence : sentences) {
+			length += GsonSentenceJsonWriter.toJson(sentence).length();
+		}
+		return length;
+	}
+
+	@Benchmark
+	public int sentenceJsonWriter() {
+		int length = 0;
+		for (Sentence sentence : sentences) {
+			length += writer.toJson(sentence).length();
+		}
+		return length;
+	}
+
+}
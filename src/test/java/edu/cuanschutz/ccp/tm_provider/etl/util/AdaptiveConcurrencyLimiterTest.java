@@ -0,0 +1,53 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+	@Test
+	public void testAdditiveIncreaseMultiplicativeDecrease() throws InterruptedException {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 4, 100);
+
+		// the limit increases by one after a limit's worth of fast successes
+		succeed(limiter, 1);
+		assertEquals(2, limiter.getLimit());
+		succeed(limiter, 2);
+		assertEquals(3, limiter.getLimit());
+		succeed(limiter, 3);
+		assertEquals(4, limiter.getLimit());
+		// but never exceeds the max
+		succeed(limiter, 10);
+		assertEquals(4, limiter.getLimit());
+
+		// the limit is halved on error
+		limiter.acquire();
+		limiter.release(10, false);
+		assertEquals(2, limiter.getLimit());
+
+		// and on slow requests
+		limiter.acquire();
+		limiter.release(500, true);
+		assertEquals(1, limiter.getLimit());
+
+		// but never drops below the min
+		limiter.acquire();
+		limiter.release(10, false);
+		assertEquals(1, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLimits() {
+		new AdaptiveConcurrencyLimiter(5, 1, 4, 100);
+	}
+
+	private static void succeed(AdaptiveConcurrencyLimiter limiter, int count) throws InterruptedException {
+		for (int i = 0; i < count; i++) {
+			limiter.acquire();
+			limiter.release(10, true);
+		}
+	}
+
+}
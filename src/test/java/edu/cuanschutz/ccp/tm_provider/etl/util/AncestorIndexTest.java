@@ -0,0 +1,136 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.cuanschutz.ccp.tm_provider.etl.fn.PCollectionUtil.Delimiter;
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.common.file.CharacterEncoding;
+import edu.ucdenver.ccp.common.file.FileWriterUtil;
+
+public class AncestorIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Map<String, Set<String>> getAncestorMap() {
+		Map<String, Set<String>> ancestorMap = new HashMap<String, Set<String>>();
+		ancestorMap.put("GO:3", new HashSet<String>(Arrays.asList("GO:1", "GO:2", " ")));
+		ancestorMap.put("GO:2", new HashSet<String>(Arrays.asList("GO:1")));
+		ancestorMap.put("CL:1", new HashSet<String>(Arrays.asList("CL:0", "BFO:1")));
+		return ancestorMap;
+	}
+
+	@Test
+	public void testIndex() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AncestorIndex.write(getAncestorMap(), out);
+		AncestorIndex index = AncestorIndex.fromBuffer(ByteBuffer.wrap(out.toByteArray()));
+
+		// blank identifiers are excluded
+		assertEquals(6, index.size());
+		assertEquals(-1, index.getIndex("GO:4"));
+		assertEquals("GO:2", index.getConceptId(index.getIndex("GO:2")));
+
+		assertEquals(CollectionsUtil.createSet("GO:1", "GO:2"), new HashSet<String>(index.getAncestorIds("GO:3")));
+		assertEquals(CollectionsUtil.createSet("BFO:1", "CL:0"), new HashSet<String>(index.getAncestorIds("CL:1")));
+		assertEquals(Collections.emptyList(), index.getAncestorIds("GO:1"));
+		assertEquals(Collections.emptyList(), index.getAncestorIds("GO:4"));
+
+		int go1 = index.getIndex("GO:1");
+		int go3 = index.getIndex("GO:3");
+		int cl1 = index.getIndex("CL:1");
+		assertTrue(index.isAncestor(go3, go1));
+		assertFalse(index.isAncestor(go1, go3));
+		assertTrue(index.areAncestors(go1, go3));
+		assertTrue(index.areAncestors(go3, go1));
+		assertFalse(index.areAncestors(go3, cl1));
+		assertFalse(index.areAncestors(go3, -1));
+	}
+
+	@Test
+	public void testMapViews() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AncestorIndex.write(getAncestorMap(), out);
+		AncestorIndex index = AncestorIndex.fromBuffer(ByteBuffer.wrap(out.toByteArray()));
+
+		Map<String, Set<String>> map = index.asMap();
+		// only concepts that were keys of the original map are keys of the view
+		assertTrue(map.containsKey("GO:3"));
+		assertFalse(map.containsKey("GO:1"));
+		assertNull(map.get("GO:1"));
+		assertNull(map.get("GO:4"));
+		assertTrue(map.get("GO:3").contains("GO:2"));
+		assertFalse(map.get("GO:3").contains("CL:0"));
+		assertFalse(map.get("GO:3").contains("GO:4"));
+
+		Map<String, Set<String>> expectedMap = getAncestorMap();
+		expectedMap.get("GO:3").remove(" ");
+		assertEquals(expectedMap, map);
+		assertEquals(expectedMap, new HashMap<String, Set<String>>(map));
+
+		Map<String, String> promotionMap = new HashMap<String, String>();
+		promotionMap.put("PR:2", "PR:1");
+		promotionMap.put("PR:3", "PR:1");
+		out = new ByteArrayOutputStream();
+		AncestorIndex.write(promotionMap.entrySet().stream()
+				.collect(Collectors.toMap(Map.Entry::getKey, e -> Collections.singleton(e.getValue()))), out);
+		index = AncestorIndex.fromBuffer(ByteBuffer.wrap(out.toByteArray()));
+		assertEquals(promotionMap, index.asSingleValueMap());
+		assertNull(index.asSingleValueMap().get("PR:1"));
+	}
+
+	@Test
+	public void testCreateIndexFile() throws IOException {
+		File mappingFile = folder.newFile("ancestors.tsv");
+		FileWriterUtil.printLines(
+				Arrays.asList("GO:3\tGO:1|GO:2", "GO:2\tGO:1", "GO:1\t", "CL:1\tCL:0|BFO:1"), mappingFile,
+				CharacterEncoding.UTF_8);
+		File indexFile = folder.newFile("ancestors.bin");
+		OntologyClassAncestorMapFactory.createIndexFile(mappingFile, indexFile);
+
+		AncestorIndex index = AncestorIndex.load(indexFile.toPath());
+		assertEquals(6, index.size());
+		for (Map.Entry<String, Set<String>> entry : getAncestorMap().entrySet()) {
+			Set<String> expectedAncestors = new HashSet<String>(entry.getValue());
+			expectedAncestors.remove(" ");
+			assertEquals(expectedAncestors, new HashSet<String>(index.getAncestorIds(entry.getKey())));
+		}
+	}
+
+	@Test
+	public void testCreateIndexFileSelfMapping() throws IOException {
+		File mappingFile = folder.newFile("ext-to-obo.tsv");
+		FileWriterUtil.printLines(Arrays.asList("PR:1	PR:1", "PR:EXT:2	PR:2", "PR:3	PR:3|PR:4"), mappingFile,
+				CharacterEncoding.UTF_8);
+		File indexFile = folder.newFile("ext-to-obo.bin");
+		AncestorIndex.createIndexFile(mappingFile, Delimiter.TAB, Delimiter.PIPE, indexFile);
+
+		AncestorIndex index = AncestorIndex.load(indexFile.toPath());
+		assertEquals(Arrays.asList("PR:1"), index.getAncestorIds("PR:1"));
+		assertEquals("PR:1", index.asSingleValueMap().get("PR:1"));
+		assertEquals("PR:2", index.asSingleValueMap().get("PR:EXT:2"));
+		assertTrue(index.asMap().get("PR:1").contains("PR:1"));
+		assertEquals(CollectionsUtil.createSet("PR:3", "PR:4"), index.asMap().get("PR:3"));
+		assertFalse(index.asMap().containsKey("PR:2"));
+	}
+
+}
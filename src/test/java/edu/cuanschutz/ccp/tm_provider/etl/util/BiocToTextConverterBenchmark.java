@@ -0,0 +1,114 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pengyifan.bioc.BioCDocument;
+import com.pengyifan.bioc.BioCPassage;
+import com.pengyifan.bioc.io.BioCDocumentReader;
+
+import edu.cuanschutz.ccp.tm_provider.etl.util.BiocToTextConverter.DocumentTextBuilder;
+import edu.ucdenver.ccp.common.file.CharacterEncoding;
+import edu.ucdenver.ccp.common.io.ClassPathUtil;
+import edu.ucdenver.ccp.file.conversion.TextDocument;
+
+/**
+ * Measures the throughput of {@link BiocToTextConverter#convert(InputStreamReader)}
+ * on sample PMC BioC files, and compares the passage offset alignment used by
+ * the converter ({@link DocumentTextBuilder}) to the implementation it replaced,
+ * which padded the text one space at a time, re-encoding the accumulated text
+ * after each space, and appended each passage by String concatenation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BiocToTextConverterBenchmark {
+
+	@Param({ "PMC1790863.xml", "PMC7500000.xml", "PMC1069648.xml" })
+	private String biocFile;
+
+	private String bioc;
+	private List<Integer> passageOffsets;
+	private List<String> passageTexts;
+
+	@Setup
+	public void setup() throws IOException, XMLStreamException {
+		bioc = ClassPathUtil.getContentsFromClasspathResource(getClass(), biocFile, CharacterEncoding.UTF_8);
+		passageOffsets = new ArrayList<Integer>();
+		passageTexts = new ArrayList<String>();
+		try (BioCDocumentReader reader = new BioCDocumentReader(new StringReader(bioc),
+				BiocToTextConverter.getBioCXmlResolver())) {
+			reader.readCollectionInfo();
+			BioCDocument doc;
+			while ((doc = reader.readDocument()) != null) {
+				for (BioCPassage passage : doc.getPassages()) {
+					if (passage.getText().isPresent()) {
+						passageOffsets.add(passage.getOffset());
+						passageTexts.add(passage.getText().get());
+					}
+				}
+			}
+		}
+		if (!concatenationAlignment().equals(builderAlignment())) {
+			throw new IllegalStateException("Aligned text differs for " + biocFile);
+		}
+	}
+
+	@Benchmark
+	public Map<String, TextDocument> convert() throws IOException, XMLStreamException {
+		return BiocToTextConverter
+				.convert(new InputStreamReader(ClassPathUtil.getResourceStreamFromClasspath(getClass(), biocFile),
+						StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public String concatenationAlignment() {
+		String text = "";
+		for (int i = 0; i < passageOffsets.size(); i++) {
+			int byteCount = text.getBytes(StandardCharsets.UTF_8).length;
+			while (passageOffsets.get(i) > byteCount) {
+				text += " ";
+				byteCount = text.getBytes(StandardCharsets.UTF_8).length;
+			}
+			text += (((!text.isEmpty()) ? "\n" : "") + passageTexts.get(i));
+		}
+		return text;
+	}
+
+	@Benchmark
+	public String builderAlignment() {
+		DocumentTextBuilder text = new DocumentTextBuilder();
+		for (int i = 0; i < passageOffsets.size(); i++) {
+			text.appendSpaces((int) Math.max(0, passageOffsets.get(i) - text.getByteCount()));
+			if (text.length() > 0) {
+				text.append("\n");
+			}
+			text.append(passageTexts.get(i));
+		}
+		return text.toString();
+	}
+
+}
@@ -8,6 +8,9 @@ import static org.junit.Assert.assertTrue;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.stream.FactoryConfigurationError;
@@ -113,6 +116,29 @@ public class BiocToTextConverterTest {
 		}
 	}
 
+	@Test
+	public void testConvertStreamsEachDocument() throws FactoryConfigurationError, XMLStreamException, IOException {
+		String biocXml = ClassPathUtil.getContentsFromClasspathResource(getClass(), "PMC1790863.xml",
+				CharacterEncoding.UTF_8);
+		// a collection containing the same document twice, under different ids
+		String document = biocXml.substring(biocXml.indexOf("<document>"), biocXml.indexOf("</document>") + 11);
+		String collection = biocXml.replace(document, document + document.replace("<id>1790863</id>", "<id>1</id>"));
+
+		String expectedText = ClassPathUtil.getContentsFromClasspathResource(getClass(), "PMC1790863.txt",
+				CharacterEncoding.UTF_8);
+
+		List<TextDocument> documents = new ArrayList<TextDocument>();
+		convert(new StringReader(collection), documents::add);
+
+		assertEquals(2, documents.size());
+		assertEquals("PMC1790863", documents.get(0).getSourceid());
+		assertEquals("PMC1", documents.get(1).getSourceid());
+		// the offsets of each document are relative to its own start
+		assertEquals(expectedText, documents.get(0).getText());
+		assertEquals(expectedText, documents.get(1).getText());
+		assertEquals(132, documents.get(1).getAnnotations().size());
+	}
+
 	@Test(expected = WstxUnexpectedCharException.class)
 	public void testConvert_invalidXml() throws FactoryConfigurationError, XMLStreamException, IOException {
 		InputStream sampleDocStream = ClassPathUtil.getResourceStreamFromClasspath(getClass(),
@@ -0,0 +1,70 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cuanschutz.ccp.tm_provider.etl.PipelineMain;
+import edu.ucdenver.ccp.common.file.CharacterEncoding;
+
+/**
+ * Compares {@link ContentChunkUtil#chunk(String, int)} to the
+ * encoder-based implementation it replaced in
+ * {@link PipelineMain#chunkContent(String)}. Document sizes cover the common
+ * case (a Medline abstract that does not require chunking) and full-text
+ * documents that span multiple chunks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentChunkUtilBenchmark {
+
+	@Param({ "2000", "200000", "3000000" })
+	private int documentLength;
+
+	private String document;
+
+	@Setup
+	public void setup() {
+		String sentence = "Expression of the β-catenin gene was increased 2.5‑fold in CD4⁺ T cells. ";
+		StringBuilder sb = new StringBuilder(documentLength + sentence.length());
+		while (sb.length() < documentLength) {
+			sb.append(sentence);
+		}
+		document = sb.toString();
+	}
+
+	@Benchmark
+	public List<String> encoderBasedChunking() throws UnsupportedEncodingException {
+		List<String> chunks;
+		if (document.getBytes("UTF-8").length < DatastoreConstants.MAX_STRING_STORAGE_SIZE_IN_BYTES) {
+			chunks = Collections.singletonList(document);
+		} else {
+			chunks = PipelineMain.splitStringByByteLength(document, CharacterEncoding.UTF_8,
+					DatastoreConstants.MAX_STRING_STORAGE_SIZE_IN_BYTES);
+		}
+		return chunks;
+	}
+
+	@Benchmark
+	public List<String> singlePassChunking() {
+		return ContentChunkUtil.chunk(document, DatastoreConstants.MAX_STRING_STORAGE_SIZE_IN_BYTES);
+	}
+
+}
@@ -0,0 +1,82 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.cuanschutz.ccp.tm_provider.etl.PipelineMain;
+import edu.ucdenver.ccp.common.file.CharacterEncoding;
+
+public class ContentChunkUtilTest {
+
+	@Test
+	public void testUtf8Length() {
+		assertEquals(0, ContentChunkUtil.utf8Length(""));
+		assertEquals(3, ContentChunkUtil.utf8Length("abc"));
+		String s = "aéƐ中😀";
+		assertEquals(s.getBytes(StandardCharsets.UTF_8).length, ContentChunkUtil.utf8Length(s));
+		// unpaired surrogates are replaced by a single byte when encoded
+		String unpaired = "a\ud83d";
+		assertEquals(unpaired.getBytes(StandardCharsets.UTF_8).length, ContentChunkUtil.utf8Length(unpaired));
+	}
+
+	@Test
+	public void testChunkNoSplit() {
+		String s = "abcdef";
+		List<String> chunks = ContentChunkUtil.chunk(s, 6);
+		assertEquals(1, chunks.size());
+		assertSame("no copy should be made if the input is not split", s, chunks.get(0));
+
+		assertEquals(Arrays.asList(""), ContentChunkUtil.chunk("", 6));
+	}
+
+	@Test
+	public void testChunkDoesNotSplitSurrogatePair() {
+		// the emoji requires 4 bytes so it cannot be split across chunks
+		String s = "abc😀";
+		assertEquals(Arrays.asList("abc", "😀"), ContentChunkUtil.chunk(s, 5));
+		assertEquals(Arrays.asList("ab", "cé"), ContentChunkUtil.chunk("abcé", 3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testChunkMaxBytesTooSmall() {
+		ContentChunkUtil.chunk("abc", 3);
+	}
+
+	/**
+	 * Compare chunking to the encoder-based implementation it replaced
+	 */
+	@Test
+	public void testChunkMatchesSplitStringByByteLength() {
+		String alphabet = "ab éƐ中";
+		Random random = new Random(1);
+		for (int trial = 0; trial < 1000; trial++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(200);
+			for (int i = 0; i < length; i++) {
+				if (random.nextInt(8) == 0) {
+					sb.append("😀");
+				} else {
+					sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+				}
+			}
+			String s = sb.toString();
+			int maxBytes = 4 + random.nextInt(40);
+
+			List<String> expectedChunks = PipelineMain.splitStringByByteLength(s, CharacterEncoding.UTF_8, maxBytes);
+			List<String> chunks = ContentChunkUtil.chunk(s, maxBytes);
+			assertEquals(expectedChunks, chunks);
+			for (String chunk : chunks) {
+				assertTrue(chunk.getBytes(StandardCharsets.UTF_8).length <= maxBytes);
+			}
+		}
+	}
+
+}
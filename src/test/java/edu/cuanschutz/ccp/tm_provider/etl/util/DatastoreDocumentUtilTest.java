@@ -0,0 +1,108 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import static edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreConstants.DOCUMENT_PROPERTY_CHUNK_TOTAL;
+import static edu.cuanschutz.ccp.tm_provider.etl.util.DatastoreConstants.DOCUMENT_PROPERTY_CONTENT;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+
+public class DatastoreDocumentUtilTest {
+
+	private static final DocumentCriteria TEXT_CRITERIA = new DocumentCriteria(DocumentType.TEXT, DocumentFormat.TEXT,
+			PipelineKey.MEDLINE_XML_TO_TEXT, "0.1.0");
+	private static final DocumentCriteria CONCEPT_CRITERIA = new DocumentCriteria(DocumentType.CONCEPT_ALL,
+			DocumentFormat.BIONLP, PipelineKey.CONCEPT_POST_PROCESS, "0.1.0");
+
+	private Datastore datastore;
+	private DatastoreDocumentUtil util;
+	private Map<Key, Entity> storedEntities;
+
+	@Before
+	public void setUp() {
+		datastore = mock(Datastore.class);
+		when(datastore.newKeyFactory()).thenAnswer(invocation -> new KeyFactory("test-project"));
+		storedEntities = new HashMap<Key, Entity>();
+		when(datastore.fetch(any(Iterable.class))).thenAnswer(invocation -> {
+			List<Entity> entities = new ArrayList<Entity>();
+			for (Object key : (Iterable<?>) invocation.getArgument(0)) {
+				entities.add(storedEntities.get(key));
+			}
+			return entities;
+		});
+		util = new DatastoreDocumentUtil(datastore);
+	}
+
+	private void store(String docId, DocumentCriteria dc, int chunkIndex, String content, Long chunkTotal) {
+		Key key = util.createDocumentKey(docId, dc, chunkIndex);
+		Entity.Builder builder = Entity.newBuilder(key).set(DOCUMENT_PROPERTY_CONTENT,
+				Blob.copyFrom(content.getBytes(StandardCharsets.UTF_8)));
+		if (chunkTotal != null) {
+			builder.set(DOCUMENT_PROPERTY_CHUNK_TOTAL, chunkTotal);
+		}
+		storedEntities.put(key, builder.build());
+	}
+
+	@Test
+	public void testGetDocumentTypeToContent() {
+		// PMID:1 has a text document in 3 chunks and a single chunk concept document
+		store("PMID:1", TEXT_CRITERIA, 0, "The ", 3l);
+		store("PMID:1", TEXT_CRITERIA, 1, "quick ", 3l);
+		store("PMID:1", TEXT_CRITERIA, 2, "fox.", 3l);
+		store("PMID:1", CONCEPT_CRITERIA, 0, "T1\tCL:0000000 0 3\tThe", 1l);
+		// PMID:2 was stored without chunk totals and has no concept document
+		store("PMID:2", TEXT_CRITERIA, 0, "Old ", null);
+		store("PMID:2", TEXT_CRITERIA, 1, "document.", null);
+		// PMID:3 is missing its 2nd chunk
+		store("PMID:3", TEXT_CRITERIA, 0, "Truncated ", 3l);
+		store("PMID:3", TEXT_CRITERIA, 2, "document.", 3l);
+
+		Map<String, Map<DocumentType, String>> docIdToTypeToContentMap = util
+				.getDocumentTypeToContent(Arrays.asList("PMID:1", "PMID:2", "PMID:3"),
+						Arrays.asList(TEXT_CRITERIA, CONCEPT_CRITERIA));
+
+		Map<String, Map<DocumentType, String>> expected = new HashMap<String, Map<DocumentType, String>>();
+		expected.put("PMID:1", map("The quick fox.", "T1\tCL:0000000 0 3\tThe"));
+		expected.put("PMID:2", map("Old document.", ""));
+		expected.put("PMID:3", map("Truncated ", ""));
+		assertEquals(expected, docIdToTypeToContentMap);
+
+		// one lookup for the first chunks and one for the remaining chunks
+		verify(datastore, times(2)).fetch(any(Iterable.class));
+	}
+
+	@Test
+	public void testGetDocumentTypeToContentSingleDocument() {
+		store("PMID:1", TEXT_CRITERIA, 0, "The ", 2l);
+		store("PMID:1", TEXT_CRITERIA, 1, "fox.", 2l);
+
+		assertEquals(map("The fox.", ""),
+				util.getDocumentTypeToContent("PMID:1", Arrays.asList(TEXT_CRITERIA, CONCEPT_CRITERIA)));
+	}
+
+	private static Map<DocumentType, String> map(String text, String concepts) {
+		Map<DocumentType, String> map = new HashMap<DocumentType, String>();
+		map.put(DocumentType.TEXT, text);
+		map.put(DocumentType.CONCEPT_ALL, concepts);
+		return map;
+	}
+
+}
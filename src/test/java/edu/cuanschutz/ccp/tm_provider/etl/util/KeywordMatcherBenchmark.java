@@ -0,0 +1,97 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ucdenver.ccp.common.string.RegExPatterns;
+
+/**
+ * Compares {@link KeywordMatcher} to the per-keyword regular expression
+ * matching it replaced in SentenceExtractionFn. Each invocation searches a set
+ * of sentences for the keywords; most sentences do not contain a keyword,
+ * which is the worst case for the regex approach.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeywordMatcherBenchmark {
+
+	private static final String[] SENTENCES = {
+			"Aldehyde dehydrogenase 1 (ALDH1) has been shown to protect against Parkinson's disease (PD) by reducing toxic metabolites of dopamine.",
+			"The function of aldehyde dehydrogenase 1A3 (ALDH1A3) in invasion was assessed by performing transwell assays and animal experiments.",
+			"Expression of the beta-catenin gene was measured in CD4+ T cells isolated from 25 patients.",
+			"Knockdown of TP53 markedly inhibits proliferation of the HCT116 cell line.",
+			"Samples were stored at -80 degrees until analysis." };
+
+	@Param({ "10", "100", "500" })
+	private int keywordCount;
+
+	private Set<String> keywords;
+	private KeywordMatcher matcher;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(12345);
+		keywords = new LinkedHashSet<String>();
+		// include a trigger word that appears in one of the sentences
+		keywords.add("inhibits");
+		while (keywords.size() < keywordCount) {
+			StringBuilder sb = new StringBuilder();
+			int length = 5 + random.nextInt(8);
+			for (int i = 0; i < length; i++) {
+				sb.append((char) ('a' + random.nextInt(26)));
+			}
+			keywords.add(sb.toString());
+		}
+		matcher = new KeywordMatcher(keywords);
+	}
+
+	@Benchmark
+	public List<String> regexPerKeyword() {
+		List<String> found = new ArrayList<String>();
+		for (String sentence : SENTENCES) {
+			for (String keyword : keywords) {
+				Pattern p = Pattern.compile(String.format("\\b%s\\b", RegExPatterns.escapeCharacterForRegEx(keyword)),
+						Pattern.CASE_INSENSITIVE);
+				if (p.matcher(sentence).find()) {
+					found.add(keyword);
+					break;
+				}
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	public List<String> keywordMatcher() {
+		List<String> found = new ArrayList<String>();
+		for (String sentence : SENTENCES) {
+			String keyword = matcher.findKeyword(sentence);
+			if (keyword != null) {
+				found.add(keyword);
+			}
+		}
+		return found;
+	}
+
+}
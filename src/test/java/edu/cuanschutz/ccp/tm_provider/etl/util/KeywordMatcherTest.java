@@ -0,0 +1,95 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import edu.ucdenver.ccp.common.string.RegExPatterns;
+
+public class KeywordMatcherTest {
+
+	/**
+	 * The regular expression matching that {@link KeywordMatcher} replaced in
+	 * SentenceExtractionFn
+	 */
+	private static String findKeywordWithRegex(String sentence, Collection<String> keywords) {
+		for (String keyword : keywords) {
+			Pattern p = Pattern.compile(String.format("\\b%s\\b", RegExPatterns.escapeCharacterForRegEx(keyword)),
+					Pattern.CASE_INSENSITIVE);
+			if (p.matcher(sentence).find()) {
+				return keyword;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testFindKeyword() {
+		KeywordMatcher matcher = new KeywordMatcher(Arrays.asList("increasing", "DECREasing", "rate"));
+		assertEquals("DECREasing", matcher.findKeyword("This sentence discusses decreasing rates."));
+		// keywords earlier in the list are preferred
+		assertEquals("increasing", matcher.findKeyword("Decreasing, then increasing."));
+		// keywords must match whole words
+		assertNull(matcher.findKeyword("The rates were unchanged."));
+		assertEquals("rate", matcher.findKeyword("The rate was unchanged."));
+
+		assertTrue(new KeywordMatcher(Collections.<String>emptyList()).isEmpty());
+		assertNull(new KeywordMatcher(Collections.<String>emptyList()).findKeyword("rate"));
+	}
+
+	@Test
+	public void testOverlappingKeywords() {
+		// keywords that are suffixes or infixes of other keywords
+		KeywordMatcher matcher = new KeywordMatcher(Arrays.asList("she sells", "he", "sells sea", "hers"));
+		assertEquals("she sells", matcher.findKeyword("ushers: she sells sea shells"));
+		assertEquals("he", matcher.findKeyword("ushers, he sells sea shells"));
+		assertEquals("sells sea", matcher.findKeyword("ushers sells sea shells"));
+		assertNull(matcher.findKeyword("ushers"));
+	}
+
+	@Test
+	public void testKeywordsWithPunctuation() {
+		KeywordMatcher matcher = new KeywordMatcher(Arrays.asList("up-regulates", "(+)", "IL-2"));
+		assertEquals("up-regulates", matcher.findKeyword("X Up-Regulates Y"));
+		// \b requires a word character next to a keyword that starts or ends with
+		// punctuation
+		assertNull(matcher.findKeyword("the (+) strand"));
+		assertEquals("IL-2", matcher.findKeyword("il-2 expression"));
+		assertNull(matcher.findKeyword("IL-21 expression"));
+	}
+
+	@Test
+	public void testEquivalentToRegex() {
+		Random random = new Random(12345);
+		String alphabet = "abcAB -_.,()1éÉ";
+		for (int i = 0; i < 5000; i++) {
+			List<String> keywords = new ArrayList<String>();
+			int keywordCount = 1 + random.nextInt(6);
+			for (int j = 0; j < keywordCount; j++) {
+				keywords.add(randomString(random, alphabet, 1 + random.nextInt(4)));
+			}
+			String sentence = randomString(random, alphabet, random.nextInt(40));
+			assertEquals(keywords + " -- " + sentence, findKeywordWithRegex(sentence, keywords),
+					new KeywordMatcher(keywords).findKeyword(sentence));
+		}
+	}
+
+	private static String randomString(Random random, String alphabet, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,126 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import static com.google.datastore.v1.client.DatastoreHelper.makeAndFilter;
+import static com.google.datastore.v1.client.DatastoreHelper.makeFilter;
+import static com.google.datastore.v1.client.DatastoreHelper.makeValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.values.PCollection;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.datastore.v1.Entity;
+import com.google.datastore.v1.PropertyFilter;
+import com.google.datastore.v1.Query;
+import com.google.datastore.v1.Value;
+
+public class LocalDocumentStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Rule
+	public final transient TestPipeline pipeline = TestPipeline.create();
+
+	private static Entity createStatusEntity(String documentId, boolean textDone, String... collectionNames) {
+		Entity.Builder builder = Entity.newBuilder().setKey(DatastoreKeyUtil.createStatusKey(documentId));
+		builder.putProperties(DatastoreConstants.STATUS_PROPERTY_DOCUMENT_ID, makeValue(documentId).build());
+		builder.putProperties(DatastoreConstants.STATUS_PROPERTY_TEXT_DONE, makeValue(textDone).build());
+		List<Value> collections = new ArrayList<Value>();
+		for (String collectionName : collectionNames) {
+			collections.add(makeValue(collectionName).build());
+		}
+		builder.putProperties(DatastoreConstants.STATUS_PROPERTY_COLLECTIONS, makeValue(collections).build());
+		return builder.build();
+	}
+
+	private static Query createStatusQuery(String collection) {
+		Query.Builder query = Query.newBuilder();
+		query.addKindBuilder().setName(DatastoreConstants.STATUS_KIND);
+		query.setFilter(makeAndFilter(
+				makeFilter(DatastoreConstants.STATUS_PROPERTY_TEXT_DONE, PropertyFilter.Operator.EQUAL,
+						makeValue(true)).build(),
+				makeFilter(DatastoreConstants.STATUS_PROPERTY_COLLECTIONS, PropertyFilter.Operator.EQUAL,
+						makeValue(collection)).build()));
+		return query.build();
+	}
+
+	@Test
+	public void testToStoreKey() {
+		DocumentCriteria dc = new DocumentCriteria(DocumentType.TEXT, DocumentFormat.TEXT,
+				PipelineKey.MEDLINE_XML_TO_TEXT, "0.1.0");
+		assertEquals("status/PMID:1.status", LocalDocumentStore.toStoreKey(DatastoreKeyUtil.createStatusKey("PMID:1")));
+		assertEquals("document/PMID:1.status/PMID:1.0.text.text.medline_xml_to_text.0.1.0",
+				LocalDocumentStore.toStoreKey(DatastoreKeyUtil.createDocumentKey("PMID:1", 0L, dc)));
+	}
+
+	@Test
+	public void testMatchesAndProject() {
+		Query query = createStatusQuery("PUBMED");
+		assertTrue(LocalDocumentStore.matches(query, createStatusEntity("PMID:1", true, "PUBMED", "CORD19")));
+		assertFalse(LocalDocumentStore.matches(query, createStatusEntity("PMID:2", false, "PUBMED")));
+		assertFalse(LocalDocumentStore.matches(query, createStatusEntity("PMID:3", true, "CORD19")));
+		assertTrue(LocalDocumentStore.matches(Query.getDefaultInstance(), createStatusEntity("PMID:3", false)));
+
+		Entity entity = createStatusEntity("PMID:1", true, "PUBMED");
+		assertEquals(entity, LocalDocumentStore.project(query, entity));
+		Query.Builder keysOnlyQuery = query.toBuilder();
+		keysOnlyQuery.addProjectionBuilder().getPropertyBuilder().setName("__key__");
+		Entity keyEntity = LocalDocumentStore.project(keysOnlyQuery.build(), entity);
+		assertEquals(entity.getKey(), keyEntity.getKey());
+		assertEquals(0, keyEntity.getPropertiesCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedFilter() {
+		Query.Builder query = Query.newBuilder();
+		query.addKindBuilder().setName(DatastoreConstants.STATUS_KIND);
+		query.setFilter(makeFilter(DatastoreConstants.STATUS_PROPERTY_YEAR_PUBLISHED,
+				PropertyFilter.Operator.GREATER_THAN, makeValue("2000")));
+		LocalDocumentStore.matches(query.build(), createStatusEntity("PMID:1", true));
+	}
+
+	@Test
+	public void testWrite() throws IOException {
+		File directory = folder.newFolder();
+		Entity entity1 = createStatusEntity("PMID:1", true, "PUBMED");
+		Entity entity2 = createStatusEntity("PMID:2", false, "PUBMED");
+
+		pipeline.apply(Create.of(entity1, entity2)).apply(new LocalDocumentStore(directory.getPath()).write());
+		pipeline.run().waitUntilFinish();
+
+		LocalKeyValueStore store = LocalKeyValueStore.getSharedInstance(directory.getPath());
+		assertEquals(2, store.size());
+		assertEquals(entity1, Entity.parseFrom(store.get("status/PMID:1.status")));
+		assertEquals(entity2, Entity.parseFrom(store.get("status/PMID:2.status")));
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		File directory = folder.newFolder();
+		Entity entity1 = createStatusEntity("PMID:1", true, "PUBMED");
+		Entity entity2 = createStatusEntity("PMID:2", false, "PUBMED");
+		Entity entity3 = createStatusEntity("PMID:3", true, "PUBMED", "CORD19");
+		LocalKeyValueStore store = LocalKeyValueStore.getSharedInstance(directory.getPath());
+		for (Entity entity : new Entity[] { entity1, entity2, entity3 }) {
+			store.put(LocalDocumentStore.toStoreKey(entity.getKey()), entity.toByteArray());
+		}
+
+		PCollection<Entity> entities = pipeline
+				.apply(new LocalDocumentStore(directory.getPath()).read(createStatusQuery("PUBMED")));
+		PAssert.that(entities).containsInAnyOrder(entity1, entity3);
+		pipeline.run();
+	}
+
+}
@@ -0,0 +1,76 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LocalKeyValueStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testPutAndGet() throws IOException {
+		File directory = folder.newFolder();
+		try (LocalKeyValueStore store = new LocalKeyValueStore(directory)) {
+			store.put("status/PMID:2.status", bytes("status 2"));
+			store.put("status/PMID:1.status", bytes("status 1"));
+			store.put("document/PMID:1.status/PMID:1.0.text", bytes("text 1"));
+			store.put("status/PMID:1.status", bytes("status 1 updated"));
+
+			assertEquals(3, store.size());
+			assertArrayEquals(bytes("status 1 updated"), store.get("status/PMID:1.status"));
+			assertArrayEquals(bytes("text 1"), store.get("document/PMID:1.status/PMID:1.0.text"));
+			assertNull(store.get("status/PMID:3.status"));
+			assertEquals(Arrays.asList("status/PMID:1.status", "status/PMID:2.status"), store.getKeys("status/"));
+		}
+
+		// the index is rebuilt from the log when the store is reopened
+		try (LocalKeyValueStore store = new LocalKeyValueStore(directory)) {
+			assertEquals(3, store.size());
+			assertArrayEquals(bytes("status 1 updated"), store.get("status/PMID:1.status"));
+			assertArrayEquals(bytes("status 2"), store.get("status/PMID:2.status"));
+		}
+	}
+
+	@Test
+	public void testPartialRecordIsDiscarded() throws IOException {
+		File directory = folder.newFolder();
+		try (LocalKeyValueStore store = new LocalKeyValueStore(directory)) {
+			store.put("status/PMID:1.status", bytes("status 1"));
+			store.put("status/PMID:2.status", bytes("status 2"));
+		}
+
+		// simulate a process that was killed while writing the last record
+		File logFile = new File(directory, "store.log");
+		try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+			raf.setLength(raf.length() - 3);
+		}
+
+		try (LocalKeyValueStore store = new LocalKeyValueStore(directory)) {
+			assertEquals(1, store.size());
+			assertArrayEquals(bytes("status 1"), store.get("status/PMID:1.status"));
+			store.put("status/PMID:3.status", bytes("status 3"));
+		}
+
+		try (LocalKeyValueStore store = new LocalKeyValueStore(directory)) {
+			assertEquals(Arrays.asList("status/PMID:1.status", "status/PMID:3.status"), store.getKeys("status/"));
+			assertArrayEquals(bytes("status 3"), store.get("status/PMID:3.status"));
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.medline.PubmedArticle;
+import org.medline.PubmedArticleSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cuanschutz.ccp.tm_provider.etl.fn.MedlineXmlToTextFnTest;
+import edu.ucdenver.ccp.common.io.ClassPathUtil;
+
+/**
+ * Compares the throughput of reading the sample Medline XML files with
+ * {@link MedlineXmlReader}, which extracts only the fields used by the Medline
+ * pipelines, to unmarshalling the complete JAXB-bound PubmedArticle records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MedlineXmlReaderBenchmark {
+
+	@Param({ MedlineXmlToTextFnTest.SAMPLE_PUBMED20N0001_XML_GZ, MedlineXmlToTextFnTest.SAMPLE_PUBMED_XML_GZ,
+			MedlineXmlToTextFnTest.SAMPLE_SUPERSCRIPT_PUBMED_XML_GZ })
+	private String medlineFile;
+
+	private JAXBContext jaxbContext;
+	private XMLInputFactory xif;
+
+	@Setup
+	public void setup() throws JAXBException {
+		jaxbContext = JAXBContext.newInstance(PubmedArticleSet.class);
+		xif = XMLInputFactory.newInstance();
+		xif.setXMLResolver((publicID, systemID, baseURI, namespace) -> Thread.currentThread()
+				.getContextClassLoader().getResourceAsStream("pubmed/pubmed_190101.dtd"));
+	}
+
+	@Benchmark
+	public List<PubmedArticle> jaxb() throws IOException, JAXBException, XMLStreamException {
+		List<PubmedArticle> articles = new ArrayList<PubmedArticle>();
+		try (InputStream is = new GZIPInputStream(
+				ClassPathUtil.getResourceStreamFromClasspath(MedlineXmlToTextFnTest.class, medlineFile))) {
+			PubmedArticleSet articleSet = (PubmedArticleSet) jaxbContext.createUnmarshaller()
+					.unmarshal(xif.createXMLStreamReader(is));
+			for (Object article : articleSet.getPubmedArticleOrPubmedBookArticle()) {
+				if (article instanceof PubmedArticle) {
+					articles.add((PubmedArticle) article);
+				}
+			}
+		}
+		return articles;
+	}
+
+	@Benchmark
+	public List<MedlineRecord> medlineXmlReader() throws IOException, XMLStreamException {
+		List<MedlineRecord> records = new ArrayList<MedlineRecord>();
+		try (MedlineXmlReader reader = new MedlineXmlReader(new InputStreamReader(
+				new GZIPInputStream(
+						ClassPathUtil.getResourceStreamFromClasspath(MedlineXmlToTextFnTest.class, medlineFile)),
+				StandardCharsets.UTF_8))) {
+			MedlineRecord record;
+			while ((record = reader.readRecord()) != null) {
+				records.add(record);
+			}
+		}
+		return records;
+	}
+
+}
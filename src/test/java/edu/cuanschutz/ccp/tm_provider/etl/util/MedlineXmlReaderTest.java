@@ -0,0 +1,74 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+import org.medline.PubmedArticle;
+
+import edu.cuanschutz.ccp.tm_provider.etl.fn.MedlineXmlToTextFn;
+import edu.cuanschutz.ccp.tm_provider.etl.fn.MedlineXmlToTextFnTest;
+import edu.ucdenver.ccp.common.io.ClassPathUtil;
+
+public class MedlineXmlReaderTest {
+
+	@Test
+	public void testReadRecordsMatchesJaxb() throws IOException, JAXBException, XMLStreamException {
+		for (String filename : Arrays.asList(MedlineXmlToTextFnTest.SAMPLE_PUBMED20N0001_XML_GZ,
+				MedlineXmlToTextFnTest.SAMPLE_PUBMED_XML_GZ, MedlineXmlToTextFnTest.SAMPLE_SUPERSCRIPT_PUBMED_XML_GZ)) {
+			List<MedlineRecord> expectedRecords = new ArrayList<MedlineRecord>();
+			for (PubmedArticle article : MedlineXmlToTextFnTest.getSamplePubmedArticles(filename)) {
+				expectedRecords.add(MedlineXmlToTextFn.toMedlineRecord(article));
+			}
+
+			List<MedlineRecord> records = new ArrayList<MedlineRecord>();
+			try (MedlineXmlReader reader = new MedlineXmlReader(new InputStreamReader(
+					new GZIPInputStream(
+							ClassPathUtil.getResourceStreamFromClasspath(MedlineXmlToTextFnTest.class, filename)),
+					StandardCharsets.UTF_8))) {
+				MedlineRecord record;
+				while ((record = reader.readRecord()) != null) {
+					records.add(record);
+				}
+			}
+
+			assertEquals("records not as expected for " + filename, expectedRecords, records);
+		}
+	}
+
+	@Test
+	public void testReadRecord() throws IOException, XMLStreamException {
+		String xml = "<?xml version=\"1.0\" ?>\n" //
+				+ "<PubmedArticleSet>\n" //
+				+ "<PubmedArticle><MedlineCitation><PMID Version=\"1\">12345</PMID>\n" //
+				+ "<Article><Journal><JournalIssue><PubDate><MedlineDate>1998 Dec-1999 Jan</MedlineDate></PubDate>"
+				+ "</JournalIssue></Journal>\n" //
+				+ "<ArticleTitle>H<sub>2</sub>O &amp; <![CDATA[CO<sub>2</sub> &lt;]]></ArticleTitle>\n" //
+				+ "<PublicationTypeList><PublicationType UI=\"D016428\">Journal Article</PublicationType>"
+				+ "</PublicationTypeList></Article>\n" //
+				+ "<CommentsCorrectionsList><CommentsCorrections><PMID Version=\"1\">999</PMID>"
+				+ "</CommentsCorrections></CommentsCorrectionsList></MedlineCitation></PubmedArticle>\n" //
+				+ "<DeleteCitation><PMID Version=\"1\">54321</PMID></DeleteCitation>\n" //
+				+ "</PubmedArticleSet>";
+
+		try (MedlineXmlReader reader = new MedlineXmlReader(new StringReader(xml))) {
+			MedlineRecord record = reader.readRecord();
+			assertEquals(new MedlineRecord("12345", "H<sub>2</sub>O & CO<sub>2</sub> &lt;", null, "1998",
+					Arrays.asList("Journal Article")), record);
+			assertNull(reader.readRecord());
+		}
+	}
+
+}
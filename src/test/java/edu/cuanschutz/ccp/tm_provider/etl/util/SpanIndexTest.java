@@ -0,0 +1,74 @@
+package edu.cuanschutz.ccp.tm_provider.etl.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.ucdenver.ccp.nlp.core.annotation.Span;
+
+public class SpanIndexTest {
+
+	@Test
+	public void testSentenceLikeSpans() {
+		List<Span> sentences = Arrays.asList(new Span(20, 40), new Span(0, 19), new Span(41, 60));
+		SpanIndex<Span> index = SpanIndex.createForSpans(sentences);
+
+		assertEquals(Arrays.asList(new Span(0, 19)), index.getContaining(new Span(5, 10)));
+		assertEquals(Arrays.asList(new Span(41, 60)), index.getContaining(new Span(41, 60)));
+		// crosses a sentence boundary
+		assertEquals(Collections.emptyList(), index.getContaining(new Span(35, 45)));
+		assertEquals(Arrays.asList(new Span(20, 40), new Span(41, 60)), index.getOverlapping(new Span(35, 45)));
+		assertEquals(Collections.emptyList(), index.getOverlapping(new Span(60, 70)));
+	}
+
+	@Test
+	public void testNestedSpans() {
+		// a long span that starts early must be found even when later spans end
+		// before the query
+		List<Span> spans = Arrays.asList(new Span(0, 100), new Span(10, 45), new Span(20, 30));
+		SpanIndex<Span> index = SpanIndex.createForSpans(spans);
+
+		assertEquals(Arrays.asList(new Span(0, 100)), index.getContaining(new Span(40, 50)));
+		assertEquals(Arrays.asList(new Span(0, 100), new Span(10, 45), new Span(20, 30)),
+				index.getContaining(new Span(22, 28)));
+	}
+
+	@Test
+	public void testMatchesExhaustiveSearch() {
+		Random random = new Random(12345);
+		List<Span> spans = new ArrayList<Span>();
+		for (int i = 0; i < 500; i++) {
+			int start = random.nextInt(1000);
+			spans.add(new Span(start, start + 1 + random.nextInt(50)));
+		}
+		SpanIndex<Span> index = SpanIndex.createForSpans(spans);
+		assertEquals(spans.size(), index.size());
+
+		List<Span> sorted = new ArrayList<Span>(spans);
+		Collections.sort(sorted, Span.ASCENDING());
+		for (int i = 0; i < 500; i++) {
+			int start = random.nextInt(1000);
+			Span query = new Span(start, start + 1 + random.nextInt(20));
+
+			List<Span> expectedContaining = new ArrayList<Span>();
+			List<Span> expectedOverlapping = new ArrayList<Span>();
+			for (Span span : sorted) {
+				if (span.containsSpan(query)) {
+					expectedContaining.add(span);
+				}
+				if (span.overlaps(query)) {
+					expectedOverlapping.add(span);
+				}
+			}
+			assertEquals(expectedContaining, index.getContaining(query));
+			assertEquals(expectedOverlapping, index.getOverlapping(query));
+		}
+	}
+
+}